@@ -0,0 +1,74 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// One group commit per operation, as the writer thread does it; rows/s = ops/s * batchSize.
+// Every trial starts from an empty database in a temp folder.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+
+    private static final int PLAYERS = 1000;
+
+    @Param({"1", "100", "1000", "10000"})
+    public int batchSize;
+
+    private File folder;
+    private DatabaseManager databaseManager;
+    private List<TransactionStore.TransactionData> batch;
+    private long clock = BenchmarkDatabases.NEWEST_CREATED_AT;
+
+    @Setup
+    public void setup() throws Exception {
+        folder = BenchmarkDatabases.tempFolder("playerpointlog-insert");
+        databaseManager = new DatabaseManager(folder, BenchmarkDatabases.LOGGER);
+        if (!databaseManager.initialize()) throw new IllegalStateException("Database did not initialize");
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            int receiver = (i * 7919) % PLAYERS;
+            int sender = (i * 104729 + 13) % PLAYERS;
+            batch.add(new TransactionStore.TransactionData(
+                    BenchmarkDatabases.playerName(receiver), BenchmarkDatabases.playerName(sender), i % 1000 + 1,
+                    new UUID(0, receiver), new UUID(0, sender), 0));
+        }
+    }
+
+    @Benchmark
+    public boolean logTransactionsBatch() {
+        // Built per batch with fresh capture times, as the correlator does on the writer thread
+        List<TransactionStore.TransactionData> transactions = new ArrayList<>(batch.size());
+        for (TransactionStore.TransactionData data : batch) {
+            transactions.add(new TransactionStore.TransactionData(data.playerReceived, data.playerSend,
+                    data.pointsAmount, data.receiverUuid, data.senderUuid, clock++));
+        }
+        return databaseManager.logTransactionsBatch(transactions);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        databaseManager.close();
+        BenchmarkDatabases.deleteRecursively(folder.toPath());
+    }
+}
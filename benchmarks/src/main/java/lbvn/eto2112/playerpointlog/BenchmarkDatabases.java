@@ -0,0 +1,118 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Databases for the benchmarks. Lookup databases are generated once per size and kept under
+// playerpointlog.bench.dir (default: <tmp>/playerpointlog-bench), since the 10M row one takes minutes.
+final class BenchmarkDatabases {
+
+    static final Logger LOGGER = Logger.getLogger("PlayerPointLog-Bench");
+    static final long NEWEST_CREATED_AT = 1_700_000_000_000L;
+    // Rows are spread over the year before NEWEST_CREATED_AT
+    static final long SPAN_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    static {
+        LOGGER.setLevel(Level.WARNING);
+    }
+
+    private BenchmarkDatabases() {
+    }
+
+    static int playerCount(int rows) {
+        return Math.max(100, rows / 1000);
+    }
+
+    static String playerName(int index) {
+        return "Player" + index;
+    }
+
+    static File lookupDatabase(int rows) throws IOException, SQLException {
+        File root = new File(System.getProperty("playerpointlog.bench.dir",
+                new File(System.getProperty("java.io.tmpdir"), "playerpointlog-bench").getPath()));
+        File folder = new File(root, "rows-" + rows);
+        File complete = new File(folder, "complete");
+        if (complete.exists()) return folder;
+
+        deleteRecursively(folder.toPath());
+        Files.createDirectories(folder.toPath());
+
+        // Schema and indexes exactly as the plugin creates them
+        DatabaseManager manager = new DatabaseManager(folder, LOGGER);
+        if (!manager.initialize()) throw new SQLException("Could not create " + folder);
+        manager.close();
+
+        generate(new File(folder, "playerpoints.db"), rows, playerCount(rows));
+
+        manager = new DatabaseManager(folder, LOGGER);
+        if (!manager.initialize()) throw new SQLException("Could not open " + folder);
+        manager.rebuildPlayerSummary();
+        manager.close();
+
+        Files.createFile(complete.toPath());
+        return folder;
+    }
+
+    // Bulk insert in SQL; going through logTransactionsBatch would take far longer for 10M rows
+    private static void generate(File database, int rows, int players) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA synchronous=OFF");
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement insertPlayers = connection.prepareStatement("""
+                    INSERT INTO players (name_key, display_name)
+                    WITH RECURSIVE seq(x) AS (SELECT 0 UNION ALL SELECT x + 1 FROM seq WHERE x + 1 < ?)
+                    SELECT lower('Player' || x), 'Player' || x FROM seq
+                    """)) {
+                insertPlayers.setInt(1, players);
+                insertPlayers.executeUpdate();
+            }
+
+            // Deterministic spread of receivers, senders and amounts, oldest row first
+            try (PreparedStatement insertRows = connection.prepareStatement("""
+                    INSERT INTO point_transactions (receiver_id, sender_id, points_amount, created_at)
+                    WITH RECURSIVE seq(x) AS (SELECT 0 UNION ALL SELECT x + 1 FROM seq WHERE x + 1 < ?)
+                    SELECT (x * 7919) % ? + 1, (x * 104729 + 13) % ? + 1, x % 1000 + 1, ? + x * ?
+                    FROM seq
+                    """)) {
+                insertRows.setInt(1, rows);
+                insertRows.setInt(2, players);
+                insertRows.setInt(3, players);
+                insertRows.setLong(4, NEWEST_CREATED_AT - SPAN_MILLIS);
+                insertRows.setLong(5, Math.max(1, SPAN_MILLIS / rows));
+                insertRows.executeUpdate();
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+            statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    static File tempFolder(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
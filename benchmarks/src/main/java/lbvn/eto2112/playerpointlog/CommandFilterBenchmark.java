@@ -0,0 +1,65 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// The command listener's main-thread cost: the pay prefilter over a typical command mix,
+// and a pay command's full trip through the capture ring into the correlator.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandFilterBenchmark {
+
+    private static final String[] COMMANDS = {
+            "/spawn",
+            "/home base",
+            "/msg Steve are you coming to the pay booth?",
+            "/tpa Alex",
+            "/p pay Steve 100",
+            "/points pay Alex 2500",
+            "/eco pay Steve 10",
+            "/warp shop",
+    };
+
+    private final UUID sender = new UUID(1, 1);
+    private EventRing ring;
+    private PayCommandMatcher matcher;
+    private PayCorrelator correlator;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ring = new EventRing(1024);
+        matcher = PayCommandMatcher.defaults();
+        correlator = new PayCorrelator(() -> true, () -> matcher);
+    }
+
+    @Benchmark
+    public void prefilter(Blackhole blackhole) {
+        for (String command : COMMANDS) {
+            blackhole.consume(matcher.targetStart(command) >= 0);
+        }
+    }
+
+    @Benchmark
+    public int publishAndCorrelatePay() {
+        String command = COMMANDS[4 + (next++ & 1)];
+        ring.publishPayCommand(sender, "Notch", command, next);
+        return ring.drain(correlator::accept, 1);
+    }
+}
@@ -0,0 +1,413 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+// Drives the real capture -> ring -> writer -> SQLite pipeline without a server, to find the
+// event rate it sustains before the ring spills. Producer threads play the event handlers,
+// lookup threads play staff. Run with:
+//   java -cp target/benchmarks.jar lbvn.eto2112.playerpointlog.LoadHarness --rate 20000 --duration 30
+// --jdbc-url runs the server-database store instead, e.g. against an in-process H2 database:
+//   --jdbc-url "jdbc:h2:mem:ppl;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+public final class LoadHarness {
+
+    private final Options options;
+    private final Logger logger = Logger.getLogger("PlayerPointLog-Load");
+
+    private final EventRing ring;
+    private final MeasuredStore database;
+    private final TransactionWriter writer;
+    private final File folder;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong expectedTransactions = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong failureLogs = new AtomicLong();
+    private final Histogram lookupLatency = new Histogram();
+    private volatile boolean producing = true;
+    private volatile boolean lookingUp = true;
+
+    private LoadHarness(Options options) throws Exception {
+        this.options = options;
+        this.folder = options.folder != null ? options.folder : BenchmarkDatabases.tempFolder("playerpointlog-load");
+
+        // Commit failures and dropped batches are only visible as log records
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                    failureLogs.incrementAndGet();
+                    System.err.println("[" + record.getLevel() + "] " + record.getMessage());
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        ring = new EventRing(options.ringCapacity);
+        database = new MeasuredStore(options.jdbcUrl != null
+                ? new JdbcTransactionStore(new JdbcTransactionStore.Settings(options.dialect, null, 0, null,
+                        options.jdbcUser, options.jdbcPassword, 8, "load", options.jdbcUrl), logger)
+                : new DatabaseManager(folder, logger));
+        if (!database.initialize()) throw new IllegalStateException("Database did not initialize in " + folder);
+
+        TransactionJournal journal = new TransactionJournal(new File(folder, "journal"), logger);
+        writer = new TransactionWriter(ring, new PayCorrelator(() -> true, PayCommandMatcher::defaults), journal, () -> database, logger,
+                new PipelineMetrics(), committed -> { });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        LoadHarness harness = new LoadHarness(options);
+        try {
+            harness.run();
+        } finally {
+            harness.database.close();
+            if (options.folder == null) {
+                BenchmarkDatabases.deleteRecursively(harness.folder.toPath());
+            }
+        }
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("rate=%d/s pattern=%s players=%d producers=%d lookups=%d ring=%d duration=%ds%n",
+                options.rate, options.pattern, options.players, options.producers, options.lookupThreads,
+                options.ringCapacity, options.durationSeconds);
+
+        writer.start();
+        // Names first, as the join listener would have seen them
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < options.players; i++) {
+            ring.publishJoin(playerId(i), BenchmarkDatabases.playerName(i), now);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.producers; i++) {
+            threads.add(start("producer-" + i, this::produce));
+        }
+        List<Thread> lookupThreads = new ArrayList<>();
+        for (int i = 0; i < options.lookupThreads; i++) {
+            lookupThreads.add(start("lookup-" + i, this::lookUp));
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        long previousPublished = 0;
+        long previousCommitted = 0;
+        int peakDepth = 0;
+
+        System.out.println("  time   published/s   committed/s   ring depth   spilled");
+        while (System.nanoTime() < end) {
+            Thread.sleep(options.sampleMillis);
+            long publishedNow = published.get();
+            long committedNow = database.committed.get();
+            int depth = ring.size();
+            peakDepth = Math.max(peakDepth, depth);
+
+            double seconds = options.sampleMillis / 1000.0;
+            System.out.printf("%6.1fs %13.0f %13.0f %12d %9d%n",
+                    (System.nanoTime() - start) / 1e9,
+                    (publishedNow - previousPublished) / seconds,
+                    (committedNow - previousCommitted) / seconds,
+                    depth, ring.getSpilledCount());
+            previousPublished = publishedNow;
+            previousCommitted = committedNow;
+        }
+
+        producing = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long produceNanos = System.nanoTime() - start;
+
+        // Whatever is still queued gets committed before the writer stops
+        writer.shutdown(5, TimeUnit.MINUTES);
+        long drainNanos = System.nanoTime() - start - produceNanos;
+
+        lookingUp = false;
+        for (Thread thread : lookupThreads) {
+            thread.join();
+        }
+
+        report(produceNanos, drainNanos, peakDepth);
+    }
+
+    private Thread start(String name, Runnable body) {
+        Thread thread = new Thread(body, "PlayerPointLog-Load-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Paces its share of the rate against a schedule; a producer that falls behind catches up without sleeping
+    private void produce() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        long due = start;
+
+        while (producing) {
+            long now = System.nanoTime();
+            if (due > now) {
+                LockSupport.parkNanos(Math.min(due - now, TimeUnit.MILLISECONDS.toNanos(1)));
+                continue;
+            }
+
+            double perProducer = options.pattern.rateAt((due - start) / 1e9, options.rate) / options.producers;
+            if (perProducer <= 0) {
+                due += TimeUnit.MILLISECONDS.toNanos(1);
+                continue;
+            }
+
+            publishEvent(random);
+            due += (long) (1e9 / perProducer);
+        }
+    }
+
+    private void publishEvent(ThreadLocalRandom random) {
+        int player = random.nextInt(options.players);
+        int amount = 1 + random.nextInt(1000);
+        long capturedAt = System.currentTimeMillis();
+
+        if (random.nextDouble() < options.payFraction) {
+            // /p pay: the command, then the receiver's gain and the sender's loss
+            int target = random.nextInt(options.players);
+            ring.publishPayCommand(playerId(player), BenchmarkDatabases.playerName(player),
+                    "/p pay " + BenchmarkDatabases.playerName(target) + " " + amount, capturedAt);
+            ring.publishPointsChange(playerId(target), amount, capturedAt);
+            ring.publishPointsChange(playerId(player), -amount, capturedAt);
+            published.addAndGet(3);
+            expectedTransactions.addAndGet(2);
+        } else {
+            ring.publishPointsChange(playerId(player), random.nextBoolean() ? amount : -amount, capturedAt);
+            published.incrementAndGet();
+            expectedTransactions.incrementAndGet();
+        }
+    }
+
+    private void lookUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (lookingUp) {
+            String player = BenchmarkDatabases.playerName(random.nextInt(options.players));
+            long start = System.nanoTime();
+            database.getPlayerTransactions(player, LookupFilter.NONE, null, 1, 5);
+            database.getPlayerSummary(player);
+            lookupLatency.record((System.nanoTime() - start) / 1000);
+            lookups.incrementAndGet();
+
+            if (options.lookupPauseMillis > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(options.lookupPauseMillis));
+            }
+        }
+    }
+
+    private void report(long produceNanos, long drainNanos, int peakDepth) {
+        long committed = database.committed.get();
+        long expected = expectedTransactions.get();
+        double produceSeconds = produceNanos / 1e9;
+
+        System.out.println();
+        System.out.printf("published events      %d (%.0f/s)%n", published.get(), published.get() / produceSeconds);
+        System.out.printf("committed rows        %d of %d expected (%.0f/s over the run)%n",
+                committed, expected, committed / ((produceNanos + drainNanos) / 1e9));
+        System.out.printf("lost rows             %d%n", Math.max(0, expected - committed));
+        System.out.printf("group commits         %d (avg %.1f rows, max %d)%n",
+                database.batches.get(), database.batches.get() == 0 ? 0 : (double) committed / database.batches.get(),
+                database.largestBatch.get());
+        System.out.printf("ring spills           %d (peak depth %d of %d)%n",
+                ring.getSpilledCount(), peakDepth, ring.capacity());
+        System.out.printf("warnings/errors       %d%n", failureLogs.get());
+        System.out.printf("drain after stop      %.2fs%n", drainNanos / 1e9);
+        System.out.printf("end-to-end latency    %s (ms, capture to commit)%n", summary(database.latencyMillis));
+        if (options.lookupThreads > 0) {
+            System.out.printf("lookups               %d (%.0f/s)%n", lookups.get(), lookups.get() / produceSeconds);
+            System.out.printf("lookup latency        %s (us, page + summary)%n", summary(lookupLatency));
+        }
+    }
+
+    private static UUID playerId(int index) {
+        return new UUID(0x504C, index);
+    }
+
+    // Counts what commits and how long it took since capture
+    private static final class MeasuredStore implements TransactionStore {
+        final AtomicLong committed = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong largestBatch = new AtomicLong();
+        final Histogram latencyMillis = new Histogram();
+        private final TransactionStore store;
+
+        MeasuredStore(TransactionStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+            boolean ok = store.logTransactionsBatch(transactions, journalSequence);
+            if (ok && !transactions.isEmpty()) {
+                long now = System.currentTimeMillis();
+                for (TransactionData data : transactions) {
+                    latencyMillis.record(now - data.createdAt);
+                }
+                committed.addAndGet(transactions.size());
+                batches.incrementAndGet();
+                largestBatch.accumulateAndGet(transactions.size(), Math::max);
+            }
+            return ok;
+        }
+
+        // Replays pass straight through, unmeasured
+        @Override
+        public boolean replayTransactionsBatch(List<TransactionData> transactions, long[] sequences) {
+            return store.replayTransactionsBatch(transactions, sequences);
+        }
+
+        @Override public boolean initialize() { return store.initialize(); }
+        @Override public long getJournalSequence() { return store.getJournalSequence(); }
+        @Override public long getHighestJournalSequence() { return store.getHighestJournalSequence(); }
+        @Override
+        public List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                             int page, int itemsPerPage) {
+            return store.getPlayerTransactions(playerName, filter, cursor, page, itemsPerPage);
+        }
+        @Override public long countPlayerTransactions(String playerName, LookupFilter filter) { return store.countPlayerTransactions(playerName, filter); }
+        @Override public PlayerSummary getPlayerSummary(String playerName) { return store.getPlayerSummary(playerName); }
+        @Override public boolean hasDailyHistory() { return store.hasDailyHistory(); }
+        @Override public int rebuildPlayerSummary() throws SQLException { return store.rebuildPlayerSummary(); }
+        @Override public boolean runMaintenanceStep() { return store.runMaintenanceStep(); }
+        @Override public boolean isConnected() { return store.isConnected(); }
+        @Override public LookupCache.Stats getLookupCacheStats() { return store.getLookupCacheStats(); }
+        @Override public int getOpenReadConnections() { return store.getOpenReadConnections(); }
+        @Override
+        public long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink)
+                throws SQLException, IOException {
+            return store.exportTransactions(playerName, since, until, chunkSize, sink);
+        }
+        @Override public void close() { store.close(); }
+    }
+
+    private static String summary(Histogram histogram) {
+        return String.format("p50=%d p90=%d p99=%d p99.9=%d max=%d",
+                histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+                histogram.percentile(99.9), histogram.getMax());
+    }
+
+    // Event rate over time: steady, or bursts of multiplier x rate for onMillis out of every periodMillis
+    record Pattern(double multiplier, long onMillis, long periodMillis) {
+
+        static Pattern parse(String value) {
+            if (value.equals("steady")) return new Pattern(1, 0, 0);
+            String[] parts = value.split(":");
+            if (parts.length != 4 || !parts[0].equals("burst")) {
+                throw new IllegalArgumentException("Pattern must be 'steady' or 'burst:<multiplier>:<onMs>:<periodMs>'");
+            }
+            return new Pattern(Double.parseDouble(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+        }
+
+        double rateAt(double elapsedSeconds, int baseRate) {
+            if (periodMillis <= 0) return baseRate;
+            long inPeriod = (long) (elapsedSeconds * 1000) % periodMillis;
+            return inPeriod < onMillis ? baseRate * multiplier : baseRate;
+        }
+
+        @Override
+        public String toString() {
+            return periodMillis <= 0 ? "steady" : "burst " + multiplier + "x for " + onMillis + "ms every " + periodMillis + "ms";
+        }
+    }
+
+    private static final class Options {
+        int rate = 5000;
+        Pattern pattern = Pattern.parse("steady");
+        int players = 1000;
+        int producers = 4;
+        double payFraction = 0.2;
+        int lookupThreads = 0;
+        long lookupPauseMillis = 100;
+        int ringCapacity = 8192;
+        int durationSeconds = 30;
+        long sampleMillis = 1000;
+        File folder;
+        String jdbcUrl;
+        JdbcTransactionStore.Dialect dialect = JdbcTransactionStore.Dialect.MYSQL;
+        String jdbcUser = "";
+        String jdbcPassword = "";
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--help")) usage(null);
+                if (!args[i].startsWith("--") || i + 1 >= args.length) usage("Unexpected argument " + args[i]);
+                values.put(args[i].substring(2), args[++i]);
+            }
+
+            Options options = new Options();
+            try {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    String value = entry.getValue();
+                    switch (entry.getKey()) {
+                        case "rate" -> options.rate = Integer.parseInt(value);
+                        case "pattern" -> options.pattern = Pattern.parse(value);
+                        case "players" -> options.players = Integer.parseInt(value);
+                        case "producers" -> options.producers = Integer.parseInt(value);
+                        case "pay-fraction" -> options.payFraction = Double.parseDouble(value);
+                        case "lookups" -> options.lookupThreads = Integer.parseInt(value);
+                        case "lookup-pause-ms" -> options.lookupPauseMillis = Long.parseLong(value);
+                        case "ring" -> options.ringCapacity = Integer.parseInt(value);
+                        case "duration" -> options.durationSeconds = Integer.parseInt(value);
+                        case "sample-ms" -> options.sampleMillis = Long.parseLong(value);
+                        case "folder" -> options.folder = new File(value);
+                        case "jdbc-url" -> options.jdbcUrl = value;
+                        case "dialect" -> {
+                            options.dialect = JdbcTransactionStore.Dialect.of(value);
+                            if (options.dialect == null) usage("Unknown dialect " + value);
+                        }
+                        case "jdbc-user" -> options.jdbcUser = value;
+                        case "jdbc-password" -> options.jdbcPassword = value;
+                        default -> usage("Unknown option --" + entry.getKey());
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                usage(e.getMessage());
+            }
+            return options;
+        }
+
+        private static void usage(String error) {
+            if (error != null) {
+                System.err.println(error);
+            }
+            System.err.println("""
+                    Options (defaults in brackets):
+                      --rate <events/s> [5000]          --pattern steady|burst:<x>:<onMs>:<periodMs> [steady]
+                      --players <count> [1000]          --producers <threads> [4]
+                      --pay-fraction <0..1> [0.2]       --lookups <threads> [0]
+                      --lookup-pause-ms <ms> [100]      --ring <power of two> [8192]
+                      --duration <s> [30]               --sample-ms <ms> [1000]
+                      --folder <dir> [temp, deleted afterwards]
+                      --jdbc-url <url> [SQLite in --folder]   --dialect mysql|mariadb|postgresql [mysql]
+                      --jdbc-user <name> [""]           --jdbc-password <password> [""]""");
+            System.exit(error != null ? 2 : 0);
+        }
+    }
+}
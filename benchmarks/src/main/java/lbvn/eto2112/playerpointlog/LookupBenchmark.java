@@ -0,0 +1,95 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lookup paths against pre-generated databases. cacheRows = 0 measures the SQL itself,
+// the default size shows what repeated lookups of the same players cost.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int ITEMS_PER_PAGE = 5;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"0", "20000"})
+    public int cacheRows;
+
+    private DatabaseManager databaseManager;
+    private String[] players;
+    private int next;
+    private LookupCursor middle;
+    private LookupFilter window;
+
+    @Setup
+    public void setup() throws Exception {
+        databaseManager = new DatabaseManager(BenchmarkDatabases.lookupDatabase(rows), BenchmarkDatabases.LOGGER, cacheRows);
+        if (!databaseManager.initialize()) throw new IllegalStateException("Database did not initialize");
+
+        players = new String[BenchmarkDatabases.playerCount(rows)];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = BenchmarkDatabases.playerName(i);
+        }
+
+        // A deep page halfway through the history, and a one-week window around the same point.
+        // Absolute dates, because relative windows are never cached.
+        long midpoint = BenchmarkDatabases.NEWEST_CREATED_AT - BenchmarkDatabases.SPAN_MILLIS / 2;
+        middle = LookupCursor.olderThan(midpoint, Long.MAX_VALUE);
+        window = LookupFilter.parse(List.of("since", "2023-05-09", "until", "2023-05-16"), midpoint);
+    }
+
+    private String nextPlayer() {
+        String player = players[next];
+        next = next + 1 == players.length ? 0 : next + 1;
+        return player;
+    }
+
+    @Benchmark
+    public List<TransactionStore.TransactionRecord> firstPage() {
+        return databaseManager.getPlayerTransactions(nextPlayer(), LookupFilter.NONE, null, 1, ITEMS_PER_PAGE);
+    }
+
+    @Benchmark
+    public List<TransactionStore.TransactionRecord> cursorPage() {
+        return databaseManager.getPlayerTransactions(nextPlayer(), LookupFilter.NONE, middle, 2, ITEMS_PER_PAGE);
+    }
+
+    @Benchmark
+    public List<TransactionStore.TransactionRecord> timeWindowPage() {
+        return databaseManager.getPlayerTransactions(nextPlayer(), window, null, 1, ITEMS_PER_PAGE);
+    }
+
+    @Benchmark
+    public long totalTransactionCount() {
+        return databaseManager.getPlayerSummary(nextPlayer()).getTransactionCount();
+    }
+
+    @Benchmark
+    public long filteredCount() {
+        return databaseManager.countPlayerTransactions(nextPlayer(), window);
+    }
+
+    @TearDown
+    public void tearDown() {
+        databaseManager.close();
+    }
+}
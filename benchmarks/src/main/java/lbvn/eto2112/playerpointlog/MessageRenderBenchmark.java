@@ -0,0 +1,57 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Placeholder rendering as a lookup page does it, once per transaction line.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageRenderBenchmark {
+
+    private LanguageManager languageManager;
+    private int amount;
+
+    @Setup
+    public void setup() {
+        // Same text as the bundled language.yml
+        languageManager = new LanguageManager(Map.of(
+                "transaction-received", "&f [{time}] &e{player} &fđã nhận &a{amount} &fpoint từ &b{sender}",
+                "lookup-header", "&6=== Lịch sử giao dịch của {player} ===",
+                "status-connected", "&aĐã kết nối"
+        ), BenchmarkDatabases.LOGGER);
+    }
+
+    @Benchmark
+    public String noPlaceholders() {
+        return languageManager.getMessage("status-connected");
+    }
+
+    @Benchmark
+    public String onePlaceholder() {
+        return languageManager.getMessage("lookup-header", "player", "Steve");
+    }
+
+    @Benchmark
+    public String transactionLine() {
+        return languageManager.getMessage("transaction-received",
+                "time", "14/11/2023 22:13:20",
+                "player", "Steve",
+                "amount", amount++,
+                "sender", "Alex");
+    }
+}
@@ -5,6 +5,8 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 
+import java.io.File;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,7 +15,8 @@ import java.util.concurrent.CompletableFuture;
 public class CommandHandler implements CommandExecutor, TabCompleter {
 
     private final PlayerPointLog plugin;
-    private static final List<String> SUBCOMMANDS = Arrays.asList("reload", "status", "help", "lookup");
+    private static final List<String> SUBCOMMANDS = Arrays.asList("reload", "status", "help", "lookup", "rebuildsummary",
+            "partitions", "archive", "export");
 
     public CommandHandler(PlayerPointLog plugin) {
         this.plugin = plugin;
@@ -45,6 +48,18 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
             case "lookup":
                 handleLookupAsync(sender, args);
                 break;
+            case "rebuildsummary":
+                handleRebuildSummaryAsync(sender);
+                break;
+            case "partitions":
+                sendPartitions(sender);
+                break;
+            case "archive":
+                handleArchiveAsync(sender, args);
+                break;
+            case "export":
+                handleExport(sender, args);
+                break;
             default:
                 sender.sendMessage(plugin.getLanguageManager().getMessage("unknown-command"));
                 break;
@@ -65,136 +80,144 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
             return;
         }
 
-        String playerName = args[1];
-        int page = 1;
+        plugin.getLookupCommandHandler().performLookup(sender, "/playerpointlog", args);
+    }
 
-        if (args.length >= 3) {
-            try {
-                page = Integer.parseInt(args[2]);
-                if (page < 1) {
-                    sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-page"));
-                    return;
-                }
-            } catch (NumberFormatException e) {
-                sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-number"));
-                return;
-            }
-        }
+    private void handleReloadAsync(CommandSender sender) {
+        sender.sendMessage(plugin.getLanguageManager().getMessage("reloading"));
 
-        final int finalPage = page;
+        // The reload runs on the writer thread; the result is only reported once it has finished
+        plugin.reload()
+                .thenAcceptAsync(reloaded -> {
+                    sender.sendMessage(plugin.getLanguageManager().getMessage(
+                            reloaded ? "plugin-reloaded" : "reload-database-failed"));
+                }, runnable -> plugin.getServer().getScheduler().runTask(plugin, runnable))
+                .exceptionally(throwable -> {
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        sender.sendMessage("§cReload failed: " + throwable.getMessage());
+                    });
+                    return null;
+                });
+    }
 
-        // Use CompletableFuture for better async handling
-        CompletableFuture
-                .supplyAsync(() -> {
+    private void handleRebuildSummaryAsync(CommandSender sender) {
+        sender.sendMessage(plugin.getLanguageManager().getMessage("summary-rebuilding"));
+
+        // Rebuild uses the write connection, so it runs on the writer between batches
+        plugin.getTransactionWriter()
+                .submit(() -> {
                     try {
-                        List<DatabaseManager.TransactionRecord> transactions =
-                                plugin.getDatabaseManager().getPlayerTransactions(playerName, finalPage, 5);
-                        int totalTransactions = plugin.getDatabaseManager().getTotalTransactionCount(playerName);
-                        return new LookupResult(transactions, totalTransactions, null);
+                        return plugin.getTransactionStore().rebuildPlayerSummary();
                     } catch (Exception e) {
-                        return new LookupResult(new ArrayList<>(), 0, e.getMessage());
-                    }
-                }, plugin.getDatabaseExecutor())
-                .thenAcceptAsync(result -> {
-                    if (result.error != null) {
-                        sender.sendMessage("§cError retrieving transaction data: " + result.error);
-                    } else {
-                        displayTransactions(sender, playerName, result.transactions, finalPage, result.totalTransactions);
+                        plugin.getLogger().severe("Error rebuilding player summary: " + e.getMessage());
+                        throw new RuntimeException(e.getMessage());
                     }
-                }, runnable -> plugin.getServer().getScheduler().runTask(plugin, runnable));
+                })
+                .thenAcceptAsync(players -> {
+                    sender.sendMessage(plugin.getLanguageManager().getMessage("summary-rebuilt", "players", players));
+                }, runnable -> plugin.getServer().getScheduler().runTask(plugin, runnable))
+                .exceptionally(throwable -> {
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        sender.sendMessage(plugin.getLanguageManager().getMessage("summary-rebuild-failed"));
+                    });
+                    return null;
+                });
     }
 
-    private void displayTransactions(CommandSender sender, String playerName,
-                                     List<DatabaseManager.TransactionRecord> transactions,
-                                     int page, int totalTransactions) {
-        if (transactions.isEmpty()) {
-            if (page == 1) {
-                sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-no-history", "player", playerName));
-            } else {
-                sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-no-page", "page", page, "player", playerName));
-            }
+    private void sendPartitions(CommandSender sender) {
+        List<String> partitions = plugin.getTransactionStore().describePartitions();
+        if (partitions.isEmpty()) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("partitions-none"));
             return;
         }
-
-        int totalPages = (int) Math.ceil((double) totalTransactions / 5);
-
-        // Header
-        sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-header", "player", playerName));
-
-        // Transaction list with optimized formatting
-        for (DatabaseManager.TransactionRecord record : transactions) {
-            String formattedTime = formatTimestamp(record.getTimestamp());
-            String message;
-
-            if (record.getPlayerReceived().equals("console")) {
-                // Console received points from player (player lost points)
-                message = plugin.getLanguageManager().getMessage("transaction-lost",
-                        "time", formattedTime,
-                        "player", record.getPlayerSend(),
-                        "amount", record.getPointsAmount(),
-                        "receiver", "console"
-                );
-            } else {
-                // Player received points
-                message = plugin.getLanguageManager().getMessage("transaction-received",
-                        "time", formattedTime,
-                        "player", record.getPlayerReceived(),
-                        "amount", record.getPointsAmount(),
-                        "sender", record.getPlayerSend()
-                );
-            }
-            sender.sendMessage(message);
+        sender.sendMessage(plugin.getLanguageManager().getMessage("partitions-header", "count", partitions.size()));
+        for (String partition : partitions) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("partitions-entry", "partition", partition));
         }
-
-        // Pagination footer
-        sender.sendMessage(plugin.getLanguageManager().getMessage("pagination-simple", "page", page, "total", totalPages));
     }
 
-    private String formatTimestamp(String timestamp) {
-        try {
-            java.time.LocalDateTime dateTime = java.time.LocalDateTime.parse(timestamp,
-                    java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            return dateTime.format(java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
-        } catch (java.time.format.DateTimeParseException e) {
-            return timestamp;
+    private void handleArchiveAsync(CommandSender sender, String[] args) {
+        YearMonth month = args.length == 2 ? MonthlyPartitions.parseMonth(args[1]) : null;
+        if (month == null) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("archive-usage"));
+            return;
         }
-    }
 
-    private void handleReloadAsync(CommandSender sender) {
-        sender.sendMessage(plugin.getLanguageManager().getMessage("reloading"));
-
-        // Use CompletableFuture for better async handling
-        CompletableFuture
-                .runAsync(() -> {
+        // Detaching touches the write connection, so it runs on the writer between batches
+        plugin.getTransactionWriter()
+                .submit(() -> {
                     try {
-                        plugin.reload();
-                        // Clean up expired transactions during reload
-                        plugin.cleanupExpiredTransactions();
+                        return plugin.getTransactionStore().archivePartition(month);
+                    } catch (IllegalArgumentException e) {
+                        throw e;
                     } catch (Exception e) {
-                        plugin.getLogger().severe("Error during reload: " + e.getMessage());
-                        throw new RuntimeException("Reload failed: " + e.getMessage());
+                        plugin.getLogger().severe("Error archiving partition " + month + ": " + e.getMessage());
+                        throw new RuntimeException(e.getMessage());
+                    }
+                })
+                .thenAcceptAsync(file -> {
+                    if (file == null) {
+                        sender.sendMessage(plugin.getLanguageManager().getMessage("archive-not-found", "month", args[1]));
+                    } else {
+                        sender.sendMessage(plugin.getLanguageManager().getMessage("archive-done",
+                                "month", args[1], "file", file.getName()));
                     }
-                }, plugin.getDatabaseExecutor())
-                .thenRunAsync(() -> {
-                    sender.sendMessage(plugin.getLanguageManager().getMessage("plugin-reloaded"));
                 }, runnable -> plugin.getServer().getScheduler().runTask(plugin, runnable))
                 .exceptionally(throwable -> {
+                    boolean current = throwable.getCause() instanceof IllegalArgumentException;
                     plugin.getServer().getScheduler().runTask(plugin, () -> {
-                        sender.sendMessage("§cReload failed: " + throwable.getMessage());
+                        sender.sendMessage(plugin.getLanguageManager().getMessage(
+                                current ? "archive-current-month" : "archive-failed", "month", args[1]));
                     });
                     return null;
                 });
     }
 
+    // export <player|all> [since] [until] <csv|jsonl>; times take the same forms as lookup filters
+    private void handleExport(CommandSender sender, String[] args) {
+        ExportFormat format = args.length >= 3 && args.length <= 5 ?
+                ExportFormat.of(args[args.length - 1]) : null;
+        if (format == null) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("export-usage"));
+            return;
+        }
+
+        Long since = null;
+        Long until = null;
+        long now = System.currentTimeMillis();
+        try {
+            if (args.length >= 4) since = LookupFilter.parse(List.of("since", args[2]), now).getSince();
+            if (args.length == 5) until = LookupFilter.parse(List.of("until", args[3]), now).getUntil();
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("export-invalid-time", "value", e.getMessage()));
+            return;
+        }
+
+        if (!TransactionExporter.isValidTarget(args[1])) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("export-invalid-player", "player", args[1]));
+            return;
+        }
+
+        String playerName = args[1].equalsIgnoreCase("all") ? null : args[1];
+        File file = plugin.getTransactionExporter().start(sender, playerName, since, until, format);
+        if (file == null) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("export-busy"));
+            return;
+        }
+        sender.sendMessage(plugin.getLanguageManager().getMessage("export-started",
+                "target", playerName != null ? playerName : "all", "file", file.getName()));
+    }
+
     private void handleStatusAsync(CommandSender sender) {
         // Quick status check without blocking main thread
         CompletableFuture
                 .supplyAsync(() -> {
                     try {
-                        boolean dbConnected = plugin.getDatabaseManager().isConnected();
-                        return new StatusResult(dbConnected, null);
+                        TransactionStore store = plugin.getTransactionStore();
+                        boolean dbConnected = store.isConnected();
+                        return new StatusResult(dbConnected, null, store.getLookupCacheStats());
                     } catch (Exception e) {
-                        return new StatusResult(false, e.getMessage());
+                        return new StatusResult(false, e.getMessage(), null);
                     }
                 }, plugin.getDatabaseExecutor())
                 .thenAcceptAsync(result -> {
@@ -210,14 +233,66 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
                                 plugin.getLanguageManager().getMessage("status-disconnected");
                     }
                     sender.sendMessage(plugin.getLanguageManager().getMessage("status-database", "status", dbStatus));
+
+                    if (result.cacheStats != null) {
+                        LookupCache.Stats cache = result.cacheStats;
+                        sender.sendMessage(plugin.getLanguageManager().getMessage("status-cache",
+                                "hits", cache.hits(),
+                                "misses", cache.misses(),
+                                "rate", cache.hitRatePercent(),
+                                "evictions", cache.evictions(),
+                                "entries", cache.entries(),
+                                "rows", cache.rows()));
+                    }
+
+                    sendPipelineStatus(sender);
                 }, runnable -> plugin.getServer().getScheduler().runTask(plugin, runnable));
     }
 
+    // Capture ring, group commits and latency percentiles since startup
+    private void sendPipelineStatus(CommandSender sender) {
+        LanguageManager lang = plugin.getLanguageManager();
+        PipelineMetrics metrics = plugin.getMetrics();
+        EventRing ring = plugin.getEventRing();
+
+        sender.sendMessage(lang.getMessage("status-queue",
+                "depth", ring.size(),
+                "capacity", ring.capacity(),
+                "spilled", ring.getSpilledCount()));
+        sender.sendMessage(lang.getMessage("status-commits",
+                "batches", metrics.batchSize.getCount(),
+                "p50", metrics.batchSize.percentile(50),
+                "p99", metrics.batchSize.percentile(99),
+                "max", metrics.batchSize.getMax()));
+        sender.sendMessage(lang.getMessage("status-commit-latency", latencyPlaceholders(metrics.commitMicros, 1000.0)));
+        sender.sendMessage(lang.getMessage("status-durable-latency", latencyPlaceholders(metrics.durableMillis, 1.0)));
+        sender.sendMessage(lang.getMessage("status-lookup-latency", latencyPlaceholders(metrics.lookupMicros, 1000.0)));
+        sender.sendMessage(lang.getMessage("status-failures",
+                "reconnects", metrics.getReconnects(),
+                "failures", metrics.getCommitFailures(),
+                "dropped", metrics.getDroppedTransactions(),
+                "replayed", metrics.getReplayedTransactions()));
+    }
+
+    // Milliseconds with two decimals; perMilli is the histogram's units per millisecond
+    private static Object[] latencyPlaceholders(Histogram histogram, double perMilli) {
+        return new Object[]{
+                "p50", String.format("%.2f", histogram.percentile(50) / perMilli),
+                "p99", String.format("%.2f", histogram.percentile(99) / perMilli),
+                "max", String.format("%.2f", histogram.getMax() / perMilli)
+        };
+    }
+
     private void sendHelpMessage(CommandSender sender) {
         sender.sendMessage(plugin.getLanguageManager().getMessage("help-header"));
         sender.sendMessage(plugin.getLanguageManager().getMessage("help-reload"));
         sender.sendMessage(plugin.getLanguageManager().getMessage("help-status"));
         sender.sendMessage(plugin.getLanguageManager().getMessage("help-lookup"));
+        sender.sendMessage(plugin.getLanguageManager().getMessage("help-lookup-filters"));
+        sender.sendMessage(plugin.getLanguageManager().getMessage("help-rebuildsummary"));
+        sender.sendMessage(plugin.getLanguageManager().getMessage("help-partitions"));
+        sender.sendMessage(plugin.getLanguageManager().getMessage("help-archive"));
+        sender.sendMessage(plugin.getLanguageManager().getMessage("help-export"));
         sender.sendMessage(plugin.getLanguageManager().getMessage("help-help"));
     }
 
@@ -247,38 +322,43 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
                     }
                 });
             }
-        } else if (args.length == 3 && "lookup".equalsIgnoreCase(args[0])) {
-            // Only show page numbers if user has permission
-            if (sender.hasPermission("playerpointlog.admin") || sender.hasPermission("playerpointlog.use")) {
-                for (int i = 1; i <= 5; i++) {
-                    completions.add(String.valueOf(i));
+        } else if (args.length == 2 && "export".equalsIgnoreCase(args[0])) {
+            String input = args[1].toLowerCase();
+            if ("all".startsWith(input)) {
+                completions.add("all");
+            }
+            plugin.getServer().getOnlinePlayers().forEach(player -> {
+                if (player.getName().toLowerCase().startsWith(input)) {
+                    completions.add(player.getName());
+                }
+            });
+        } else if (args.length >= 3 && args.length <= 5 && "export".equalsIgnoreCase(args[0])) {
+            String input = args[args.length - 1].toLowerCase();
+            for (ExportFormat format : ExportFormat.values()) {
+                if (format.extension.startsWith(input)) {
+                    completions.add(format.extension);
                 }
             }
+        } else if (args.length >= 3 && "lookup".equalsIgnoreCase(args[0])) {
+            // Page numbers, filter keywords and their values, shared with /plog
+            if (sender.hasPermission("playerpointlog.admin") || sender.hasPermission("playerpointlog.use")) {
+                completions.addAll(plugin.getLookupCommandHandler().completeLookupArguments(args));
+            }
         }
 
         return completions;
     }
 
     // Helper classes for better type safety and performance
-    private static class LookupResult {
-        final List<DatabaseManager.TransactionRecord> transactions;
-        final int totalTransactions;
-        final String error;
-
-        LookupResult(List<DatabaseManager.TransactionRecord> transactions, int totalTransactions, String error) {
-            this.transactions = transactions;
-            this.totalTransactions = totalTransactions;
-            this.error = error;
-        }
-    }
-
     private static class StatusResult {
         final boolean connected;
         final String error;
+        final LookupCache.Stats cacheStats;
 
-        StatusResult(boolean connected, String error) {
+        StatusResult(boolean connected, String error, LookupCache.Stats cacheStats) {
             this.connected = connected;
             this.error = error;
+            this.cacheStats = cacheStats;
         }
     }
 }
\ No newline at end of file
@@ -1,307 +1,1573 @@
 package lbvn.eto2112.playerpointlog;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
 
-public class DatabaseManager {
+public class DatabaseManager implements TransactionStore {
 
-    private final PlayerPointLog plugin;
-    private Connection connection;
+    private final File dataFolder;
+    private final Logger logger;
+    // Owned by the TransactionWriter thread, lookups never queue behind inserts on it
+    private Connection writeConnection;
+    // Lookups borrow query-only connections, each reading its own WAL snapshot
+    private ReadConnectionPool readPool;
+    static final String DATABASE_FILE = "playerpoints.db";
     private final String databasePath;
     private final ReentrantReadWriteLock connectionLock = new ReentrantReadWriteLock();
 
-    // Prepared statement pool for maximum performance
-    private PreparedStatement insertStatement;
+    // Write-side statements, only used from the writer thread
     private PreparedStatement batchInsertStatement;
-    private PreparedStatement selectStatement;
-    private PreparedStatement countStatement;
+    private PreparedStatement summaryUpsertStatement;
+    private PreparedStatement insertPlayerStatement;
+    private PreparedStatement writePlayerIdStatement;
+    private PreparedStatement journalStateStatement;
 
-    // Connection pooling for better concurrency
-    private static final int MAX_CONNECTIONS = 10;
-    private final ConnectionPool connectionPool;
+    // Read-side statements, prepared per pooled connection
+    private static final String SUMMARY_SELECT_SQL = """
+            SELECT transaction_count, total_received, total_sent, first_seen, last_seen
+            FROM player_summary
+            WHERE player_id = ?
+            """;
+    private static final String SELECT_PLAYER_ID_SQL = "SELECT id FROM players WHERE name_key = ?";
+    // Exports read forwards from before the first row
+    private static final LookupCursor EXPORT_START = LookupCursor.newerThan(Long.MIN_VALUE, Long.MIN_VALUE);
+
+    // Set while the pre-v4 TEXT timestamp column still exists / still holds rows without created_at
+    private static final int TIMESTAMP_BACKFILL_CHUNK = 10000;
+    private boolean legacyTimestampColumn;
+    private boolean timestampBackfillPending;
+    private boolean timestampMigrationFailed;
+    private long timestampBackfillCursor;
+    private long timestampBackfillEnd;
+
+    // Case-folded player key -> dictionary id, so the write path never looks names up in SQLite
+    private final Map<String, Integer> playerIds = new ConcurrentHashMap<>();
+
+    // Upper bound on parallel lookups; connections are only opened when lookups overlap
+    private static final int MAX_READ_CONNECTIONS = 10;
+
+    // Repeated lookups and pagination clicks; bounded by cached rows, invalidated per player on commit
+    private static final int LOOKUP_CACHE_ROWS = 20000;
+    private final LookupCache lookupCache;
+    private final PipelineMetrics metrics;
+
+    // Rolls rows past the retention horizon into daily_player_flow in the background
+    private final RetentionRollUp retention;
+    // Set once any rows have been rolled up; until then lookups skip the daily table entirely
+    private volatile boolean dailyHistory;
+
+    private static final String TRANSACTIONS_TABLE = "point_transactions";
+    private static final String LEDGER_TABLE = "player_ledger";
+
+    // player_ledger, read by lookups once complete
+    private final ParticipantLedger ledger;
+    // Monthly partition files are always read when present; new rows only go to them when enabled
+    private final MonthlyPartitions partitions;
+    private boolean partitionWrites;
+    private PartitionWrites writePartitions;
 
     public DatabaseManager(PlayerPointLog plugin) {
-        this.plugin = plugin;
-        this.databasePath = plugin.getDataFolder().getAbsolutePath() + File.separator + "playerpoints.db";
-        this.connectionPool = new ConnectionPool(databasePath, MAX_CONNECTIONS);
+        this(plugin, plugin.getDataFolder());
+    }
+
+    // One shard of a ShardedDatabaseManager, with the plugin's settings
+    DatabaseManager(PlayerPointLog plugin, File dataFolder) {
+        this(dataFolder, plugin.getLogger(), LOOKUP_CACHE_ROWS, plugin.getMetrics());
+        setRetentionDays(plugin.getConfig().getInt("retention.days", 0));
+        setMonthlyPartitions(plugin.getConfig().getBoolean("storage.monthly-partitions", false));
+        setParticipantLedger(plugin.getConfig().getBoolean("storage.participant-ledger", false));
+    }
+
+    // No Bukkit types past this point, so benchmarks and tools can run it against any folder
+    public DatabaseManager(File dataFolder, Logger logger) {
+        this(dataFolder, logger, LOOKUP_CACHE_ROWS);
+    }
+
+    // lookupCacheRows = 0 disables the lookup cache
+    DatabaseManager(File dataFolder, Logger logger, int lookupCacheRows) {
+        this(dataFolder, logger, lookupCacheRows, new PipelineMetrics());
+    }
+
+    DatabaseManager(File dataFolder, Logger logger, int lookupCacheRows, PipelineMetrics metrics) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+        this.databasePath = dataFolder.getAbsolutePath() + File.separator + DATABASE_FILE;
+        this.lookupCache = new LookupCache(lookupCacheRows);
+        this.metrics = metrics;
+        this.partitions = new MonthlyPartitions(dataFolder);
+        this.ledger = new ParticipantLedger(logger, connectionLock);
+        this.retention = new RetentionRollUp(logger, partitions, connectionLock, new RetentionRollUp.Listener() {
+            @Override
+            public void deletingMainRows(long fromId, long toId, long cutoff) throws SQLException {
+                ledger.deleteEntries(fromId, toId, cutoff);
+            }
+
+            @Override
+            public void rolledUp() {
+                dailyHistory = true;
+                lookupCache.invalidateAll();
+            }
+
+            @Override
+            public void partitionEmptied(YearMonth month) throws SQLException, IOException {
+                dropPartition(month, false);
+            }
+        });
+    }
+
+    // 0 or less keeps every row
+    void setRetentionDays(int days) {
+        retention.setDays(days);
+    }
+
+    // New rows go to monthly partition files instead of the main table
+    void setMonthlyPartitions(boolean enabled) {
+        this.partitionWrites = enabled;
     }
 
+    // Maintains player_ledger next to point_transactions and serves lookups from it
+    void setParticipantLedger(boolean enabled) {
+        ledger.setEnabled(enabled);
+    }
+
+    @Override
     public boolean initialize() {
         connectionLock.writeLock().lock();
         try {
-            if (!plugin.getDataFolder().exists()) {
-                plugin.getDataFolder().mkdirs();
+            if (!dataFolder.exists()) {
+                dataFolder.mkdirs();
             }
 
-            connection = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+            // Going back to storage.shards: 1 needs ReshardTool too, or the history would seem to vanish
+            if (ShardedDatabaseManager.existingShardCount(dataFolder) > 0) {
+                logger.severe("The data folder holds database shards; set storage.shards to their count or run ReshardTool.");
+                return false;
+            }
 
-            // Ultra-optimized SQLite settings for maximum performance
-            try (Statement stmt = connection.createStatement()) {
-                // WAL mode for better concurrency and crash safety
-                stmt.execute("PRAGMA journal_mode=WAL");
+            writeConnection = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+            configureConnection(writeConnection);
 
-                // Optimize for speed while maintaining safety
-                stmt.execute("PRAGMA synchronous=NORMAL");
-                stmt.execute("PRAGMA cache_size=50000");        // 50MB cache
-                stmt.execute("PRAGMA temp_store=MEMORY");
-                stmt.execute("PRAGMA mmap_size=536870912");     // 512MB memory mapping
-                stmt.execute("PRAGMA wal_autocheckpoint=2000");
-                stmt.execute("PRAGMA busy_timeout=30000");      // 30 second timeout
+            createTable();
 
-                // Optimize query planner
-                stmt.execute("PRAGMA optimize");
-            }
+            partitions.scan();
+            writePartitions = new PartitionWrites(partitions, writeConnection);
+            retention.open(writeConnection, writePartitions.attachments());
 
-            createTable();
-            prepareStatements();
+            readPool = new ReadConnectionPool(databasePath, MAX_READ_CONNECTIONS, logger);
 
-            plugin.getLogger().info("Optimized database initialized successfully!");
+            prepareWriteStatements();
+            verifyQueryPlans();
+
+            logger.info("Optimized database initialized successfully!");
             return true;
 
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to initialize database: " + e.getMessage());
+            logger.severe("Failed to initialize database: " + e.getMessage());
             return false;
         } finally {
             connectionLock.writeLock().unlock();
         }
     }
 
+    private void configureConnection(Connection connection) throws SQLException {
+        // Ultra-optimized SQLite settings for maximum performance
+        try (Statement stmt = connection.createStatement()) {
+            // Lets retention give pages back in small steps; only takes effect on a new database,
+            // and only before the WAL switch below writes the header
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+
+            // WAL mode for better concurrency and crash safety
+            stmt.execute("PRAGMA journal_mode=WAL");
+
+            // Optimize for speed while maintaining safety
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA cache_size=50000");        // 50MB cache
+            stmt.execute("PRAGMA temp_store=MEMORY");
+            stmt.execute("PRAGMA mmap_size=536870912");     // 512MB memory mapping
+            stmt.execute("PRAGMA wal_autocheckpoint=2000");
+            stmt.execute("PRAGMA busy_timeout=30000");      // 30 second timeout
+
+            // Optimize query planner
+            stmt.execute("PRAGMA optimize");
+        }
+    }
+
     private void createTable() throws SQLException {
-        String createTableSQL = """
-            CREATE TABLE IF NOT EXISTS point_transactions (
-                id INTEGER PRIMARY KEY AUTOINCREMENT,
-                player_received TEXT NOT NULL,
-                player_send TEXT NOT NULL,
-                points_amount INTEGER NOT NULL,
-                timestamp TEXT NOT NULL
-            )
-        """;
-
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(createTableSQL);
-
-            // Optimized compound indexes for faster queries
+        SchemaMigrator migrator = new SchemaMigrator(writeConnection, logger);
+
+        try (Statement statement = writeConnection.createStatement()) {
+            // Player dictionary: rows reference compact integer ids instead of repeating names
             statement.execute("""
-                CREATE INDEX IF NOT EXISTS idx_player_received_time 
-                ON point_transactions(player_received, timestamp DESC)
+                CREATE TABLE IF NOT EXISTS players (
+                    id INTEGER PRIMARY KEY,
+                    name_key TEXT NOT NULL UNIQUE,
+                    display_name TEXT NOT NULL,
+                    uuid TEXT
+                )
             """);
 
+            int schemaVersion = migrator.getSchemaVersion();
+            if (schemaVersion < SchemaMigrator.SCHEMA_VERSION
+                    && migrator.hasColumn("point_transactions", "player_received")) {
+                migrator.migrateLegacyTransactions();
+            }
+
             statement.execute("""
-                CREATE INDEX IF NOT EXISTS idx_player_send_time 
-                ON point_transactions(player_send, timestamp DESC)
+                CREATE TABLE IF NOT EXISTS point_transactions (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    receiver_id INTEGER NOT NULL,
+                    sender_id INTEGER NOT NULL,
+                    points_amount INTEGER NOT NULL,
+                    created_at INTEGER NOT NULL
+                )
             """);
 
-            // Covering index for lookup queries (SQLite compatible)
+            // Running per-player totals, updated in the same transaction as the inserts
             statement.execute("""
-                CREATE INDEX IF NOT EXISTS idx_lookup_covering 
-                ON point_transactions(player_received, player_send, id DESC, points_amount, timestamp)
+                CREATE TABLE IF NOT EXISTS player_summary (
+                    player_id INTEGER PRIMARY KEY,
+                    transaction_count INTEGER NOT NULL DEFAULT 0,
+                    total_received INTEGER NOT NULL DEFAULT 0,
+                    total_sent INTEGER NOT NULL DEFAULT 0,
+                    first_seen INTEGER,
+                    last_seen INTEGER
+                )
             """);
 
+            // Older databases still store TEXT timestamps; rows are converted in the background
+            legacyTimestampColumn = migrator.hasColumn("point_transactions", "timestamp");
+            if (legacyTimestampColumn) {
+                migrator.prepareEpochTimestamps();
+                timestampBackfillPending = true;
+                timestampBackfillCursor = 0;
+                timestampBackfillEnd = migrator.maxTransactionId();
+            }
+
+            // Highest journal sequence whose transaction is committed here; replay skips up to it
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS journal_state (
+                    id INTEGER PRIMARY KEY CHECK (id = 1),
+                    committed_sequence INTEGER NOT NULL
+                )
+            """);
+            statement.execute("INSERT OR IGNORE INTO journal_state (id, committed_sequence) VALUES (1, 0)");
+            // Months (yyyy-MM, comma separated) whose partitions the last journaled batch wrote to
+            if (!migrator.hasColumn("journal_state", "partition_months")) {
+                statement.execute("ALTER TABLE journal_state ADD COLUMN partition_months TEXT");
+            }
+
+            // Per-day totals per (receiver, sender) for rows past the retention horizon, shaped like
+            // point_transactions so lookups read both the same way
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS daily_player_flow (
+                    id INTEGER PRIMARY KEY,
+                    receiver_id INTEGER NOT NULL,
+                    sender_id INTEGER NOT NULL,
+                    day_start INTEGER NOT NULL,
+                    transaction_count INTEGER NOT NULL,
+                    points_total INTEGER NOT NULL,
+                    UNIQUE (receiver_id, sender_id, day_start)
+                )
+            """);
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_flow_receiver_day ON daily_player_flow(receiver_id, day_start)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_flow_sender_day ON daily_player_flow(sender_id, day_start)");
+
+            try (ResultSet rs = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM daily_player_flow)")) {
+                dailyHistory = rs.next() && rs.getBoolean(1);
+            }
+
+            // Per-player time-ordered seeks; the rowid (id) is implicitly the trailing key,
+            // so (player, created_at, id) serves both time windows and keyset paging
+            statement.execute("""
+                CREATE INDEX IF NOT EXISTS idx_tx_receiver_time
+                ON point_transactions(receiver_id, created_at)
+            """);
+
+            statement.execute("""
+                CREATE INDEX IF NOT EXISTS idx_tx_sender_time
+                ON point_transactions(sender_id, created_at)
+            """);
+
+            // Superseded by the time indexes above
+            statement.execute("DROP INDEX IF EXISTS idx_tx_receiver");
+            statement.execute("DROP INDEX IF EXISTS idx_tx_sender");
+
+            // Legacy name indexes; the covering one was never usable by lookups and only cost writes
+            statement.execute("DROP INDEX IF EXISTS idx_lookup_covering");
+            statement.execute("DROP INDEX IF EXISTS idx_player_received_time");
+            statement.execute("DROP INDEX IF EXISTS idx_player_send_time");
+
+            // Databases written before the summary table existed get it filled once
+            if (schemaVersion < 3) {
+                int players = rebuildPlayerSummaryTable();
+                logger.info("Built player summary for " + players + " players.");
+            }
+
+            // v4 is only reached once the old timestamp column is gone
+            migrator.setSchemaVersion(legacyTimestampColumn ? 3 : SchemaMigrator.SCHEMA_VERSION);
+
+            ledger.create(statement);
+
             // Analyze tables for optimal query planning
             statement.execute("ANALYZE point_transactions");
         }
+
+        loadPlayerIds();
     }
 
-    private void prepareStatements() throws SQLException {
-        insertStatement = connection.prepareStatement(
-                "INSERT INTO point_transactions (player_received, player_send, points_amount, timestamp) VALUES (?, ?, ?, ?)"
-        );
+    private void loadPlayerIds() throws SQLException {
+        playerIds.clear();
+        try (Statement statement = writeConnection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT id, name_key FROM players")) {
+            while (rs.next()) {
+                playerIds.put(rs.getString("name_key"), rs.getInt("id"));
+            }
+        }
+    }
 
-        batchInsertStatement = connection.prepareStatement(
-                "INSERT INTO point_transactions (player_received, player_send, points_amount, timestamp) VALUES (?, ?, ?, ?)"
+    private void prepareWriteStatements() throws SQLException {
+        // Until the migration drops it, the old NOT NULL column gets an empty string
+        batchInsertStatement = writeConnection.prepareStatement(legacyTimestampColumn
+                ? "INSERT INTO point_transactions (receiver_id, sender_id, points_amount, created_at, timestamp) VALUES (?, ?, ?, ?, '')"
+                : "INSERT INTO point_transactions (receiver_id, sender_id, points_amount, created_at) VALUES (?, ?, ?, ?)"
         );
 
-        selectStatement = connection.prepareStatement(
+        summaryUpsertStatement = writeConnection.prepareStatement(
                 """
-                SELECT player_received, player_send, points_amount, timestamp 
-                FROM point_transactions 
-                WHERE LOWER(player_received) = LOWER(?) OR LOWER(player_send) = LOWER(?) 
-                ORDER BY id DESC 
-                LIMIT ? OFFSET ?
+                INSERT INTO player_summary (player_id, transaction_count, total_received, total_sent, first_seen, last_seen)
+                VALUES (?, ?, ?, ?, ?, ?)
+                ON CONFLICT(player_id) DO UPDATE SET
+                    transaction_count = transaction_count + excluded.transaction_count,
+                    total_received = total_received + excluded.total_received,
+                    total_sent = total_sent + excluded.total_sent,
+                    first_seen = MIN(first_seen, excluded.first_seen),
+                    last_seen = MAX(last_seen, excluded.last_seen)
                 """
         );
 
-        countStatement = connection.prepareStatement(
-                """
-                SELECT COUNT(*) as total 
-                FROM point_transactions 
-                WHERE LOWER(player_received) = LOWER(?) OR LOWER(player_send) = LOWER(?)
-                """
+        journalStateStatement = writeConnection.prepareStatement(
+                "UPDATE journal_state SET committed_sequence = MAX(committed_sequence, ?), partition_months = ? WHERE id = 1"
+        );
+
+        insertPlayerStatement = writeConnection.prepareStatement(
+                "INSERT OR IGNORE INTO players (name_key, display_name, uuid) VALUES (?, ?, ?)"
         );
+
+        writePlayerIdStatement = writeConnection.prepareStatement(SELECT_PLAYER_ID_SQL);
+
+        ledger.prepare(writeConnection);
+    }
+
+    // Rows not yet backfilled fall back to converting their old TEXT timestamp
+    private String createdAtSql(String prefix) {
+        return timestampBackfillPending
+                ? "COALESCE(" + prefix + "created_at, " + SchemaMigrator.epochMillisSql(prefix + "timestamp") + ")"
+                : prefix + "created_at";
+    }
+
+    // An OR across both columns cannot be served in order by either index, so the lookup
+    // is a UNION ALL of two (player, created_at) range scans, received side and sent side,
+    // that SQLite merges and stops reading once the page is full. Every filter is a bound
+    // parameter on those scans; names are joined only for the surviving rows.
+    // Past the retention horizon the same scans continue into daily_player_flow, whose rows come
+    // back with negated ids so one (created_at, id) keyset orders and pages across both tables.
+    private String lookupSql(String table, int playerId, Integer counterpartyId, LookupFilter filter, LookupCursor cursor,
+                             int limit, int offset, boolean daily, List<Object> parameters) {
+        if (table.equals(LEDGER_TABLE)) {
+            return ledgerLookupSql(playerId, counterpartyId, filter, cursor, limit, offset, daily, parameters);
+        }
+
+        String order = cursor == null || cursor.isOlder() ? "DESC" : "ASC";
+        String branches = lookupBranches(table, playerId, counterpartyId, filter, cursor, daily, parameters);
+
+        parameters.add(limit);
+        if (cursor == null) {
+            parameters.add(offset);
+        }
+
+        if (!daily) {
+            return """
+                    SELECT t.id, r.display_name AS player_received, s.display_name AS player_send,
+                           t.points_amount, p.created_at, 1 AS transaction_count
+                    FROM (
+                        %1$s
+                        ORDER BY created_at %2$s, id %2$s
+                        LIMIT ?%3$s
+                    ) p
+                    JOIN %4$s t ON t.id = p.id
+                    JOIN players r ON r.id = t.receiver_id
+                    JOIN players s ON s.id = t.sender_id
+                    ORDER BY p.created_at %2$s, p.id %2$s
+                    """.formatted(branches, order, cursor == null ? " OFFSET ?" : "", table);
+        }
+
+        return """
+                SELECT p.id, r.display_name AS player_received, s.display_name AS player_send,
+                       COALESCE(t.points_amount, f.points_total) AS points_amount, p.created_at,
+                       COALESCE(f.transaction_count, 1) AS transaction_count
+                FROM (
+                    %1$s
+                    ORDER BY created_at %2$s, id %2$s
+                    LIMIT ?%3$s
+                ) p
+                LEFT JOIN %4$s t ON p.id > 0 AND t.id = p.id
+                LEFT JOIN daily_player_flow f ON p.id < 0 AND f.id = -p.id
+                JOIN players r ON r.id = COALESCE(t.receiver_id, f.receiver_id)
+                JOIN players s ON s.id = COALESCE(t.sender_id, f.sender_id)
+                ORDER BY p.created_at %2$s, p.id %2$s
+                """.formatted(branches, order, cursor == null ? " OFFSET ?" : "", table);
+    }
+
+    // The player's ledger range already holds both sides with names' ids and amounts inline, so without
+    // daily history the page is one ordered range read and only the names are joined
+    private String ledgerLookupSql(int playerId, Integer counterpartyId, LookupFilter filter, LookupCursor cursor,
+                                   int limit, int offset, boolean daily, List<Object> parameters) {
+        String order = cursor == null || cursor.isOlder() ? "DESC" : "ASC";
+        String page = cursor == null ? " OFFSET ?" : "";
+
+        if (!daily) {
+            StringBuilder range = new StringBuilder(
+                    "SELECT id, created_at, player_id, counterparty_id, amount, direction FROM player_ledger WHERE player_id = ?");
+            parameters.add(playerId);
+            appendLedgerFilters(range, counterpartyId, filter, cursor, parameters);
+            parameters.add(limit);
+            if (cursor == null) {
+                parameters.add(offset);
+            }
+
+            return """
+                    SELECT p.id, r.display_name AS player_received, s.display_name AS player_send,
+                           %4$s AS points_amount, p.created_at, 1 AS transaction_count
+                    FROM (
+                        %1$s
+                        ORDER BY created_at %2$s, id %2$s
+                        LIMIT ?%3$s
+                    ) p
+                    JOIN players r ON r.id = CASE WHEN p.direction < 0 THEN p.counterparty_id ELSE p.player_id END
+                    JOIN players s ON s.id = CASE WHEN p.direction < 0 THEN p.player_id ELSE p.counterparty_id END
+                    ORDER BY p.created_at %2$s, p.id %2$s
+                    """.formatted(range, order, page, ledgerAmountSql("p."));
+        }
+
+        String branches = lookupBranches(LEDGER_TABLE, playerId, counterpartyId, filter, cursor, true, parameters);
+        parameters.add(limit);
+        if (cursor == null) {
+            parameters.add(offset);
+        }
+        parameters.add(playerId);
+
+        return """
+                SELECT p.id, r.display_name AS player_received, s.display_name AS player_send,
+                       COALESCE(%4$s, f.points_total) AS points_amount, p.created_at,
+                       COALESCE(f.transaction_count, 1) AS transaction_count
+                FROM (
+                    %1$s
+                    ORDER BY created_at %2$s, id %2$s
+                    LIMIT ?%3$s
+                ) p
+                LEFT JOIN player_ledger l ON p.id > 0 AND l.player_id = ? AND l.created_at = p.created_at AND l.id = p.id
+                LEFT JOIN daily_player_flow f ON p.id < 0 AND f.id = -p.id
+                JOIN players r ON r.id = COALESCE(CASE WHEN l.direction < 0 THEN l.counterparty_id ELSE l.player_id END, f.receiver_id)
+                JOIN players s ON s.id = COALESCE(CASE WHEN l.direction < 0 THEN l.player_id ELSE l.counterparty_id END, f.sender_id)
+                ORDER BY p.created_at %2$s, p.id %2$s
+                """.formatted(branches, order, page, ledgerAmountSql("l."));
+    }
+
+    // The transaction's own points_amount back from the signed ledger amount
+    private static String ledgerAmountSql(String prefix) {
+        return "CASE WHEN " + prefix + "direction < 0 THEN -" + prefix + "amount ELSE " + prefix + "amount END";
     }
 
-    public void logTransaction(String playerReceived, String playerSend, int pointsAmount) {
+    // Self-transfers (direction 0) count as both received and sent, as they do in point_transactions
+    private static void appendLedgerFilters(StringBuilder sql, Integer counterpartyId, LookupFilter filter,
+                                            LookupCursor cursor, List<Object> parameters) {
+        if (filter.getDirection() == LookupFilter.Direction.RECEIVED) {
+            sql.append(" AND direction >= 0");
+        } else if (filter.getDirection() == LookupFilter.Direction.SENT) {
+            sql.append(" AND direction <= 0");
+        }
+        if (counterpartyId != null) {
+            sql.append(" AND counterparty_id = ?");
+            parameters.add(counterpartyId);
+        }
+        appendRangeFilters(sql, "created_at", ledgerAmountSql(""), filter, cursor, parameters);
+    }
+
+    private static boolean isMainTable(String table) {
+        return table.equals(TRANSACTIONS_TABLE) || table.equals(LEDGER_TABLE);
+    }
+
+    // Daily totals cannot honour per-transaction amount bounds, so such filters only see raw rows
+    private boolean includesDailyHistory(LookupFilter filter) {
+        return dailyHistory && filter.getMinAmount() == null && filter.getMaxAmount() == null;
+    }
+
+    // True once older history is kept as daily totals, so a lookup's line count no longer equals
+    // the player's transaction count
+    @Override
+    public boolean hasDailyHistory() {
+        return dailyHistory;
+    }
+
+    // table is the main point_transactions or a partition's; only the main one can have legacy timestamps
+    private String lookupBranches(String table, int playerId, Integer counterpartyId, LookupFilter filter,
+                                  LookupCursor cursor, boolean daily, List<Object> parameters) {
+        String createdAt = table.equals(TRANSACTIONS_TABLE) ? createdAtSql("") : "created_at";
+        StringBuilder sql = new StringBuilder();
+
+        if (table.equals(LEDGER_TABLE)) {
+            sql.append("SELECT id, created_at FROM player_ledger WHERE player_id = ?");
+            parameters.add(playerId);
+            appendLedgerFilters(sql, counterpartyId, filter, cursor, parameters);
+        }
+
+        if (!table.equals(LEDGER_TABLE) && filter.getDirection() != LookupFilter.Direction.SENT) {
+            sql.append("SELECT id, ").append(createdAt).append(" AS created_at FROM ").append(table).append(" WHERE receiver_id = ?");
+            parameters.add(playerId);
+            if (counterpartyId != null) {
+                sql.append(" AND sender_id = ?");
+                parameters.add(counterpartyId);
+            }
+            appendRangeFilters(sql, createdAt, "points_amount", filter, cursor, parameters);
+        }
+
+        if (!table.equals(LEDGER_TABLE) && filter.getDirection() != LookupFilter.Direction.RECEIVED) {
+            if (sql.length() > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT id, ").append(createdAt).append(" AS created_at FROM ").append(table).append(" WHERE sender_id = ?");
+            parameters.add(playerId);
+            if (filter.getDirection() == LookupFilter.Direction.ANY) {
+                // Self-transfers already came from the received side
+                sql.append(" AND receiver_id <> ?");
+                parameters.add(playerId);
+            }
+            if (counterpartyId != null) {
+                sql.append(" AND receiver_id = ?");
+                parameters.add(counterpartyId);
+            }
+            appendRangeFilters(sql, createdAt, "points_amount", filter, cursor, parameters);
+        }
+
+        if (daily) {
+            appendDailyBranches(sql, playerId, counterpartyId, filter, cursor, parameters);
+        }
+
+        return sql.toString();
+    }
+
+    // Same shape as the raw branches; a day is included when its start falls inside since/until
+    private static void appendDailyBranches(StringBuilder sql, int playerId, Integer counterpartyId,
+                                            LookupFilter filter, LookupCursor cursor, List<Object> parameters) {
+        if (filter.getDirection() != LookupFilter.Direction.SENT) {
+            sql.append(" UNION ALL SELECT -id AS id, day_start AS created_at FROM daily_player_flow WHERE receiver_id = ?");
+            parameters.add(playerId);
+            if (counterpartyId != null) {
+                sql.append(" AND sender_id = ?");
+                parameters.add(counterpartyId);
+            }
+            appendDailyRangeFilters(sql, filter, cursor, parameters);
+        }
+
+        if (filter.getDirection() != LookupFilter.Direction.RECEIVED) {
+            sql.append(" UNION ALL SELECT -id AS id, day_start AS created_at FROM daily_player_flow WHERE sender_id = ?");
+            parameters.add(playerId);
+            if (filter.getDirection() == LookupFilter.Direction.ANY) {
+                sql.append(" AND receiver_id <> ?");
+                parameters.add(playerId);
+            }
+            if (counterpartyId != null) {
+                sql.append(" AND receiver_id = ?");
+                parameters.add(counterpartyId);
+            }
+            appendDailyRangeFilters(sql, filter, cursor, parameters);
+        }
+    }
+
+    private static void appendDailyRangeFilters(StringBuilder sql, LookupFilter filter, LookupCursor cursor,
+                                                List<Object> parameters) {
+        if (filter.getSince() != null) {
+            sql.append(" AND day_start >= ?");
+            parameters.add(filter.getSince());
+        }
+        if (filter.getUntil() != null) {
+            sql.append(" AND day_start < ?");
+            parameters.add(filter.getUntil());
+        }
+        if (cursor != null) {
+            sql.append(" AND (day_start, -id) ").append(cursor.isOlder() ? "<" : ">").append(" (?, ?)");
+            parameters.add(cursor.getCreatedAt());
+            parameters.add(cursor.getId());
+        }
+    }
+
+    private static void appendRangeFilters(StringBuilder sql, String createdAt, String amount, LookupFilter filter,
+                                           LookupCursor cursor, List<Object> parameters) {
+        if (filter.getSince() != null) {
+            sql.append(" AND ").append(createdAt).append(" >= ?");
+            parameters.add(filter.getSince());
+        }
+        if (filter.getUntil() != null) {
+            sql.append(" AND ").append(createdAt).append(" < ?");
+            parameters.add(filter.getUntil());
+        }
+        if (filter.getMinAmount() != null) {
+            sql.append(" AND ").append(amount).append(" >= ?");
+            parameters.add(filter.getMinAmount());
+        }
+        if (filter.getMaxAmount() != null) {
+            sql.append(" AND ").append(amount).append(" <= ?");
+            parameters.add(filter.getMaxAmount());
+        }
+        // Keyset pagination: seek past the boundary row instead of walking OFFSET rows
+        if (cursor != null) {
+            sql.append(" AND (").append(createdAt).append(", id) ").append(cursor.isOlder() ? "<" : ">").append(" (?, ?)");
+            parameters.add(cursor.getCreatedAt());
+            parameters.add(cursor.getId());
+        }
+    }
+
+    private static void bind(PreparedStatement statement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    // Guards against schema or statement changes silently turning lookups into table scans.
+    // QueryPlanTest fails the build on the same checks; at startup they only warn.
+    private void verifyQueryPlans() throws SQLException {
+        for (String scan : findTableScans()) {
+            logger.warning(scan);
+        }
+    }
+
+    // One line per lookup or export query whose plan reads a whole table, empty when every one seeks an index
+    List<String> findTableScans() throws SQLException {
+        // EXPLAIN never opens a read transaction, so it would plan against a schema cached before
+        // another connection changed it; a real read of the schema reloads it first
+        try (Statement statement = writeConnection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+            rs.next();
+        }
+
+        List<String> scans = new ArrayList<>();
+        List<Object> parameters = new ArrayList<>();
+        String sql = lookupSql(TRANSACTIONS_TABLE, 1, null, LookupFilter.NONE, LookupCursor.olderThan(1L, 1L), 5, 0, false, parameters);
+        checkQueryPlan(scans, "lookup", sql, parameters.toArray());
+
+        parameters.clear();
+        LookupFilter window = LookupFilter.parse(List.of("since", "1d", "until", "1h", "min", "1"), System.currentTimeMillis());
+        sql = lookupSql(TRANSACTIONS_TABLE, 1, null, window, null, 5, 0, false, parameters);
+        checkQueryPlan(scans, "filtered lookup", sql, parameters.toArray());
+
+        parameters.clear();
+        sql = lookupSql(TRANSACTIONS_TABLE, 1, null, LookupFilter.NONE, LookupCursor.olderThan(1L, 1L), 5, 0, true, parameters);
+        checkQueryPlan(scans, "lookup with daily history", sql, parameters.toArray());
+
+        parameters.clear();
+        sql = exportTableSql(TRANSACTIONS_TABLE, window, 0, 5, parameters);
+        checkQueryPlan(scans, "export", sql, parameters.toArray());
+
+        if (ledger.isEnabled()) {
+            parameters.clear();
+            sql = lookupSql(LEDGER_TABLE, 1, null, LookupFilter.NONE, LookupCursor.olderThan(1L, 1L), 5, 0, false, parameters);
+            checkQueryPlan(scans, "ledger lookup", sql, parameters.toArray());
+
+            parameters.clear();
+            sql = lookupSql(LEDGER_TABLE, 1, null, window, null, 5, 0, true, parameters);
+            checkQueryPlan(scans, "ledger lookup with daily history", sql, parameters.toArray());
+        }
+        return scans;
+    }
+
+    private void checkQueryPlan(List<String> scans, String name, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement explain = writeConnection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                explain.setObject(i + 1, parameters[i]);
+            }
+
+            try (ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    if (detail.startsWith("SCAN point_transactions") || detail.startsWith("SCAN daily_player_flow")
+                            || detail.startsWith("SCAN player_ledger") || detail.matches("SCAN [tfl]( .*)?")) {
+                        scans.add("The " + name + " query falls back to a table scan: " + detail);
+                    }
+                }
+            }
+        }
+    }
+
+    static String playerKey(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+
+    // Writer thread only; -1 if it cannot be read
+    // SQLite commits the main file before attached ones, so a crash in between leaves the main file's state
+    // ahead of a partition that holds part of that batch. The main file records which partitions its last
+    // batch wrote to and replay resumes from the lowest state among them and the main file; the replay
+    // then skips, file by file, whatever each one already holds.
+    @Override
+    public long getJournalSequence() {
         connectionLock.readLock().lock();
-        try {
-            synchronized (insertStatement) {
-                insertStatement.setString(1, playerReceived);
-                insertStatement.setString(2, playerSend);
-                insertStatement.setInt(3, pointsAmount);
-                insertStatement.setString(4, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-                insertStatement.executeUpdate();
+        try (Statement statement = writeConnection.createStatement()) {
+            long sequence;
+            String months;
+            try (ResultSet rs = statement.executeQuery("SELECT committed_sequence, partition_months FROM journal_state WHERE id = 1")) {
+                if (!rs.next()) return 0;
+                sequence = rs.getLong(1);
+                months = rs.getString(2);
             }
+            return writePartitions.resumeSequence(sequence, months);
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to log transaction: " + e.getMessage());
-            // Attempt to reinitialize connection on failure
-            attemptReconnection();
+            logger.severe("Failed to read journal state: " + e.getMessage());
+            return -1;
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+
+    // The main file commits first, so no partition is ahead of it
+    @Override
+    public long getHighestJournalSequence() {
+        connectionLock.readLock().lock();
+        try (Statement statement = writeConnection.createStatement()) {
+            return committedSequence(statement);
+        } catch (SQLException e) {
+            logger.severe("Failed to read journal state: " + e.getMessage());
+            return -1;
         } finally {
             connectionLock.readLock().unlock();
         }
     }
 
-    // Optimized batch insert for better performance
-    public void logTransactionsBatch(TransactionData[] transactions, int batchSize) {
-        if (batchSize == 0) return;
+    private static long committedSequence(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT committed_sequence FROM journal_state WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Write path: cached id, or a one-time dictionary insert for a name never seen before
+    private int resolvePlayerId(String playerName, UUID uuid, List<String> newKeys) throws SQLException {
+        String key = playerKey(playerName);
+        Integer id = playerIds.get(key);
+        if (id != null) return id;
+
+        insertPlayerStatement.setString(1, key);
+        insertPlayerStatement.setString(2, playerName);
+        insertPlayerStatement.setString(3, uuid != null ? uuid.toString() : null);
+        insertPlayerStatement.executeUpdate();
+
+        id = selectPlayerId(writePlayerIdStatement, key);
+        if (id == null) {
+            throw new SQLException("Failed to register player " + playerName);
+        }
+        playerIds.put(key, id);
+        newKeys.add(key);
+        return id;
+    }
+
+    // Read path: unknown names have no history, so no query is needed at all
+    private Integer findPlayerId(ReadConnectionPool.Session session, String playerName) throws SQLException {
+        String key = playerKey(playerName);
+        Integer id = playerIds.get(key);
+        if (id != null) return id;
+
+        id = selectPlayerId(session.statement(SELECT_PLAYER_ID_SQL), key);
+        if (id != null) {
+            playerIds.put(key, id);
+        }
+        return id;
+    }
+
+    private Integer selectPlayerId(PreparedStatement statement, String key) throws SQLException {
+        statement.setString(1, key);
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+
+    // Group commit of everything the writer drained since its last commit.
+    // Only called from the TransactionWriter thread, which owns the write connection.
+    public boolean logTransactionsBatch(List<TransactionData> transactions) {
+        return logTransactionsBatch(transactions, 0);
+    }
+
+    // journalSequence > 0 records the last journal entry in this batch as committed, atomically with it
+    @Override
+    public boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+        return commitBatch(transactions, journalSequence, null);
+    }
+
+    // A partition may be behind the main file after a crash (see getJournalSequence), so each row goes
+    // only into a file whose state is below its sequence, and each summary delta only if the main file's is
+    @Override
+    public boolean replayTransactionsBatch(List<TransactionData> transactions, long[] sequences) {
+        return commitBatch(transactions, sequences[sequences.length - 1], sequences);
+    }
+
+    private boolean commitBatch(List<TransactionData> transactions, long journalSequence, long[] sequences) {
+        if (transactions.isEmpty()) return true;
+        if (!partitionWrites) return commitGroup(transactions, journalSequence, sequences, null, true);
+
+        // Only so many partitions can be attached at once, so a batch spanning more months commits a
+        // group of them at a time. Each group marks its own partitions; the main file's state and the
+        // summaries go in with the last one. A replay after a failure in between therefore skips the
+        // rows of the groups already in and still adds every row to the summaries once. Without a
+        // journal sequence nothing is marked, so such a failure leaves the earlier groups committed.
+        List<List<YearMonth>> groups = writePartitions.monthGroups(transactions);
+        for (int i = 0; i < groups.size(); i++) {
+            if (!commitGroup(transactions, journalSequence, sequences, groups.get(i), i == groups.size() - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Inserts the rows of the given partition months, or every row into the main table when months is
+    // null, in one transaction; the last group also adds the whole batch to the summaries.
+    private boolean commitGroup(List<TransactionData> transactions, long journalSequence, long[] sequences,
+                                List<YearMonth> months, boolean last) {
+        // Dictionary ids created inside this transaction; forgotten again if it rolls back
+        List<String> newKeys = new ArrayList<>();
+        Set<String> touchedPlayers = new HashSet<>();
+        boolean committed = false;
+        boolean inTransaction = false;
+        boolean reconnect = false;
 
         connectionLock.readLock().lock();
         try {
-            connection.setAutoCommit(false);
+            // Replay only: what the main file already holds; the batch adds each partition's state
+            long mainCommitted = 0;
+            if (sequences != null) {
+                try (Statement statement = writeConnection.createStatement()) {
+                    mainCommitted = committedSequence(statement);
+                }
+            }
+            PartitionWrites.Batch batch = months != null
+                    ? writePartitions.attach(months, batchInsertStatement, mainCommitted, sequences != null)
+                    : writePartitions.mainTable(batchInsertStatement, mainCommitted);
 
-            synchronized (batchInsertStatement) {
-                String currentTime = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            writeConnection.setAutoCommit(false);
+            inTransaction = true;
 
-                for (int i = 0; i < batchSize; i++) {
-                    if (transactions[i] != null) {
-                        TransactionData data = transactions[i];
+            Map<Integer, SummaryDelta> summaryDeltas = new HashMap<>();
+            Set<PreparedStatement> inserts = new HashSet<>();
 
-                        batchInsertStatement.setString(1, data.playerReceived);
-                        batchInsertStatement.setString(2, data.playerSend);
-                        batchInsertStatement.setInt(3, data.pointsAmount);
-                        batchInsertStatement.setString(4, currentTime);
-                        batchInsertStatement.addBatch();
-                    }
+            for (int i = 0; i < transactions.size(); i++) {
+                TransactionData data = transactions.get(i);
+                boolean insertRow = months == null || months.contains(partitions.monthOf(data.createdAt));
+                boolean addToSummary = last;
+                if (sequences != null) {
+                    insertRow = insertRow && sequences[i] > batch.committedSequence(data.createdAt);
+                    addToSummary = addToSummary && sequences[i] > mainCommitted;
+                }
+                if (!insertRow && !addToSummary) continue;
+
+                int receiverId = resolvePlayerId(data.playerReceived, data.receiverUuid, newKeys);
+                int senderId = resolvePlayerId(data.playerSend, data.senderUuid, newKeys);
+                touchedPlayers.add(playerKey(data.playerReceived));
+                touchedPlayers.add(playerKey(data.playerSend));
+
+                if (insertRow) {
+                    // Capture time, not commit time, so replayed rows keep when they happened
+                    PreparedStatement insert = batch.insert(data.createdAt);
+                    insert.setInt(1, receiverId);
+                    insert.setInt(2, senderId);
+                    insert.setInt(3, data.pointsAmount);
+                    insert.setLong(4, data.createdAt);
+                    insert.addBatch();
+                    inserts.add(insert);
                 }
 
-                batchInsertStatement.executeBatch();
-                connection.commit();
+                if (addToSummary) {
+                    summaryDeltas.computeIfAbsent(receiverId, id -> new SummaryDelta())
+                            .add(1, data.pointsAmount, 0, data.createdAt);
+                    summaryDeltas.computeIfAbsent(senderId, id -> new SummaryDelta())
+                            .add(senderId != receiverId ? 1 : 0, 0, data.pointsAmount, data.createdAt);
+                }
+            }
+
+            for (PreparedStatement insert : inserts) {
+                insert.executeBatch();
+            }
+
+            long ledgerEnd = ledger.copyNewRows();
+
+            // One upsert per touched player, committed together with the rows
+            for (Map.Entry<Integer, SummaryDelta> entry : summaryDeltas.entrySet()) {
+                SummaryDelta delta = entry.getValue();
+                summaryUpsertStatement.setInt(1, entry.getKey());
+                summaryUpsertStatement.setLong(2, delta.count);
+                summaryUpsertStatement.setLong(3, delta.received);
+                summaryUpsertStatement.setLong(4, delta.sent);
+                summaryUpsertStatement.setLong(5, delta.firstSeen);
+                summaryUpsertStatement.setLong(6, delta.lastSeen);
+                summaryUpsertStatement.addBatch();
+            }
+            summaryUpsertStatement.executeBatch();
+
+            if (journalSequence > 0) {
+                if (last) {
+                    journalStateStatement.setLong(1, journalSequence);
+                    journalStateStatement.setString(2, batch.months());
+                    journalStateStatement.executeUpdate();
+                }
+                batch.markCommitted(journalSequence);
             }
+
+            writeConnection.commit();
+            committed = true;
+            ledger.committed(ledgerEnd);
+            lookupCache.invalidate(touchedPlayers);
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to execute batch insert: " + e.getMessage());
-            try {
-                connection.rollback();
-            } catch (SQLException rollbackEx) {
-                plugin.getLogger().severe("Failed to rollback batch: " + rollbackEx.getMessage());
+            logger.severe("Failed to execute batch insert: " + e.getMessage());
+            // Attaching happens before the transaction, so a failure there has nothing to roll back
+            if (inTransaction) {
+                try {
+                    writeConnection.rollback();
+                } catch (SQLException rollbackEx) {
+                    logger.severe("Failed to rollback batch: " + rollbackEx.getMessage());
+                }
             }
-            attemptReconnection();
+            newKeys.forEach(playerIds::remove);
+            reconnect = true;
         } finally {
+            if (inTransaction) {
+                try {
+                    writeConnection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.warning("Failed to reset auto-commit: " + e.getMessage());
+                }
+            }
+            connectionLock.readLock().unlock();
+        }
+
+        // Reconnect only after releasing the read lock, it needs the write lock
+        if (reconnect) {
+            attemptReconnection();
+        }
+        return committed;
+    }
+
+    // Where a lookup reads, in the order it reads them: partitions newest first and then the main
+    // table for older pages, the reverse for newer ones. Partitions are disjoint months, so the walk
+    // can stop as soon as the page is full; months outside the filter or cursor are skipped.
+    // null stands for the main table. Partitions are attached one at a time by lookupTable, since
+    // attaching more than MAX_ATTACHED evicts the oldest.
+    private List<YearMonth> lookupSegments(LookupFilter filter, LookupCursor cursor) {
+        if (partitions.months().isEmpty()) return Collections.singletonList(null);
+
+        boolean ascending = cursor != null && !cursor.isOlder();
+        List<YearMonth> segments = new ArrayList<>();
+        if (ascending) segments.add(null);
+
+        for (YearMonth month : ascending ? partitions.months() : partitions.months().descendingSet()) {
+            long start = partitions.startOf(month);
+            long end = partitions.endOf(month);
+            if (filter.getSince() != null && end <= filter.getSince()) continue;
+            if (filter.getUntil() != null && start >= filter.getUntil()) continue;
+            if (cursor != null && (cursor.isOlder() ? start > cursor.getCreatedAt() : end <= cursor.getCreatedAt())) continue;
+            segments.add(month);
+        }
+
+        if (!ascending) segments.add(null);
+        return segments;
+    }
+
+    // null when the partition's file has gone since the segments were listed
+    private String lookupTable(ReadConnectionPool.Session session, YearMonth segment) throws SQLException {
+        if (segment == null) return ledger.isReady() ? LEDGER_TABLE : TRANSACTIONS_TABLE;
+        String schema = session.partitions(partitions).schema(segment);
+        return schema != null ? schema + "." + TRANSACTIONS_TABLE : null;
+    }
+
+    private long countRows(ReadConnectionPool.Session session, String table, int playerId, Integer counterpartyId,
+                           LookupFilter filter) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        boolean daily = isMainTable(table) && includesDailyHistory(filter);
+        String sql = "SELECT COUNT(*) FROM ("
+                + lookupBranches(table, playerId, counterpartyId, filter, null, daily, parameters) + ")";
+        PreparedStatement statement = session.statement(sql);
+        bind(statement, parameters);
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Newest first. With a cursor the page seeks from it, otherwise it is the given page number.
+    @Override
+    public List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                         int page, int itemsPerPage) {
+        LookupCache.Key key = filter.isCacheable() ?
+                LookupCache.Key.page(playerName, filter, cursor, page, itemsPerPage) : null;
+        if (key != null) {
+            List<TransactionRecord> cached = lookupCache.get(key);
+            if (cached != null) return cached;
+        }
+        long version = key != null ? lookupCache.version(key) : 0;
+
+        try {
+            List<TransactionRecord> transactions = List.copyOf(
+                    loadPlayerTransactions(playerName, filter, cursor, page, itemsPerPage));
+            if (key != null) {
+                lookupCache.put(key, transactions, transactions.size(), version);
+            }
+            return transactions;
+        } catch (SQLException e) {
+            logger.severe("Failed to retrieve transactions: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    private List<TransactionRecord> loadPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                           int page, int itemsPerPage) throws SQLException {
+        List<TransactionRecord> transactions = new ArrayList<>(itemsPerPage);
+
+        connectionLock.readLock().lock();
+        try (ReadConnectionPool.Session session = readPool.borrow()) {
             try {
-                connection.setAutoCommit(true);
+                Integer playerId = findPlayerId(session, playerName);
+                if (playerId == null) return transactions;
+
+                Integer counterpartyId = null;
+                if (filter.getCounterparty() != null) {
+                    counterpartyId = findPlayerId(session, filter.getCounterparty());
+                    if (counterpartyId == null) return transactions;
+                }
+
+                // A page number skips whole tables by their counts, then offsets into the first one it needs
+                int offset = cursor == null ? (page - 1) * itemsPerPage : 0;
+                for (YearMonth segment : lookupSegments(filter, cursor)) {
+                    String table = lookupTable(session, segment);
+                    if (table == null) continue;
+                    if (offset > 0 && !isMainTable(table)) {
+                        long rows = countRows(session, table, playerId, counterpartyId, filter);
+                        if (rows <= offset) {
+                            offset -= (int) rows;
+                            continue;
+                        }
+                    }
+
+                    List<Object> parameters = new ArrayList<>();
+                    boolean daily = isMainTable(table) && includesDailyHistory(filter);
+                    String sql = lookupSql(table, playerId, counterpartyId, filter, cursor,
+                            itemsPerPage - transactions.size(), offset, daily, parameters);
+                    PreparedStatement statement = session.statement(sql);
+                    bind(statement, parameters);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        readRecords(rs, transactions);
+                    }
+
+                    offset = 0;
+                    if (transactions.size() >= itemsPerPage) break;
+                }
             } catch (SQLException e) {
-                plugin.getLogger().warning("Failed to reset auto-commit: " + e.getMessage());
+                session.invalidate();
+                throw e;
             }
+        } finally {
             connectionLock.readLock().unlock();
         }
+
+        // Newer pages are read ascending from the boundary, flip them back
+        if (cursor != null && !cursor.isOlder()) {
+            Collections.reverse(transactions);
+        }
+        return transactions;
     }
 
-    public List<TransactionRecord> getPlayerTransactions(String playerName, int page, int itemsPerPage) {
-        List<TransactionRecord> transactions = new ArrayList<>();
-        int offset = (page - 1) * itemsPerPage;
+    // Matching rows for a filtered lookup; unfiltered totals come from player_summary instead
+    @Override
+    public long countPlayerTransactions(String playerName, LookupFilter filter) {
+        LookupCache.Key key = filter.isCacheable() ? LookupCache.Key.count(playerName, filter) : null;
+        if (key != null) {
+            Long cached = lookupCache.get(key);
+            if (cached != null) return cached;
+        }
+        long version = key != null ? lookupCache.version(key) : 0;
 
-        connectionLock.readLock().lock();
         try {
-            synchronized (selectStatement) {
-                selectStatement.setString(1, playerName);
-                selectStatement.setString(2, playerName);
-                selectStatement.setInt(3, itemsPerPage);
-                selectStatement.setInt(4, offset);
-
-                try (ResultSet rs = selectStatement.executeQuery()) {
-                    while (rs.next()) {
-                        transactions.add(new TransactionRecord(
-                                rs.getString("player_received"),
-                                rs.getString("player_send"),
-                                rs.getInt("points_amount"),
-                                rs.getString("timestamp")
-                        ));
+            long count = loadTransactionCount(playerName, filter);
+            if (key != null) {
+                lookupCache.put(key, count, 0, version);
+            }
+            return count;
+        } catch (SQLException e) {
+            logger.severe("Failed to count transactions: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private long loadTransactionCount(String playerName, LookupFilter filter) throws SQLException {
+        connectionLock.readLock().lock();
+        try (ReadConnectionPool.Session session = readPool.borrow()) {
+            try {
+                Integer playerId = findPlayerId(session, playerName);
+                if (playerId == null) return 0;
+
+                Integer counterpartyId = null;
+                if (filter.getCounterparty() != null) {
+                    counterpartyId = findPlayerId(session, filter.getCounterparty());
+                    if (counterpartyId == null) return 0;
+                }
+
+                long count = 0;
+                for (YearMonth segment : lookupSegments(filter, null)) {
+                    String table = lookupTable(session, segment);
+                    if (table != null) count += countRows(session, table, playerId, counterpartyId, filter);
+                }
+                return count;
+            } catch (SQLException e) {
+                session.invalidate();
+                throw e;
+            }
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+
+    private void readRecords(ResultSet rs, List<TransactionRecord> transactions) throws SQLException {
+        while (rs.next()) {
+            transactions.add(readRecord(rs));
+        }
+    }
+
+    private static TransactionRecord readRecord(ResultSet rs) throws SQLException {
+        return new TransactionRecord(
+                rs.getLong("id"),
+                rs.getString("player_received"),
+                rs.getString("player_send"),
+                rs.getLong("points_amount"),
+                rs.getLong("created_at"),
+                rs.getLong("transaction_count")
+        );
+    }
+
+    // A player's lines are the lookup query read forwards from a keyset cursor, daily totals included,
+    // so they come out oldest first. Everyone's lines are read in storage order: daily totals, then each
+    // table by id. Every chunk is one forward-only query on a borrowed connection that is returned before
+    // endChunk, so an export never keeps a read transaction open across pauses (which would hold back
+    // WAL checkpoints) and never holds the connection lock while the writer or maintenance waits for it.
+    @Override
+    public long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink)
+            throws SQLException, IOException {
+        LookupFilter filter = LookupFilter.between(since, until);
+        long exported = 0;
+
+        if (playerName == null && dailyHistory) {
+            exported += exportChunks(chunkSize, sink, (session, last, parameters) ->
+                    exportDailySql(filter, last == null ? 0 : -last.getId(), chunkSize, parameters));
+        }
+
+        for (YearMonth segment : lookupSegments(filter, EXPORT_START)) {
+            if (playerName != null) {
+                exported += exportChunks(chunkSize, sink, (session, last, parameters) -> {
+                    Integer playerId = findPlayerId(session, playerName);
+                    String table = lookupTable(session, segment);
+                    if (playerId == null || table == null) return null;
+                    LookupCursor cursor = last == null ? EXPORT_START : LookupCursor.newerThan(last.getCreatedAt(), last.getId());
+                    boolean daily = isMainTable(table) && includesDailyHistory(filter);
+                    return lookupSql(table, playerId, null, filter, cursor, chunkSize, 0, daily, parameters);
+                });
+            } else {
+                exported += exportChunks(chunkSize, sink, (session, last, parameters) -> {
+                    String table = segment == null ? TRANSACTIONS_TABLE : lookupTable(session, segment);
+                    if (table == null) return null;
+                    return exportTableSql(table, filter, last == null ? 0 : last.getId(), chunkSize, parameters);
+                });
+            }
+        }
+        return exported;
+    }
+
+    // SQL for the chunk after the last exported row (null before the first), or null when there is nothing to read
+    private interface ExportChunkSql {
+        String build(ReadConnectionPool.Session session, TransactionRecord last, List<Object> parameters) throws SQLException;
+    }
+
+    private long exportChunks(int chunkSize, ExportSink sink, ExportChunkSql chunkSql) throws SQLException, IOException {
+        long exported = 0;
+        TransactionRecord last = null;
+        while (true) {
+            int rows = 0;
+            connectionLock.readLock().lock();
+            try (ReadConnectionPool.Session session = readPool.borrow()) {
+                try {
+                    List<Object> parameters = new ArrayList<>();
+                    String sql = chunkSql.build(session, last, parameters);
+                    if (sql == null) return exported;
+
+                    PreparedStatement statement = session.statement(sql);
+                    statement.setFetchSize(chunkSize);
+                    bind(statement, parameters);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            last = readRecord(rs);
+                            sink.write(last);
+                            rows++;
+                        }
                     }
+                } catch (SQLException e) {
+                    session.invalidate();
+                    throw e;
                 }
+            } finally {
+                connectionLock.readLock().unlock();
             }
+
+            exported += rows;
+            sink.endChunk();
+            if (rows < chunkSize) return exported;
+        }
+    }
+
+    // A rowid range scan; names are joined per row
+    private String exportTableSql(String table, LookupFilter filter, long afterId, int limit, List<Object> parameters) {
+        String createdAt = table.equals(TRANSACTIONS_TABLE) ? createdAtSql("t.") : "t.created_at";
+        StringBuilder sql = new StringBuilder("""
+                SELECT t.id, r.display_name AS player_received, s.display_name AS player_send,
+                       t.points_amount, %1$s AS created_at, 1 AS transaction_count
+                FROM %2$s t
+                JOIN players r ON r.id = t.receiver_id
+                JOIN players s ON s.id = t.sender_id
+                WHERE t.id > ?""".formatted(createdAt, table));
+        parameters.add(afterId);
+        appendRangeFilters(sql, createdAt, "t.points_amount", filter, null, parameters);
+        sql.append(" ORDER BY t.id LIMIT ?");
+        parameters.add(limit);
+        return sql.toString();
+    }
+
+    private static String exportDailySql(LookupFilter filter, long afterId, int limit, List<Object> parameters) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT -f.id AS id, r.display_name AS player_received, s.display_name AS player_send,
+                       f.points_total AS points_amount, f.day_start AS created_at, f.transaction_count
+                FROM daily_player_flow f
+                JOIN players r ON r.id = f.receiver_id
+                JOIN players s ON s.id = f.sender_id
+                WHERE f.id > ?""");
+        parameters.add(afterId);
+        if (filter.getSince() != null) {
+            sql.append(" AND f.day_start >= ?");
+            parameters.add(filter.getSince());
+        }
+        if (filter.getUntil() != null) {
+            sql.append(" AND f.day_start < ?");
+            parameters.add(filter.getUntil());
+        }
+        sql.append(" ORDER BY f.id LIMIT ?");
+        parameters.add(limit);
+        return sql.toString();
+    }
+
+    @Override
+    public PlayerSummary getPlayerSummary(String playerName) {
+        LookupCache.Key key = LookupCache.Key.summary(playerName);
+        PlayerSummary cached = lookupCache.get(key);
+        if (cached != null) return cached;
+        long version = lookupCache.version(key);
+
+        try {
+            PlayerSummary summary = loadPlayerSummary(playerName);
+            if (summary != null) {
+                lookupCache.put(key, summary, 0, version);
+            }
+            return summary;
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to retrieve transactions: " + e.getMessage());
-            attemptReconnection();
+            logger.severe("Failed to read player summary: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private PlayerSummary loadPlayerSummary(String playerName) throws SQLException {
+        connectionLock.readLock().lock();
+        try (ReadConnectionPool.Session session = readPool.borrow()) {
+            try {
+                Integer playerId = findPlayerId(session, playerName);
+                if (playerId == null) return null;
+
+                PreparedStatement statement = session.statement(SUMMARY_SELECT_SQL);
+                statement.setInt(1, playerId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (!rs.next()) return null;
+                    return new PlayerSummary(
+                            rs.getLong("transaction_count"),
+                            rs.getLong("total_received"),
+                            rs.getLong("total_sent"),
+                            rs.getLong("first_seen"),
+                            rs.getLong("last_seen")
+                    );
+                }
+            } catch (SQLException e) {
+                session.invalidate();
+                throw e;
+            }
         } finally {
             connectionLock.readLock().unlock();
         }
+    }
 
-        return transactions;
+    @Override
+    public LookupCache.Stats getLookupCacheStats() {
+        return lookupCache.getStats();
+    }
+
+    @Override
+    public int getOpenReadConnections() {
+        ReadConnectionPool pool = readPool;
+        return pool != null ? pool.getOpenConnections() : 0;
     }
 
-    public int getTotalTransactionCount(String playerName) {
+    // Newest first, with file sizes
+    @Override
+    public List<String> describePartitions() {
+        return partitions.describe();
+    }
+
+    // Moves a past month's partition file into partitions/archive, taking its rows out of lookups.
+    // Writer thread only (TransactionWriter#submit). Returns null when there is no such partition.
+    @Override
+    public File archivePartition(YearMonth month) throws SQLException, IOException {
+        if (!partitions.months().contains(month)) return null;
+        if (!month.isBefore(partitions.monthOf(System.currentTimeMillis()))) {
+            throw new IllegalArgumentException("The current month is still being written");
+        }
+        retention.forget(month);
+
         connectionLock.readLock().lock();
         try {
-            synchronized (countStatement) {
-                countStatement.setString(1, playerName);
-                countStatement.setString(2, playerName);
+            writePartitions.addSummary(month, -1);
+            lookupCache.invalidateAll();
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+        File archived = dropPartition(month, true);
+        logger.info("Archived partition " + month + " to " + archived.getPath());
+        return archived;
+    }
 
-                try (ResultSet rs = countStatement.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt("total");
-                    }
-                }
+    // Recomputes player_summary from the raw rows, for databases that predate it or after manual edits.
+    // Uses the write connection, so it has to run on the writer thread (TransactionWriter#submit).
+    @Override
+    public int rebuildPlayerSummary() throws SQLException {
+        connectionLock.readLock().lock();
+        try {
+            int players = rebuildPlayerSummaryTable();
+            for (YearMonth month : partitions.months()) {
+                writePartitions.addSummary(month, 1);
             }
+            lookupCache.invalidateAll();
+            return partitions.months().isEmpty() ? players : countSummaryRows();
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+
+    private int countSummaryRows() throws SQLException {
+        try (Statement statement = writeConnection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM player_summary")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private int rebuildPlayerSummaryTable() throws SQLException {
+        boolean autoCommit = writeConnection.getAutoCommit();
+        writeConnection.setAutoCommit(false);
+        try (Statement statement = writeConnection.createStatement()) {
+            statement.executeUpdate("DELETE FROM player_summary");
+            int players = statement.executeUpdate("""
+                INSERT INTO player_summary (player_id, transaction_count, total_received, total_sent, first_seen, last_seen)
+                SELECT player_id, SUM(n), SUM(received), SUM(sent), MIN(created_at), MAX(created_at)
+                FROM (
+                    SELECT receiver_id AS player_id, 1 AS n, points_amount AS received,
+                           CASE WHEN sender_id = receiver_id THEN points_amount ELSE 0 END AS sent, %1$s AS created_at
+                    FROM point_transactions
+                    UNION ALL
+                    SELECT sender_id, 1, 0, points_amount, %1$s
+                    FROM point_transactions
+                    WHERE sender_id <> receiver_id
+                    UNION ALL
+                    -- Rolled-up days count at their day start
+                    SELECT receiver_id, transaction_count, points_total,
+                           CASE WHEN sender_id = receiver_id THEN points_total ELSE 0 END, day_start
+                    FROM daily_player_flow
+                    UNION ALL
+                    SELECT sender_id, transaction_count, 0, points_total, day_start
+                    FROM daily_player_flow
+                    WHERE sender_id <> receiver_id
+                )
+                GROUP BY player_id
+            """.formatted(createdAtSql("")));
+            writeConnection.commit();
+            lookupCache.invalidateAll();
+            return players;
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to count transactions: " + e.getMessage());
-            attemptReconnection();
+            writeConnection.rollback();
+            throw e;
+        } finally {
+            writeConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Writer thread only, called while it is idle. Returns true while background work remains.
+    // The timestamp migration goes first; retention needs every row to have created_at.
+    @Override
+    public boolean runMaintenanceStep() {
+        if (legacyTimestampColumn) {
+            if (timestampMigrationFailed) return false;
+
+            try {
+                if (timestampBackfillCursor < timestampBackfillEnd) {
+                    backfillTimestamps();
+                } else {
+                    finishTimestampMigration();
+                }
+            } catch (SQLException e) {
+                // Stateless (created_at IS NULL), so the next start simply picks it up again
+                logger.severe("Timestamp migration paused until restart: " + e.getMessage());
+                timestampMigrationFailed = true;
+                return false;
+            }
+            return true;
+        }
+
+        return ledger.backfillStep() || retention.step();
+    }
+
+    // Detaches a partition from every connection, then deletes or archives its file. Takes the write
+    // lock so no lookup is reading it; writer thread only.
+    private File dropPartition(YearMonth month, boolean archive) throws SQLException, IOException {
+        connectionLock.writeLock().lock();
+        try {
+            writePartitions.attachments().detach(month);
+            readPool.detachPartition(month);
+            lookupCache.invalidateAll();
+            if (archive) {
+                return partitions.archive(month);
+            }
+            partitions.delete(month);
+            return null;
+        } finally {
+            connectionLock.writeLock().unlock();
+        }
+    }
+
+    private void backfillTimestamps() throws SQLException {
+        connectionLock.readLock().lock();
+        try {
+            if (timestampBackfillCursor == 0) {
+                logger.info("Converting " + timestampBackfillEnd + " stored timestamps to epoch time in the background...");
+            }
+
+            long upperId = Math.min(timestampBackfillCursor + TIMESTAMP_BACKFILL_CHUNK, timestampBackfillEnd);
+            new SchemaMigrator(writeConnection, logger).backfillEpochTimestamps(timestampBackfillCursor, upperId);
+            timestampBackfillCursor = upperId;
         } finally {
             connectionLock.readLock().unlock();
         }
+    }
+
+    private void finishTimestampMigration() throws SQLException {
+        // Every row has created_at now: switch lookups over first, so dropping the column can't break them
+        connectionLock.writeLock().lock();
+        try {
+            timestampBackfillPending = false;
+            readPool.clearStatements();
+        } finally {
+            connectionLock.writeLock().unlock();
+        }
 
-        return 0;
+        connectionLock.readLock().lock();
+        try {
+            new SchemaMigrator(writeConnection, logger).dropLegacyTimestampColumn();
+            legacyTimestampColumn = false;
+            closeStatement(batchInsertStatement);
+            prepareWriteStatements();
+            logger.info("Timestamp migration complete.");
+        } finally {
+            connectionLock.readLock().unlock();
+        }
     }
 
     private void attemptReconnection() {
-        plugin.getLogger().info("Attempting to reconnect to database...");
+        metrics.recordReconnect();
+        logger.info("Attempting to reconnect to database...");
         connectionLock.writeLock().lock();
         try {
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (SQLException e) {
-                    // Ignore close errors
-                }
+            if (readPool != null) {
+                readPool.close();
             }
+            closeConnection(writeConnection);
 
             // Reinitialize connection
             if (initialize()) {
-                plugin.getLogger().info("Database reconnection successful!");
+                logger.info("Database reconnection successful!");
             } else {
-                plugin.getLogger().severe("Database reconnection failed!");
+                logger.severe("Database reconnection failed!");
             }
         } finally {
             connectionLock.writeLock().unlock();
         }
     }
 
+    private void closeConnection(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Ignore close errors
+            }
+        }
+    }
+
+    @Override
     public void close() {
         connectionLock.writeLock().lock();
         try {
             // Close prepared statements
-            closeStatement(insertStatement);
             closeStatement(batchInsertStatement);
-            closeStatement(selectStatement);
-            closeStatement(countStatement);
+            closeStatement(summaryUpsertStatement);
+            closeStatement(insertPlayerStatement);
+            closeStatement(writePlayerIdStatement);
+            closeStatement(journalStateStatement);
+            ledger.close();
+            if (writePartitions != null) {
+                writePartitions.close();
+            }
 
-            if (connection != null) {
+            if (readPool != null) {
+                readPool.close();
+            }
+
+            if (writeConnection != null) {
                 // Final optimization and cleanup
-                try (Statement stmt = connection.createStatement()) {
+                try (Statement stmt = writeConnection.createStatement()) {
                     stmt.execute("PRAGMA optimize");
                     stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
                 } catch (SQLException e) {
                     // Ignore cleanup errors during shutdown
                 }
 
-                connection.close();
-                plugin.getLogger().info("Database connection closed gracefully.");
+                writeConnection.close();
+                logger.info("Database connection closed gracefully.");
             }
-
-            connectionPool.closeAll();
         } catch (SQLException e) {
-            plugin.getLogger().severe("Error closing database connection: " + e.getMessage());
+            logger.severe("Error closing database connection: " + e.getMessage());
         } finally {
             connectionLock.writeLock().unlock();
         }
@@ -317,10 +1583,12 @@ public class DatabaseManager {
         }
     }
 
+    @Override
     public boolean isConnected() {
         connectionLock.readLock().lock();
         try {
-            return connection != null && !connection.isClosed();
+            return writeConnection != null && !writeConnection.isClosed()
+                    && readPool != null && readPool.isOpen();
         } catch (SQLException e) {
             return false;
         } finally {
@@ -328,86 +1596,19 @@ public class DatabaseManager {
         }
     }
 
-    // Simple connection pool for better concurrency
-    private static class ConnectionPool {
-        private final String url;
-        private final List<Connection> availableConnections = new ArrayList<>();
-        private final List<Connection> usedConnections = new ArrayList<>();
-        private final int maxConnections;
-
-        public ConnectionPool(String databasePath, int maxConnections) {
-            this.url = "jdbc:sqlite:" + databasePath;
-            this.maxConnections = maxConnections;
-        }
-
-        public synchronized Connection getConnection() throws SQLException {
-            if (availableConnections.isEmpty() && usedConnections.size() < maxConnections) {
-                Connection conn = DriverManager.getConnection(url);
-                usedConnections.add(conn);
-                return conn;
-            } else if (!availableConnections.isEmpty()) {
-                Connection conn = availableConnections.remove(0);
-                usedConnections.add(conn);
-                return conn;
-            } else {
-                throw new SQLException("Maximum connection pool size reached");
-            }
-        }
+    private static class SummaryDelta {
+        long count;
+        long received;
+        long sent;
+        long firstSeen = Long.MAX_VALUE;
+        long lastSeen = Long.MIN_VALUE;
 
-        public synchronized void releaseConnection(Connection conn) {
-            if (usedConnections.remove(conn)) {
-                availableConnections.add(conn);
-            }
+        void add(long count, long received, long sent, long createdAt) {
+            this.count += count;
+            this.received += received;
+            this.sent += sent;
+            this.firstSeen = Math.min(firstSeen, createdAt);
+            this.lastSeen = Math.max(lastSeen, createdAt);
         }
-
-        public synchronized void closeAll() {
-            for (Connection conn : availableConnections) {
-                try {
-                    conn.close();
-                } catch (SQLException e) {
-                    // Ignore
-                }
-            }
-            for (Connection conn : usedConnections) {
-                try {
-                    conn.close();
-                } catch (SQLException e) {
-                    // Ignore
-                }
-            }
-            availableConnections.clear();
-            usedConnections.clear();
-        }
-    }
-
-    public static class TransactionData {
-        public final String playerReceived;
-        public final String playerSend;
-        public final int pointsAmount;
-
-        public TransactionData(String playerReceived, String playerSend, int pointsAmount) {
-            this.playerReceived = playerReceived;
-            this.playerSend = playerSend;
-            this.pointsAmount = pointsAmount;
-        }
-    }
-
-    public static class TransactionRecord {
-        private final String playerReceived;
-        private final String playerSend;
-        private final int pointsAmount;
-        private final String timestamp;
-
-        public TransactionRecord(String playerReceived, String playerSend, int pointsAmount, String timestamp) {
-            this.playerReceived = playerReceived;
-            this.playerSend = playerSend;
-            this.pointsAmount = pointsAmount;
-            this.timestamp = timestamp;
-        }
-
-        public String getPlayerReceived() { return playerReceived; }
-        public String getPlayerSend() { return playerSend; }
-        public int getPointsAmount() { return pointsAmount; }
-        public String getTimestamp() { return timestamp; }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,242 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Preallocated multi-producer / single-consumer ring of reusable event slots.
+// Event handlers only claim a slot, copy the raw event fields and publish it;
+// name resolution and pay correlation happen on the consumer (the writer thread).
+public final class EventRing {
+
+    public static final int POINTS_CHANGE = 1;
+    public static final int PAY_COMMAND = 2;
+    public static final int PLAYER_JOIN = 3;
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Slot[] slots;
+    // Sequence last written into each slot; the consumer reads a slot only once it matches
+    private final long[] published;
+    private final int mask;
+
+    // Next sequence a producer may claim / next sequence the consumer will read
+    private final Sequence claimed = new Sequence(0);
+    private final Sequence consumed = new Sequence(0);
+
+    // Spill-over when the ring is full; only allocates while overloaded
+    private final Queue<Slot> overflow = new ConcurrentLinkedQueue<>();
+    // Events that did not fit the ring since startup; non-zero means the writer fell behind
+    private final AtomicLong spilledEvents = new AtomicLong();
+
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+
+    public EventRing(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.published = new long[capacity];
+        Arrays.fill(published, -1L);
+        this.mask = capacity - 1;
+    }
+
+    public void publishPointsChange(UUID playerId, int change, long capturedAt) {
+        publish(POINTS_CHANGE, playerId, null, null, change, capturedAt);
+    }
+
+    public void publishPayCommand(UUID senderId, String senderName, String message, long capturedAt) {
+        publish(PAY_COMMAND, senderId, senderName, message, 0, capturedAt);
+    }
+
+    public void publishJoin(UUID playerId, String name, long capturedAt) {
+        publish(PLAYER_JOIN, playerId, name, null, 0, capturedAt);
+    }
+
+    private void publish(int type, UUID playerId, String name, String text, int change, long capturedAt) {
+        // Keep order: once spilling, stay on the overflow until the consumer empties it
+        long sequence = overflow.isEmpty() ? tryClaim() : -1;
+
+        if (sequence < 0) {
+            Slot spilled = new Slot();
+            spilled.set(type, playerId, name, text, change, capturedAt);
+            overflow.add(spilled);
+            spilledEvents.incrementAndGet();
+        } else {
+            int index = (int) sequence & mask;
+            slots[index].set(type, playerId, name, text, change, capturedAt);
+            PUBLISHED.setRelease(published, index, sequence);
+        }
+
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private long tryClaim() {
+        while (true) {
+            long current = claimed.get();
+            if (current - consumed.get() >= slots.length) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    // Consumer only: hands published events to the handler in order, up to the limit.
+    // Slots are reused as soon as the handler returns, so it must copy what it keeps.
+    public int drain(SlotHandler handler, int limit) {
+        long next = consumed.get();
+        int count = 0;
+
+        while (count < limit) {
+            int index = (int) next & mask;
+            if ((long) PUBLISHED.getAcquire(published, index) != next) break;
+
+            Slot slot = slots[index];
+            try {
+                handler.accept(slot);
+            } finally {
+                slot.clear();
+                consumed.setRelease(++next);
+            }
+            count++;
+        }
+
+        // Spilled events are newer than anything still claimed in the ring
+        if (next == claimed.get()) {
+            Slot spilled;
+            while (count < limit && (spilled = overflow.poll()) != null) {
+                handler.accept(spilled);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    // Consumer only: parks until something is published, wake() is called or the timeout passes
+    public void awaitEvents(long timeoutNanos) {
+        consumer = Thread.currentThread();
+        consumerParked = true;
+        try {
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            consumerParked = false;
+        }
+    }
+
+    public void wake() {
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean isEmpty() {
+        return claimed.get() == consumed.get() && overflow.isEmpty();
+    }
+
+    public int size() {
+        return (int) (claimed.get() - consumed.get()) + overflow.size();
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getSpilledCount() {
+        return spilledEvents.get();
+    }
+
+    public interface SlotHandler {
+        void accept(Slot slot);
+    }
+
+    // Mutable, reused event record. Only valid inside SlotHandler.accept
+    public static final class Slot {
+        private int type;
+        private UUID playerId;
+        private String name;
+        private String text;
+        private int change;
+        private long capturedAt;
+
+        private void set(int type, UUID playerId, String name, String text, int change, long capturedAt) {
+            this.type = type;
+            this.playerId = playerId;
+            this.name = name;
+            this.text = text;
+            this.change = change;
+            this.capturedAt = capturedAt;
+        }
+
+        // Drop references so a recycled slot doesn't pin old strings
+        private void clear() {
+            this.playerId = null;
+            this.name = null;
+            this.text = null;
+        }
+
+        public int getType() { return type; }
+        public UUID getPlayerId() { return playerId; }
+        public String getName() { return name; }
+        public String getText() { return text; }
+        public int getChange() { return change; }
+        public long getCapturedAt() { return capturedAt; }
+    }
+
+    // Counter padded onto its own cache line so producers claiming slots and the
+    // consumer releasing them don't false-share
+    abstract static class LhsPadding {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    abstract static class SequenceValue extends LhsPadding {
+        volatile long value;
+    }
+
+    static final class Sequence extends SequenceValue {
+        long p11, p12, p13, p14, p15, p16, p17;
+
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        Sequence(long initial) {
+            this.value = initial;
+        }
+
+        long get() {
+            return value;
+        }
+
+        void setRelease(long newValue) {
+            VALUE.setRelease(this, newValue);
+        }
+
+        boolean compareAndSet(long expected, long newValue) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+    }
+}
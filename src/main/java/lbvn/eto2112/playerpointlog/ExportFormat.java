@@ -0,0 +1,105 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Line layouts of an export file: RFC 4180 CSV with a header, or one JSON object per line.
+// Names are quoted or escaped whenever they need it, so a row always parses back to its fields.
+enum ExportFormat {
+    CSV("csv") {
+        @Override
+        String header() {
+            return "id,created_at,time,receiver,sender,amount,transaction_count\n";
+        }
+
+        @Override
+        void appendRow(StringBuilder line, TransactionStore.TransactionRecord record, String time) {
+            line.append(record.getId()).append(',')
+                    .append(record.getCreatedAt()).append(',')
+                    .append(time).append(',');
+            appendCsv(line, record.getPlayerReceived());
+            line.append(',');
+            appendCsv(line, record.getPlayerSend());
+            line.append(',').append(record.getPointsAmount())
+                    .append(',').append(record.getTransactionCount());
+        }
+    },
+    JSONL("jsonl") {
+        @Override
+        String header() {
+            return "";
+        }
+
+        @Override
+        void appendRow(StringBuilder line, TransactionStore.TransactionRecord record, String time) {
+            line.append("{\"id\":").append(record.getId())
+                    .append(",\"created_at\":").append(record.getCreatedAt())
+                    .append(",\"time\":\"").append(time)
+                    .append("\",\"receiver\":");
+            appendJson(line, record.getPlayerReceived());
+            line.append(",\"sender\":");
+            appendJson(line, record.getPlayerSend());
+            line.append(",\"amount\":").append(record.getPointsAmount())
+                    .append(",\"transaction_count\":").append(record.getTransactionCount())
+                    .append('}');
+        }
+    };
+
+    final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    // null for anything else
+    static ExportFormat of(String name) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) return format;
+        }
+        return null;
+    }
+
+    // Written once at the start of the file
+    abstract String header();
+
+    // time is the already formatted created_at
+    abstract void appendRow(StringBuilder line, TransactionStore.TransactionRecord record, String time);
+
+    // One line, newline included, with created_at in the given zone
+    void appendLine(StringBuilder line, TransactionStore.TransactionRecord record, ZoneId zone) {
+        appendRow(line, record, DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(
+                Instant.ofEpochMilli(record.getCreatedAt()).atZone(zone)));
+        line.append('\n');
+    }
+
+    private static void appendCsv(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void appendJson(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
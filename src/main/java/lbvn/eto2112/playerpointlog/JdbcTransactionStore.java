@@ -0,0 +1,767 @@
+package lbvn.eto2112.playerpointlog;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+// One MySQL, MariaDB or PostgreSQL database shared by every server of a network, so a player's
+// history can be looked up from any of them. Connections come from a HikariCP pool; the writer
+// borrows one per group commit and lookups borrow their own. Rows go out as multi-row INSERTs
+// built here, the same rewrite Connector/J does with rewriteBatchedStatements, so every driver
+// gets one round trip per chunk. Lookups page on the database server with the same UNION ALL
+// keyset query as the SQLite engine. Each server keeps its own journal and committed sequence.
+final class JdbcTransactionStore implements TransactionStore {
+
+    enum Dialect {
+        MYSQL("mysql", "com.mysql.cj.jdbc.Driver", 3306),
+        MARIADB("mariadb", "org.mariadb.jdbc.Driver", 3306),
+        POSTGRESQL("postgresql", "org.postgresql.Driver", 5432);
+
+        final String scheme;
+        final String driverClass;
+        final int defaultPort;
+
+        Dialect(String scheme, String driverClass, int defaultPort) {
+            this.scheme = scheme;
+            this.driverClass = driverClass;
+            this.defaultPort = defaultPort;
+        }
+
+        // null for sqlite and anything unknown
+        static Dialect of(String type) {
+            return switch (type.toLowerCase(Locale.ROOT)) {
+                case "mysql" -> MYSQL;
+                case "mariadb" -> MARIADB;
+                case "postgresql", "postgres" -> POSTGRESQL;
+                default -> null;
+            };
+        }
+
+        boolean isPostgres() {
+            return this == POSTGRESQL;
+        }
+    }
+
+    // jdbcUrl is used as-is when set, e.g. an in-memory H2 database in MySQL mode for local runs
+    record Settings(Dialect dialect, String host, int port, String database, String username, String password,
+                    int poolSize, String serverName, String jdbcUrl) {
+
+        static Settings from(FileConfiguration config, Dialect dialect) {
+            return new Settings(dialect,
+                    config.getString("storage.server.host", "localhost"),
+                    config.getInt("storage.server.port", 0),
+                    config.getString("storage.server.database", "playerpointlog"),
+                    config.getString("storage.server.username", "root"),
+                    config.getString("storage.server.password", ""),
+                    config.getInt("storage.server.pool-size", 8),
+                    config.getString("storage.server.server-name", "default"),
+                    config.getString("storage.server.jdbc-url", ""));
+        }
+
+        String url() {
+            if (jdbcUrl != null && !jdbcUrl.isEmpty()) return jdbcUrl;
+            return "jdbc:" + dialect.scheme + "://" + host + ":" + (port > 0 ? port : dialect.defaultPort) + "/" + database;
+        }
+    }
+
+    // Placeholders per statement stay well below PostgreSQL's 32767 bind limit
+    private static final int INSERT_CHUNK_ROWS = 500;
+    private static final int SELECT_CHUNK_KEYS = 500;
+
+    private final Settings settings;
+    private final Logger logger;
+    private final Dialect dialect;
+    private volatile HikariDataSource dataSource;
+
+    // Ids never change once assigned, so they are cached across servers; unknown names are not
+    private final Map<String, Integer> playerIds = new ConcurrentHashMap<>();
+
+    JdbcTransactionStore(PlayerPointLog plugin, Dialect dialect) {
+        this(Settings.from(plugin.getConfig(), dialect), plugin.getLogger());
+    }
+
+    // No Bukkit types past this point, so the load harness can run it against any database
+    JdbcTransactionStore(Settings settings, Logger logger) {
+        this.settings = settings;
+        this.logger = logger;
+        this.dialect = settings.dialect();
+    }
+
+    @Override
+    public boolean initialize() {
+        try {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("PlayerPointLog-Pool");
+            config.setJdbcUrl(settings.url());
+            if (settings.jdbcUrl() == null || settings.jdbcUrl().isEmpty()) {
+                config.setDriverClassName(dialect.driverClass);
+            }
+            config.setUsername(settings.username());
+            config.setPassword(settings.password());
+            config.setMaximumPoolSize(Math.max(2, settings.poolSize()));
+            config.setConnectionTimeout(5000);
+            dataSource = new HikariDataSource(config);
+
+            createTables();
+            logger.info("Using the shared " + dialect.scheme + " database as server '" + settings.serverName() + "'.");
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            // Hikari reports an unreachable server as a RuntimeException
+            logger.severe("Failed to initialize " + dialect.scheme + " database: " + e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    private void createTables() throws SQLException {
+        String intId = dialect.isPostgres() ? "INTEGER GENERATED BY DEFAULT AS IDENTITY" : "INT NOT NULL AUTO_INCREMENT";
+        String bigId = dialect.isPostgres() ? "BIGINT GENERATED BY DEFAULT AS IDENTITY" : "BIGINT NOT NULL AUTO_INCREMENT";
+        // MySQL has no CREATE INDEX IF NOT EXISTS, so its indexes are declared with the table
+        String inlineIndexes = dialect.isPostgres() ? "" : """
+                ,
+                    INDEX idx_ppl_tx_receiver_time (receiver_id, created_at, id),
+                    INDEX idx_ppl_tx_sender_time (sender_id, created_at, id)""";
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS ppl_players (
+                    id %s PRIMARY KEY,
+                    name_key VARCHAR(64) NOT NULL UNIQUE,
+                    display_name VARCHAR(64) NOT NULL,
+                    uuid CHAR(36)
+                )
+            """.formatted(intId));
+
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS ppl_transactions (
+                    id %s PRIMARY KEY,
+                    receiver_id INT NOT NULL,
+                    sender_id INT NOT NULL,
+                    points_amount INT NOT NULL,
+                    created_at BIGINT NOT NULL,
+                    server_name VARCHAR(64) NOT NULL%s
+                )
+            """.formatted(bigId, inlineIndexes));
+            if (dialect.isPostgres()) {
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_ppl_tx_receiver_time ON ppl_transactions (receiver_id, created_at, id)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_ppl_tx_sender_time ON ppl_transactions (sender_id, created_at, id)");
+            }
+
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS ppl_player_summary (
+                    player_id INT NOT NULL PRIMARY KEY,
+                    transaction_count BIGINT NOT NULL,
+                    total_received BIGINT NOT NULL,
+                    total_sent BIGINT NOT NULL,
+                    first_seen BIGINT NOT NULL,
+                    last_seen BIGINT NOT NULL
+                )
+            """);
+
+            // Every server replays its own journal, so each one has its own committed sequence
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS ppl_journal_state (
+                    server_name VARCHAR(64) NOT NULL PRIMARY KEY,
+                    committed_sequence BIGINT NOT NULL
+                )
+            """);
+        }
+    }
+
+    @Override
+    public long getJournalSequence() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT committed_sequence FROM ppl_journal_state WHERE server_name = ?")) {
+            statement.setString(1, settings.serverName());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to read journal state: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // One transaction per group commit. Other servers commit to the same summary rows, so upserts
+    // go in player id order and two writers never wait on each other's locks in opposite order.
+    @Override
+    public boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+        return commitBatch(transactions, journalSequence, null);
+    }
+
+    // Entries at or below this server's committed sequence are already in, e.g. when the commit went
+    // through but its acknowledgement was lost, so they are skipped inside the same transaction
+    @Override
+    public boolean replayTransactionsBatch(List<TransactionData> transactions, long[] sequences) {
+        return commitBatch(transactions, sequences[sequences.length - 1], sequences);
+    }
+
+    private boolean commitBatch(List<TransactionData> transactions, long journalSequence, long[] sequences) {
+        if (transactions.isEmpty()) return true;
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (sequences != null) {
+                    transactions = uncommitted(connection, transactions, sequences);
+                }
+                Map<String, Integer> ids = resolvePlayerIds(connection, transactions);
+
+                TreeMap<Integer, long[]> summaryDeltas = new TreeMap<>();
+                List<Object> rows = new ArrayList<>(transactions.size() * 5);
+                for (TransactionData data : transactions) {
+                    int receiverId = ids.get(DatabaseManager.playerKey(data.playerReceived));
+                    int senderId = ids.get(DatabaseManager.playerKey(data.playerSend));
+                    Collections.addAll(rows, receiverId, senderId, data.pointsAmount, data.createdAt, settings.serverName());
+
+                    addDelta(summaryDeltas, receiverId, 1, data.pointsAmount, 0, data.createdAt);
+                    addDelta(summaryDeltas, senderId, senderId != receiverId ? 1 : 0, 0, data.pointsAmount, data.createdAt);
+                }
+                insertRows(connection, "INSERT INTO ppl_transactions (receiver_id, sender_id, points_amount, created_at, server_name) VALUES ",
+                        5, rows, "");
+
+                List<Object> summaries = new ArrayList<>(summaryDeltas.size() * 6);
+                for (Map.Entry<Integer, long[]> entry : summaryDeltas.entrySet()) {
+                    long[] delta = entry.getValue();
+                    Collections.addAll(summaries, entry.getKey(), delta[0], delta[1], delta[2], delta[3], delta[4]);
+                }
+                insertRows(connection, "INSERT INTO ppl_player_summary (player_id, transaction_count, total_received, total_sent, first_seen, last_seen) VALUES ",
+                        6, summaries, summaryUpsertSql());
+
+                if (journalSequence > 0) {
+                    try (PreparedStatement statement = connection.prepareStatement(journalStateSql())) {
+                        statement.setString(1, settings.serverName());
+                        statement.setLong(2, journalSequence);
+                        statement.executeUpdate();
+                    }
+                }
+
+                connection.commit();
+                // Only now are ids created by this transaction visible to everyone
+                playerIds.putAll(ids);
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to execute batch insert: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private List<TransactionData> uncommitted(Connection connection, List<TransactionData> transactions,
+                                              long[] sequences) throws SQLException {
+        long committed;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT committed_sequence FROM ppl_journal_state WHERE server_name = ?")) {
+            statement.setString(1, settings.serverName());
+            try (ResultSet rs = statement.executeQuery()) {
+                committed = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        List<TransactionData> pending = new ArrayList<>(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            if (sequences[i] > committed) {
+                pending.add(transactions.get(i));
+            }
+        }
+        return pending;
+    }
+
+    // count, received, sent, first seen, last seen
+    private static void addDelta(TreeMap<Integer, long[]> deltas, int playerId, long count, long received, long sent,
+                                 long createdAt) {
+        long[] delta = deltas.computeIfAbsent(playerId, id -> new long[]{0, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE});
+        delta[0] += count;
+        delta[1] += received;
+        delta[2] += sent;
+        delta[3] = Math.min(delta[3], createdAt);
+        delta[4] = Math.max(delta[4], createdAt);
+    }
+
+    private String summaryUpsertSql() {
+        if (dialect.isPostgres()) {
+            return """
+                     ON CONFLICT (player_id) DO UPDATE SET
+                        transaction_count = ppl_player_summary.transaction_count + EXCLUDED.transaction_count,
+                        total_received = ppl_player_summary.total_received + EXCLUDED.total_received,
+                        total_sent = ppl_player_summary.total_sent + EXCLUDED.total_sent,
+                        first_seen = LEAST(ppl_player_summary.first_seen, EXCLUDED.first_seen),
+                        last_seen = GREATEST(ppl_player_summary.last_seen, EXCLUDED.last_seen)""";
+        }
+        return """
+                 ON DUPLICATE KEY UPDATE
+                    transaction_count = transaction_count + VALUES(transaction_count),
+                    total_received = total_received + VALUES(total_received),
+                    total_sent = total_sent + VALUES(total_sent),
+                    first_seen = LEAST(first_seen, VALUES(first_seen)),
+                    last_seen = GREATEST(last_seen, VALUES(last_seen))""";
+    }
+
+    private String journalStateSql() {
+        if (dialect.isPostgres()) {
+            return """
+                    INSERT INTO ppl_journal_state (server_name, committed_sequence) VALUES (?, ?)
+                    ON CONFLICT (server_name) DO UPDATE SET
+                        committed_sequence = GREATEST(ppl_journal_state.committed_sequence, EXCLUDED.committed_sequence)""";
+        }
+        return """
+                INSERT INTO ppl_journal_state (server_name, committed_sequence) VALUES (?, ?)
+                ON DUPLICATE KEY UPDATE committed_sequence = GREATEST(committed_sequence, VALUES(committed_sequence))""";
+    }
+
+    // prefix + "(?, ?, ...), (?, ?, ...)" + suffix, in chunks of INSERT_CHUNK_ROWS rows
+    private static void insertRows(Connection connection, String prefix, int columns, List<Object> values,
+                                   String suffix) throws SQLException {
+        int rows = values.size() / columns;
+        String row = "(" + "?, ".repeat(columns - 1) + "?)";
+        for (int start = 0; start < rows; start += INSERT_CHUNK_ROWS) {
+            int count = Math.min(INSERT_CHUNK_ROWS, rows - start);
+            StringBuilder sql = new StringBuilder(prefix.length() + count * (row.length() + 2) + suffix.length());
+            sql.append(prefix);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(row);
+            }
+            sql.append(suffix);
+
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                bind(statement, values.subList(start * columns, (start + count) * columns));
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    // Ids for every participant of the batch, registering names never seen before. New names are
+    // inserted in key order inside the batch's transaction and read back in one IN query per chunk.
+    private Map<String, Integer> resolvePlayerIds(Connection connection, List<TransactionData> transactions)
+            throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        TreeMap<String, Object[]> unknown = new TreeMap<>();
+        for (TransactionData data : transactions) {
+            collectPlayer(ids, unknown, data.playerReceived, data.receiverUuid);
+            collectPlayer(ids, unknown, data.playerSend, data.senderUuid);
+        }
+        if (unknown.isEmpty()) return ids;
+
+        List<Object> rows = new ArrayList<>(unknown.size() * 3);
+        for (Object[] player : unknown.values()) {
+            Collections.addAll(rows, player);
+        }
+        if (dialect.isPostgres()) {
+            insertRows(connection, "INSERT INTO ppl_players (name_key, display_name, uuid) VALUES ", 3, rows,
+                    " ON CONFLICT (name_key) DO NOTHING");
+        } else {
+            insertRows(connection, "INSERT IGNORE INTO ppl_players (name_key, display_name, uuid) VALUES ", 3, rows, "");
+        }
+
+        List<String> keys = new ArrayList<>(unknown.keySet());
+        for (int start = 0; start < keys.size(); start += SELECT_CHUNK_KEYS) {
+            List<String> chunk = keys.subList(start, Math.min(keys.size(), start + SELECT_CHUNK_KEYS));
+            String sql = "SELECT id, name_key FROM ppl_players WHERE name_key IN (" + "?, ".repeat(chunk.size() - 1) + "?)";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, new ArrayList<>(chunk));
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        ids.put(rs.getString(2), rs.getInt(1));
+                    }
+                }
+            }
+        }
+
+        for (String key : keys) {
+            if (!ids.containsKey(key)) throw new SQLException("Failed to register player " + key);
+        }
+        return ids;
+    }
+
+    private void collectPlayer(Map<String, Integer> ids, TreeMap<String, Object[]> unknown, String playerName, UUID uuid) {
+        String key = DatabaseManager.playerKey(playerName);
+        if (ids.containsKey(key) || unknown.containsKey(key)) return;
+        Integer id = playerIds.get(key);
+        if (id != null) {
+            ids.put(key, id);
+        } else {
+            unknown.put(key, new Object[]{key, playerName, uuid != null ? uuid.toString() : null});
+        }
+    }
+
+    // Read path: a name no server has written yet has no history
+    private Integer findPlayerId(Connection connection, String playerName) throws SQLException {
+        String key = DatabaseManager.playerKey(playerName);
+        Integer id = playerIds.get(key);
+        if (id != null) return id;
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM ppl_players WHERE name_key = ?")) {
+            statement.setString(1, key);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) return null;
+                id = rs.getInt(1);
+            }
+        }
+        playerIds.put(key, id);
+        return id;
+    }
+
+    @Override
+    public List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                         int page, int itemsPerPage) {
+        try (Connection connection = dataSource.getConnection()) {
+            Integer playerId = findPlayerId(connection, playerName);
+            if (playerId == null) return List.of();
+
+            Integer counterpartyId = null;
+            if (filter.getCounterparty() != null) {
+                counterpartyId = findPlayerId(connection, filter.getCounterparty());
+                if (counterpartyId == null) return List.of();
+            }
+
+            List<Object> parameters = new ArrayList<>();
+            int offset = cursor == null ? (page - 1) * itemsPerPage : 0;
+            String sql = lookupSql(playerId, counterpartyId, filter, cursor, itemsPerPage, offset, parameters);
+
+            List<TransactionRecord> transactions = new ArrayList<>(itemsPerPage);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, parameters);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        transactions.add(readRecord(rs));
+                    }
+                }
+            }
+
+            // Newer pages are read ascending from the boundary, flip them back
+            if (cursor != null && !cursor.isOlder()) {
+                Collections.reverse(transactions);
+            }
+            return transactions;
+        } catch (SQLException e) {
+            logger.severe("Failed to retrieve transactions: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static TransactionRecord readRecord(ResultSet rs) throws SQLException {
+        return new TransactionRecord(
+                rs.getLong("id"),
+                rs.getString("player_received"),
+                rs.getString("player_send"),
+                rs.getLong("points_amount"),
+                rs.getLong("created_at")
+        );
+    }
+
+    // A player's lines are the lookup query read forwards from a keyset cursor; everyone's are read by
+    // primary key, from every server. Each chunk borrows a pooled connection and returns it before
+    // endChunk, so an export never keeps one away from the writer for longer than a chunk.
+    @Override
+    public long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink)
+            throws SQLException, IOException {
+        LookupFilter filter = LookupFilter.between(since, until);
+        long exported = 0;
+        TransactionRecord last = null;
+        while (true) {
+            int rows = 0;
+            try (Connection connection = dataSource.getConnection()) {
+                List<Object> parameters = new ArrayList<>();
+                String sql;
+                if (playerName != null) {
+                    Integer playerId = findPlayerId(connection, playerName);
+                    if (playerId == null) return exported;
+                    LookupCursor cursor = last == null
+                            ? LookupCursor.newerThan(Long.MIN_VALUE, Long.MIN_VALUE)
+                            : LookupCursor.newerThan(last.getCreatedAt(), last.getId());
+                    sql = lookupSql(playerId, null, filter, cursor, chunkSize, 0, parameters);
+                } else {
+                    sql = exportSql(filter, last == null ? 0 : last.getId(), chunkSize, parameters);
+                }
+
+                try (PreparedStatement statement = connection.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    statement.setFetchSize(chunkSize);
+                    bind(statement, parameters);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            last = readRecord(rs);
+                            sink.write(last);
+                            rows++;
+                        }
+                    }
+                }
+            }
+
+            exported += rows;
+            sink.endChunk();
+            if (rows < chunkSize) return exported;
+        }
+    }
+
+    private static String exportSql(LookupFilter filter, long afterId, int limit, List<Object> parameters) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT t.id, r.display_name AS player_received, s.display_name AS player_send,
+                       t.points_amount, t.created_at
+                FROM ppl_transactions t
+                JOIN ppl_players r ON r.id = t.receiver_id
+                JOIN ppl_players s ON s.id = t.sender_id
+                WHERE t.id > ?""");
+        parameters.add(afterId);
+        if (filter.getSince() != null) {
+            sql.append(" AND t.created_at >= ?");
+            parameters.add(filter.getSince());
+        }
+        if (filter.getUntil() != null) {
+            sql.append(" AND t.created_at < ?");
+            parameters.add(filter.getUntil());
+        }
+        sql.append(" ORDER BY t.id LIMIT ?");
+        parameters.add(limit);
+        return sql.toString();
+    }
+
+    // Unlike SQLite, neither MySQL nor PostgreSQL stops a UNION ALL once the outer LIMIT is met, so
+    // each side is limited to the rows the page can need and the server sorts at most twice that.
+    private static String lookupSql(int playerId, Integer counterpartyId, LookupFilter filter, LookupCursor cursor,
+                                    int limit, int offset, List<Object> parameters) {
+        String order = cursor == null || cursor.isOlder() ? "DESC" : "ASC";
+        String page = "ORDER BY created_at " + order + ", id " + order + " LIMIT " + (limit + offset);
+
+        List<String> branches = branches(playerId, counterpartyId, filter, cursor, parameters);
+        branches.replaceAll(branch -> branches.size() > 1 ? "(" + branch + " " + page + ")" : branch + " " + page);
+        parameters.add(limit);
+        parameters.add(offset);
+
+        return """
+                SELECT t.id, r.display_name AS player_received, s.display_name AS player_send,
+                       t.points_amount, t.created_at
+                FROM (
+                    SELECT id, created_at FROM (%1$s) b
+                    ORDER BY created_at %2$s, id %2$s
+                    LIMIT ? OFFSET ?
+                ) p
+                JOIN ppl_transactions t ON t.id = p.id
+                JOIN ppl_players r ON r.id = t.receiver_id
+                JOIN ppl_players s ON s.id = t.sender_id
+                ORDER BY p.created_at %2$s, p.id %2$s
+                """.formatted(String.join(" UNION ALL ", branches), order);
+    }
+
+    // The received side and the sent side, each a range of one (player, created_at, id) index
+    private static List<String> branches(int playerId, Integer counterpartyId, LookupFilter filter, LookupCursor cursor,
+                                         List<Object> parameters) {
+        List<String> branches = new ArrayList<>(2);
+
+        if (filter.getDirection() != LookupFilter.Direction.SENT) {
+            StringBuilder sql = new StringBuilder("SELECT id, created_at FROM ppl_transactions WHERE receiver_id = ?");
+            parameters.add(playerId);
+            if (counterpartyId != null) {
+                sql.append(" AND sender_id = ?");
+                parameters.add(counterpartyId);
+            }
+            appendRangeFilters(sql, filter, cursor, parameters);
+            branches.add(sql.toString());
+        }
+
+        if (filter.getDirection() != LookupFilter.Direction.RECEIVED) {
+            StringBuilder sql = new StringBuilder("SELECT id, created_at FROM ppl_transactions WHERE sender_id = ?");
+            parameters.add(playerId);
+            if (filter.getDirection() == LookupFilter.Direction.ANY) {
+                // Self-transfers already came from the received side
+                sql.append(" AND receiver_id <> ?");
+                parameters.add(playerId);
+            }
+            if (counterpartyId != null) {
+                sql.append(" AND receiver_id = ?");
+                parameters.add(counterpartyId);
+            }
+            appendRangeFilters(sql, filter, cursor, parameters);
+            branches.add(sql.toString());
+        }
+
+        return branches;
+    }
+
+    // The keyset is spelled out, since MySQL does not range-scan a row-value comparison
+    private static void appendRangeFilters(StringBuilder sql, LookupFilter filter, LookupCursor cursor,
+                                           List<Object> parameters) {
+        if (filter.getSince() != null) {
+            sql.append(" AND created_at >= ?");
+            parameters.add(filter.getSince());
+        }
+        if (filter.getUntil() != null) {
+            sql.append(" AND created_at < ?");
+            parameters.add(filter.getUntil());
+        }
+        if (filter.getMinAmount() != null) {
+            sql.append(" AND points_amount >= ?");
+            parameters.add(filter.getMinAmount());
+        }
+        if (filter.getMaxAmount() != null) {
+            sql.append(" AND points_amount <= ?");
+            parameters.add(filter.getMaxAmount());
+        }
+        if (cursor != null) {
+            String comparison = cursor.isOlder() ? "<" : ">";
+            sql.append(" AND (created_at ").append(comparison).append(" ? OR (created_at = ? AND id ")
+                    .append(comparison).append(" ?))");
+            parameters.add(cursor.getCreatedAt());
+            parameters.add(cursor.getCreatedAt());
+            parameters.add(cursor.getId());
+        }
+    }
+
+    @Override
+    public long countPlayerTransactions(String playerName, LookupFilter filter) {
+        try (Connection connection = dataSource.getConnection()) {
+            Integer playerId = findPlayerId(connection, playerName);
+            if (playerId == null) return 0;
+
+            Integer counterpartyId = null;
+            if (filter.getCounterparty() != null) {
+                counterpartyId = findPlayerId(connection, filter.getCounterparty());
+                if (counterpartyId == null) return 0;
+            }
+
+            List<Object> parameters = new ArrayList<>();
+            String sql = "SELECT COUNT(*) FROM ("
+                    + String.join(" UNION ALL ", branches(playerId, counterpartyId, filter, null, parameters)) + ") c";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, parameters);
+                try (ResultSet rs = statement.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to count transactions: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public PlayerSummary getPlayerSummary(String playerName) {
+        try (Connection connection = dataSource.getConnection()) {
+            Integer playerId = findPlayerId(connection, playerName);
+            if (playerId == null) return null;
+
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    SELECT transaction_count, total_received, total_sent, first_seen, last_seen
+                    FROM ppl_player_summary
+                    WHERE player_id = ?
+                    """)) {
+                statement.setInt(1, playerId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (!rs.next()) return null;
+                    return new PlayerSummary(
+                            rs.getLong("transaction_count"),
+                            rs.getLong("total_received"),
+                            rs.getLong("total_sent"),
+                            rs.getLong("first_seen"),
+                            rs.getLong("last_seen")
+                    );
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to read player summary: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // No retention here, every line is one transaction
+    @Override
+    public boolean hasDailyHistory() {
+        return false;
+    }
+
+    // Recomputes every player's totals from all servers' rows; run it from one server only
+    @Override
+    public int rebuildPlayerSummary() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM ppl_player_summary");
+                int players = statement.executeUpdate("""
+                    INSERT INTO ppl_player_summary (player_id, transaction_count, total_received, total_sent, first_seen, last_seen)
+                    SELECT player_id, SUM(n), SUM(received), SUM(sent), MIN(created_at), MAX(created_at)
+                    FROM (
+                        SELECT receiver_id AS player_id, 1 AS n, points_amount AS received,
+                               CASE WHEN sender_id = receiver_id THEN points_amount ELSE 0 END AS sent, created_at
+                        FROM ppl_transactions
+                        UNION ALL
+                        SELECT sender_id, 1, 0, points_amount, created_at
+                        FROM ppl_transactions
+                        WHERE sender_id <> receiver_id
+                    ) f
+                    GROUP BY player_id
+                """);
+                connection.commit();
+                return players;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Nothing runs in the background; the database server maintains itself
+    @Override
+    public boolean runMaintenanceStep() {
+        return false;
+    }
+
+    // Other servers write the same players, so lookups always go to the database
+    @Override
+    public LookupCache.Stats getLookupCacheStats() {
+        return new LookupCache.Stats(0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public int getOpenReadConnections() {
+        HikariDataSource source = dataSource;
+        return source != null && source.isRunning() ? source.getHikariPoolMXBean().getTotalConnections() : 0;
+    }
+
+    // The pool drops broken connections and reconnects on its own; it counts as connected while it holds one
+    @Override
+    public boolean isConnected() {
+        return getOpenReadConnections() > 0;
+    }
+
+    @Override
+    public void close() {
+        HikariDataSource source = dataSource;
+        if (source != null && !source.isClosed()) {
+            source.close();
+            logger.info("Database connection closed gracefully.");
+        }
+    }
+
+    private static void bind(PreparedStatement statement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+    }
+}
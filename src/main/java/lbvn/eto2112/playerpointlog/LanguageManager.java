@@ -10,18 +10,30 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Logger;
 
 public class LanguageManager {
 
     private final PlayerPointLog plugin;
+    private final Logger logger;
     private FileConfiguration languageConfig;
-    private final Map<String, String> messageCache = new HashMap<>();
+    // Messages compiled once per load; rendering only fills in the placeholders
+    private final Map<String, MessageTemplate> messageCache = new HashMap<>();
 
     public LanguageManager(PlayerPointLog plugin) {
         this.plugin = plugin;
+        this.logger = plugin.getLogger();
         loadLanguageFile();
     }
 
+    // Fixed messages with no plugin or language file behind them, for benchmarks
+    LanguageManager(Map<String, String> messages, Logger logger) {
+        this.plugin = null;
+        this.logger = logger;
+        messages.forEach((key, message) ->
+                messageCache.put(key, compile(message)));
+    }
+
     private void loadLanguageFile() {
         File languageFile = new File(plugin.getDataFolder(), "language.yml");
 
@@ -40,7 +52,7 @@ public class LanguageManager {
                     }
                 }
             } catch (IOException e) {
-                plugin.getLogger().severe("Could not create language.yml: " + e.getMessage());
+                logger.severe("Could not create language.yml: " + e.getMessage());
             }
         }
 
@@ -50,7 +62,7 @@ public class LanguageManager {
         // Cache all messages for performance
         cacheMessages();
 
-        plugin.getLogger().info("Language file loaded successfully!");
+        logger.info("Language file loaded successfully!");
     }
 
     private void cacheMessages() {
@@ -59,31 +71,24 @@ public class LanguageManager {
             if (languageConfig.isString(key)) {
                 String message = languageConfig.getString(key);
                 if (message != null) {
-                    messageCache.put(key, ChatColor.translateAlternateColorCodes('&', message));
+                    messageCache.put(key, compile(message));
                 }
             }
         }
     }
 
+    private static MessageTemplate compile(String message) {
+        return MessageTemplate.compile(ChatColor.translateAlternateColorCodes('&', message));
+    }
+
     public String getMessage(String key, Object... placeholders) {
-        String message = messageCache.get(key);
-        if (message == null) {
-            plugin.getLogger().warning("Missing language key: " + key);
+        MessageTemplate template = messageCache.get(key);
+        if (template == null) {
+            logger.warning("Missing language key: " + key);
             return ChatColor.RED + "Missing message: " + key;
         }
 
-        // Replace placeholders
-        if (placeholders.length > 0) {
-            for (int i = 0; i < placeholders.length; i += 2) {
-                if (i + 1 < placeholders.length) {
-                    String placeholder = "{" + placeholders[i] + "}";
-                    String replacement = String.valueOf(placeholders[i + 1]);
-                    message = message.replace(placeholder, replacement);
-                }
-            }
-        }
-
-        return message;
+        return template.render(placeholders);
     }
 
     public void reload() {
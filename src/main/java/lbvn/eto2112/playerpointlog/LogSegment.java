@@ -0,0 +1,271 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// One memory-mapped file of fixed-width transaction records for SegmentLogStore, with the
+// per-player index of the slots each player appears in. While a segment is being written the
+// index is a growable int array per player; once it is full it is sealed and the index is written
+// next to it as flat offset/slot arrays that are mapped back instead of being held on the heap.
+final class LogSegment {
+
+    // created_at, journal sequence, receiver, sender, amount, checksum
+    static final int RECORD_BYTES = 32;
+    static final int CAPACITY = 1 << 21;
+    private static final int CHECKSUM_OFFSET = 28;
+    // XORed into the checksum of the last record of a group commit
+    private static final int BATCH_END = 0x5A5A5A5A;
+
+    private static final int INDEX_MAGIC = 0x504C4931; // "PLI1"
+    // magic, record count, player slots, unused, min/max created_at, last sequence
+    private static final int INDEX_HEADER = 40;
+
+    final int number;
+    private final File file;
+    private final File indexFile;
+    private final MappedByteBuffer records;
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private int count;
+    private long minCreatedAt = Long.MAX_VALUE;
+    private long maxCreatedAt = Long.MIN_VALUE;
+    private long lastSequence;
+
+    // Writable segment: slots per player id, in append order
+    private int[][] slots = new int[0][];
+    private int[] slotCounts = new int[0];
+
+    // Sealed segment: slots of player p are sealedSlots[offsets[p] .. offsets[p + 1])
+    private boolean sealed;
+    private IntBuffer offsets;
+    private IntBuffer sealedSlots;
+    private int indexedPlayers;
+
+    private LogSegment(File directory, int number, boolean writable) throws IOException {
+        this.number = number;
+        this.file = new File(directory, String.format("segment-%06d.dat", number));
+        this.indexFile = new File(directory, String.format("segment-%06d.idx", number));
+        try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+             FileChannel channel = raf.getChannel()) {
+            if (writable) raf.setLength((long) CAPACITY * RECORD_BYTES);
+            records = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, (long) CAPACITY * RECORD_BYTES);
+        }
+    }
+
+    static boolean isSealed(File directory, int number) {
+        return new File(directory, String.format("segment-%06d.idx", number)).exists();
+    }
+
+    // Segment numbers on disk, oldest first
+    static int[] list(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".dat"));
+        if (files == null) return new int[0];
+        int[] numbers = new int[files.length];
+        for (int i = 0; i < files.length; i++) {
+            numbers[i] = Integer.parseInt(files[i].getName().substring(8, files[i].getName().length() - 4));
+        }
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    // The segment being written: its valid records are found by their checksums and the index is rebuilt
+    static LogSegment openWritable(File directory, int number) throws IOException {
+        LogSegment segment = new LogSegment(directory, number, true);
+        segment.recover();
+        return segment;
+    }
+
+    static LogSegment openSealed(File directory, int number) throws IOException {
+        LogSegment segment = new LogSegment(directory, number, false);
+        segment.loadIndex();
+        return segment;
+    }
+
+    int count() { return count; }
+    long minCreatedAt() { return minCreatedAt; }
+    long maxCreatedAt() { return maxCreatedAt; }
+    long lastSequence() { return lastSequence; }
+    boolean isFull(int more) { return count + more > CAPACITY; }
+
+    // Record id as lookups see it; positive and increasing across segments
+    long idOf(int slot) {
+        return (long) number * CAPACITY + slot + 1;
+    }
+
+    static int segmentOf(long id) {
+        return (int) Math.floorDiv(id - 1, CAPACITY);
+    }
+
+    static int slotOf(long id) {
+        return Math.floorMod(id - 1, CAPACITY);
+    }
+
+    long createdAt(int slot) { return records.getLong(slot * RECORD_BYTES); }
+    long sequence(int slot) { return records.getLong(slot * RECORD_BYTES + 8); }
+    int receiver(int slot) { return records.getInt(slot * RECORD_BYTES + 16); }
+    int sender(int slot) { return records.getInt(slot * RECORD_BYTES + 20); }
+    int amount(int slot) { return records.getInt(slot * RECORD_BYTES + 24); }
+
+    // Copies a record into the mapping beyond the published count; readers do not see it until publish
+    void write(int slot, long createdAt, long sequence, int receiverId, int senderId, int amount, boolean batchEnd) {
+        scratch.clear();
+        scratch.putLong(createdAt).putLong(sequence).putInt(receiverId).putInt(senderId).putInt(amount);
+        crc.reset();
+        crc.update(scratch.array(), 0, CHECKSUM_OFFSET);
+        scratch.putInt((int) crc.getValue() ^ (batchEnd ? BATCH_END : 0));
+        records.put(slot * RECORD_BYTES, scratch.array(), 0, RECORD_BYTES);
+    }
+
+    // Adds a written record to the index; the caller holds the store's write lock
+    void publish(int slot) {
+        int receiverId = receiver(slot);
+        int senderId = sender(slot);
+        addSlot(receiverId, slot);
+        if (senderId != receiverId) {
+            addSlot(senderId, slot);
+        }
+        long createdAt = createdAt(slot);
+        minCreatedAt = Math.min(minCreatedAt, createdAt);
+        maxCreatedAt = Math.max(maxCreatedAt, createdAt);
+        lastSequence = Math.max(lastSequence, sequence(slot));
+        count = slot + 1;
+    }
+
+    private void addSlot(int playerId, int slot) {
+        if (playerId >= slots.length) {
+            int size = Math.max(playerId + 1, slots.length * 2);
+            slots = Arrays.copyOf(slots, size);
+            slotCounts = Arrays.copyOf(slotCounts, size);
+        }
+        int[] list = slots[playerId];
+        int n = slotCounts[playerId];
+        if (list == null) {
+            list = slots[playerId] = new int[8];
+        } else if (n == list.length) {
+            list = slots[playerId] = Arrays.copyOf(list, n * 2);
+        }
+        list[n] = slot;
+        slotCounts[playerId] = n + 1;
+    }
+
+    int slotCount(int playerId) {
+        if (sealed) {
+            return playerId < indexedPlayers ? offsets.get(playerId + 1) - offsets.get(playerId) : 0;
+        }
+        return playerId < slotCounts.length ? slotCounts[playerId] : 0;
+    }
+
+    // i-th slot of the player, oldest first
+    int slotAt(int playerId, int i) {
+        return sealed ? sealedSlots.get(offsets.get(playerId) + i) : slots[playerId][i];
+    }
+
+    // Index of the player's first slot at or after the given one
+    int lowerBound(int playerId, int slot) {
+        int low = 0;
+        int high = slotCount(playerId);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (slotAt(playerId, middle) < slot) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Valid records end at the first bad checksum; a group commit cut short by a crash is dropped
+    // whole, so replaying the journal never stores part of a batch twice
+    private void recover() {
+        int end = 0;
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            int offset = slot * RECORD_BYTES;
+            crc.reset();
+            crc.update(records.slice(offset, CHECKSUM_OFFSET));
+            int stored = records.getInt(offset + CHECKSUM_OFFSET);
+            int expected = (int) crc.getValue();
+            if (stored == (expected ^ BATCH_END)) {
+                end = slot + 1;
+            } else if (stored != expected) {
+                break;
+            }
+        }
+
+        for (int slot = end; slot < CAPACITY && records.getInt(slot * RECORD_BYTES + CHECKSUM_OFFSET) != 0; slot++) {
+            records.put(slot * RECORD_BYTES, new byte[RECORD_BYTES]);
+        }
+        for (int slot = 0; slot < end; slot++) {
+            publish(slot);
+        }
+    }
+
+    // Forces the records to disk and writes the index next to them; the segment is read-only afterwards
+    void seal() throws IOException {
+        records.force();
+
+        int players = slotCounts.length;
+        int entries = 0;
+        for (int n : slotCounts) {
+            entries += n;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER + (players + 1 + entries) * 4);
+        index.putInt(INDEX_MAGIC).putInt(count).putInt(players).putInt(0);
+        index.putLong(minCreatedAt).putLong(maxCreatedAt).putLong(lastSequence);
+        int offset = 0;
+        for (int n : slotCounts) {
+            index.putInt(offset);
+            offset += n;
+        }
+        index.putInt(offset);
+        for (int p = 0; p < players; p++) {
+            if (slotCounts[p] > 0) index.asIntBuffer().put(0, slots[p], 0, slotCounts[p]);
+            index.position(index.position() + slotCounts[p] * 4);
+        }
+
+        File temp = new File(indexFile.getPath() + ".tmp");
+        Files.write(temp.toPath(), index.array());
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        slots = new int[0][];
+        slotCounts = new int[0];
+        loadIndex();
+    }
+
+    void force() {
+        if (!sealed) records.force();
+    }
+
+    private void loadIndex() throws IOException {
+        MappedByteBuffer index;
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (index.capacity() < INDEX_HEADER || index.getInt(0) != INDEX_MAGIC) {
+            throw new IOException("Unreadable index " + indexFile.getName());
+        }
+
+        count = index.getInt(4);
+        indexedPlayers = index.getInt(8);
+        minCreatedAt = index.getLong(16);
+        maxCreatedAt = index.getLong(24);
+        lastSequence = index.getLong(32);
+        offsets = index.slice(INDEX_HEADER, (indexedPlayers + 1) * 4).asIntBuffer();
+        sealedSlots = index.slice(INDEX_HEADER + (indexedPlayers + 1) * 4,
+                index.capacity() - INDEX_HEADER - (indexedPlayers + 1) * 4).asIntBuffer();
+        sealed = true;
+    }
+}
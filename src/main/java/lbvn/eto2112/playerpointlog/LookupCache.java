@@ -0,0 +1,143 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// LRU cache of lookup results (pages, filtered counts, summaries) bounded by the number of rows
+// it holds. The writer invalidates a player's entries right after committing rows for them, and
+// a per-player stripe version keeps a lookup that raced with that commit from caching its stale result.
+// Keys are also indexed by player so that invalidation costs the touched players' entries, not the cache size.
+class LookupCache {
+
+    private static final int VERSION_STRIPES = 1024;
+
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Set<Key>> keysByPlayer = new HashMap<>();
+    private final long[] versions = new long[VERSION_STRIPES];
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    LookupCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    // null on a miss
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (T) entry.value;
+    }
+
+    // Read before querying and passed back to put(), which drops the result if the player was written since
+    synchronized long version(Key key) {
+        return versions[stripe(key.player)];
+    }
+
+    synchronized void put(Key key, Object value, int rows, long version) {
+        if (versions[stripe(key.player)] != version) return;
+
+        long entryWeight = 1L + rows;
+        if (entryWeight > maxWeight) return;
+
+        Entry previous = entries.put(key, new Entry(value, entryWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        } else {
+            keysByPlayer.computeIfAbsent(key.player, player -> new HashSet<>()).add(key);
+        }
+        weight += entryWeight;
+
+        // Access order puts the least recently used entries first
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            weight -= evicted.getValue().weight;
+            eldest.remove();
+            unindex(evicted.getKey());
+            evictions++;
+        }
+    }
+
+    // Called by the writer after a commit with the player keys it touched
+    synchronized void invalidate(Collection<String> players) {
+        for (String player : players) {
+            versions[stripe(player)]++;
+
+            Set<Key> keys = keysByPlayer.remove(player);
+            if (keys == null) continue;
+            for (Key key : keys) {
+                Entry entry = entries.remove(key);
+                if (entry != null) {
+                    weight -= entry.weight;
+                }
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        for (int i = 0; i < versions.length; i++) {
+            versions[i]++;
+        }
+        entries.clear();
+        keysByPlayer.clear();
+        weight = 0;
+    }
+
+    synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), weight - entries.size());
+    }
+
+    private void unindex(Key key) {
+        Set<Key> keys = keysByPlayer.get(key.player);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByPlayer.remove(key.player);
+        }
+    }
+
+    private static int stripe(String player) {
+        return player.hashCode() & (VERSION_STRIPES - 1);
+    }
+
+    // player is the case-folded player key, shape everything else that selects the result
+    record Key(String player, String shape) {
+
+        static Key page(String playerName, LookupFilter filter, LookupCursor cursor, int page, int itemsPerPage) {
+            String position = cursor != null ? cursor.encode() : "p" + page;
+            return new Key(DatabaseManager.playerKey(playerName),
+                    "page:" + position + ":" + itemsPerPage + ":" + filter.cacheKey());
+        }
+
+        static Key count(String playerName, LookupFilter filter) {
+            return new Key(DatabaseManager.playerKey(playerName), "count:" + filter.cacheKey());
+        }
+
+        static Key summary(String playerName) {
+            return new Key(DatabaseManager.playerKey(playerName), "summary");
+        }
+    }
+
+    record Stats(long hits, long misses, long evictions, int entries, long rows) {
+
+        int hitRatePercent() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (int) (hits * 100 / lookups);
+        }
+    }
+
+    private record Entry(Object value, long weight) {
+    }
+}
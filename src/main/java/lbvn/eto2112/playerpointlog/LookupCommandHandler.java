@@ -10,20 +10,33 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 public class LookupCommandHandler implements CommandExecutor, TabCompleter {
 
     private final PlayerPointLog plugin;
     private static final int ITEMS_PER_PAGE = 5;
-    private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-    private static final DateTimeFormatter OUTPUT_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final DateTimeFormatter OUTPUT_FORMATTER =
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter DAY_FORMATTER =
+            DateTimeFormatter.ofPattern("dd/MM/yyyy").withZone(ZoneId.systemDefault());
+
+    // The display has second resolution; rows from the same second reuse the formatted text
+    private volatile FormattedSecond lastFormatted = new FormattedSecond(Long.MIN_VALUE, "");
+
+    // Neighbouring pages are loaded while the viewer is still reading the current one
+    private final LookupPrefetcher<LookupResult> prefetcher = new LookupPrefetcher<>();
 
     public LookupCommandHandler(PlayerPointLog plugin) {
         this.plugin = plugin;
@@ -42,46 +55,91 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        performLookup(sender, "/plog", args);
+        return true;
+    }
+
+    // Shared by /plog lookup and /playerpointlog lookup: <player> [page] [cursor] [<filter> <value>]...
+    void performLookup(CommandSender sender, String commandBase, String[] args) {
         String playerName = args[1];
         int page = 1;
+        boolean pageGiven = false;
+        LookupCursor cursor = null;
+        List<String> filterTokens = new ArrayList<>();
+
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
 
-        if (args.length >= 3) {
-            try {
-                page = Integer.parseInt(args[2]);
-                if (page < 1) {
-                    sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-page"));
-                    return true;
+            if (LookupFilter.isKeyword(arg)) {
+                if (i + 1 >= args.length) {
+                    sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-filter", "value", arg));
+                    return;
                 }
-            } catch (NumberFormatException e) {
-                sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-number"));
-                return true;
+                filterTokens.add(arg);
+                filterTokens.add(args[++i]);
+            } else if (!pageGiven) {
+                try {
+                    page = Integer.parseInt(arg);
+                    if (page < 1) {
+                        sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-page"));
+                        return;
+                    }
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-number"));
+                    return;
+                }
+                pageGiven = true;
+            } else if (cursor == null) {
+                // Cursor tokens come from the navigation buttons, typed page numbers fall back to offsets
+                cursor = LookupCursor.decode(arg);
+                if (cursor == null) {
+                    sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-cursor"));
+                    return;
+                }
+            } else {
+                sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-filter", "value", arg));
+                return;
             }
         }
 
+        LookupFilter filter;
+        try {
+            filter = LookupFilter.parse(filterTokens, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-invalid-filter", "value", e.getMessage()));
+            return;
+        }
+
         // Async lookup with improved error handling
-        performLookupAsync(sender, playerName, page);
-        return true;
+        performLookupAsync(sender, commandBase, playerName, page, cursor, filter);
     }
 
-    private void performLookupAsync(CommandSender sender, String playerName, int page) {
-        CompletableFuture
-                .supplyAsync(() -> {
-                    try {
-                        List<DatabaseManager.TransactionRecord> transactions =
-                                plugin.getDatabaseManager().getPlayerTransactions(playerName, page, ITEMS_PER_PAGE);
-                        int totalTransactions = plugin.getDatabaseManager().getTotalTransactionCount(playerName);
-                        return new LookupResult(transactions, totalTransactions, true, null);
-                    } catch (Exception e) {
-                        plugin.getLogger().warning("Error during lookup for " + playerName + ": " + e.getMessage());
-                        return new LookupResult(new ArrayList<>(), 0, false, e.getMessage());
-                    }
-                }, plugin.getDatabaseExecutor())
+    private void performLookupAsync(CommandSender sender, String commandBase, String playerName,
+                                    int page, LookupCursor cursor, LookupFilter filter) {
+        String viewer = viewerKey(sender);
+        // A page the viewer's last lookup already fetched in the background skips the round trip
+        CompletableFuture<LookupResult> lookup = prefetcher.take(viewer, requestKey(playerName, page, cursor, filter));
+        if (lookup == null) {
+            // Only loads a viewer asked for count towards the lookup latency; speculative ones are not timed
+            lookup = CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                try {
+                    return loadLookup(playerName, page, cursor, filter);
+                } finally {
+                    plugin.getMetrics().recordLookup(System.nanoTime() - started);
+                }
+            }, plugin.getDatabaseExecutor());
+        }
+
+        lookup
                 .thenAcceptAsync(result -> {
                     if (!result.success()) {
                         sender.sendMessage("§cError retrieving transaction data: " + result.error());
                         return;
                     }
-                    displayTransactions(sender, playerName, result.transactions(), page, result.totalTransactions());
+                    displayTransactions(sender, commandBase, playerName, result.transactions(), page,
+                            result.summary(), result.total(), filter);
+                    prefetchNeighbours(viewer, playerName, page, filter, result);
                 }, runnable -> plugin.getServer().getScheduler().runTask(plugin, runnable))
                 .exceptionally(throwable -> {
                     plugin.getServer().getScheduler().runTask(plugin, () -> {
@@ -92,9 +150,75 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
                 });
     }
 
-    private void displayTransactions(CommandSender sender, String playerName,
-                                     List<DatabaseManager.TransactionRecord> transactions,
-                                     int page, int totalTransactions) {
+    private LookupResult loadLookup(String playerName, int page, LookupCursor cursor, LookupFilter filter) {
+        try {
+            TransactionStore store = plugin.getTransactionStore();
+            List<TransactionStore.TransactionRecord> transactions =
+                    store.getPlayerTransactions(playerName, filter, cursor, page, ITEMS_PER_PAGE);
+            TransactionStore.PlayerSummary summary = store.getPlayerSummary(playerName);
+            // Unfiltered totals are free from the summary; filtered ones count the index range
+            // Daily totals are one line for many transactions, so the summary count no longer gives the pages
+            long total = filter.isEmpty() && !store.hasDailyHistory() ?
+                    (summary != null ? summary.getTransactionCount() : 0) :
+                    store.countPlayerTransactions(playerName, filter);
+            return new LookupResult(transactions, summary, total, true, null);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error during lookup for " + playerName + ": " + e.getMessage());
+            return new LookupResult(new ArrayList<>(), null, 0, false, e.getMessage());
+        }
+    }
+
+    // Queues the pages behind the >> and << buttons of what was just shown, next page first
+    private void prefetchNeighbours(String viewer, String playerName, int page, LookupFilter filter,
+                                    LookupResult result) {
+        List<TransactionStore.TransactionRecord> transactions = result.transactions();
+        int totalPages = Math.max(1, (int) Math.ceil((double) result.total() / ITEMS_PER_PAGE));
+        if (transactions.isEmpty() || totalPages < 2) return;
+
+        Map<String, Supplier<LookupResult>> loads = new LinkedHashMap<>();
+        if (page < totalPages) {
+            TransactionStore.TransactionRecord last = transactions.get(transactions.size() - 1);
+            LookupCursor older = LookupCursor.olderThan(last.getCreatedAt(), last.getId());
+            loads.put(requestKey(playerName, page + 1, older, filter),
+                    () -> loadLookup(playerName, page + 1, older, filter));
+        }
+        if (page > 1) {
+            TransactionStore.TransactionRecord first = transactions.get(0);
+            LookupCursor newer = LookupCursor.newerThan(first.getCreatedAt(), first.getId());
+            loads.put(requestKey(playerName, page - 1, newer, filter),
+                    () -> loadLookup(playerName, page - 1, newer, filter));
+        }
+        prefetcher.speculate(viewer, DatabaseManager.playerKey(playerName), loads);
+    }
+
+    // What a navigation click will ask for; matches the command the footer buttons run
+    private static String requestKey(String playerName, int page, LookupCursor cursor, LookupFilter filter) {
+        return DatabaseManager.playerKey(playerName) + " " + page + " "
+                + (cursor != null ? cursor.encode() : "-") + " " + filter.toArguments();
+    }
+
+    private static String viewerKey(CommandSender sender) {
+        return sender instanceof Player player ? player.getUniqueId().toString() : sender.getName();
+    }
+
+    // Writer thread, after each commit: prefetched pages of the players it wrote to are stale now
+    void onCommitted(List<TransactionStore.TransactionData> transactions) {
+        Set<String> players = new HashSet<>();
+        for (TransactionStore.TransactionData transaction : transactions) {
+            players.add(DatabaseManager.playerKey(transaction.playerReceived));
+            players.add(DatabaseManager.playerKey(transaction.playerSend));
+        }
+        prefetcher.invalidate(players);
+    }
+
+    void shutdown() {
+        prefetcher.shutdown();
+    }
+
+    private void displayTransactions(CommandSender sender, String commandBase, String playerName,
+                                     List<TransactionStore.TransactionRecord> transactions, int page,
+                                     TransactionStore.PlayerSummary summary, long totalTransactions,
+                                     LookupFilter filter) {
         if (transactions.isEmpty()) {
             String message = page == 1 ?
                     plugin.getLanguageManager().getMessage("lookup-no-history", "player", playerName) :
@@ -107,6 +231,16 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
 
         // Header
         sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-header", "player", playerName));
+        if (!filter.isEmpty()) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-filters",
+                    "filters", filter.describe(),
+                    "count", totalTransactions));
+        } else if (summary != null) {
+            sender.sendMessage(plugin.getLanguageManager().getMessage("lookup-summary",
+                    "count", summary.getTransactionCount(),
+                    "received", summary.getTotalReceived(),
+                    "sent", summary.getTotalSent()));
+        }
 
         // Transaction list with optimized processing
         transactions.parallelStream()
@@ -115,15 +249,26 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
 
         // Pagination footer
         if (totalPages > 1) {
-            sendPaginationFooter(sender, playerName, page, totalPages);
+            // Boundary rows of this page become the cursors for its neighbours; filters ride along with
+            // "since 2h" pinned to the window this page was read with
+            TransactionStore.TransactionRecord first = transactions.get(0);
+            TransactionStore.TransactionRecord last = transactions.get(transactions.size() - 1);
+            String filterSuffix = filter.isEmpty() ? "" : " " + filter.toArguments();
+            String newerToken = LookupCursor.newerThan(first.getCreatedAt(), first.getId()).encode() + filterSuffix;
+            String olderToken = LookupCursor.olderThan(last.getCreatedAt(), last.getId()).encode() + filterSuffix;
+            sendPaginationFooter(sender, commandBase, playerName, page, totalPages, newerToken, olderToken);
         } else {
             sender.sendMessage(plugin.getLanguageManager().getMessage("pagination-simple",
                     "page", page, "total", totalPages));
         }
     }
 
-    private String formatTransaction(DatabaseManager.TransactionRecord record) {
-        String formattedTime = formatTimestamp(record.getTimestamp());
+    private String formatTransaction(TransactionStore.TransactionRecord record) {
+        if (record.isDailyTotal()) {
+            return formatDailyTotal(record);
+        }
+
+        String formattedTime = formatTimestamp(record.getCreatedAt());
 
         if ("console".equals(record.getPlayerReceived())) {
             // Console received points from player (player lost points)
@@ -144,7 +289,30 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
         }
     }
 
-    private void sendPaginationFooter(CommandSender sender, String playerName, int currentPage, int totalPages) {
+    // Past the retention horizon: one line per day and counterparty
+    private String formatDailyTotal(TransactionStore.TransactionRecord record) {
+        String date = DAY_FORMATTER.format(Instant.ofEpochMilli(record.getCreatedAt()));
+
+        if ("console".equals(record.getPlayerReceived())) {
+            return plugin.getLanguageManager().getMessage("transaction-lost-daily",
+                    "date", date,
+                    "player", record.getPlayerSend(),
+                    "amount", record.getPointsAmount(),
+                    "receiver", "console",
+                    "count", record.getTransactionCount()
+            );
+        }
+        return plugin.getLanguageManager().getMessage("transaction-received-daily",
+                "date", date,
+                "player", record.getPlayerReceived(),
+                "amount", record.getPointsAmount(),
+                "sender", record.getPlayerSend(),
+                "count", record.getTransactionCount()
+        );
+    }
+
+    private void sendPaginationFooter(CommandSender sender, String commandBase, String playerName,
+                                      int currentPage, int totalPages, String newerToken, String olderToken) {
         if (!(sender instanceof Player)) {
             // For console, send simple text with navigation commands
             sender.sendMessage(plugin.getLanguageManager().getMessage("pagination-simple",
@@ -152,21 +320,23 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
 
             if (currentPage > 1) {
                 sender.sendMessage(plugin.getLanguageManager().getMessage("console-previous",
-                        "player", playerName, "page", (currentPage - 1)));
+                        "player", playerName, "page", (currentPage - 1), "cursor", newerToken));
             }
             if (currentPage < totalPages) {
                 sender.sendMessage(plugin.getLanguageManager().getMessage("console-next",
-                        "player", playerName, "page", (currentPage + 1)));
+                        "player", playerName, "page", (currentPage + 1), "cursor", olderToken));
             }
             return;
         }
 
         // For players, send optimized clickable components
-        TextComponent footer = createNavigationFooter(playerName, currentPage, totalPages);
+        TextComponent footer = createNavigationFooter(commandBase, playerName, currentPage, totalPages,
+                newerToken, olderToken);
         ((Player) sender).spigot().sendMessage(footer);
     }
 
-    private TextComponent createNavigationFooter(String playerName, int currentPage, int totalPages) {
+    private TextComponent createNavigationFooter(String commandBase, String playerName, int currentPage, int totalPages,
+                                                 String newerToken, String olderToken) {
         TextComponent footer = new TextComponent("---------------<<<");
         footer.setColor(net.md_5.bungee.api.ChatColor.GRAY);
 
@@ -175,7 +345,7 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
         if (currentPage > 1) {
             prevButton.setColor(net.md_5.bungee.api.ChatColor.AQUA);
             prevButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,
-                    "/plog lookup " + playerName + " " + (currentPage - 1)));
+                    commandBase + " lookup " + playerName + " " + (currentPage - 1) + " " + newerToken));
             prevButton.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
                     new ComponentBuilder(plugin.getLanguageManager().getMessage("pagination-previous-hover")).create()));
         } else {
@@ -193,7 +363,7 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
         if (currentPage < totalPages) {
             nextButton.setColor(net.md_5.bungee.api.ChatColor.AQUA);
             nextButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,
-                    "/plog lookup " + playerName + " " + (currentPage + 1)));
+                    commandBase + " lookup " + playerName + " " + (currentPage + 1) + " " + olderToken));
             nextButton.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
                     new ComponentBuilder(plugin.getLanguageManager().getMessage("pagination-next-hover")).create()));
         } else {
@@ -208,17 +378,20 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
         return footer;
     }
 
-    private String formatTimestamp(String timestamp) {
-        try {
-            LocalDateTime dateTime = LocalDateTime.parse(timestamp, INPUT_FORMATTER);
-            return dateTime.format(OUTPUT_FORMATTER);
-        } catch (DateTimeParseException e) {
-            // If parsing fails, return the original timestamp
-            plugin.getLogger().fine("Failed to parse timestamp: " + timestamp);
-            return timestamp;
+    private String formatTimestamp(long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        FormattedSecond cached = lastFormatted;
+        if (cached.second() == second) {
+            return cached.text();
         }
+
+        String text = OUTPUT_FORMATTER.format(Instant.ofEpochSecond(second));
+        lastFormatted = new FormattedSecond(second, text);
+        return text;
     }
 
+    private record FormattedSecond(long second, String text) {}
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (!sender.hasPermission("playerpointlog.admin") && !sender.hasPermission("playerpointlog.use")) {
@@ -231,13 +404,36 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
             case 2 -> args[0].equalsIgnoreCase("lookup") ?
                     getOnlinePlayerCompletions(args[1]) : new ArrayList<>();
 
-            case 3 -> args[0].equalsIgnoreCase("lookup") ?
-                    getPageCompletions() : new ArrayList<>();
-
-            default -> new ArrayList<>();
+            default -> args[0].equalsIgnoreCase("lookup") ?
+                    completeLookupArguments(args) : new ArrayList<>();
         };
     }
 
+    // Page numbers and filter keywords after the player, then values for the keyword just typed
+    List<String> completeLookupArguments(String[] args) {
+        String input = args[args.length - 1].toLowerCase();
+        String previous = args[args.length - 2];
+
+        List<String> candidates = new ArrayList<>();
+        if (args.length > 3 && LookupFilter.isKeyword(previous)) {
+            switch (previous.toLowerCase()) {
+                case "since", "until" -> candidates.addAll(List.of("30m", "1h", "6h", "1d", "7d"));
+                case "with" -> candidates.addAll(getOnlinePlayerCompletions(input));
+                case "dir" -> candidates.addAll(List.of("in", "out"));
+                default -> { }
+            }
+        } else {
+            if (args.length == 3) {
+                candidates.addAll(getPageCompletions());
+            }
+            candidates.addAll(LookupFilter.KEYWORDS);
+        }
+
+        return candidates.stream()
+                .filter(candidate -> candidate.toLowerCase().startsWith(input))
+                .toList();
+    }
+
     private List<String> getOnlinePlayerCompletions(String input) {
         String lowerInput = input.toLowerCase();
         return plugin.getServer().getOnlinePlayers().stream()
@@ -253,8 +449,9 @@ public class LookupCommandHandler implements CommandExecutor, TabCompleter {
     }
 
     // Record for better performance and immutability
-    private record LookupResult(List<DatabaseManager.TransactionRecord> transactions,
-                                int totalTransactions,
+    private record LookupResult(List<TransactionStore.TransactionRecord> transactions,
+                                TransactionStore.PlayerSummary summary,
+                                long total,
                                 boolean success,
                                 String error) {}
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package lbvn.eto2112.playerpointlog;
+
+// Opaque keyset position carried by the lookup navigation buttons.
+// A page resumes from the boundary row's (created_at, id) instead of skipping OFFSET rows,
+// so deep pages cost the same as the first one.
+public final class LookupCursor {
+
+    private static final char OLDER = 'o';
+    private static final char NEWER = 'n';
+    private static final char SEPARATOR = '.';
+
+    private final boolean older;
+    private final long createdAt;
+    private final long id;
+
+    private LookupCursor(boolean older, long createdAt, long id) {
+        this.older = older;
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    // Rows strictly older than the given row (next page)
+    public static LookupCursor olderThan(long createdAt, long id) {
+        return new LookupCursor(true, createdAt, id);
+    }
+
+    // Rows strictly newer than the given row (previous page)
+    public static LookupCursor newerThan(long createdAt, long id) {
+        return new LookupCursor(false, createdAt, id);
+    }
+
+    public boolean isOlder() { return older; }
+    public long getCreatedAt() { return createdAt; }
+    public long getId() { return id; }
+
+    public String encode() {
+        return (older ? OLDER : NEWER) + Long.toString(createdAt, Character.MAX_RADIX)
+                + SEPARATOR + Long.toString(id, Character.MAX_RADIX);
+    }
+
+    // Returns null for anything that was not produced by encode()
+    public static LookupCursor decode(String token) {
+        if (token == null || token.length() < 4) return null;
+
+        char direction = token.charAt(0);
+        if (direction != OLDER && direction != NEWER) return null;
+
+        int separator = token.indexOf(SEPARATOR);
+        if (separator < 2) return null;
+
+        try {
+            long createdAt = Long.parseLong(token.substring(1, separator), Character.MAX_RADIX);
+            // Negative ids are daily totals past the retention horizon
+            long id = Long.parseLong(token.substring(separator + 1), Character.MAX_RADIX);
+            return new LookupCursor(direction == OLDER, createdAt, id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Optional narrowing of a lookup: time window, counterparty, direction and amount range.
+// Written as "<keyword> <value>" pairs after the player, e.g. "since 2h with Steve dir in".
+// Each one compiles to a bound parameter on the (player, created_at) index scan.
+public final class LookupFilter {
+
+    public enum Direction { ANY, RECEIVED, SENT }
+
+    public static final List<String> KEYWORDS = List.of("since", "until", "with", "dir", "min", "max");
+    private static final Set<String> KEYWORD_SET = Set.copyOf(KEYWORDS);
+
+    private static final Pattern DURATION = Pattern.compile("(?:\\d+[smhdw])+");
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+)([smhdw])");
+    // Digits only: epoch millis, as navigation buttons pin a relative window
+    private static final Pattern EPOCH_MILLIS = Pattern.compile("\\d+");
+    private static final DateTimeFormatter SHOWN_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static final LookupFilter NONE = new LookupFilter(null, null, null, Direction.ANY, null, null, false, List.of());
+
+    // Epoch millis, since inclusive / until exclusive
+    private final Long since;
+    private final Long until;
+    private final String counterparty;
+    private final Direction direction;
+    private final Integer minAmount;
+    private final Integer maxAmount;
+    // "since 2h" slides with the clock, so its results are never cached
+    private final boolean relative;
+    // As typed, so navigation buttons repeat the same filter
+    private final List<String> tokens;
+
+    private LookupFilter(Long since, Long until, String counterparty, Direction direction,
+                         Integer minAmount, Integer maxAmount, boolean relative, List<String> tokens) {
+        this.since = since;
+        this.until = until;
+        this.counterparty = counterparty;
+        this.direction = direction;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.relative = relative;
+        this.tokens = tokens;
+    }
+
+    // Time range only, for exports; either bound may be null
+    static LookupFilter between(Long since, Long until) {
+        if (since == null && until == null) return NONE;
+        return new LookupFilter(since, until, null, Direction.ANY, null, null, false,
+                List.of("since", String.valueOf(since), "until", String.valueOf(until)));
+    }
+
+    public static boolean isKeyword(String token) {
+        return KEYWORD_SET.contains(token.toLowerCase(Locale.ROOT));
+    }
+
+    // Throws IllegalArgumentException carrying the offending value
+    public static LookupFilter parse(List<String> pairs, long now) {
+        if (pairs.isEmpty()) return NONE;
+
+        Long since = null;
+        Long until = null;
+        String counterparty = null;
+        Direction direction = Direction.ANY;
+        Integer minAmount = null;
+        Integer maxAmount = null;
+        boolean relative = false;
+
+        for (int i = 0; i + 1 < pairs.size(); i += 2) {
+            String value = pairs.get(i + 1);
+            switch (pairs.get(i).toLowerCase(Locale.ROOT)) {
+                case "since" -> {
+                    since = parseTime(value, now);
+                    relative |= isRelativeTime(value);
+                }
+                case "until" -> {
+                    until = parseTime(value, now);
+                    relative |= isRelativeTime(value);
+                }
+                case "with" -> counterparty = value;
+                case "dir" -> direction = parseDirection(value);
+                case "min" -> minAmount = parseAmount(value);
+                case "max" -> maxAmount = parseAmount(value);
+                default -> throw new IllegalArgumentException(pairs.get(i));
+            }
+        }
+
+        return new LookupFilter(since, until, counterparty, direction, minAmount, maxAmount, relative, List.copyOf(pairs));
+    }
+
+    private static boolean isRelativeTime(String value) {
+        return DURATION.matcher(value.toLowerCase(Locale.ROOT)).matches();
+    }
+
+    // "2h", "1d12h" (relative to now), "2024-05-01" or "2024-05-01T20:00" (server time), or epoch millis
+    private static long parseTime(String value, long now) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (DURATION.matcher(lower).matches()) {
+            // Durations too long to express in millis are rejected like any other bad value
+            try {
+                Duration duration = Duration.ZERO;
+                Matcher part = DURATION_PART.matcher(lower);
+                while (part.find()) {
+                    long amount = Long.parseLong(part.group(1));
+                    duration = duration.plus(switch (part.group(2)) {
+                        case "s" -> Duration.ofSeconds(amount);
+                        case "m" -> Duration.ofMinutes(amount);
+                        case "h" -> Duration.ofHours(amount);
+                        case "d" -> Duration.ofDays(amount);
+                        default -> Duration.ofDays(Math.multiplyExact(amount, 7));
+                    });
+                }
+                return Math.subtractExact(now, duration.toMillis());
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException(value);
+            }
+        }
+
+        if (EPOCH_MILLIS.matcher(value).matches()) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(value);
+            }
+        }
+
+        try {
+            LocalDateTime dateTime = value.contains("T") ?
+                    LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(value);
+        }
+    }
+
+    private static Direction parseDirection(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "in" -> Direction.RECEIVED;
+            case "out" -> Direction.SENT;
+            case "any" -> Direction.ANY;
+            default -> throw new IllegalArgumentException(value);
+        };
+    }
+
+    private static Integer parseAmount(String value) {
+        try {
+            int amount = Integer.parseInt(value);
+            if (amount < 0) throw new IllegalArgumentException(value);
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(value);
+        }
+    }
+
+    public boolean isEmpty() {
+        return tokens.isEmpty();
+    }
+
+    // The filter as typed, for display; pinned times are shown as server time. Empty when there is none
+    public String describe() {
+        List<String> shown = new ArrayList<>(tokens);
+        for (int i = 0; i + 1 < shown.size(); i += 2) {
+            if (isTimeKeyword(shown.get(i)) && EPOCH_MILLIS.matcher(shown.get(i + 1)).matches()) {
+                long millis = parseTime(shown.get(i + 1), 0);
+                shown.set(i + 1, SHOWN_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault())));
+            }
+        }
+        return String.join(" ", shown);
+    }
+
+    // The filter as command arguments for navigation buttons. Relative times are replaced by the
+    // bounds they resolved to, so every page of one lookup covers the same window. Empty when there is none
+    public String toArguments() {
+        if (!relative) return String.join(" ", tokens);
+
+        List<String> pinned = new ArrayList<>(tokens);
+        for (int i = 0; i + 1 < pinned.size(); i += 2) {
+            switch (pinned.get(i).toLowerCase(Locale.ROOT)) {
+                case "since" -> pinned.set(i + 1, String.valueOf(since));
+                case "until" -> pinned.set(i + 1, String.valueOf(until));
+                default -> { }
+            }
+        }
+        return String.join(" ", pinned);
+    }
+
+    private static boolean isTimeKeyword(String keyword) {
+        String lower = keyword.toLowerCase(Locale.ROOT);
+        return lower.equals("since") || lower.equals("until");
+    }
+
+    public boolean isCacheable() {
+        return !relative;
+    }
+
+    // Resolved values, so "dir in with Steve" and "with steve dir IN" share a cache entry
+    String cacheKey() {
+        return since + "," + until + "," + (counterparty != null ? DatabaseManager.playerKey(counterparty) : null)
+                + "," + direction + "," + minAmount + "," + maxAmount;
+    }
+
+    public Long getSince() { return since; }
+    public Long getUntil() { return until; }
+    public String getCounterparty() { return counterparty; }
+    public Direction getDirection() { return direction; }
+    public Integer getMinAmount() { return minAmount; }
+    public Integer getMaxAmount() { return maxAmount; }
+}
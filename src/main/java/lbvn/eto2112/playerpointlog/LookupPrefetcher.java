@@ -0,0 +1,137 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+// Speculative loads of the pages a viewer is likely to open next, held in a short-lived
+// per-viewer buffer. A single minimum-priority thread runs them through the read pool, so
+// speculation never competes with the writer and at most one connection is spent on it.
+// Commits drop the buffered pages of the players they touched, with the same per-player
+// stripe versions as the lookup cache catching a speculation that raced with the commit.
+class LookupPrefetcher<T> {
+
+    private static final long BUFFER_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // Beyond this many queued speculations new ones are simply skipped
+    private static final int MAX_QUEUED = 16;
+    private static final int VERSION_STRIPES = 1024;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ViewerBuffer<T>> buffers = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    LookupPrefetcher() {
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED),
+                r -> {
+                    Thread t = new Thread(r, "PlayerPointLog-Prefetch");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+    }
+
+    // The buffered load for this request, or null. Either way the viewer has moved on,
+    // so every other speculation of theirs is cancelled; queued ones never hit the database.
+    CompletableFuture<T> take(String viewer, String requestKey) {
+        ViewerBuffer<T> buffer = buffers.remove(viewer);
+        if (buffer == null) return null;
+
+        CompletableFuture<T> match = null;
+        boolean fresh = buffer.expiresAt > System.currentTimeMillis();
+        for (Speculation<T> speculation : buffer.speculations) {
+            if (match == null && fresh && speculation.requestKey.equals(requestKey)
+                    && !speculation.future.isCompletedExceptionally()) {
+                match = speculation.future;
+            } else {
+                speculation.future.cancel(false);
+            }
+        }
+        return match;
+    }
+
+    // Replaces the viewer's buffer with loads of the given player's pages; they run in the given order
+    void speculate(String viewer, String player, Map<String, Supplier<T>> loads) {
+        long now = System.currentTimeMillis();
+        sweep(now);
+
+        // Read before any load starts; a commit for the player after this point discards them
+        int stripe = stripe(player);
+        long version = versions.get(stripe);
+
+        List<Speculation<T>> speculations = new ArrayList<>(loads.size());
+        for (Map.Entry<String, Supplier<T>> load : loads.entrySet()) {
+            try {
+                speculations.add(new Speculation<>(load.getKey(),
+                        CompletableFuture.supplyAsync(load.getValue(), executor)));
+            } catch (RejectedExecutionException e) {
+                // Busy or shutting down; the click will just load normally
+                break;
+            }
+        }
+        if (speculations.isEmpty()) return;
+
+        ViewerBuffer<T> buffer = new ViewerBuffer<>(player, speculations, now + BUFFER_TTL_MILLIS);
+        ViewerBuffer<T> previous = buffers.put(viewer, buffer);
+        if (previous != null) {
+            previous.cancel();
+        }
+        // A commit that invalidated the player before the buffer was visible would have missed it
+        if (versions.get(stripe) != version && buffers.remove(viewer, buffer)) {
+            buffer.cancel();
+        }
+    }
+
+    // Called by the writer after every commit with the player keys it touched. The versions move
+    // even with no buffer visible, since a speculation may be about to publish one.
+    void invalidate(Collection<String> players) {
+        for (String player : players) {
+            versions.incrementAndGet(stripe(player));
+        }
+        if (buffers.isEmpty()) return;
+
+        buffers.values().removeIf(buffer -> {
+            if (!players.contains(buffer.player)) return false;
+            buffer.cancel();
+            return true;
+        });
+    }
+
+    // Viewers that never clicked leave their buffer behind
+    private void sweep(long now) {
+        buffers.values().removeIf(buffer -> {
+            if (buffer.expiresAt > now) return false;
+            buffer.cancel();
+            return true;
+        });
+    }
+
+    void shutdown() {
+        buffers.values().forEach(ViewerBuffer::cancel);
+        buffers.clear();
+        executor.shutdownNow();
+    }
+
+    private static int stripe(String player) {
+        return player.hashCode() & (VERSION_STRIPES - 1);
+    }
+
+    private record Speculation<T>(String requestKey, CompletableFuture<T> future) {}
+
+    // player is the case-folded key of the player whose pages were speculated
+    private record ViewerBuffer<T>(String player, List<Speculation<T>> speculations, long expiresAt) {
+
+        void cancel() {
+            speculations.forEach(speculation -> speculation.future.cancel(false));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A language message split once into literal text and {placeholder} slots, so rendering is one
+// pass into a single builder instead of a String.replace per placeholder.
+final class MessageTemplate {
+
+    // literals[i] comes before names[i]; the last literal follows the last placeholder
+    private final String[] literals;
+    private final String[] names;
+    private final String text;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, String[] names, String text) {
+        this.literals = literals;
+        this.names = names;
+        this.text = text;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    // Color codes must already be translated; anything that is not {name} stays literal
+    static MessageTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int literalStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int end = text.charAt(i) == '{' ? placeholderEnd(text, i) : -1;
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            literals.add(text.substring(literalStart, i));
+            names.add(text.substring(i + 1, end));
+            literalStart = i = end + 1;
+        }
+        literals.add(text.substring(literalStart));
+        return new MessageTemplate(literals.toArray(new String[0]), names.toArray(new String[0]), text);
+    }
+
+    // Index of the closing brace of a {name} starting at open, or -1
+    private static int placeholderEnd(String text, int open) {
+        for (int i = open + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '}') return i > open + 1 ? i : -1;
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') return -1;
+        }
+        return -1;
+    }
+
+    // placeholders are name/value pairs; a slot with no matching name renders as {name}
+    String render(Object... placeholders) {
+        if (names.length == 0) return text;
+
+        StringBuilder out = new StringBuilder(literalLength + names.length * 16);
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            int index = valueIndex(names[i], placeholders);
+            if (index < 0) {
+                out.append('{').append(names[i]).append('}');
+            } else {
+                appendValue(out, placeholders[index]);
+            }
+        }
+        return out.append(literals[names.length]).toString();
+    }
+
+    private static int valueIndex(String name, Object[] placeholders) {
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            if (name.equals(placeholders[i])) return i + 1;
+        }
+        return -1;
+    }
+
+    // Numbers go straight into the builder rather than through String.valueOf
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value instanceof String string) {
+            out.append(string);
+        } else if (value instanceof Integer number) {
+            out.append(number.intValue());
+        } else if (value instanceof Long number) {
+            out.append(number.longValue());
+        } else {
+            out.append(value);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package lbvn.eto2112.playerpointlog;
+
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Publishes PipelineMetrics in Prometheus text format, on a local HTTP port and/or as a file
+// rewritten on a timer. Both are off unless enabled under "metrics" in config.yml.
+class MetricsExporter {
+
+    private static final String PREFIX = "playerpointlog_";
+
+    private final PlayerPointLog plugin;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private BukkitTask fileTask;
+
+    MetricsExporter(PlayerPointLog plugin) {
+        this.plugin = plugin;
+    }
+
+    // (Re)reads the config; safe to call again after a reload
+    synchronized void start() {
+        stop();
+
+        int port = plugin.getConfig().getInt("metrics.http-port", 0);
+        if (port > 0) {
+            String bind = plugin.getConfig().getString("metrics.http-bind", "127.0.0.1");
+            try {
+                server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                serverExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "PlayerPointLog-Metrics");
+                    t.setDaemon(true);
+                    return t;
+                });
+                server.setExecutor(serverExecutor);
+                server.start();
+                plugin.getLogger().info("Serving metrics on http://" + bind + ":" + port + "/metrics");
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+                stop();
+            }
+        }
+
+        long interval = plugin.getConfig().getLong("metrics.file-interval-seconds", 0);
+        if (interval > 0) {
+            File target = new File(plugin.getDataFolder(), "metrics.prom");
+            fileTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                    () -> writeFile(target), interval * 20L, interval * 20L);
+        }
+    }
+
+    synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+            serverExecutor = null;
+        }
+        if (fileTask != null) {
+            fileTask.cancel();
+            fileTask = null;
+        }
+    }
+
+    // Written beside the target and moved over it, so a collector never reads half a file
+    private void writeFile(File target) {
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try {
+            Files.writeString(temp.toPath(), render());
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not write metrics file: " + e.getMessage());
+        }
+    }
+
+    String render() {
+        PipelineMetrics metrics = plugin.getMetrics();
+        EventRing ring = plugin.getEventRing();
+        TransactionStore database = plugin.getTransactionStore();
+        StringBuilder out = new StringBuilder(4096);
+
+        gauge(out, "queue_depth", "Captured events not yet taken by the writer", ring.size());
+        gauge(out, "queue_capacity", "Slots in the capture ring", ring.capacity());
+        counter(out, "queue_spilled_total", "Events that overflowed the capture ring", ring.getSpilledCount());
+
+        summary(out, "commit_batch_size", "Transactions per group commit", metrics.batchSize, 1);
+        summary(out, "commit_latency_seconds", "Time spent in one group commit", metrics.commitMicros, 1e-6);
+        summary(out, "event_to_durable_seconds", "Capture to committed, per transaction", metrics.durableMillis, 1e-3);
+        summary(out, "lookup_latency_seconds", "Lookup command database time", metrics.lookupMicros, 1e-6);
+
+        counter(out, "commit_failures_total", "Group commits that failed", metrics.getCommitFailures());
+        counter(out, "dropped_transactions_total", "Transactions lost after a failed commit",
+                metrics.getDroppedTransactions());
+        counter(out, "replayed_transactions_total", "Transactions committed from the journal",
+                metrics.getReplayedTransactions());
+        counter(out, "reconnects_total", "Database reconnect attempts", metrics.getReconnects());
+
+        if (database != null) {
+            gauge(out, "database_connected", "1 while both connections are usable", database.isConnected() ? 1 : 0);
+            gauge(out, "read_connections", "Open pooled read connections", database.getOpenReadConnections());
+
+            LookupCache.Stats cache = database.getLookupCacheStats();
+            counter(out, "lookup_cache_hits_total", "Lookup cache hits", cache.hits());
+            counter(out, "lookup_cache_misses_total", "Lookup cache misses", cache.misses());
+            counter(out, "lookup_cache_evictions_total", "Lookup cache evictions", cache.evictions());
+            gauge(out, "lookup_cache_entries", "Cached lookup results", cache.entries());
+            gauge(out, "lookup_cache_rows", "Rows held by the lookup cache", cache.rows());
+        }
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    // scale converts the recorded unit to the exported one (e.g. micros to seconds)
+    private static void summary(StringBuilder out, String name, String help, Histogram histogram, double scale) {
+        header(out, name, help, "summary");
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            out.append(PREFIX).append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(number(histogram.percentile(quantile * 100) * scale)).append('\n');
+        }
+        out.append(PREFIX).append(name).append("_sum ").append(number(histogram.getSum() * scale)).append('\n');
+        out.append(PREFIX).append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.6f", value);
+    }
+}
@@ -0,0 +1,218 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+// Monthly partition files under <data folder>/partitions, one yyyy-MM.db per server-local month
+// of created_at, each holding that month's point_transactions. The main database keeps players,
+// summaries and journal state. A partition is ATTACHed to a connection only while it is needed,
+// as p_yyyy_MM, so ANALYZE, checkpoints and backups of the live month never touch older history.
+final class MonthlyPartitions {
+
+    // SQLite allows 10 attached databases per connection; the least recently used goes first
+    static final int MAX_ATTACHED = 8;
+    private static final DateTimeFormatter FILE_MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String FILE_SUFFIX = ".db";
+
+    private final File directory;
+    private final File archiveDirectory;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final NavigableSet<YearMonth> months = new ConcurrentSkipListSet<>();
+
+    MonthlyPartitions(File dataFolder) {
+        this.directory = new File(dataFolder, "partitions");
+        this.archiveDirectory = new File(directory, "archive");
+    }
+
+    // Picks up the partition files already on disk
+    void scan() {
+        months.clear();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) return;
+        for (File file : files) {
+            YearMonth month = parseMonth(file.getName().substring(0, file.getName().length() - FILE_SUFFIX.length()));
+            if (month != null) months.add(month);
+        }
+    }
+
+    // null for anything that is not yyyy-MM
+    static YearMonth parseMonth(String value) {
+        try {
+            return YearMonth.parse(value, FILE_MONTH);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    YearMonth monthOf(long epochMillis) {
+        return YearMonth.from(Instant.ofEpochMilli(epochMillis).atZone(zone));
+    }
+
+    long startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    long endOf(YearMonth month) {
+        return startOf(month.plusMonths(1));
+    }
+
+    // Oldest first; a live view, safe to read from any thread
+    NavigableSet<YearMonth> months() {
+        return months;
+    }
+
+    File fileOf(YearMonth month) {
+        return new File(directory, FILE_MONTH.format(month) + FILE_SUFFIX);
+    }
+
+    static String schemaOf(YearMonth month) {
+        return "p_" + month.getYear() + "_" + String.format("%02d", month.getMonthValue());
+    }
+
+    // Moves a detached partition (and any leftover WAL files) into partitions/archive
+    File archive(YearMonth month) throws IOException {
+        archiveDirectory.mkdirs();
+        File source = fileOf(month);
+        File target = new File(archiveDirectory, source.getName());
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        for (String suffix : new String[]{"-wal", "-shm"}) {
+            File side = new File(source.getPath() + suffix);
+            if (side.exists()) {
+                Files.move(side.toPath(), new File(target.getPath() + suffix).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        months.remove(month);
+        return target;
+    }
+
+    // Deletes a detached partition that retention has emptied
+    void delete(YearMonth month) throws IOException {
+        File file = fileOf(month);
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(new File(file.getPath() + "-wal").toPath());
+        Files.deleteIfExists(new File(file.getPath() + "-shm").toPath());
+        months.remove(month);
+    }
+
+    List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (YearMonth month : months.descendingSet()) {
+            lines.add(FILE_MONTH.format(month) + " (" + fileOf(month).length() / 1024 + " KB)");
+        }
+        return lines;
+    }
+
+    Attachments attachments(Connection connection, boolean writable, Consumer<String> onDetach) {
+        return new Attachments(connection, writable, onDetach);
+    }
+
+    // What one connection has attached. Owned by whoever owns the connection, so not synchronized.
+    final class Attachments {
+        private final Connection connection;
+        private final boolean writable;
+        // Called with the schema name after a DETACH, to drop statements that reference it
+        private final Consumer<String> onDetach;
+        private final Map<YearMonth, String> attached = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Attachments(Connection connection, boolean writable, Consumer<String> onDetach) {
+            this.connection = connection;
+            this.writable = writable;
+            this.onDetach = onDetach;
+        }
+
+        // Schema name of the month's partition, attaching it first if needed. A writable connection
+        // creates a missing partition; a reader gets null for a month that has no file.
+        String schema(YearMonth month) throws SQLException {
+            String schema = attached.get(month);
+            if (schema != null) return schema;
+
+            File file = fileOf(month);
+            if (!file.exists()) {
+                if (!writable) return null;
+                directory.mkdirs();
+            }
+
+            if (attached.size() >= MAX_ATTACHED) {
+                Iterator<YearMonth> eldest = attached.keySet().iterator();
+                detach(eldest.next());
+            }
+
+            schema = schemaOf(month);
+            try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS " + schema)) {
+                attach.setString(1, file.getAbsolutePath());
+                attach.execute();
+            }
+            attached.put(month, schema);
+
+            if (writable) {
+                createSchema(schema);
+                months.add(month);
+            }
+            return schema;
+        }
+
+        private void createSchema(String schema) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                // auto_vacuum has to be set before the WAL switch and before the first table
+                statement.execute("PRAGMA " + schema + ".auto_vacuum=INCREMENTAL");
+                statement.execute("PRAGMA " + schema + ".journal_mode=WAL");
+                statement.execute("PRAGMA " + schema + ".synchronous=NORMAL");
+                statement.execute("""
+                    CREATE TABLE IF NOT EXISTS %s.point_transactions (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        receiver_id INTEGER NOT NULL,
+                        sender_id INTEGER NOT NULL,
+                        points_amount INTEGER NOT NULL,
+                        created_at INTEGER NOT NULL
+                    )
+                """.formatted(schema));
+                statement.execute("CREATE INDEX IF NOT EXISTS " + schema
+                        + ".idx_tx_receiver_time ON point_transactions(receiver_id, created_at)");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + schema
+                        + ".idx_tx_sender_time ON point_transactions(sender_id, created_at)");
+                // Journal sequence committed with this partition's rows; a crash between the partition's
+                // commit and the main file's must not make replay insert them twice
+                statement.execute("""
+                    CREATE TABLE IF NOT EXISTS %s.partition_state (
+                        id INTEGER PRIMARY KEY CHECK (id = 1),
+                        committed_sequence INTEGER NOT NULL
+                    )
+                """.formatted(schema));
+                statement.execute("INSERT OR IGNORE INTO " + schema + ".partition_state (id, committed_sequence) VALUES (1, 0)");
+            }
+        }
+
+        boolean isAttached(YearMonth month) {
+            return attached.containsKey(month);
+        }
+
+        void detach(YearMonth month) throws SQLException {
+            String schema = attached.remove(month);
+            if (schema == null) return;
+            // Cached statements would otherwise keep the schema busy
+            onDetach.accept(schema);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DETACH DATABASE " + schema);
+            }
+        }
+    }
+}
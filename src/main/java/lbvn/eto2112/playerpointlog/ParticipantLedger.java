@@ -0,0 +1,236 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// Maintenance of player_ledger for DatabaseManager: one entry per participant of every main-table row,
+// clustered by (player, time), so a lookup is a single range read of one B-tree. Partitions are not
+// mirrored and keep using their indexes. The write path copies each batch's new rows, rows that existed
+// before the ledger was enabled are copied in the background, and retention deletes entries with their
+// rows. Everything but isReady() runs on the writer thread, which owns the connection.
+final class ParticipantLedger {
+
+    private static final int BACKFILL_CHUNK = 10000;
+
+    // Ledger entries for the point_transactions ids in (?, ?]
+    private static final String COPY_SQL = """
+            INSERT INTO player_ledger (player_id, created_at, id, counterparty_id, amount, direction)
+            SELECT receiver_id, created_at, id, sender_id, points_amount,
+                   CASE WHEN sender_id = receiver_id THEN 0 ELSE 1 END
+            FROM point_transactions WHERE id > ?1 AND id <= ?2
+            UNION ALL
+            SELECT sender_id, created_at, id, receiver_id, -points_amount, -1
+            FROM point_transactions WHERE id > ?1 AND id <= ?2 AND sender_id <> receiver_id
+            """;
+
+    private final Logger logger;
+    private final ReentrantReadWriteLock connectionLock;
+
+    private boolean enabled;
+    private Connection connection;
+    private PreparedStatement copyStatement;
+    // Lookups read the ledger only once it also holds the rows that existed before it was enabled
+    private volatile boolean ready;
+    private boolean backfillFailed;
+    private long backfillCursor;
+    private long backfillEnd;
+    // Highest point_transactions id already copied into the ledger by the write path
+    private long highWater;
+
+    ParticipantLedger(Logger logger, ReentrantReadWriteLock connectionLock) {
+        this.logger = logger;
+        this.connectionLock = connectionLock;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // Any thread
+    boolean isReady() {
+        return ready;
+    }
+
+    // direction is 1 for the receiver's entry, -1 for the sender's and 0 for a self-transfer, which has
+    // only one entry; amount carries the same sign. Turning the option off drops the ledger, so turning
+    // it on again rebuilds it rather than trusting a copy that missed writes.
+    void create(Statement statement) throws SQLException {
+        ready = false;
+        if (!enabled) {
+            statement.execute("DROP TABLE IF EXISTS player_ledger");
+            statement.execute("DROP TABLE IF EXISTS ledger_state");
+            return;
+        }
+
+        statement.execute("""
+            CREATE TABLE IF NOT EXISTS player_ledger (
+                player_id INTEGER NOT NULL,
+                created_at INTEGER NOT NULL,
+                id INTEGER NOT NULL,
+                counterparty_id INTEGER NOT NULL,
+                amount INTEGER NOT NULL,
+                direction INTEGER NOT NULL,
+                PRIMARY KEY (player_id, created_at DESC, id DESC)
+            ) WITHOUT ROWID
+        """);
+        statement.execute("""
+            CREATE TABLE IF NOT EXISTS ledger_state (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                backfilled_through INTEGER NOT NULL,
+                backfill_end INTEGER NOT NULL
+            )
+        """);
+
+        try (ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM point_transactions")) {
+            highWater = rs.next() ? rs.getLong(1) : 0;
+        }
+        // Rows up to the current maximum predate the ledger and are copied in the background
+        statement.execute("INSERT OR IGNORE INTO ledger_state (id, backfilled_through, backfill_end) VALUES (1, 0, "
+                + highWater + ")");
+        try (ResultSet rs = statement.executeQuery("SELECT backfilled_through, backfill_end FROM ledger_state WHERE id = 1")) {
+            rs.next();
+            backfillCursor = rs.getLong(1);
+            backfillEnd = rs.getLong(2);
+        }
+        ready = backfillCursor >= backfillEnd;
+    }
+
+    // With the write statements, after every (re)connect
+    void prepare(Connection connection) throws SQLException {
+        close();
+        this.connection = connection;
+        if (enabled) {
+            copyStatement = connection.prepareStatement(COPY_SQL);
+        }
+    }
+
+    // Inside the batch's transaction, after its rows are inserted. Returns the new high water mark,
+    // which becomes current only once the transaction commits (see committed).
+    long copyNewRows() throws SQLException {
+        if (copyStatement == null) return highWater;
+
+        long end;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM point_transactions")) {
+            rs.next();
+            end = rs.getLong(1);
+        }
+        if (end > highWater) {
+            copyStatement.setLong(1, highWater);
+            copyStatement.setLong(2, end);
+            copyStatement.executeUpdate();
+        }
+        return end;
+    }
+
+    void committed(long newHighWater) {
+        highWater = newHighWater;
+    }
+
+    // One chunk of pre-existing rows while the ledger is incomplete; false when there is nothing to do
+    boolean backfillStep() {
+        if (!enabled || ready || backfillFailed || connection == null) return false;
+
+        try {
+            backfill();
+            return true;
+        } catch (SQLException e) {
+            // Progress is committed per chunk, so the next start continues where this stopped
+            logger.severe("Ledger backfill paused until restart: " + e.getMessage());
+            backfillFailed = true;
+            return false;
+        }
+    }
+
+    // Copies one chunk, with its progress, in one transaction
+    private void backfill() throws SQLException {
+        connectionLock.readLock().lock();
+        try {
+            if (backfillCursor == 0) {
+                logger.info("Building the participant ledger for " + backfillEnd + " existing transactions in the background...");
+            }
+
+            long upperId = Math.min(backfillCursor + BACKFILL_CHUNK, backfillEnd);
+            connection.setAutoCommit(false);
+            try (PreparedStatement copy = connection.prepareStatement(COPY_SQL);
+                 PreparedStatement progress = connection.prepareStatement(
+                         "UPDATE ledger_state SET backfilled_through = ? WHERE id = 1")) {
+                copy.setLong(1, backfillCursor);
+                copy.setLong(2, upperId);
+                copy.executeUpdate();
+                progress.setLong(1, upperId);
+                progress.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            backfillCursor = upperId;
+            if (backfillCursor >= backfillEnd) {
+                // Cached pages came from the indexes; the ledger returns the same rows, so they stay valid
+                ready = true;
+                logger.info("Participant ledger complete; lookups now read it.");
+            }
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+
+    // Entries of the main-table rows that the retention delete is about to remove. Deleted one key at a
+    // time: SQLite cannot seek the clustered key for a row-value IN over a subquery and would scan it.
+    void deleteEntries(long fromId, long toId, long cutoff) throws SQLException {
+        if (!enabled) return;
+
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT receiver_id, sender_id, created_at, id FROM point_transactions WHERE id > ? AND id <= ? AND created_at < ?");
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM player_ledger WHERE player_id = ? AND created_at = ? AND id = ?")) {
+            select.setLong(1, fromId);
+            select.setLong(2, toId);
+            select.setLong(3, cutoff);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    int receiverId = rs.getInt(1);
+                    int senderId = rs.getInt(2);
+                    long createdAt = rs.getLong(3);
+                    long id = rs.getLong(4);
+                    addDelete(delete, receiverId, createdAt, id);
+                    if (senderId != receiverId) {
+                        addDelete(delete, senderId, createdAt, id);
+                    }
+                }
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private static void addDelete(PreparedStatement delete, int playerId, long createdAt, long id) throws SQLException {
+        delete.setInt(1, playerId);
+        delete.setLong(2, createdAt);
+        delete.setLong(3, id);
+        delete.addBatch();
+    }
+
+    void close() {
+        if (copyStatement != null) {
+            try {
+                copyStatement.close();
+            } catch (SQLException e) {
+                // Ignore close errors
+            }
+            copyStatement = null;
+        }
+    }
+}
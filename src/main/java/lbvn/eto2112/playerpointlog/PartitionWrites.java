@@ -0,0 +1,225 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// The write connection's side of monthly partitions: attaching the months a batch writes to, their
+// insert and journal state statements, where replay resumes after a crash, and moving a partition's
+// totals into or out of player_summary. Writer thread only, like the connection.
+final class PartitionWrites {
+
+    private final MonthlyPartitions partitions;
+    private final Connection connection;
+    private final MonthlyPartitions.Attachments attachments;
+    // Per partition schema, prepared on first use and closed when it is detached
+    private final Map<String, PreparedStatement> inserts = new HashMap<>();
+    private final Map<String, PreparedStatement> stateUpdates = new HashMap<>();
+
+    PartitionWrites(MonthlyPartitions partitions, Connection connection) {
+        this.partitions = partitions;
+        this.connection = connection;
+        this.attachments = partitions.attachments(connection, true, this::forgetStatements);
+    }
+
+    MonthlyPartitions.Attachments attachments() {
+        return attachments;
+    }
+
+    // A batch whose rows all go to the main table
+    Batch mainTable(PreparedStatement mainInsert, long mainCommitted) {
+        return new Batch(new TreeMap<>(), mainInsert, mainCommitted, Map.of());
+    }
+
+    // The months a batch writes to, oldest first, in groups that can all be attached at once
+    List<List<YearMonth>> monthGroups(List<TransactionStore.TransactionData> transactions) {
+        TreeSet<YearMonth> months = new TreeSet<>();
+        for (TransactionStore.TransactionData data : transactions) {
+            months.add(partitions.monthOf(data.createdAt));
+        }
+
+        List<List<YearMonth>> groups = new ArrayList<>();
+        List<YearMonth> group = new ArrayList<>(MonthlyPartitions.MAX_ATTACHED);
+        for (YearMonth month : months) {
+            if (group.size() == MonthlyPartitions.MAX_ATTACHED) {
+                groups.add(group);
+                group = new ArrayList<>(MonthlyPartitions.MAX_ATTACHED);
+            }
+            group.add(month);
+        }
+        groups.add(group);
+        return groups;
+    }
+
+    // A batch whose rows go to the partition of their month, for one group from monthGroups. ATTACH is
+    // not allowed inside a transaction, so the months are attached here, before it starts; a replay also
+    // reads what each one already holds. Every month of the group is touched here, so attaching the
+    // next one only ever detaches a month outside it.
+    Batch attach(List<YearMonth> months, PreparedStatement mainInsert, long mainCommitted,
+                 boolean replay) throws SQLException {
+        TreeMap<Long, String> schemas = new TreeMap<>();
+        for (YearMonth month : months) {
+            schemas.put(partitions.startOf(month), attachments.schema(month));
+        }
+
+        Map<String, Long> committed = new HashMap<>();
+        if (replay) {
+            try (Statement statement = connection.createStatement()) {
+                for (String schema : schemas.values()) {
+                    committed.put(schema, committedSequence(statement, schema));
+                }
+            }
+        }
+        return new Batch(schemas, mainInsert, mainCommitted, committed);
+    }
+
+    // The main file commits before attached ones, so a crash in between leaves partitions of its last batch
+    // behind it; replay resumes from the lowest state among them. months is journal_state.partition_months.
+    long resumeSequence(long mainSequence, String months) throws SQLException {
+        if (months == null) return mainSequence;
+
+        long sequence = mainSequence;
+        try (Statement statement = connection.createStatement()) {
+            for (String value : months.split(",")) {
+                YearMonth month = MonthlyPartitions.parseMonth(value);
+                // Archived or deleted since; nothing can be missing from it any more
+                if (month == null || !partitions.months().contains(month)) continue;
+                sequence = Math.min(sequence, committedSequence(statement, attachments.schema(month)));
+            }
+        }
+        return sequence;
+    }
+
+    private static long committedSequence(Statement statement, String schema) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT committed_sequence FROM " + schema + ".partition_state WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Adds one partition's rows on top of the rebuilt totals (sign 1), or takes them back out before
+    // it is archived (sign -1). Each partition commits on its own because it has to be attached outside
+    // a transaction; the writer runs nothing else in between. first/last seen only ever widen.
+    void addSummary(YearMonth month, int sign) throws SQLException {
+        String schema = attachments.schema(month);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                INSERT INTO player_summary (player_id, transaction_count, total_received, total_sent, first_seen, last_seen)
+                SELECT player_id, %2$d * COUNT(*), %2$d * SUM(received), %2$d * SUM(sent), MIN(created_at), MAX(created_at)
+                FROM (
+                    SELECT receiver_id AS player_id, points_amount AS received,
+                           CASE WHEN sender_id = receiver_id THEN points_amount ELSE 0 END AS sent, created_at
+                    FROM %1$s.point_transactions
+                    UNION ALL
+                    SELECT sender_id, 0, points_amount, created_at
+                    FROM %1$s.point_transactions
+                    WHERE sender_id <> receiver_id
+                )
+                GROUP BY player_id
+                ON CONFLICT(player_id) DO UPDATE SET
+                    transaction_count = transaction_count + excluded.transaction_count,
+                    total_received = total_received + excluded.total_received,
+                    total_sent = total_sent + excluded.total_sent,
+                    first_seen = MIN(first_seen, excluded.first_seen),
+                    last_seen = MAX(last_seen, excluded.last_seen)
+            """.formatted(schema, sign));
+        }
+    }
+
+    private PreparedStatement insert(String schema) throws SQLException {
+        PreparedStatement statement = inserts.get(schema);
+        if (statement == null) {
+            statement = connection.prepareStatement("INSERT INTO " + schema
+                    + ".point_transactions (receiver_id, sender_id, points_amount, created_at) VALUES (?, ?, ?, ?)");
+            inserts.put(schema, statement);
+        }
+        return statement;
+    }
+
+    private PreparedStatement stateUpdate(String schema) throws SQLException {
+        PreparedStatement statement = stateUpdates.get(schema);
+        if (statement == null) {
+            statement = connection.prepareStatement("UPDATE " + schema
+                    + ".partition_state SET committed_sequence = MAX(committed_sequence, ?) WHERE id = 1");
+            stateUpdates.put(schema, statement);
+        }
+        return statement;
+    }
+
+    private void forgetStatements(String schema) {
+        closeStatement(inserts.remove(schema));
+        closeStatement(stateUpdates.remove(schema));
+    }
+
+    void close() {
+        inserts.values().forEach(PartitionWrites::closeStatement);
+        stateUpdates.values().forEach(PartitionWrites::closeStatement);
+        inserts.clear();
+        stateUpdates.clear();
+    }
+
+    private static void closeStatement(PreparedStatement statement) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Ignore close errors
+            }
+        }
+    }
+
+    // Where each row of one batch goes and, for a replay, what that file already holds
+    final class Batch {
+        // Keyed by month start for floorEntry lookups; empty when every row goes to the main table
+        private final TreeMap<Long, String> schemas;
+        private final PreparedStatement mainInsert;
+        private final long mainCommitted;
+        private final Map<String, Long> committed;
+
+        private Batch(TreeMap<Long, String> schemas, PreparedStatement mainInsert, long mainCommitted,
+                      Map<String, Long> committed) {
+            this.schemas = schemas;
+            this.mainInsert = mainInsert;
+            this.mainCommitted = mainCommitted;
+            this.committed = committed;
+        }
+
+        PreparedStatement insert(long createdAt) throws SQLException {
+            return schemas.isEmpty() ? mainInsert : PartitionWrites.this.insert(schemas.floorEntry(createdAt).getValue());
+        }
+
+        // Replay only: the journal sequence the row's file has committed through
+        long committedSequence(long createdAt) {
+            return schemas.isEmpty() ? mainCommitted : committed.get(schemas.floorEntry(createdAt).getValue());
+        }
+
+        // For journal_state.partition_months; null when only the main table was written
+        String months() {
+            if (schemas.isEmpty()) return null;
+            StringJoiner months = new StringJoiner(",");
+            for (long start : schemas.keySet()) {
+                months.add(partitions.monthOf(start).toString());
+            }
+            return months.toString();
+        }
+
+        // Records the sequence in every partition of the batch, in the same transaction as its rows
+        void markCommitted(long journalSequence) throws SQLException {
+            for (String schema : new HashSet<>(schemas.values())) {
+                PreparedStatement update = stateUpdate(schema);
+                update.setLong(1, journalSequence);
+                update.executeUpdate();
+            }
+        }
+    }
+}
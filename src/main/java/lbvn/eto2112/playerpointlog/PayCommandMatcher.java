@@ -0,0 +1,88 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Pay command aliases ("p pay", "money pay", ...) compiled into a case-insensitive prefix trie.
+// Matching walks the raw message in place: a command that is not a pay costs a few char
+// comparisons and allocates nothing, which matters because every chat command passes through.
+// Immutable once built, so the main thread and the writer can share one instance.
+final class PayCommandMatcher {
+
+    static final List<String> DEFAULT_ALIASES = List.of("p pay", "points pay", "playerpoints pay");
+
+    private final Node root = new Node();
+
+    PayCommandMatcher(List<String> aliases) {
+        for (String alias : aliases) {
+            String normalized = normalize(alias);
+            if (normalized.isEmpty()) continue;
+            Node node = root;
+            for (int i = 0; i < normalized.length(); i++) {
+                node = node.childOrCreate(normalized.charAt(i));
+            }
+            node.terminal = true;
+        }
+    }
+
+    static PayCommandMatcher defaults() {
+        return new PayCommandMatcher(DEFAULT_ALIASES);
+    }
+
+    // Lowercase, single spaces, no leading slash
+    private static String normalize(String alias) {
+        String trimmed = alias.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return trimmed.startsWith("/") ? trimmed.substring(1).trim() : trimmed;
+    }
+
+    // Start of the target name in "/<alias> <target> ...", or -1 when the message is not a pay
+    int targetStart(String message) {
+        if (message.isEmpty() || message.charAt(0) != '/') return -1;
+
+        Node node = root;
+        int length = message.length();
+        for (int i = 1; i < length; i++) {
+            char c = message.charAt(i);
+            // An alias only counts as a whole word followed by a non-empty target
+            if (c == ' ' && node.terminal && i + 1 < length && message.charAt(i + 1) != ' ') {
+                return i + 1;
+            }
+            node = node.child(Character.toLowerCase(c));
+            if (node == null) return -1;
+        }
+        return -1;
+    }
+
+    // End (exclusive) of the word starting at start
+    static int wordEnd(String message, int start) {
+        int end = message.indexOf(' ', start);
+        return end < 0 ? message.length() : end;
+    }
+
+    // Children in small parallel arrays; aliases share few prefixes, so a scan beats hashing
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        Node child(char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) return children[i];
+            }
+            return null;
+        }
+
+        Node childOrCreate(char key) {
+            Node existing = child(key);
+            if (existing != null) return existing;
+
+            int size = keys.length;
+            keys = Arrays.copyOf(keys, size + 1);
+            children = Arrays.copyOf(children, size + 1);
+            keys[size] = key;
+            children[size] = new Node();
+            return children[size];
+        }
+    }
+}
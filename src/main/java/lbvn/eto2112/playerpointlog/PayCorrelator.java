@@ -0,0 +1,268 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+// Turns raw ring events into transactions: resolves player names and pairs a
+// "/p pay" command with the PlayerPoints change that follows it.
+// Pending pays are queued per target in arrival order and expired by a hashed timing wheel
+// driven by event time, so concurrent pays to one player are each attributed to their own
+// sender and memory stays bounded by the pay rate over the window.
+// Only the writer thread touches it, so nothing here is synchronized.
+class PayCorrelator {
+
+    private static final long PAY_WINDOW_MILLIS = 3000;
+    // Oldest pays are dropped beyond this, even inside the window
+    private static final int MAX_PENDING_PER_TARGET = 32;
+
+    // 64 slots of 100ms cover twice the pay window, so a slot is always swept after its pays expire
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SLOTS = 64;
+
+    private final BooleanSupplier usePlayerName;
+    private final Supplier<PayCommandMatcher> payCommands;
+    private final Map<UUID, String> names = new HashMap<>();
+    private final Map<String, UUID> idsByName = new HashMap<>();
+    private final Map<UUID, PayQueue> pendingPays = new HashMap<>();
+    private final PendingPay[] wheel = new PendingPay[WHEEL_SLOTS];
+    // Tick the wheel has been swept up to; -1 until the first event
+    private long currentTick = -1;
+
+    PayCorrelator(BooleanSupplier usePlayerName, Supplier<PayCommandMatcher> payCommands) {
+        this.usePlayerName = usePlayerName;
+        this.payCommands = payCommands;
+    }
+
+    // Returns the transaction this event produces, or null if it only updates state
+    TransactionStore.TransactionData accept(EventRing.Slot event) {
+        advance(event.getCapturedAt());
+        switch (event.getType()) {
+            case EventRing.PLAYER_JOIN:
+                rememberName(event.getPlayerId(), event.getName());
+                return null;
+            case EventRing.PAY_COMMAND:
+                recordPay(event);
+                return null;
+            case EventRing.POINTS_CHANGE:
+                return toTransaction(event);
+            default:
+                return null;
+        }
+    }
+
+    private void rememberName(UUID playerId, String name) {
+        String previous = names.put(playerId, name);
+        if (previous != null && !previous.equals(name)) {
+            idsByName.remove(previous.toLowerCase(Locale.ROOT), playerId);
+        }
+        idsByName.put(name.toLowerCase(Locale.ROOT), playerId);
+    }
+
+    private void recordPay(EventRing.Slot event) {
+        String message = event.getText();
+        rememberName(event.getPlayerId(), event.getName());
+
+        // Re-matched here in case the aliases were reloaded since the command was captured
+        int targetStart = payCommands.get().targetStart(message);
+        if (targetStart < 0) return;
+        int targetEnd = PayCommandMatcher.wordEnd(message, targetStart);
+
+        long expiresAt = event.getCapturedAt() + PAY_WINDOW_MILLIS;
+        if (expiresAt / TICK_MILLIS < currentTick) return;
+
+        String senderName = usePlayerName.getAsBoolean() ?
+                event.getName() : event.getPlayerId().toString();
+        String target = message.substring(targetStart, targetEnd).toLowerCase(Locale.ROOT);
+        PendingPay pay = new PendingPay(targetKey(target), senderName, event.getPlayerId(),
+                parseAmount(message, targetEnd + 1), expiresAt);
+
+        PayQueue queue = pendingPays.computeIfAbsent(pay.target, key -> new PayQueue());
+        if (queue.size >= MAX_PENDING_PER_TARGET) {
+            remove(queue.oldest);
+        }
+        queue.append(pay);
+        schedule(pay);
+    }
+
+    // A target that has not joined since startup is queued under a key derived from its name
+    private UUID targetKey(String lowerName) {
+        UUID playerId = idsByName.get(lowerName);
+        return playerId != null ? playerId : nameKey(lowerName);
+    }
+
+    private static UUID nameKey(String lowerName) {
+        return UUID.nameUUIDFromBytes(("pay-target:" + lowerName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The word at start, parsed in place; -1 when missing or not a plain number, which matches any amount
+    private static int parseAmount(String message, int start) {
+        if (start >= message.length()) return -1;
+        try {
+            return Integer.parseInt(message, start, PayCommandMatcher.wordEnd(message, start), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private TransactionStore.TransactionData toTransaction(EventRing.Slot event) {
+        UUID playerId = event.getPlayerId();
+        String name = names.get(playerId);
+        String playerIdentifier = usePlayerName.getAsBoolean() && name != null ?
+                name : playerId.toString();
+
+        int change = event.getChange();
+        if (change > 0) {
+            // Player received points - check for a pay command issued just before
+            PendingPay pending = match(pendingPays.get(playerId), change, event.getCapturedAt());
+            if (pending == null && name != null && !pendingPays.isEmpty()) {
+                pending = match(pendingPays.get(nameKey(name.toLowerCase(Locale.ROOT))), change, event.getCapturedAt());
+            }
+
+            String sender = "console";
+            UUID senderUuid = null;
+            if (pending != null) {
+                sender = pending.senderName;
+                senderUuid = pending.senderUuid;
+                remove(pending);
+            }
+
+            return new TransactionStore.TransactionData(playerIdentifier, sender, change, playerId, senderUuid,
+                    event.getCapturedAt());
+        } else if (change < 0) {
+            // Player lost points
+            return new TransactionStore.TransactionData("console", playerIdentifier, -change, null, playerId,
+                    event.getCapturedAt());
+        }
+        return null;
+    }
+
+    // Oldest live pay of exactly this amount, else the oldest live pay whose amount was unreadable
+    private static PendingPay match(PayQueue queue, int amount, long at) {
+        if (queue == null) return null;
+        PendingPay fallback = null;
+        for (PendingPay pay = queue.oldest; pay != null; pay = pay.newer) {
+            if (pay.expiresAt <= at) continue;
+            if (pay.amount == amount) return pay;
+            if (pay.amount < 0 && fallback == null) fallback = pay;
+        }
+        return fallback;
+    }
+
+    // Idle-time sweep; events advance the wheel themselves
+    void expire(long now) {
+        advance(now);
+    }
+
+    // Sweeps every slot whose tick has fully passed. Pays from a later lap (only possible after a
+    // long gap between events) fail the time check and stay where they are.
+    private void advance(long now) {
+        long tick = now / TICK_MILLIS;
+        if (currentTick < 0) {
+            currentTick = tick;
+            return;
+        }
+        if (tick <= currentTick) return;
+
+        long sweepFrom = Math.max(currentTick, tick - WHEEL_SLOTS);
+        for (long t = sweepFrom; t < tick; t++) {
+            PendingPay pay = wheel[(int) (t & (WHEEL_SLOTS - 1))];
+            while (pay != null) {
+                PendingPay next = pay.nextInSlot;
+                if (pay.expiresAt <= now) remove(pay);
+                pay = next;
+            }
+        }
+        currentTick = tick;
+    }
+
+    private void schedule(PendingPay pay) {
+        int slot = (int) ((pay.expiresAt / TICK_MILLIS) & (WHEEL_SLOTS - 1));
+        pay.slot = slot;
+        pay.nextInSlot = wheel[slot];
+        if (wheel[slot] != null) wheel[slot].prevInSlot = pay;
+        wheel[slot] = pay;
+    }
+
+    private void remove(PendingPay pay) {
+        if (pay.prevInSlot != null) {
+            pay.prevInSlot.nextInSlot = pay.nextInSlot;
+        } else {
+            wheel[pay.slot] = pay.nextInSlot;
+        }
+        if (pay.nextInSlot != null) pay.nextInSlot.prevInSlot = pay.prevInSlot;
+
+        PayQueue queue = pendingPays.get(pay.target);
+        if (queue != null && queue.unlink(pay)) {
+            pendingPays.remove(pay.target);
+        }
+    }
+
+    // Pays still waiting for their points change
+    int pendingCount() {
+        int count = 0;
+        for (PayQueue queue : pendingPays.values()) {
+            count += queue.size;
+        }
+        return count;
+    }
+
+    void clearPending() {
+        pendingPays.clear();
+        Arrays.fill(wheel, null);
+    }
+
+    // Pending pays for one target, oldest first
+    private static class PayQueue {
+        PendingPay oldest;
+        PendingPay newest;
+        int size;
+
+        void append(PendingPay pay) {
+            pay.older = newest;
+            if (newest != null) {
+                newest.newer = pay;
+            } else {
+                oldest = pay;
+            }
+            newest = pay;
+            size++;
+        }
+
+        // Returns true once the queue is empty
+        boolean unlink(PendingPay pay) {
+            if (pay.older != null) pay.older.newer = pay.newer; else oldest = pay.newer;
+            if (pay.newer != null) pay.newer.older = pay.older; else newest = pay.older;
+            size--;
+            return size == 0;
+        }
+    }
+
+    // Linked into its target's queue and into one wheel slot, so matching and expiry are both O(1) removals
+    private static class PendingPay {
+        final UUID target;
+        final String senderName;
+        final UUID senderUuid;
+        final int amount;
+        final long expiresAt;
+
+        PendingPay older;
+        PendingPay newer;
+        PendingPay prevInSlot;
+        PendingPay nextInSlot;
+        int slot;
+
+        PendingPay(UUID target, String senderName, UUID senderUuid, int amount, long expiresAt) {
+            this.target = target;
+            this.senderName = senderName;
+            this.senderUuid = senderUuid;
+            this.amount = amount;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters and histograms for capture -> commit -> lookup. Owned by the plugin so they survive
+// reloads; recording never allocates, so it stays on the writer's and lookups' hot paths.
+public final class PipelineMetrics {
+
+    final Histogram batchSize = new Histogram();
+    final Histogram commitMicros = new Histogram();
+    // Capture to durable commit, per transaction
+    final Histogram durableMillis = new Histogram();
+    final Histogram lookupMicros = new Histogram();
+
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong commitFailures = new AtomicLong();
+    // Transactions lost after a failed commit with no journal to fall back on
+    private final AtomicLong droppedTransactions = new AtomicLong();
+    // Transactions committed late from the journal after a failed commit or a crash
+    private final AtomicLong replayedTransactions = new AtomicLong();
+
+    void recordCommit(int transactions, long nanos) {
+        batchSize.record(transactions);
+        commitMicros.record(nanos / 1000);
+    }
+
+    void recordDurable(long capturedAt, long committedAt) {
+        durableMillis.record(committedAt - capturedAt);
+    }
+
+    void recordCommitFailure() {
+        commitFailures.incrementAndGet();
+    }
+
+    void recordDropped(int transactions) {
+        droppedTransactions.addAndGet(transactions);
+    }
+
+    void recordReplayed(long transactions) {
+        replayedTransactions.addAndGet(transactions);
+    }
+
+    void recordReconnect() {
+        reconnects.incrementAndGet();
+    }
+
+    void recordLookup(long nanos) {
+        lookupMicros.record(nanos / 1000);
+    }
+
+    long getReconnects() { return reconnects.get(); }
+    long getCommitFailures() { return commitFailures.get(); }
+    long getDroppedTransactions() { return droppedTransactions.get(); }
+    long getReplayedTransactions() { return replayedTransactions.get(); }
+}
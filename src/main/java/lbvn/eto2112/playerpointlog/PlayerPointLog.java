@@ -8,30 +8,36 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PlayerPointLog extends JavaPlugin implements Listener {
 
-    private DatabaseManager databaseManager;
+    private volatile TransactionStore transactionStore;
     private CommandHandler commandHandler;
     private LookupCommandHandler lookupCommandHandler;
     private LanguageManager languageManager;
 
-    // High-performance concurrent structures
-    private final ConcurrentHashMap<String, PendingTransaction> pendingTransactions =
-            new ConcurrentHashMap<>(32, 0.75f, 8);
+    // Preallocated capture ring; event handlers only publish raw fields into it
+    private final EventRing eventRing = new EventRing(8192);
+    // Pipeline counters and histograms; kept across reloads
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private MetricsExporter metricsExporter;
+    private TransactionExporter transactionExporter;
+    // Name resolution and pay matching, owned by the writer thread
+    private final PayCorrelator payCorrelator = new PayCorrelator(
+            () -> this.configCache.usePlayerName, () -> this.configCache.payCommands);
 
     // Dedicated thread pool for database operations
     private ExecutorService databaseExecutor;
 
-    // Batched transaction queue for better performance
-    private final BlockingQueue<DatabaseManager.TransactionData> transactionQueue = new LinkedBlockingQueue<>(1000);
-    private BukkitTask batchProcessor;
+    // Single writer thread that group-commits captured transactions
+    private TransactionWriter transactionWriter;
     private final AtomicBoolean isShuttingDown = new AtomicBoolean(false);
 
     // Configuration cache to avoid repeated file reads
@@ -64,15 +70,26 @@ public class PlayerPointLog extends JavaPlugin implements Listener {
                 }
         );
 
-        databaseManager = new DatabaseManager(this);
-        if (!databaseManager.initialize()) {
+        transactionStore = createTransactionStore();
+        if (!transactionStore.initialize()) {
             getLogger().severe("Failed to initialize database! Disabling plugin...");
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
 
-        // Start batch processor for improved performance
-        startBatchProcessor();
+        // Start the writer; it reads the store through the getter so reloads can swap it
+        // Batches are journaled under the data folder before they are committed
+        TransactionJournal journal = new TransactionJournal(new File(getDataFolder(), "journal"), getLogger());
+        // Commits also drop the lookup pages prefetched for the players they touched
+        transactionWriter = new TransactionWriter(eventRing, payCorrelator, journal, this::getTransactionStore,
+                getLogger(), metrics, this::onBatchCommitted);
+        transactionWriter.start();
+
+        // Players already online (e.g. after /reload) never fire a join event
+        long now = System.currentTimeMillis();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            eventRing.publishJoin(player.getUniqueId(), player.getName(), now);
+        }
 
         getServer().getPluginManager().registerEvents(this, this);
 
@@ -82,6 +99,11 @@ public class PlayerPointLog extends JavaPlugin implements Listener {
         getCommand("playerpointlog").setExecutor(commandHandler);
         getCommand("plog").setExecutor(lookupCommandHandler);
 
+        metricsExporter = new MetricsExporter(this);
+        metricsExporter.start();
+
+        transactionExporter = new TransactionExporter(this);
+
         getLogger().info("PlayerPointLog enabled with optimized performance!");
     }
 
@@ -89,141 +111,65 @@ public class PlayerPointLog extends JavaPlugin implements Listener {
         configCache = new ConfigCache(
                 getConfig().getBoolean("log-console", true),
                 getConfig().getBoolean("log-take", true),
-                getConfig().getBoolean("use-player-name", true)
+                getConfig().getBoolean("use-player-name", true),
+                payCommandMatcher(getConfig().getStringList("pay-aliases"))
         );
     }
 
-    private void startBatchProcessor() {
-        // Process transactions in batches every 50ms for optimal performance
-        batchProcessor = getServer().getScheduler().runTaskTimerAsynchronously(this,
-                this::processBatchedTransactions, 1L, 1L);
-    }
-
-    private void processBatchedTransactions() {
-        if (isShuttingDown.get() || transactionQueue.isEmpty()) return;
-
-        // Process up to 50 transactions per batch to balance performance and responsiveness
-        final int maxBatchSize = 50;
-        final DatabaseManager.TransactionData[] batch = new DatabaseManager.TransactionData[maxBatchSize];
-        int batchSize = 0;
-
-        // Drain available transactions into batch
-        while (batchSize < maxBatchSize) {
-            DatabaseManager.TransactionData transaction = transactionQueue.poll();
-            if (transaction == null) break;
-            batch[batchSize++] = transaction;
-        }
-
-        if (batchSize == 0) return;
-
-        // Submit batch to database executor
-        final int finalBatchSize = batchSize;
-        databaseExecutor.submit(() -> {
-            try {
-                databaseManager.logTransactionsBatch(batch, finalBatchSize);
-            } catch (Exception e) {
-                getLogger().severe("Error processing transaction batch: " + e.getMessage());
-            }
-        });
+    // An empty or missing list keeps the PlayerPoints defaults
+    private static PayCommandMatcher payCommandMatcher(List<String> aliases) {
+        return new PayCommandMatcher(aliases.isEmpty() ? PayCommandMatcher.DEFAULT_ALIASES : aliases);
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
         String message = event.getMessage();
 
-        // Ultra-fast pre-filtering
-        if (message.length() < 8 || !message.contains(" pay ")) return;
-
-        String command = message.toLowerCase();
-        if (!(command.startsWith("/p pay ") || command.startsWith("/points pay ") ||
-                command.startsWith("/playerpoints pay "))) return;
-
-        // Efficient argument parsing
-        String[] args = message.split(" ", 4);
-        if (args.length < 3) return;
+        // Alias trie walk without allocating; the amount and target key are parsed on the writer thread
+        if (configCache.payCommands.targetStart(message) < 0 || isShuttingDown.get()) return;
 
-        String targetPlayer = args[2].toLowerCase();
-        String senderName = configCache.usePlayerName ?
-                event.getPlayer().getName() : event.getPlayer().getUniqueId().toString();
+        Player player = event.getPlayer();
+        eventRing.publishPayCommand(player.getUniqueId(), player.getName(), message, System.currentTimeMillis());
+    }
 
-        // Store with expiration timestamp for automatic cleanup
-        long expirationTime = System.currentTimeMillis() + 3000; // 3 seconds
-        pendingTransactions.put(targetPlayer,
-                new PendingTransaction(senderName, expirationTime));
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        eventRing.publishJoin(player.getUniqueId(), player.getName(), System.currentTimeMillis());
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerPointsChange(PlayerPointsChangeEvent event) {
-        if (!configCache.logConsole) return;
-
-        Player player = Bukkit.getPlayer(event.getPlayerId());
-        String playerIdentifier = configCache.usePlayerName && player != null ?
-                player.getName() : event.getPlayerId().toString();
+        if (!configCache.logConsole || isShuttingDown.get()) return;
 
         int change = event.getChange();
-        long currentTime = System.currentTimeMillis();
-
-        if (change > 0) {
-            // Player received points - check for pending transaction
-            String lowerPlayerName = playerIdentifier.toLowerCase();
-            PendingTransaction pending = pendingTransactions.get(lowerPlayerName);
+        if (change == 0 || (change < 0 && !configCache.logTake)) return;
 
-            String sender = "console";
-            if (pending != null && pending.expirationTime > currentTime) {
-                sender = pending.senderName;
-                pendingTransactions.remove(lowerPlayerName);
-            }
-
-            // Queue transaction for batched processing
-            queueTransaction(new DatabaseManager.TransactionData(playerIdentifier, sender, change));
-
-        } else if (change < 0 && configCache.logTake) {
-            // Player lost points
-            int amount = -change;
-            queueTransaction(new DatabaseManager.TransactionData("console", playerIdentifier, amount));
-        }
-    }
-
-    private void queueTransaction(DatabaseManager.TransactionData transaction) {
-        if (isShuttingDown.get()) return;
-
-        // Non-blocking queue insertion with fallback
-        if (!transactionQueue.offer(transaction)) {
-            // Queue is full, process immediately to prevent data loss
-            databaseExecutor.submit(() -> {
-                try {
-                    databaseManager.logTransaction(
-                            transaction.playerReceived,
-                            transaction.playerSend,
-                            transaction.pointsAmount
-                    );
-                } catch (Exception e) {
-                    getLogger().severe("Error logging immediate transaction: " + e.getMessage());
-                }
-            });
-        }
-    }
-
-    // Clean up expired pending transactions periodically
-    public void cleanupExpiredTransactions() {
-        if (pendingTransactions.isEmpty()) return;
-
-        long currentTime = System.currentTimeMillis();
-        pendingTransactions.entrySet().removeIf(entry ->
-                entry.getValue().expirationTime <= currentTime);
+        // Claim a slot and publish; names and senders are resolved by the writer
+        eventRing.publishPointsChange(event.getPlayerId(), change, System.currentTimeMillis());
     }
 
     @Override
     public void onDisable() {
         isShuttingDown.set(true);
 
-        // Cancel batch processor
-        if (batchProcessor != null) {
-            batchProcessor.cancel();
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
+
+        // Let the writer commit whatever is still queued
+        if (transactionWriter != null) {
+            transactionWriter.shutdown(10, TimeUnit.SECONDS);
+        }
+
+        if (lookupCommandHandler != null) {
+            lookupCommandHandler.shutdown();
         }
 
-        // Process remaining queued transactions
-        processRemainingTransactions();
+        // A running export is cut short before the store closes under it
+        if (transactionExporter != null) {
+            transactionExporter.shutdown();
+        }
 
         // Shutdown executor gracefully
         if (databaseExecutor != null) {
@@ -238,25 +184,16 @@ public class PlayerPointLog extends JavaPlugin implements Listener {
             }
         }
 
-        if (databaseManager != null) {
-            databaseManager.close();
+        if (transactionStore != null) {
+            transactionStore.close();
         }
     }
 
-    private void processRemainingTransactions() {
-        getLogger().info("Processing remaining " + transactionQueue.size() + " transactions...");
-
-        DatabaseManager.TransactionData transaction;
-        while ((transaction = transactionQueue.poll()) != null) {
-            try {
-                databaseManager.logTransaction(
-                        transaction.playerReceived,
-                        transaction.playerSend,
-                        transaction.pointsAmount
-                );
-            } catch (Exception e) {
-                getLogger().warning("Failed to process final transaction: " + e.getMessage());
-            }
+    // Writer thread; the lookup handler is created after the writer has started
+    private void onBatchCommitted(List<TransactionStore.TransactionData> transactions) {
+        LookupCommandHandler handler = lookupCommandHandler;
+        if (handler != null) {
+            handler.onCommitted(transactions);
         }
     }
 
@@ -285,55 +222,76 @@ public class PlayerPointLog extends JavaPlugin implements Listener {
         }
     }
 
-    public DatabaseManager getDatabaseManager() { return databaseManager; }
+    // storage.type picks a shared server database; for SQLite, storage.shards above 1 spreads players
+    // over that many files with a writer each
+    private TransactionStore createTransactionStore() {
+        String type = getConfig().getString("storage.type", "sqlite");
+        JdbcTransactionStore.Dialect dialect = JdbcTransactionStore.Dialect.of(type);
+        if (dialect != null) return new JdbcTransactionStore(this, dialect);
+        if (type.equalsIgnoreCase("binlog")) return new SegmentLogStore(this);
+        if (!type.equalsIgnoreCase("sqlite")) {
+            getLogger().warning("Unknown storage.type '" + type + "', using sqlite.");
+        }
+
+        int shards = getConfig().getInt("storage.shards", 1);
+        return shards > 1 ? new ShardedDatabaseManager(this, shards) : new DatabaseManager(this);
+    }
+
+    public TransactionStore getTransactionStore() { return transactionStore; }
     public LanguageManager getLanguageManager() { return languageManager; }
+    public LookupCommandHandler getLookupCommandHandler() { return lookupCommandHandler; }
     public ExecutorService getDatabaseExecutor() { return databaseExecutor; }
-
-    public void reload() {
-        // Async reload to prevent server lag
-        databaseExecutor.submit(() -> {
+    public TransactionWriter getTransactionWriter() { return transactionWriter; }
+    public PipelineMetrics getMetrics() { return metrics; }
+    public EventRing getEventRing() { return eventRing; }
+    TransactionExporter getTransactionExporter() { return transactionExporter; }
+
+    // Completes on the writer thread once the reload has run: true when the store came back up,
+    // exceptionally when the reload itself failed
+    public CompletableFuture<Boolean> reload() {
+        // Runs on the writer thread so no batch is committed while the database is swapped
+        return transactionWriter.submit(() -> {
             try {
                 // Update configuration
                 reloadConfig();
                 updateConfigCache();
 
                 languageManager.reload();
-                pendingTransactions.clear();
+                // Safe here: this task runs on the writer thread that owns the correlator
+                payCorrelator.clearPending();
 
-                if (databaseManager != null) {
-                    databaseManager.close();
+                if (transactionStore != null) {
+                    transactionStore.close();
                 }
 
-                databaseManager = new DatabaseManager(this);
-                if (!databaseManager.initialize()) {
+                transactionStore = createTransactionStore();
+                boolean initialized = transactionStore.initialize();
+                if (!initialized) {
                     getLogger().severe("Failed to reinitialize database during reload!");
                 }
+
+                // Picks up changed metrics settings
+                metricsExporter.start();
+                return initialized;
             } catch (Exception e) {
                 getLogger().severe("Error during reload: " + e.getMessage());
+                throw e;
             }
         });
     }
 
     // Inner classes for better performance and memory usage
-    private static class PendingTransaction {
-        final String senderName;
-        final long expirationTime;
-
-        PendingTransaction(String senderName, long expirationTime) {
-            this.senderName = senderName;
-            this.expirationTime = expirationTime;
-        }
-    }
-
     private static class ConfigCache {
         final boolean logConsole;
         final boolean logTake;
         final boolean usePlayerName;
+        final PayCommandMatcher payCommands;
 
-        ConfigCache(boolean logConsole, boolean logTake, boolean usePlayerName) {
+        ConfigCache(boolean logConsole, boolean logTake, boolean usePlayerName, PayCommandMatcher payCommands) {
             this.logConsole = logConsole;
             this.logTake = logTake;
             this.usePlayerName = usePlayerName;
+            this.payCommands = payCommands;
         }
     }
 }
\ No newline at end of file
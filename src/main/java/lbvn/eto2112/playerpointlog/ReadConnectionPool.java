@@ -0,0 +1,274 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Query-only connections for lookups. In WAL mode every reader sees its own snapshot,
+// so concurrent lookups run in parallel with each other and with the writer's commits.
+// Connections are opened on demand up to the limit and keep their prepared statements.
+class ReadConnectionPool {
+
+    private static final long BORROW_TIMEOUT_MILLIS = 5000;
+    // Idle connections older than this are checked before being handed out again
+    private static final long VALIDATE_AFTER_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+    // Filter combinations and partition spans each give their own SQL text, so the per-connection
+    // statement cache keeps only the most recently used ones
+    static final int MAX_CACHED_STATEMENTS = 64;
+
+    private final String url;
+    private final int maxConnections;
+    private final Logger logger;
+
+    // Most recently returned first, so a quiet server keeps reusing the same warm connection
+    private final ArrayDeque<Session> idle = new ArrayDeque<>();
+    private int open;
+    private boolean closed;
+
+    ReadConnectionPool(String databasePath, int maxConnections, Logger logger) {
+        this.url = "jdbc:sqlite:" + databasePath;
+        this.maxConnections = maxConnections;
+        this.logger = logger;
+    }
+
+    // Waits up to BORROW_TIMEOUT_MILLIS for a free connection; use with try-with-resources
+    Session borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + BORROW_TIMEOUT_MILLIS;
+
+        while (true) {
+            Session session;
+            synchronized (this) {
+                while (true) {
+                    if (closed) throw new SQLException("Read connection pool is closed");
+
+                    session = idle.pollFirst();
+                    if (session != null) break;
+
+                    if (open < maxConnections) {
+                        open++;
+                        break;
+                    }
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SQLException("Timed out waiting for a read connection (" + maxConnections + " in use)");
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted waiting for a read connection");
+                    }
+                }
+            }
+
+            // Opening and validating happen outside the monitor so they never block other borrowers
+            if (session == null) {
+                try {
+                    return new Session(openConnection());
+                } catch (SQLException e) {
+                    synchronized (this) {
+                        open--;
+                        notify();
+                    }
+                    throw e;
+                }
+            }
+
+            if (isHealthy(session)) {
+                return session;
+            }
+            logger.warning("Discarding a broken read connection");
+            discard(session);
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            // Readers can never take the write lock, not even by accident
+            statement.execute("PRAGMA query_only=ON");
+            statement.execute("PRAGMA cache_size=-16000");     // 16MB page cache each
+            statement.execute("PRAGMA temp_store=MEMORY");
+            statement.execute("PRAGMA mmap_size=536870912");   // Shared with the other connections via the OS
+            statement.execute("PRAGMA busy_timeout=30000");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private boolean isHealthy(Session session) {
+        try {
+            if (session.connection.isClosed()) return false;
+            if (System.currentTimeMillis() - session.releasedAt < VALIDATE_AFTER_MILLIS) return true;
+            return session.connection.isValid(VALIDATE_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(Session session) {
+        if (session.broken) {
+            discard(session);
+            return;
+        }
+
+        session.releasedAt = System.currentTimeMillis();
+        synchronized (this) {
+            if (!closed) {
+                idle.addFirst(session);
+                notify();
+                return;
+            }
+            open--;
+        }
+        session.closeQuietly();
+    }
+
+    private void discard(Session session) {
+        session.closeQuietly();
+        synchronized (this) {
+            open--;
+            notify();
+        }
+    }
+
+    // Drops every cached statement, for when the schema changes under them.
+    // Callers make sure nothing is borrowed (DatabaseManager holds its write lock).
+    synchronized void clearStatements() {
+        for (Session session : idle) {
+            session.closeStatements();
+        }
+    }
+
+    // Detaches a partition from every idle connection, before its file is moved or deleted.
+    // Callers make sure nothing is borrowed (DatabaseManager holds its write lock).
+    synchronized void detachPartition(YearMonth month) {
+        Iterator<Session> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (session.partitions == null) continue;
+            try {
+                session.partitions.detach(month);
+            } catch (SQLException e) {
+                iterator.remove();
+                session.closeQuietly();
+                open--;
+            }
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    synchronized int getOpenConnections() {
+        return open;
+    }
+
+    // Borrowed sessions are closed when they come back
+    synchronized void close() {
+        closed = true;
+        for (Session session : idle) {
+            session.closeQuietly();
+        }
+        open -= idle.size();
+        idle.clear();
+        notifyAll();
+    }
+
+    // One borrowed connection; only the borrowing thread touches it until close() returns it
+    final class Session implements AutoCloseable {
+        private final Connection connection;
+        // Access order; the least recently used statement is closed when the cache is full
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= MAX_CACHED_STATEMENTS) return false;
+                        closeStatement(eldest.getValue());
+                        return true;
+                    }
+                };
+        private MonthlyPartitions.Attachments partitions;
+        private long releasedAt = System.currentTimeMillis();
+        private boolean broken;
+
+        private Session(Connection connection) {
+            this.connection = connection;
+        }
+
+        // Cached per connection, keyed by SQL text, up to MAX_CACHED_STATEMENTS
+        PreparedStatement statement(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        // Partitions this connection has attached; a detach drops the cached statements with it
+        MonthlyPartitions.Attachments partitions(MonthlyPartitions monthlyPartitions) {
+            if (partitions == null) {
+                partitions = monthlyPartitions.attachments(connection, false, schema -> closeStatements());
+            }
+            return partitions;
+        }
+
+        // Closes the connection on return instead of pooling it, after an error on it
+        void invalidate() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        private void closeStatements() {
+            for (PreparedStatement statement : statements.values()) {
+                closeStatement(statement);
+            }
+            statements.clear();
+        }
+
+        private static void closeStatement(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Ignore close errors
+            }
+        }
+
+        // Statements currently held by this connection
+        int cachedStatements() {
+            return statements.size();
+        }
+
+        private void closeQuietly() {
+            closeStatements();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Ignore close errors
+            }
+        }
+    }
+}
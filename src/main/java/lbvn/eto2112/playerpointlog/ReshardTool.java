@@ -0,0 +1,396 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Rewrites the data folder for a different storage.shards, with the server stopped:
+//   java -cp PlayerPointLog.jar:sqlite-jdbc-3.45.2.0.jar lbvn.eto2112.playerpointlog.ReshardTool <plugin folder> <shards>
+// The new layout is built in reshard-tmp, then swapped in; the old files are kept in reshard-backup-<time>.
+// Raw rows, daily totals and monthly partitions are copied, and player summaries are rebuilt.
+public final class ReshardTool {
+
+    private static final int BATCH_SIZE = 5000;
+
+    private final File dataFolder;
+    private final int targetShards;
+    private final Logger logger = Logger.getLogger("PlayerPointLog-Reshard");
+
+    private ReshardTool(File dataFolder, int targetShards) {
+        this.dataFolder = dataFolder;
+        this.targetShards = targetShards;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: ReshardTool <plugin folder> <shards>  (1 = a single database file)");
+            System.exit(2);
+        }
+        int shards;
+        try {
+            shards = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            shards = 0;
+        }
+        if (shards < 1) {
+            System.err.println("Shard count must be 1 or more");
+            System.exit(2);
+        }
+        new ReshardTool(new File(args[0]), shards).run();
+    }
+
+    private void run() throws Exception {
+        int sourceShards = ShardedDatabaseManager.existingShardCount(dataFolder);
+        if (sourceShards == 0 && !new File(dataFolder, DatabaseManager.DATABASE_FILE).exists()) {
+            throw new IllegalStateException("No database found in " + dataFolder);
+        }
+        if (Math.max(sourceShards, 1) == targetShards) {
+            System.out.println("The data folder already has " + targetShards + " shard(s), nothing to do.");
+            return;
+        }
+
+        File work = new File(dataFolder, "reshard-tmp");
+        if (work.exists()) {
+            throw new IllegalStateException(work + " exists from an earlier run; delete it first");
+        }
+
+        List<File> sources = folders(dataFolder, sourceShards);
+        List<File> targets = folders(work, targetShards);
+        // The new shards start from the lowest state of any source. A source can be behind the others
+        // because it saw no newer transactions, which is harmless; entries still in the journal above that
+        // state are not, since some sources already hold them and replaying would copy them twice.
+        long journalSequence = Long.MAX_VALUE;
+        for (File source : sources) {
+            journalSequence = Math.min(journalSequence, replayFrom(source));
+        }
+        if (journalHoldsEntriesAfter(journalSequence)) {
+            throw new IllegalStateException("The journal still holds transactions that are not committed everywhere. "
+                    + "Start the server once so the journal is replayed, stop it cleanly, then reshard.");
+        }
+
+        for (int shard = 0; shard < targets.size(); shard++) {
+            File target = targets.get(shard);
+            System.out.printf("Building shard %d/%d...%n", shard + 1, targets.size());
+            createEmpty(target);
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + new File(target, DatabaseManager.DATABASE_FILE))) {
+                long rows = copyInto(connection, target, shard, sources, sourceShards);
+                setJournalSequence(connection, target, journalSequence);
+                System.out.printf("  %d rows%n", rows);
+            }
+            rebuildSummary(target);
+        }
+
+        swap(work, sourceShards);
+        System.out.println("Done. Set storage.shards: " + targetShards + " in config.yml before starting the server.");
+    }
+
+    // The unsharded layout is the data folder itself
+    private static List<File> folders(File root, int shards) {
+        List<File> folders = new ArrayList<>();
+        if (shards <= 1) {
+            folders.add(root);
+        } else {
+            for (int i = 0; i < shards; i++) {
+                folders.add(ShardedDatabaseManager.shardFolder(root, i));
+            }
+        }
+        return folders;
+    }
+
+    // Lets DatabaseManager create the schema, so the copy always matches what the plugin expects
+    private void createEmpty(File folder) {
+        DatabaseManager database = new DatabaseManager(folder, logger, 0);
+        if (!database.initialize()) {
+            throw new IllegalStateException("Could not create a database in " + folder);
+        }
+        database.close();
+    }
+
+    private void rebuildSummary(File folder) throws SQLException {
+        DatabaseManager database = new DatabaseManager(folder, logger, 0);
+        if (!database.initialize()) {
+            throw new IllegalStateException("Could not open " + folder);
+        }
+        try {
+            database.rebuildPlayerSummary();
+        } finally {
+            database.close();
+        }
+    }
+
+    // Stages this shard's rows from every source, then inserts them in time order so ids keep following
+    // created_at (retention relies on that). A row is read only from the shard of its old receiver,
+    // since sharded sources hold each row twice, and kept when either participant maps to this shard.
+    private long copyInto(Connection target, File targetFolder, int shard, List<File> sources,
+                          int sourceShards) throws SQLException {
+        try (Statement statement = target.createStatement()) {
+            statement.execute("""
+                CREATE TEMP TABLE staged_rows (
+                    month TEXT, receiver_key TEXT NOT NULL, sender_key TEXT NOT NULL,
+                    points_amount INTEGER NOT NULL, created_at INTEGER NOT NULL
+                )
+            """);
+            statement.execute("""
+                CREATE TEMP TABLE staged_daily (
+                    receiver_key TEXT NOT NULL, sender_key TEXT NOT NULL, day_start INTEGER NOT NULL,
+                    transaction_count INTEGER NOT NULL, points_total INTEGER NOT NULL
+                )
+            """);
+            statement.execute("CREATE TEMP TABLE staged_players (name_key TEXT PRIMARY KEY, display_name TEXT NOT NULL, uuid TEXT)");
+        }
+
+        for (int i = 0; i < sources.size(); i++) {
+            stageSource(target, sources.get(i), shard, i, sourceShards);
+        }
+
+        return insertStaged(target, targetFolder);
+    }
+
+    // Players, main table, daily totals and monthly partitions of one source folder
+    private void stageSource(Connection target, File source, int shard, int sourceIndex,
+                             int sourceShards) throws SQLException {
+        attach(target, "src", new File(source, DatabaseManager.DATABASE_FILE));
+        try {
+            fillShardMap(target, shard, sourceIndex, sourceShards);
+            try (Statement statement = target.createStatement()) {
+                statement.executeUpdate("""
+                    INSERT OR IGNORE INTO temp.staged_players (name_key, display_name, uuid)
+                    SELECT name_key, display_name, uuid FROM src.players
+                """);
+                statement.executeUpdate("""
+                    INSERT INTO temp.staged_daily (receiver_key, sender_key, day_start, transaction_count, points_total)
+                    SELECT r.name_key, s.name_key, f.day_start, f.transaction_count, f.points_total
+                    FROM src.daily_player_flow f
+                    JOIN src.players r ON r.id = f.receiver_id
+                    JOIN src.players s ON s.id = f.sender_id
+                    JOIN temp.shard_map mr ON mr.name_key = r.name_key
+                    JOIN temp.shard_map ms ON ms.name_key = s.name_key
+                    WHERE mr.primary_copy = 1 AND (mr.in_shard = 1 OR ms.in_shard = 1)
+                """);
+            }
+            stageRows(target, "src.point_transactions", null);
+
+            // Partition rows refer to the players of the main file attached above
+            MonthlyPartitions partitions = new MonthlyPartitions(source);
+            partitions.scan();
+            for (YearMonth month : partitions.months()) {
+                attach(target, "srcp", partitions.fileOf(month));
+                try {
+                    stageRows(target, "srcp.point_transactions", month);
+                } finally {
+                    detach(target, "srcp");
+                }
+            }
+        } finally {
+            detach(target, "src");
+        }
+    }
+
+    // Per player key of the attached source: whether rows they received are this source's copy (sharded
+    // sources hold each row twice) and whether the key maps to the target shard. Filled from Java,
+    // since SQL cannot call the hash.
+    private void fillShardMap(Connection target, int shard, int sourceIndex, int sourceShards) throws SQLException {
+        try (Statement statement = target.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS temp.shard_map");
+            statement.execute("CREATE TEMP TABLE shard_map (name_key TEXT PRIMARY KEY, primary_copy INTEGER NOT NULL, in_shard INTEGER NOT NULL)");
+            try (ResultSet rs = statement.executeQuery("SELECT name_key FROM src.players");
+                 PreparedStatement insert = target.prepareStatement("INSERT INTO temp.shard_map VALUES (?, ?, ?)")) {
+                int pending = 0;
+                while (rs.next()) {
+                    String key = rs.getString(1);
+                    boolean primaryCopy = sourceShards <= 1 || ShardedDatabaseManager.shardOf(key, sourceShards) == sourceIndex;
+                    boolean inShard = targetShards <= 1 || ShardedDatabaseManager.shardOf(key, targetShards) == shard;
+                    insert.setString(1, key);
+                    insert.setInt(2, primaryCopy ? 1 : 0);
+                    insert.setInt(3, inShard ? 1 : 0);
+                    insert.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    // month is null for the main table
+    private void stageRows(Connection target, String table, YearMonth month) throws SQLException {
+        try (PreparedStatement statement = target.prepareStatement("""
+                INSERT INTO temp.staged_rows (month, receiver_key, sender_key, points_amount, created_at)
+                SELECT ?, r.name_key, s.name_key, t.points_amount, t.created_at
+                FROM %s t
+                JOIN src.players r ON r.id = t.receiver_id
+                JOIN src.players s ON s.id = t.sender_id
+                JOIN temp.shard_map mr ON mr.name_key = r.name_key
+                JOIN temp.shard_map ms ON ms.name_key = s.name_key
+                WHERE mr.primary_copy = 1 AND (mr.in_shard = 1 OR ms.in_shard = 1)
+                """.formatted(table))) {
+            statement.setString(1, month != null ? month.toString() : null);
+            statement.executeUpdate();
+        }
+    }
+
+    private long insertStaged(Connection target, File targetFolder) throws SQLException {
+        long rows = 0;
+        target.setAutoCommit(false);
+        try (Statement statement = target.createStatement()) {
+            // Only players that appear in this shard's rows
+            statement.executeUpdate("""
+                INSERT OR IGNORE INTO players (name_key, display_name, uuid)
+                SELECT p.name_key, p.display_name, p.uuid FROM temp.staged_players p
+                WHERE p.name_key IN (
+                    SELECT receiver_key FROM temp.staged_rows UNION SELECT sender_key FROM temp.staged_rows
+                    UNION SELECT receiver_key FROM temp.staged_daily UNION SELECT sender_key FROM temp.staged_daily
+                )
+            """);
+            rows += statement.executeUpdate("""
+                INSERT INTO point_transactions (receiver_id, sender_id, points_amount, created_at)
+                SELECT r.id, s.id, t.points_amount, t.created_at FROM temp.staged_rows t
+                JOIN players r ON r.name_key = t.receiver_key
+                JOIN players s ON s.name_key = t.sender_key
+                WHERE t.month IS NULL
+                ORDER BY t.created_at
+            """);
+            statement.executeUpdate("""
+                INSERT INTO daily_player_flow (receiver_id, sender_id, day_start, transaction_count, points_total)
+                SELECT r.id, s.id, t.day_start, SUM(t.transaction_count), SUM(t.points_total) FROM temp.staged_daily t
+                JOIN players r ON r.name_key = t.receiver_key
+                JOIN players s ON s.name_key = t.sender_key
+                GROUP BY 1, 2, 3
+            """);
+            target.commit();
+        } catch (SQLException e) {
+            target.rollback();
+            throw e;
+        } finally {
+            target.setAutoCommit(true);
+        }
+
+        // Partitions are attached outside a transaction, one month at a time
+        List<YearMonth> months = new ArrayList<>();
+        try (Statement statement = target.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT DISTINCT month FROM temp.staged_rows WHERE month IS NOT NULL ORDER BY 1")) {
+            while (rs.next()) {
+                months.add(YearMonth.parse(rs.getString(1)));
+            }
+        }
+        MonthlyPartitions.Attachments partitions = new MonthlyPartitions(targetFolder).attachments(target, true, schema -> {});
+        for (YearMonth month : months) {
+            String schema = partitions.schema(month);
+            try (PreparedStatement statement = target.prepareStatement("""
+                    INSERT INTO %s.point_transactions (receiver_id, sender_id, points_amount, created_at)
+                    SELECT r.id, s.id, t.points_amount, t.created_at FROM temp.staged_rows t
+                    JOIN players r ON r.name_key = t.receiver_key
+                    JOIN players s ON s.name_key = t.sender_key
+                    WHERE t.month = ?
+                    ORDER BY t.created_at
+                    """.formatted(schema))) {
+                statement.setString(1, month.toString());
+                rows += statement.executeUpdate();
+            }
+            partitions.detach(month);
+        }
+        return rows;
+    }
+
+    // Where the plugin would resume replay; below the main file's state when a partition is behind it
+    private long replayFrom(File folder) {
+        DatabaseManager database = new DatabaseManager(folder, logger, 0);
+        if (!database.initialize()) {
+            throw new IllegalStateException("Could not open " + folder);
+        }
+        try {
+            long sequence = database.getJournalSequence();
+            if (sequence < 0) {
+                throw new IllegalStateException("Could not read the journal state in " + folder);
+            }
+            return sequence;
+        } finally {
+            database.close();
+        }
+    }
+
+    private boolean journalHoldsEntriesAfter(long sequence) throws IOException {
+        TransactionJournal journal = new TransactionJournal(new File(dataFolder, "journal"), logger);
+        journal.open(sequence, sequence);
+        try {
+            return journal.hasUncommitted();
+        } finally {
+            journal.close();
+        }
+    }
+
+    // Every shard starts from the same sequence, so the journal is not replayed again
+    private static void setJournalSequence(Connection target, File targetFolder, long sequence) throws SQLException {
+        try (PreparedStatement statement = target.prepareStatement(
+                "UPDATE journal_state SET committed_sequence = ? WHERE id = 1")) {
+            statement.setLong(1, sequence);
+            statement.executeUpdate();
+        }
+        MonthlyPartitions partitions = new MonthlyPartitions(targetFolder);
+        partitions.scan();
+        MonthlyPartitions.Attachments attachments = partitions.attachments(target, true, schema -> {});
+        for (YearMonth month : partitions.months()) {
+            try (PreparedStatement statement = target.prepareStatement(
+                    "UPDATE " + attachments.schema(month) + ".partition_state SET committed_sequence = ? WHERE id = 1")) {
+                statement.setLong(1, sequence);
+                statement.executeUpdate();
+            }
+            attachments.detach(month);
+        }
+    }
+
+    private static void attach(Connection connection, String schema, File file) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("ATTACH DATABASE ? AS " + schema)) {
+            statement.setString(1, file.getAbsolutePath());
+            statement.execute();
+        }
+    }
+
+    private static void detach(Connection connection, String schema) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DETACH DATABASE " + schema);
+        }
+    }
+
+    // Old files to reshard-backup-<time>, then the new layout into place
+    private void swap(File work, int sourceShards) throws IOException {
+        File backup = new File(dataFolder, "reshard-backup-" + System.currentTimeMillis());
+        Files.createDirectories(backup.toPath());
+        if (sourceShards > 0) {
+            move(new File(dataFolder, ShardedDatabaseManager.SHARDS_FOLDER), backup);
+        } else {
+            for (String name : new String[]{DatabaseManager.DATABASE_FILE, DatabaseManager.DATABASE_FILE + "-wal",
+                    DatabaseManager.DATABASE_FILE + "-shm", "partitions"}) {
+                move(new File(dataFolder, name), backup);
+            }
+        }
+
+        try (Stream<Path> files = Files.list(work.toPath())) {
+            for (Path path : files.toList()) {
+                move(path.toFile(), dataFolder);
+            }
+        }
+        Files.delete(work.toPath());
+        System.out.println("Previous files kept in " + backup);
+    }
+
+    private static void move(File file, File folder) throws IOException {
+        if (file.exists()) {
+            Files.move(file.toPath(), new File(folder, file.getName()).toPath());
+        }
+    }
+}
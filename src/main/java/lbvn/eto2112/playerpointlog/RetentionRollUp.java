@@ -0,0 +1,249 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// Retention for DatabaseManager: rows older than the horizon are rolled up into daily_player_flow and
+// deleted, one short transaction per maintenance step, first in the main table and then in every
+// partition that starts before the cutoff. Freed pages go back to the file system afterwards.
+// Writer thread only, like the write connection it runs on.
+final class RetentionRollUp {
+
+    static final long DAY_MILLIS = 86_400_000L;
+    private static final int CHUNK_SIZE = 5000;
+    private static final long INTERVAL_MILLIS = 10 * 60 * 1000;
+    private static final int VACUUM_CHUNK_PAGES = 1000;
+
+    // What a pass changes outside the tables it rolls up
+    interface Listener {
+        // Main-table rows in (fromId, toId] older than cutoff are deleted right after this, in the same transaction
+        void deletingMainRows(long fromId, long toId, long cutoff) throws SQLException;
+
+        // Rows went into daily totals, so any player's cached pages may be stale
+        void rolledUp();
+
+        // The partition lies wholly before the cutoff and is empty now
+        void partitionEmptied(YearMonth month) throws SQLException, IOException;
+    }
+
+    private final Logger logger;
+    private final MonthlyPartitions partitions;
+    private final ReentrantReadWriteLock connectionLock;
+    private final Listener listener;
+
+    private Connection connection;
+    private MonthlyPartitions.Attachments writePartitions;
+    private boolean incrementalVacuum;
+
+    // Rows older than this many millis are rolled up; 0 keeps everything
+    private long retentionMillis;
+    private boolean failed;
+    private long nextPassAt;
+    // Last rowid handled by the running pass, -1 between passes
+    private long cursor = -1;
+    private long cutoff;
+    private long zoneOffset;
+    private long rolledUp;
+    private boolean vacuumPending;
+    // Partition months the running pass still has to visit, oldest first
+    private final ArrayDeque<YearMonth> pendingMonths = new ArrayDeque<>();
+    // Partition the pass is in; null while it is in the main table
+    private YearMonth month;
+
+    RetentionRollUp(Logger logger, MonthlyPartitions partitions, ReentrantReadWriteLock connectionLock, Listener listener) {
+        this.logger = logger;
+        this.partitions = partitions;
+        this.connectionLock = connectionLock;
+        this.listener = listener;
+    }
+
+    // 0 or less keeps every row
+    void setDays(int days) {
+        this.retentionMillis = Math.max(0, days) * DAY_MILLIS;
+    }
+
+    // After every (re)connect; a running pass carries on with the new connection
+    void open(Connection connection, MonthlyPartitions.Attachments writePartitions) throws SQLException {
+        this.connection = connection;
+        this.writePartitions = writePartitions;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA auto_vacuum")) {
+            incrementalVacuum = rs.next() && rs.getInt(1) == 2;
+        }
+    }
+
+    // One chunk of the running pass, or of the vacuum after it; a pass starts every few minutes.
+    // Returns true while background work remains; nothing runs before open().
+    boolean step() {
+        if (retentionMillis <= 0 || failed || connection == null) return false;
+
+        try {
+            if (cursor >= 0) {
+                if (rollUpChunk()) {
+                    nextSegment();
+                }
+                return true;
+            }
+            if (vacuumPending) {
+                vacuumPending = incrementalVacuumStep();
+                return vacuumPending;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now < nextPassAt) return false;
+            nextPassAt = now + INTERVAL_MILLIS;
+
+            // Whole server-local days only, so a day is never split between raw rows and its total
+            zoneOffset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(now)).getTotalSeconds() * 1000L;
+            cutoff = Math.floorDiv(now - retentionMillis + zoneOffset, DAY_MILLIS) * DAY_MILLIS - zoneOffset;
+            cursor = 0;
+            rolledUp = 0;
+            // The main table first, then every partition that starts before the cutoff
+            month = null;
+            pendingMonths.clear();
+            for (YearMonth partition : partitions.months()) {
+                if (partitions.startOf(partition) < cutoff) pendingMonths.add(partition);
+            }
+            return true;
+        } catch (SQLException | IOException e) {
+            // Every chunk commits on its own, so a restart simply continues from the remaining rows
+            logger.severe("Retention paused until restart: " + e.getMessage());
+            failed = true;
+            cursor = -1;
+            return false;
+        }
+    }
+
+    // A partition being archived leaves the running pass; if the pass is in it, the pass ends there
+    void forget(YearMonth archived) {
+        if (archived.equals(month)) {
+            month = null;
+            cursor = -1;
+            pendingMonths.clear();
+        }
+        pendingMonths.remove(archived);
+    }
+
+    // After the main table or a partition is done. A partition that lies wholly before the cutoff is
+    // empty by now and its file is removed.
+    private void nextSegment() throws SQLException, IOException {
+        if (month != null && partitions.endOf(month) <= cutoff) {
+            listener.partitionEmptied(month);
+        }
+
+        month = pendingMonths.poll();
+        if (month == null) {
+            finishPass();
+        } else {
+            cursor = 0;
+        }
+    }
+
+    // Moves rows older than the cutoff within the next rowid window into daily totals and deletes them,
+    // in one short transaction. The table is done at the first window that is entirely newer than the
+    // cutoff: ids follow capture time, apart from journal replays that are at most minutes late.
+    // Returns true once the current table (main or partition) is done.
+    private boolean rollUpChunk() throws SQLException {
+        connectionLock.readLock().lock();
+        try {
+            // Attached before the transaction starts; daily totals always live in the main file
+            String table = month == null ? "point_transactions" : writePartitions.schema(month) + ".point_transactions";
+
+            long windowEnd;
+            try (PreparedStatement window = connection.prepareStatement("""
+                    SELECT MAX(id), MIN(created_at) FROM (
+                        SELECT id, created_at FROM %s WHERE id > ? ORDER BY id LIMIT ?
+                    )
+                    """.formatted(table))) {
+                window.setLong(1, cursor);
+                window.setInt(2, CHUNK_SIZE);
+                try (ResultSet rs = window.executeQuery()) {
+                    rs.next();
+                    windowEnd = rs.getLong(1);
+                    if (rs.wasNull() || rs.getLong(2) >= cutoff) {
+                        return true;
+                    }
+                }
+            }
+
+            int deleted;
+            connection.setAutoCommit(false);
+            try (PreparedStatement rollUp = connection.prepareStatement("""
+                    INSERT INTO daily_player_flow (receiver_id, sender_id, day_start, transaction_count, points_total)
+                    SELECT receiver_id, sender_id, (created_at + ?) / 86400000 * 86400000 - ?, COUNT(*), SUM(points_amount)
+                    FROM %s
+                    WHERE id > ? AND id <= ? AND created_at < ?
+                    GROUP BY 1, 2, 3
+                    ON CONFLICT (receiver_id, sender_id, day_start) DO UPDATE SET
+                        transaction_count = transaction_count + excluded.transaction_count,
+                        points_total = points_total + excluded.points_total
+                    """.formatted(table));
+                 PreparedStatement delete = connection.prepareStatement(
+                         "DELETE FROM " + table + " WHERE id > ? AND id <= ? AND created_at < ?")) {
+                rollUp.setLong(1, zoneOffset);
+                rollUp.setLong(2, zoneOffset);
+                rollUp.setLong(3, cursor);
+                rollUp.setLong(4, windowEnd);
+                rollUp.setLong(5, cutoff);
+                rollUp.executeUpdate();
+
+                if (month == null) {
+                    listener.deletingMainRows(cursor, windowEnd, cutoff);
+                }
+
+                delete.setLong(1, cursor);
+                delete.setLong(2, windowEnd);
+                delete.setLong(3, cutoff);
+                deleted = delete.executeUpdate();
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            cursor = windowEnd;
+            if (deleted > 0) {
+                rolledUp += deleted;
+                listener.rolledUp();
+            }
+            return false;
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+
+    private void finishPass() {
+        if (rolledUp > 0) {
+            logger.info("Rolled up " + rolledUp + " transactions older than "
+                    + retentionMillis / DAY_MILLIS + " days into daily totals.");
+            vacuumPending = incrementalVacuum;
+        }
+        cursor = -1;
+    }
+
+    // Returns freed pages to the file system a chunk at a time; true while free pages remain
+    private boolean incrementalVacuumStep() throws SQLException {
+        connectionLock.readLock().lock();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA incremental_vacuum(" + VACUUM_CHUNK_PAGES + ")");
+            try (ResultSet rs = statement.executeQuery("PRAGMA freelist_count")) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+}
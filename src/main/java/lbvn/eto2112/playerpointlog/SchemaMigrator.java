@@ -0,0 +1,212 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+// One-off schema upgrades for databases created by older plugin versions.
+// Every step works in small committed chunks so a crash or restart simply resumes.
+// v2: player dictionary, v3: player_summary, v4: epoch millis created_at instead of TEXT timestamp.
+class SchemaMigrator {
+
+    static final int SCHEMA_VERSION = 4;
+    private static final int MIGRATION_CHUNK_SIZE = 10000;
+
+    private final Connection connection;
+    private final Logger logger;
+
+    SchemaMigrator(Connection connection, Logger logger) {
+        this.connection = connection;
+        this.logger = logger;
+    }
+
+    int getSchemaVersion() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    void setSchemaVersion(int version) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA user_version = " + version);
+        }
+    }
+
+    boolean hasColumn(String table, String column) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    String columnType(String table, String column) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return rs.getString("type");
+                }
+            }
+        }
+        return null;
+    }
+
+    // Local ISO-8601 text as written by older versions -> epoch milliseconds
+    static String epochMillisSql(String textColumn) {
+        return "CAST(ROUND((julianday(" + textColumn + ", 'utc') - 2440587.5) * 86400000) AS INTEGER)";
+    }
+
+    // v3 -> v4, instant part: the new column next to the old one, summary times converted.
+    // Existing rows are backfilled online afterwards by backfillEpochTimestamps.
+    void prepareEpochTimestamps() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (!hasColumn("point_transactions", "created_at")) {
+                statement.execute("ALTER TABLE point_transactions ADD COLUMN created_at INTEGER");
+            }
+        }
+
+        if (!"TEXT".equalsIgnoreCase(columnType("player_summary", "first_seen"))) return;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                CREATE TABLE player_summary_v4 (
+                    player_id INTEGER PRIMARY KEY,
+                    transaction_count INTEGER NOT NULL DEFAULT 0,
+                    total_received INTEGER NOT NULL DEFAULT 0,
+                    total_sent INTEGER NOT NULL DEFAULT 0,
+                    first_seen INTEGER,
+                    last_seen INTEGER
+                )
+            """);
+            statement.execute("""
+                INSERT INTO player_summary_v4
+                SELECT player_id, transaction_count, total_received, total_sent, %s, %s
+                FROM player_summary
+                """.formatted(epochMillisSql("first_seen"), epochMillisSql("last_seen")));
+            statement.execute("DROP TABLE player_summary");
+            statement.execute("ALTER TABLE player_summary_v4 RENAME TO player_summary");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    int backfillEpochTimestamps(long fromId, long toId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE point_transactions SET created_at = " + epochMillisSql("timestamp")
+                        + " WHERE id > ? AND id <= ? AND created_at IS NULL")) {
+            statement.setLong(1, fromId);
+            statement.setLong(2, toId);
+            return statement.executeUpdate();
+        }
+    }
+
+    // Rewrites the table once; readers keep their WAL snapshot meanwhile
+    void dropLegacyTimestampColumn() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE point_transactions DROP COLUMN timestamp");
+        }
+        setSchemaVersion(SCHEMA_VERSION);
+    }
+
+    long maxTransactionId() throws SQLException {
+        return queryLong("SELECT COALESCE(MAX(id), 0) FROM point_transactions");
+    }
+
+    // v0 -> v2: TEXT player names on every row become ids into the players dictionary
+    void migrateLegacyTransactions() throws SQLException {
+        logger.info("Migrating point_transactions to the player dictionary schema...");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                CREATE TABLE IF NOT EXISTS point_transactions_v2 (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    receiver_id INTEGER NOT NULL,
+                    sender_id INTEGER NOT NULL,
+                    points_amount INTEGER NOT NULL,
+                    timestamp TEXT NOT NULL
+                )
+            """);
+        }
+
+        long maxId = queryLong("SELECT COALESCE(MAX(id), 0) FROM point_transactions");
+        // Resume from whatever an interrupted run already copied
+        long lastId = queryLong("SELECT COALESCE(MAX(id), 0) FROM point_transactions_v2");
+        long migrated = 0;
+        int chunks = 0;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement players = connection.prepareStatement("""
+                INSERT OR IGNORE INTO players (name_key, display_name)
+                SELECT LOWER(player_received), player_received FROM point_transactions WHERE id > ? AND id <= ?
+                UNION ALL
+                SELECT LOWER(player_send), player_send FROM point_transactions WHERE id > ? AND id <= ?
+                """);
+             PreparedStatement rows = connection.prepareStatement("""
+                INSERT INTO point_transactions_v2 (id, receiver_id, sender_id, points_amount, timestamp)
+                SELECT t.id, r.id, s.id, t.points_amount, t.timestamp
+                FROM point_transactions t
+                JOIN players r ON r.name_key = LOWER(t.player_received)
+                JOIN players s ON s.name_key = LOWER(t.player_send)
+                WHERE t.id > ? AND t.id <= ?
+                """)) {
+
+            while (lastId < maxId) {
+                long upperId = lastId + MIGRATION_CHUNK_SIZE;
+
+                players.setLong(1, lastId);
+                players.setLong(2, upperId);
+                players.setLong(3, lastId);
+                players.setLong(4, upperId);
+                players.executeUpdate();
+
+                rows.setLong(1, lastId);
+                rows.setLong(2, upperId);
+                migrated += rows.executeUpdate();
+
+                connection.commit();
+                lastId = upperId;
+
+                if (++chunks % 10 == 0) {
+                    logger.info("Migrated " + migrated + " transactions...");
+                }
+            }
+
+            // Swap tables atomically; the AUTOINCREMENT sequence follows the rename
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE point_transactions");
+                statement.execute("ALTER TABLE point_transactions_v2 RENAME TO point_transactions");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        logger.info("Player dictionary migration complete (" + migrated + " transactions).");
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// Storage engine without SQLite for servers whose event rate outgrows it: a group commit is a
+// sequential copy of fixed-width records into memory-mapped segment files under binlog/, and each
+// segment keeps a per-player index of the slots the player appears in. A lookup walks the player's
+// slots newest first and reads the records in place, so the cost of a page does not depend on the
+// size of the history. Lines are ordered by when they were stored, which is capture order.
+// Like the journal, records reach the page cache when they are copied and are forced to disk when
+// a segment fills up or the store closes; the journal covers anything an OS crash takes with it.
+final class SegmentLogStore implements TransactionStore {
+
+    static final String FOLDER = "binlog";
+    private static final String PLAYERS_FILE = "players.dat";
+    private static final String SUMMARY_FILE = "summary.dat";
+    private static final int SUMMARY_MAGIC = 0x504C5331; // "PLS1"
+
+    private final File directory;
+    private final Logger logger;
+    // Readers hold the read lock while they walk indexes; the writer takes the write lock only to
+    // publish records it has already copied, and to roll a full segment
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean open;
+
+    // Oldest first; the last one is being written
+    private final List<LogSegment> segments = new ArrayList<>();
+
+    // Player dictionary: ids are positions in players.dat, starting at 1
+    private final Map<String, Integer> playerIds = new ConcurrentHashMap<>();
+    private String[] displayNames = new String[1];
+    private int playerCount;
+    private FileChannel playersChannel;
+
+    // Totals per player id, kept current by the writer and checkpointed to summary.dat
+    private long[] transactionCounts = new long[1];
+    private long[] totalReceived = new long[1];
+    private long[] totalSent = new long[1];
+    private long[] firstSeen = new long[1];
+    private long[] lastSeen = new long[1];
+
+    private long committedSequence;
+
+    SegmentLogStore(PlayerPointLog plugin) {
+        this(plugin.getDataFolder(), plugin.getLogger());
+    }
+
+    SegmentLogStore(File dataFolder, Logger logger) {
+        this.directory = new File(dataFolder, FOLDER);
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean initialize() {
+        lock.writeLock().lock();
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            loadPlayers();
+
+            // Every segment but the last is sealed; one whose seal was cut short is finished now
+            int[] numbers = LogSegment.list(directory);
+            for (int i = 0; i < numbers.length; i++) {
+                boolean last = i == numbers.length - 1;
+                if (LogSegment.isSealed(directory, numbers[i])) {
+                    segments.add(LogSegment.openSealed(directory, numbers[i]));
+                } else {
+                    LogSegment segment = LogSegment.openWritable(directory, numbers[i]);
+                    if (!last) segment.seal();
+                    segments.add(segment);
+                }
+            }
+            if (segments.isEmpty() || LogSegment.isSealed(directory, numbers[numbers.length - 1])) {
+                segments.add(LogSegment.openWritable(directory, numbers.length == 0 ? 0 : numbers[numbers.length - 1] + 1));
+            }
+
+            for (LogSegment segment : segments) {
+                committedSequence = Math.max(committedSequence, segment.lastSequence());
+            }
+            loadSummary();
+
+            open = true;
+            long records = 0;
+            for (LogSegment segment : segments) {
+                records += segment.count();
+            }
+            logger.info("Binary log store opened: " + segments.size() + " segments, " + records + " transactions, "
+                    + playerCount + " players.");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Failed to initialize binary log store: " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private LogSegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    @Override
+    public long getJournalSequence() {
+        return committedSequence;
+    }
+
+    // Writer thread only. Records are copied past the published count first, then published in one
+    // short critical section together with the index and totals.
+    @Override
+    public boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+        if (transactions.isEmpty()) return true;
+        if (!open) return false;
+
+        try {
+            int[] receivers = new int[transactions.size()];
+            int[] senders = new int[transactions.size()];
+            resolvePlayerIds(transactions, receivers, senders);
+
+            LogSegment segment = active();
+            if (segment.isFull(transactions.size())) {
+                segment = rollSegment();
+            }
+
+            int first = segment.count();
+            for (int i = 0; i < transactions.size(); i++) {
+                TransactionData data = transactions.get(i);
+                segment.write(first + i, data.createdAt, journalSequence, receivers[i], senders[i], data.pointsAmount,
+                        i == transactions.size() - 1);
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < transactions.size(); i++) {
+                    TransactionData data = transactions.get(i);
+                    segment.publish(first + i);
+                    addToSummary(receivers[i], senders[i], data.pointsAmount, data.createdAt);
+                }
+                committedSequence = Math.max(committedSequence, journalSequence);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Failed to append to binary log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Seals the full segment and opens the next; the summary checkpoint then covers everything sealed
+    private LogSegment rollSegment() throws IOException {
+        lock.writeLock().lock();
+        try {
+            LogSegment full = active();
+            full.seal();
+            LogSegment next = LogSegment.openWritable(directory, full.number + 1);
+            segments.add(next);
+            writeSummary();
+            return next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addToSummary(int receiverId, int senderId, int amount, long createdAt) {
+        transactionCounts[receiverId]++;
+        totalReceived[receiverId] += amount;
+        if (senderId != receiverId) {
+            transactionCounts[senderId]++;
+        }
+        totalSent[senderId] += amount;
+        for (int id : new int[]{receiverId, senderId}) {
+            firstSeen[id] = Math.min(firstSeen[id], createdAt);
+            lastSeen[id] = Math.max(lastSeen[id], createdAt);
+        }
+    }
+
+    // Names never seen before are appended to players.dat and forced before any record refers to them
+    private void resolvePlayerIds(List<TransactionData> transactions, int[] receivers, int[] senders) throws IOException {
+        int registered = playerCount;
+        ByteBuffer entries = null;
+        for (int i = 0; i < transactions.size(); i++) {
+            TransactionData data = transactions.get(i);
+            for (int side = 0; side < 2; side++) {
+                String name = side == 0 ? data.playerReceived : data.playerSend;
+                String key = DatabaseManager.playerKey(name);
+                Integer id = playerIds.get(key);
+                if (id == null) {
+                    if (entries == null) entries = ByteBuffer.allocate(64 * 1024);
+                    if (entries.remaining() < 1024) {
+                        entries.flip();
+                        writePlayers(entries);
+                        entries.clear();
+                    }
+                    putPlayer(entries, name, side == 0 ? data.receiverUuid : data.senderUuid);
+                    id = registerPlayer(key, name);
+                }
+                (side == 0 ? receivers : senders)[i] = id;
+            }
+        }
+
+        if (entries != null) {
+            entries.flip();
+            writePlayers(entries);
+            playersChannel.force(false);
+            logger.fine("Registered " + (playerCount - registered) + " new players in the binary log.");
+        }
+    }
+
+    private void writePlayers(ByteBuffer entries) throws IOException {
+        while (entries.hasRemaining()) {
+            playersChannel.write(entries);
+        }
+    }
+
+    private int registerPlayer(String key, String name) {
+        lock.writeLock().lock();
+        try {
+            int id = ++playerCount;
+            if (id >= displayNames.length) {
+                int size = Math.max(id + 1, displayNames.length * 2);
+                displayNames = Arrays.copyOf(displayNames, size);
+                transactionCounts = Arrays.copyOf(transactionCounts, size);
+                totalReceived = Arrays.copyOf(totalReceived, size);
+                totalSent = Arrays.copyOf(totalSent, size);
+                firstSeen = Arrays.copyOf(firstSeen, size);
+                lastSeen = Arrays.copyOf(lastSeen, size);
+            }
+            displayNames[id] = name;
+            firstSeen[id] = Long.MAX_VALUE;
+            lastSeen[id] = Long.MIN_VALUE;
+            playerIds.put(key, id);
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Same layout as the journal's names: length-prefixed UTF-8, then an optional UUID
+    private static void putPlayer(ByteBuffer buffer, String name, UUID uuid) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+        if (uuid == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) 1);
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    // A torn entry at the end (crash while registering) is cut off; no record refers to it yet
+    private void loadPlayers() throws IOException {
+        File file = new File(directory, PLAYERS_FILE);
+        ByteBuffer data = ByteBuffer.wrap(file.exists() ? Files.readAllBytes(file.toPath()) : new byte[0]);
+        int valid = 0;
+        while (data.remaining() >= 3) {
+            int length = data.getShort() & 0xFFFF;
+            if (data.remaining() < length + 1) break;
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            int uuidBytes = data.get() == 0 ? 0 : 16;
+            if (data.remaining() < uuidBytes) break;
+            data.position(data.position() + uuidBytes);
+
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            registerPlayer(DatabaseManager.playerKey(name), name);
+            valid = data.position();
+        }
+
+        playersChannel = new RandomAccessFile(file, "rw").getChannel();
+        playersChannel.truncate(valid);
+        playersChannel.position(valid);
+    }
+
+    // Totals up to the end of the last sealed segment; whatever the writable segment holds is added on top
+    private void loadSummary() throws IOException {
+        File file = new File(directory, SUMMARY_FILE);
+        int coveredSegment = -1;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() == SUMMARY_MAGIC) {
+                    int segment = in.readInt();
+                    int players = in.readInt();
+                    if (players <= playerCount) {
+                        for (int id = 1; id <= players; id++) {
+                            transactionCounts[id] = in.readLong();
+                            totalReceived[id] = in.readLong();
+                            totalSent[id] = in.readLong();
+                            firstSeen[id] = in.readLong();
+                            lastSeen[id] = in.readLong();
+                        }
+                        coveredSegment = segment;
+                    }
+                }
+            }
+        }
+
+        for (LogSegment segment : segments) {
+            if (segment.number > coveredSegment) addSegmentToSummary(segment);
+        }
+    }
+
+    private void addSegmentToSummary(LogSegment segment) {
+        for (int slot = 0; slot < segment.count(); slot++) {
+            addToSummary(segment.receiver(slot), segment.sender(slot), segment.amount(slot), segment.createdAt(slot));
+        }
+    }
+
+    // Written after a seal, so every record it counts is already on disk
+    private void writeSummary() throws IOException {
+        int covered = segments.size() >= 2 ? segments.get(segments.size() - 2).number : -1;
+        File file = new File(directory, SUMMARY_FILE);
+        File temp = new File(directory, SUMMARY_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(SUMMARY_MAGIC);
+            out.writeInt(covered);
+            out.writeInt(playerCount);
+            // The writable segment's rows are counted in memory but not covered by the checkpoint
+            long[][] pending = pendingTotals();
+            for (int id = 1; id <= playerCount; id++) {
+                out.writeLong(transactionCounts[id] - pending[0][id]);
+                out.writeLong(totalReceived[id] - pending[1][id]);
+                out.writeLong(totalSent[id] - pending[2][id]);
+                out.writeLong(firstSeen[id]);
+                out.writeLong(lastSeen[id]);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Count, received and sent per player in the writable segment
+    private long[][] pendingTotals() {
+        long[][] pending = new long[3][playerCount + 1];
+        LogSegment segment = active();
+        for (int slot = 0; slot < segment.count(); slot++) {
+            int receiverId = segment.receiver(slot);
+            int senderId = segment.sender(slot);
+            pending[0][receiverId]++;
+            pending[1][receiverId] += segment.amount(slot);
+            if (senderId != receiverId) pending[0][senderId]++;
+            pending[2][senderId] += segment.amount(slot);
+        }
+        return pending;
+    }
+
+    @Override
+    public List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                         int page, int itemsPerPage) {
+        lock.readLock().lock();
+        try {
+            Integer playerId = playerIds.get(DatabaseManager.playerKey(playerName));
+            if (playerId == null || !open) return List.of();
+            int counterpartyId = 0;
+            if (filter.getCounterparty() != null) {
+                Integer id = playerIds.get(DatabaseManager.playerKey(filter.getCounterparty()));
+                if (id == null) return List.of();
+                counterpartyId = id;
+            }
+
+            boolean ascending = cursor != null && !cursor.isOlder();
+            int cursorSegment = cursor != null ? LogSegment.segmentOf(cursor.getId()) : 0;
+            int cursorSlot = cursor != null ? LogSegment.slotOf(cursor.getId()) : 0;
+            int skip = cursor == null ? (page - 1) * itemsPerPage : 0;
+            List<TransactionRecord> transactions = new ArrayList<>(itemsPerPage);
+
+            for (int s = 0; s < segments.size() && transactions.size() < itemsPerPage; s++) {
+                LogSegment segment = segments.get(ascending ? s : segments.size() - 1 - s);
+                if (!overlaps(segment, filter)) continue;
+                if (cursor != null && (ascending ? segment.number < cursorSegment : segment.number > cursorSegment)) continue;
+
+                int n = segment.slotCount(playerId);
+                // Without a filter every slot matches, so whole segments are skipped by their counts
+                if (cursor == null && filter.isEmpty() && skip >= n) {
+                    skip -= n;
+                    continue;
+                }
+
+                int from;
+                int to;
+                if (cursor != null && segment.number == cursorSegment) {
+                    int boundary = segment.lowerBound(playerId, cursorSlot);
+                    boolean onBoundary = boundary < n && segment.slotAt(playerId, boundary) == cursorSlot;
+                    from = ascending ? boundary + (onBoundary ? 1 : 0) : 0;
+                    to = ascending ? n : boundary;
+                } else {
+                    from = 0;
+                    to = n;
+                }
+
+                for (int i = 0; i < to - from && transactions.size() < itemsPerPage; i++) {
+                    int slot = segment.slotAt(playerId, ascending ? from + i : to - 1 - i);
+                    if (!matches(segment, slot, playerId, counterpartyId, filter)) continue;
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    transactions.add(record(segment, slot));
+                }
+            }
+
+            // Newer pages are read ascending from the boundary, flip them back
+            if (ascending) {
+                Collections.reverse(transactions);
+            }
+            return transactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TransactionRecord record(LogSegment segment, int slot) {
+        return new TransactionRecord(
+                segment.idOf(slot),
+                displayNames[segment.receiver(slot)],
+                displayNames[segment.sender(slot)],
+                segment.amount(slot),
+                segment.createdAt(slot)
+        );
+    }
+
+    // Everyone's lines in storage order, or a player's from their slot lists, up to the last line stored
+    // when the export started. A chunk is copied out under the read lock and written after releasing it,
+    // so the writer never waits on the export's file.
+    @Override
+    public long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink)
+            throws IOException {
+        LookupFilter filter = LookupFilter.between(since, until);
+        TransactionRecord[] chunk = new TransactionRecord[chunkSize];
+        int playerId = 0;
+        long stopId;
+
+        lock.readLock().lock();
+        try {
+            if (!open) throw new IOException("Binary log store is closed");
+            if (playerName != null) {
+                Integer id = playerIds.get(DatabaseManager.playerKey(playerName));
+                if (id == null) return 0;
+                playerId = id;
+            }
+            stopId = active().idOf(active().count());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        long exported = 0;
+        int segmentIndex = 0;
+        // Slot in the segment, or index into the player's slots
+        int position = 0;
+        boolean finished = false;
+        while (!finished) {
+            int rows = 0;
+            lock.readLock().lock();
+            try {
+                if (!open) throw new IOException("Binary log store closed during the export");
+                for (int scanned = 0; scanned < chunkSize; ) {
+                    if (segmentIndex >= segments.size()) {
+                        finished = true;
+                        break;
+                    }
+                    LogSegment segment = segments.get(segmentIndex);
+                    int end = playerId == 0 ? segment.count() : segment.slotCount(playerId);
+                    if (position >= end || !overlaps(segment, filter)) {
+                        segmentIndex++;
+                        position = 0;
+                        continue;
+                    }
+
+                    int slot = playerId == 0 ? position : segment.slotAt(playerId, position);
+                    if (segment.idOf(slot) >= stopId) {
+                        finished = true;
+                        break;
+                    }
+                    position++;
+                    scanned++;
+
+                    boolean selected = playerId == 0
+                            ? inRange(segment.createdAt(slot), filter)
+                            : matches(segment, slot, playerId, 0, filter);
+                    if (selected) {
+                        chunk[rows++] = record(segment, slot);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                sink.write(chunk[i]);
+                chunk[i] = null;
+            }
+            exported += rows;
+            sink.endChunk();
+        }
+        return exported;
+    }
+
+    private static boolean inRange(long createdAt, LookupFilter filter) {
+        return (filter.getSince() == null || createdAt >= filter.getSince())
+                && (filter.getUntil() == null || createdAt < filter.getUntil());
+    }
+
+    // Segments outside since/until are skipped by their created_at range
+    private static boolean overlaps(LogSegment segment, LookupFilter filter) {
+        if (segment.count() == 0) return false;
+        if (filter.getSince() != null && segment.maxCreatedAt() < filter.getSince()) return false;
+        return filter.getUntil() == null || segment.minCreatedAt() < filter.getUntil();
+    }
+
+    // Same rules as the SQLite lookup branches: a self-transfer is one received line
+    private static boolean matches(LogSegment segment, int slot, int playerId, int counterpartyId, LookupFilter filter) {
+        int receiverId = segment.receiver(slot);
+        int senderId = segment.sender(slot);
+        boolean received = receiverId == playerId && (counterpartyId == 0 || senderId == counterpartyId);
+        boolean sent = senderId == playerId && (counterpartyId == 0 || receiverId == counterpartyId);
+        boolean direction = switch (filter.getDirection()) {
+            case RECEIVED -> received;
+            case SENT -> sent;
+            case ANY -> received || (sent && receiverId != playerId);
+        };
+        if (!direction) return false;
+
+        if (!inRange(segment.createdAt(slot), filter)) return false;
+        int amount = segment.amount(slot);
+        if (filter.getMinAmount() != null && amount < filter.getMinAmount()) return false;
+        return filter.getMaxAmount() == null || amount <= filter.getMaxAmount();
+    }
+
+    @Override
+    public long countPlayerTransactions(String playerName, LookupFilter filter) {
+        lock.readLock().lock();
+        try {
+            Integer playerId = playerIds.get(DatabaseManager.playerKey(playerName));
+            if (playerId == null || !open) return 0;
+            int counterpartyId = 0;
+            if (filter.getCounterparty() != null) {
+                Integer id = playerIds.get(DatabaseManager.playerKey(filter.getCounterparty()));
+                if (id == null) return 0;
+                counterpartyId = id;
+            }
+
+            long count = 0;
+            for (LogSegment segment : segments) {
+                if (!overlaps(segment, filter)) continue;
+                int n = segment.slotCount(playerId);
+                if (filter.isEmpty()) {
+                    count += n;
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (matches(segment, segment.slotAt(playerId, i), playerId, counterpartyId, filter)) count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public PlayerSummary getPlayerSummary(String playerName) {
+        lock.readLock().lock();
+        try {
+            Integer playerId = playerIds.get(DatabaseManager.playerKey(playerName));
+            if (playerId == null || firstSeen[playerId] == Long.MAX_VALUE) return null;
+            return new PlayerSummary(transactionCounts[playerId], totalReceived[playerId], totalSent[playerId],
+                    firstSeen[playerId], lastSeen[playerId]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasDailyHistory() {
+        return false;
+    }
+
+    // Recounts every segment; lookups wait for it
+    @Override
+    public int rebuildPlayerSummary() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(transactionCounts, 0);
+            Arrays.fill(totalReceived, 0);
+            Arrays.fill(totalSent, 0);
+            Arrays.fill(firstSeen, Long.MAX_VALUE);
+            Arrays.fill(lastSeen, Long.MIN_VALUE);
+            for (LogSegment segment : segments) {
+                addSegmentToSummary(segment);
+            }
+            try {
+                writeSummary();
+            } catch (IOException e) {
+                logger.warning("Could not checkpoint player totals: " + e.getMessage());
+            }
+
+            int players = 0;
+            for (int id = 1; id <= playerCount; id++) {
+                if (firstSeen[id] != Long.MAX_VALUE) players++;
+            }
+            return players;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean runMaintenanceStep() {
+        return false;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return open;
+    }
+
+    // Reads are plain memory reads, nothing to cache
+    @Override
+    public LookupCache.Stats getLookupCacheStats() {
+        return new LookupCache.Stats(0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public int getOpenReadConnections() {
+        return 0;
+    }
+
+    // Mappings are released by the garbage collector; Java has no way to unmap them earlier
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!open) return;
+            open = false;
+            active().force();
+            if (segments.size() >= 2) {
+                writeSummary();
+            }
+            playersChannel.close();
+            logger.info("Binary log store closed.");
+        } catch (IOException e) {
+            logger.severe("Error closing binary log store: " + e.getMessage());
+        } finally {
+            segments.clear();
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// Spreads players over storage.shards database files, shards/<n>/playerpoints.db, by a stable hash of
+// the player key. Every row is written to both participants' shards, so one player's history, summary
+// and lookup cache live in a single file and a lookup touches one shard only. Each shard has its own
+// writer thread; a group commit is split per shard and the shards commit in parallel.
+final class ShardedDatabaseManager implements TransactionStore {
+
+    static final String SHARDS_FOLDER = "shards";
+
+    private final File dataFolder;
+    private final Logger logger;
+    private final DatabaseManager[] shards;
+    private final ExecutorService[] writers;
+    // Last journal sequence each shard committed, so a replayed batch skips shards that already have it
+    private final long[] committedSequences;
+
+    ShardedDatabaseManager(PlayerPointLog plugin, int shardCount) {
+        this(plugin.getDataFolder(), plugin.getLogger(), shardCount, folder -> new DatabaseManager(plugin, folder));
+    }
+
+    // shardFactory opens the database in a shard's folder
+    ShardedDatabaseManager(File dataFolder, Logger logger, int shardCount, Function<File, DatabaseManager> shardFactory) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+        this.shards = new DatabaseManager[shardCount];
+        this.writers = new ExecutorService[shardCount];
+        this.committedSequences = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = shardFactory.apply(shardFolder(dataFolder, i));
+            int shard = i;
+            writers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "PlayerPointLog-Shard-" + shard);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    static File shardFolder(File dataFolder, int shard) {
+        return new File(new File(dataFolder, SHARDS_FOLDER), Integer.toString(shard));
+    }
+
+    // Shard folders on disk, 0 when the data folder is not sharded
+    static int existingShardCount(File dataFolder) {
+        int count = 0;
+        while (new File(shardFolder(dataFolder, count), DatabaseManager.DATABASE_FILE).exists()) {
+            count++;
+        }
+        return count;
+    }
+
+    // Must never change: it decides which file already holds a player's history
+    static int shardOf(String playerName, int shardCount) {
+        int h = DatabaseManager.playerKey(playerName).hashCode();
+        // murmur3 finalizer, so similar names still spread evenly
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shardCount);
+    }
+
+    private DatabaseManager shardFor(String playerName) {
+        return shards[shardOf(playerName, shards.length)];
+    }
+
+    @Override
+    public boolean initialize() {
+        // A different layout on disk means the data has to be resharded first, not silently split
+        int existing = existingShardCount(dataFolder);
+        if (existing != shards.length && (existing > 0 || new File(dataFolder, DatabaseManager.DATABASE_FILE).exists())) {
+            logger.severe("storage.shards is " + shards.length + " but the data folder holds "
+                    + (existing > 0 ? existing + " shards" : "an unsharded database")
+                    + ". Stop the server and run ReshardTool first (see README).");
+            return false;
+        }
+
+        for (DatabaseManager shard : shards) {
+            if (!shard.initialize()) return false;
+        }
+        logger.info("Using " + shards.length + " database shards.");
+        return true;
+    }
+
+    // Runs on every shard's writer thread and waits for all of them
+    private <T> List<T> onEachShard(Function<DatabaseManager, T> task) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            DatabaseManager shard = shards[i];
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(shard), writers[i]));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    @Override
+    public long getJournalSequence() {
+        List<Long> sequences = onEachShard(DatabaseManager::getJournalSequence);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < shards.length; i++) {
+            long sequence = sequences.get(i);
+            // -1 means a shard could not be read; the writer retries later
+            if (sequence < 0) return -1;
+            committedSequences[i] = sequence;
+            min = Math.min(min, sequence);
+        }
+        return min;
+    }
+
+    // A shard that saw no transactions for a while is behind the others without missing anything
+    @Override
+    public long getHighestJournalSequence() {
+        long max = 0;
+        for (long sequence : onEachShard(DatabaseManager::getHighestJournalSequence)) {
+            if (sequence < 0) return -1;
+            max = Math.max(max, sequence);
+        }
+        return max;
+    }
+
+    // Splits the batch by shard, both participants' shards for each row, and commits the shards in
+    // parallel. A failed shard fails the whole batch; on replay the shards that did commit skip it.
+    // Without a journal sequence there is no replay: failed shards are retried once, and a shard that
+    // still fails misses the batch while the shards that committed keep it.
+    @Override
+    public boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+        if (transactions.isEmpty()) return true;
+
+        List<List<TransactionData>> perShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (TransactionData data : transactions) {
+            int receiverShard = shardOf(data.playerReceived, shards.length);
+            int senderShard = shardOf(data.playerSend, shards.length);
+            perShard.get(receiverShard).add(data);
+            if (senderShard != receiverShard) {
+                perShard.get(senderShard).add(data);
+            }
+        }
+
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (perShard.get(i).isEmpty() || (journalSequence > 0 && journalSequence <= committedSequences[i])) continue;
+            pending.add(i);
+        }
+
+        List<Integer> failed = commitOnShards(perShard, pending, journalSequence);
+        if (!failed.isEmpty() && journalSequence == 0) {
+            // A failed shard has reconnected by now
+            failed = commitOnShards(perShard, failed, 0);
+            if (!failed.isEmpty()) {
+                logger.severe("Shards " + failed + " missed a batch of " + transactions.size()
+                        + " unjournaled transactions that the other shards committed.");
+            }
+        }
+        return failed.isEmpty();
+    }
+
+    // Commits each listed shard's part in parallel; returns the shards that failed
+    private List<Integer> commitOnShards(List<List<TransactionData>> perShard, List<Integer> targets,
+                                         long journalSequence) {
+        List<CompletableFuture<Boolean>> commits = new ArrayList<>(targets.size());
+        for (int shard : targets) {
+            List<TransactionData> batch = perShard.get(shard);
+            commits.add(CompletableFuture.supplyAsync(() -> {
+                boolean committed = shards[shard].logTransactionsBatch(batch, journalSequence);
+                if (committed && journalSequence > 0) {
+                    committedSequences[shard] = journalSequence;
+                }
+                return committed;
+            }, writers[shard]));
+        }
+
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            if (!commits.get(i).join()) {
+                failed.add(targets.get(i));
+            }
+        }
+        return failed;
+    }
+
+    // Replay starts from the lowest shard's sequence, so each shard gets only the entries above its own;
+    // a shard that already committed some of them would otherwise insert them again
+    @Override
+    public boolean replayTransactionsBatch(List<TransactionData> transactions, long[] sequences) {
+        List<List<TransactionData>> perShard = new ArrayList<>(shards.length);
+        List<List<Long>> perShardSequences = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            perShard.add(new ArrayList<>());
+            perShardSequences.add(new ArrayList<>());
+        }
+        for (int i = 0; i < transactions.size(); i++) {
+            TransactionData data = transactions.get(i);
+            int receiverShard = shardOf(data.playerReceived, shards.length);
+            int senderShard = shardOf(data.playerSend, shards.length);
+            if (sequences[i] > committedSequences[receiverShard]) {
+                perShard.get(receiverShard).add(data);
+                perShardSequences.get(receiverShard).add(sequences[i]);
+            }
+            if (senderShard != receiverShard && sequences[i] > committedSequences[senderShard]) {
+                perShard.get(senderShard).add(data);
+                perShardSequences.get(senderShard).add(sequences[i]);
+            }
+        }
+
+        List<CompletableFuture<Boolean>> commits = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            List<TransactionData> batch = perShard.get(i);
+            if (batch.isEmpty()) continue;
+
+            long[] batchSequences = perShardSequences.get(i).stream().mapToLong(Long::longValue).toArray();
+            int shard = i;
+            commits.add(CompletableFuture.supplyAsync(() -> {
+                boolean committed = shards[shard].replayTransactionsBatch(batch, batchSequences);
+                if (committed) {
+                    committedSequences[shard] = Math.max(committedSequences[shard], batchSequences[batchSequences.length - 1]);
+                }
+                return committed;
+            }, writers[i]));
+        }
+
+        boolean committed = true;
+        for (CompletableFuture<Boolean> commit : commits) {
+            committed &= commit.join();
+        }
+        return committed;
+    }
+
+    @Override
+    public boolean hasDailyHistory() {
+        for (DatabaseManager shard : shards) {
+            if (shard.hasDailyHistory()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                         int page, int itemsPerPage) {
+        return shardFor(playerName).getPlayerTransactions(playerName, filter, cursor, page, itemsPerPage);
+    }
+
+    @Override
+    public long countPlayerTransactions(String playerName, LookupFilter filter) {
+        return shardFor(playerName).countPlayerTransactions(playerName, filter);
+    }
+
+    @Override
+    public PlayerSummary getPlayerSummary(String playerName) {
+        return shardFor(playerName).getPlayerSummary(playerName);
+    }
+
+    // A player's lines are in their shard. Everyone's are read shard by shard, keeping each line only in its
+    // receiver's shard, since lines between shards are stored in both
+    @Override
+    public long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink)
+            throws SQLException, IOException {
+        if (playerName != null) {
+            return shardFor(playerName).exportTransactions(playerName, since, until, chunkSize, sink);
+        }
+
+        long[] exported = new long[1];
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            shards[i].exportTransactions(null, since, until, chunkSize, new ExportSink() {
+                @Override
+                public void write(TransactionRecord record) throws IOException {
+                    if (shardOf(record.getPlayerReceived(), shards.length) != shard) return;
+                    sink.write(record);
+                    exported[0]++;
+                }
+
+                @Override
+                public void endChunk() throws IOException {
+                    sink.endChunk();
+                }
+            });
+        }
+        return exported[0];
+    }
+
+    @Override
+    public LookupCache.Stats getLookupCacheStats() {
+        long hits = 0, misses = 0, evictions = 0, rows = 0;
+        int entries = 0;
+        for (DatabaseManager shard : shards) {
+            LookupCache.Stats stats = shard.getLookupCacheStats();
+            hits += stats.hits();
+            misses += stats.misses();
+            evictions += stats.evictions();
+            entries += stats.entries();
+            rows += stats.rows();
+        }
+        return new LookupCache.Stats(hits, misses, evictions, entries, rows);
+    }
+
+    @Override
+    public int getOpenReadConnections() {
+        int open = 0;
+        for (DatabaseManager shard : shards) {
+            open += shard.getOpenReadConnections();
+        }
+        return open;
+    }
+
+    @Override
+    public List<String> describePartitions() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            for (String partition : shards[i].describePartitions()) {
+                lines.add("shard " + i + ": " + partition);
+            }
+        }
+        return lines;
+    }
+
+    @Override
+    public File archivePartition(YearMonth month) throws SQLException, IOException {
+        File archived = null;
+        for (File file : onEachShard(shard -> {
+            try {
+                return shard.archivePartition(month);
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        })) {
+            if (file != null) archived = file;
+        }
+        return archived;
+    }
+
+    @Override
+    public int rebuildPlayerSummary() throws SQLException {
+        // Players who traded across shards have a row in each of those shards and count once per shard
+        int players = 0;
+        for (int count : onEachShard(shard -> {
+            try {
+                return shard.rebuildPlayerSummary();
+            } catch (SQLException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        })) {
+            players += count;
+        }
+        return players;
+    }
+
+    @Override
+    public boolean runMaintenanceStep() {
+        boolean pending = false;
+        for (boolean shardPending : onEachShard(DatabaseManager::runMaintenanceStep)) {
+            pending |= shardPending;
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (DatabaseManager shard : shards) {
+            if (!shard.isConnected()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+        }
+        for (ExecutorService writer : writers) {
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (DatabaseManager shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+// Streams a player's or everyone's history into exports/<target>-<time>.<csv|jsonl>.gz for use outside the
+// game. One export runs at a time on its own low-priority thread. Rows go from the store's chunked
+// forward-only reads straight into the gzip stream; between chunks the export keeps to its configured
+// rate and waits while the writer has a backlog, so captured transactions are never held up by it.
+class TransactionExporter {
+
+    static final String FOLDER = "exports";
+    // A Minecraft name or "all"; it becomes part of the file name, so nothing that could leave the folder
+    private static final Pattern TARGET = Pattern.compile("[A-Za-z0-9_]{1,16}");
+    // Rows per chunk and fetch size of each read
+    private static final int CHUNK_SIZE = 1000;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // Captured events the writer may have queued before the export steps aside for it
+    private static final int WRITER_BACKLOG = 2000;
+    private static final long BACKLOG_WAIT_MILLIS = 50;
+    private static final long MAX_BACKLOG_WAIT_MILLIS = 5000;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final PlayerPointLog plugin;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    TransactionExporter(PlayerPointLog plugin) {
+        this.plugin = plugin;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "PlayerPointLog-Export");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    static boolean isValidTarget(String target) {
+        return TARGET.matcher(target).matches();
+    }
+
+    // playerName null exports everyone; since/until are epoch millis or null. Returns the file being
+    // written, or null while another export is still running.
+    File start(CommandSender sender, String playerName, Long since, Long until, ExportFormat format) {
+        String target = playerName != null ? playerName : "all";
+        if (!isValidTarget(target)) {
+            throw new IllegalArgumentException("Not a player name: " + target);
+        }
+        if (!running.compareAndSet(false, true)) return null;
+
+        File file = new File(new File(plugin.getDataFolder(), FOLDER),
+                target + "-" + LocalDateTime.now().format(FILE_TIME) + "." + format.extension + ".gz");
+        long rowsPerSecond = Math.max(0, plugin.getConfig().getLong("export.rows-per-second", 20000));
+
+        CompletableFuture
+                .supplyAsync(() -> export(sender, playerName, since, until, format, file, rowsPerSecond), executor)
+                .whenComplete((result, throwable) -> {
+                    running.set(false);
+                    if (throwable == null) {
+                        send(sender, "export-done",
+                                "rows", result.rows,
+                                "file", file.getName(),
+                                "seconds", String.format("%.1f", result.nanos / 1e9),
+                                "rate", rate(result.rows, result.nanos));
+                    } else {
+                        send(sender, "export-failed", "file", file.getName());
+                    }
+                });
+        return file;
+    }
+
+    private Result export(CommandSender sender, String playerName, Long since, Long until, ExportFormat format,
+                          File file, long rowsPerSecond) {
+        File temp = new File(file.getPath() + ".tmp");
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            long rows;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(temp), 1 << 16), StandardCharsets.UTF_8), 1 << 16)) {
+                out.write(format.header());
+                FileSink sink = new FileSink(out, format, sender, started, rowsPerSecond);
+                rows = plugin.getTransactionStore().exportTransactions(playerName, since, until, CHUNK_SIZE, sink);
+            }
+            // Only a complete file gets its final name
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return new Result(rows, System.nanoTime() - started);
+        } catch (IOException | SQLException | RuntimeException e) {
+            temp.delete();
+            plugin.getLogger().severe("Export to " + file.getName() + " failed: " + e.getMessage());
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    // Stops a running export; its partial file is deleted
+    void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Messages go out on the main thread; nothing is sent once the plugin is disabled
+    private void send(CommandSender sender, String key, Object... placeholders) {
+        if (!plugin.isEnabled()) return;
+        plugin.getServer().getScheduler().runTask(plugin, () ->
+                sender.sendMessage(plugin.getLanguageManager().getMessage(key, placeholders)));
+    }
+
+    private static long rate(long rows, long nanos) {
+        return nanos > 0 ? rows * 1_000_000_000L / nanos : rows;
+    }
+
+    private record Result(long rows, long nanos) {
+    }
+
+    private final class FileSink implements TransactionStore.ExportSink {
+        private final Writer out;
+        private final ExportFormat format;
+        private final CommandSender sender;
+        private final long startedNanos;
+        private final long rowsPerSecond;
+        private final ZoneId zone = ZoneId.systemDefault();
+        private final StringBuilder line = new StringBuilder(128);
+        private long rows;
+        private long nextProgressAt;
+
+        FileSink(Writer out, ExportFormat format, CommandSender sender, long startedNanos, long rowsPerSecond) {
+            this.out = out;
+            this.format = format;
+            this.sender = sender;
+            this.startedNanos = startedNanos;
+            this.rowsPerSecond = rowsPerSecond;
+            this.nextProgressAt = startedNanos + PROGRESS_INTERVAL_NANOS;
+        }
+
+        @Override
+        public void write(TransactionStore.TransactionRecord record) throws IOException {
+            line.setLength(0);
+            format.appendLine(line, record, zone);
+            out.append(line);
+            rows++;
+        }
+
+        // Keeps to the configured rate, steps aside while the writer is behind, and reports progress
+        @Override
+        public void endChunk() throws IOException {
+            try {
+                if (rowsPerSecond > 0) {
+                    long due = startedNanos + rows * 1_000_000_000L / rowsPerSecond;
+                    long ahead = due - System.nanoTime();
+                    if (ahead > 0) {
+                        TimeUnit.NANOSECONDS.sleep(ahead);
+                    }
+                }
+
+                long waited = 0;
+                while (plugin.getTransactionWriter().getQueueSize() > WRITER_BACKLOG && waited < MAX_BACKLOG_WAIT_MILLIS) {
+                    Thread.sleep(BACKLOG_WAIT_MILLIS);
+                    waited += BACKLOG_WAIT_MILLIS;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+
+            long now = System.nanoTime();
+            if (now >= nextProgressAt) {
+                nextProgressAt = now + PROGRESS_INTERVAL_NANOS;
+                send(sender, "export-progress", "rows", rows, "rate", rate(rows, now - startedNanos));
+            }
+        }
+    }
+}
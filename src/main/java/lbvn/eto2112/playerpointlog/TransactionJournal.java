@@ -0,0 +1,318 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// Append-only, memory-mapped journal of transactions the writer has not committed yet.
+// Every record carries a sequence id and the database stores the highest committed one
+// in the same transaction as the rows, so replaying a record twice never inserts it twice.
+// Writes land in the page cache as soon as they are copied, which survives a JVM crash;
+// segments are only forced to disk when they fill up or the journal closes.
+class TransactionJournal {
+
+    private static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final int MAGIC = 0x504C4A31; // "PLJ1"
+    private static final int HEADER_SIZE = 8;
+    // length + crc before every payload
+    private static final int RECORD_OVERHEAD = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+    private final Logger logger;
+    private final int segmentSize;
+
+    // Full segments waiting for their records to be committed, oldest first
+    private final List<Segment> sealed = new ArrayList<>();
+    private Segment active;
+    private MappedByteBuffer buffer;
+    private final ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+    private final CRC32 crc = new CRC32();
+
+    private long nextSequence = 1;
+    private long committedSequence;
+    private boolean writable;
+
+    TransactionJournal(File directory, Logger logger) {
+        this(directory, logger, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // Tests use small segments to exercise rolling
+    TransactionJournal(File directory, Logger logger, int segmentSize) {
+        this.directory = directory;
+        this.logger = logger;
+        this.segmentSize = segmentSize;
+    }
+
+    // Picks up segments left by a previous run; everything after committedSequence must be replayed.
+    // New records are numbered above highestSequence, the newest the store holds anywhere, so a sequence
+    // a store already committed is never handed out again.
+    void open(long committedSequence, long highestSequence) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+
+        this.committedSequence = committedSequence;
+        long lastSequence = committedSequence;
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                Segment segment = new Segment(file);
+                readSegment(segment, Long.MIN_VALUE, Integer.MAX_VALUE, null);
+                if (segment.lastSequence > committedSequence) {
+                    sealed.add(segment);
+                    lastSequence = Math.max(lastSequence, segment.lastSequence);
+                } else {
+                    delete(segment);
+                }
+            }
+        }
+
+        nextSequence = Math.max(lastSequence, highestSequence) + 1;
+        if (lastSequence <= committedSequence) {
+            // Nothing left to replay
+            this.committedSequence = nextSequence - 1;
+        }
+        openActiveSegment();
+        writable = true;
+
+        if (hasUncommitted()) {
+            logger.warning("Journal holds " + (lastSequence - committedSequence)
+                    + " uncommitted transactions from the last run, replaying...");
+        }
+    }
+
+    boolean isWritable() {
+        return writable;
+    }
+
+    boolean hasUncommitted() {
+        return nextSequence - 1 > committedSequence;
+    }
+
+    long getCommittedSequence() {
+        return committedSequence;
+    }
+
+    // Returns the record's sequence id, or -1 if the journal could not take it
+    long append(TransactionStore.TransactionData data) {
+        if (!writable) return -1;
+
+        try {
+            scratch.clear();
+            long sequence = nextSequence;
+            scratch.putLong(sequence);
+            scratch.putLong(data.createdAt);
+            scratch.putInt(data.pointsAmount);
+            putString(data.playerReceived);
+            putString(data.playerSend);
+            putUuid(data.receiverUuid);
+            putUuid(data.senderUuid);
+            scratch.flip();
+
+            int length = scratch.remaining();
+            // Leave room for the terminating zero length behind the record
+            if (buffer.remaining() < RECORD_OVERHEAD + length + 4) {
+                rollSegment();
+            }
+
+            crc.reset();
+            crc.update(scratch.array(), 0, length);
+
+            int start = buffer.position();
+            buffer.position(start + RECORD_OVERHEAD);
+            buffer.put(scratch);
+            buffer.putInt(buffer.position(), 0);
+            buffer.putInt(start + 4, (int) crc.getValue());
+            // Length goes last; a torn record reads as the end of the segment
+            buffer.putInt(start, length);
+
+            active.lastSequence = sequence;
+            nextSequence++;
+            return sequence;
+        } catch (IOException | BufferOverflowException e) {
+            writable = false;
+            logger.severe("Transaction journal disabled after write failure: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // Drops every segment whose records are all committed and rewinds the active one if it is caught up
+    void markCommitted(long sequence) {
+        if (sequence <= committedSequence) return;
+        committedSequence = sequence;
+
+        while (!sealed.isEmpty() && sealed.get(0).lastSequence <= sequence) {
+            delete(sealed.remove(0));
+        }
+
+        if (writable && active.lastSequence <= sequence && buffer.position() > HEADER_SIZE) {
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.position(HEADER_SIZE);
+        }
+    }
+
+    // Records with a sequence above afterSequence, oldest first, for replay
+    List<Entry> read(long afterSequence, int limit) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Segment segment : sealed) {
+            if (entries.size() >= limit) break;
+            if (segment.lastSequence > afterSequence) {
+                readSegment(segment, afterSequence, limit, entries);
+            }
+        }
+        if (writable && entries.size() < limit && active.lastSequence > afterSequence) {
+            readRecords(buffer.duplicate(), active, afterSequence, limit, entries);
+        }
+        return entries;
+    }
+
+    void close() {
+        if (buffer != null) {
+            buffer.force();
+        }
+        writable = false;
+    }
+
+    private void openActiveSegment() throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(segmentSize);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, segmentSize);
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.position(HEADER_SIZE);
+
+        active = new Segment(file);
+        active.lastSequence = nextSequence - 1;
+    }
+
+    // Only happens while commits are failing; a healthy writer keeps rewinding the active segment
+    private void rollSegment() throws IOException {
+        buffer.force();
+        sealed.add(active);
+        openActiveSegment();
+    }
+
+    private void readSegment(Segment segment, long afterSequence, int limit, List<Entry> entries) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment.file.toPath()));
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            logger.warning("Ignoring unreadable journal segment " + segment.file.getName());
+            return;
+        }
+        readRecords(data, segment, afterSequence, limit, entries);
+    }
+
+    // With entries == null this only finds the segment's last valid sequence
+    private void readRecords(ByteBuffer data, Segment segment, long afterSequence, int limit, List<Entry> entries) {
+        data.position(HEADER_SIZE);
+        long previous = Long.MIN_VALUE;
+
+        while (data.remaining() >= RECORD_OVERHEAD) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) break;
+
+            ByteBuffer record = data.slice(data.position(), length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) break;
+
+            data.position(data.position() + length);
+
+            long sequence = record.getLong();
+            // Stale records behind a rewind have lower sequences than what precedes them
+            if (sequence <= previous) break;
+            previous = sequence;
+
+            if (entries == null) {
+                segment.lastSequence = sequence;
+            } else if (sequence > afterSequence) {
+                entries.add(new Entry(sequence, readTransaction(record)));
+                if (entries.size() >= limit) break;
+            }
+        }
+    }
+
+    private static TransactionStore.TransactionData readTransaction(ByteBuffer record) {
+        long createdAt = record.getLong();
+        int amount = record.getInt();
+        String receiver = getString(record);
+        String sender = getString(record);
+        UUID receiverUuid = getUuid(record);
+        UUID senderUuid = getUuid(record);
+        return new TransactionStore.TransactionData(receiver, sender, amount, receiverUuid, senderUuid, createdAt);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        scratch.putShort((short) bytes.length);
+        scratch.put(bytes);
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void putUuid(UUID uuid) {
+        if (uuid == null) {
+            scratch.put((byte) 0);
+        } else {
+            scratch.put((byte) 1);
+            scratch.putLong(uuid.getMostSignificantBits());
+            scratch.putLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID getUuid(ByteBuffer record) {
+        if (record.get() == 0) return null;
+        return new UUID(record.getLong(), record.getLong());
+    }
+
+    private void delete(Segment segment) {
+        // A mapping that is still alive can block deletion on some platforms; retry on next start
+        if (!segment.file.delete() && segment.file.exists()) {
+            logger.fine("Could not delete committed journal segment " + segment.file.getName());
+        }
+    }
+
+    static final class Entry {
+        final long sequence;
+        final TransactionStore.TransactionData data;
+
+        Entry(long sequence, TransactionStore.TransactionData data) {
+            this.sequence = sequence;
+            this.data = data;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        long lastSequence = Long.MIN_VALUE;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+}
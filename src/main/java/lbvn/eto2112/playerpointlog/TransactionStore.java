@@ -0,0 +1,174 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+
+// Where captured transactions are kept and looked up: batched appends from the writer thread,
+// paged lookups and counts from the lookup workers, health for status and metrics.
+// DatabaseManager is the local SQLite engine, ShardedDatabaseManager spreads it over several files,
+// JdbcTransactionStore shares one MySQL, MariaDB or PostgreSQL database between servers,
+// SegmentLogStore appends to memory-mapped files without SQLite.
+public interface TransactionStore {
+
+    boolean initialize();
+
+    // Writer thread only. journalSequence > 0 is recorded as committed, atomically with the batch.
+    boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence);
+
+    // Writer thread only, for journal replay: sequences[i] is the journal sequence of transactions.get(i).
+    // Stores that commit to more than one file skip what each file already holds, so replaying from
+    // below one file's state never inserts a transaction twice.
+    default boolean replayTransactionsBatch(List<TransactionData> transactions, long[] sequences) {
+        return logTransactionsBatch(transactions, sequences[sequences.length - 1]);
+    }
+
+    // Last journal sequence the store committed; -1 if it cannot be read
+    long getJournalSequence();
+
+    // Highest journal sequence committed to any of the store's files; the journal numbers new entries
+    // above it. Only differs from getJournalSequence when files can be behind one another.
+    default long getHighestJournalSequence() {
+        return getJournalSequence();
+    }
+
+    // Newest first. With a cursor the page seeks from it, otherwise it is the given page number.
+    List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                  int page, int itemsPerPage);
+
+    long countPlayerTransactions(String playerName, LookupFilter filter);
+
+    // null for a player with no history
+    PlayerSummary getPlayerSummary(String playerName);
+
+    // True when some lookup lines are daily totals, so line counts differ from transaction counts
+    boolean hasDailyHistory();
+
+    // Writer thread only (TransactionWriter#submit)
+    int rebuildPlayerSummary() throws SQLException;
+
+    // Writer thread only, called while it is idle. Returns true while background work remains.
+    boolean runMaintenanceStep();
+
+    boolean isConnected();
+
+    LookupCache.Stats getLookupCacheStats();
+
+    int getOpenReadConnections();
+
+    // Streams every stored line of the player, or of everyone when playerName is null, with created_at in
+    // [since, until) into sink without collecting them; either bound may be null. Rows are read in chunks
+    // of chunkSize and nothing is held between chunks, so sink.endChunk() can pause without holding up
+    // the writer. Returns the number of lines exported.
+    long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink)
+            throws SQLException, IOException;
+
+    // Monthly partition files are a SQLite layout; other stores have none
+    default List<String> describePartitions() {
+        return List.of();
+    }
+
+    // Returns null when there is no such partition
+    default File archivePartition(YearMonth month) throws SQLException, IOException {
+        return null;
+    }
+
+    void close();
+
+    interface ExportSink {
+        void write(TransactionRecord record) throws IOException;
+
+        // Between chunks, with no connection or lock held
+        void endChunk() throws IOException;
+    }
+
+    class TransactionData {
+        public final String playerReceived;
+        public final String playerSend;
+        public final int pointsAmount;
+        // Optional, stored in the player dictionary when the participant is first seen
+        public final UUID receiverUuid;
+        public final UUID senderUuid;
+        // Epoch millis when the event was captured
+        public final long createdAt;
+
+        public TransactionData(String playerReceived, String playerSend, int pointsAmount) {
+            this(playerReceived, playerSend, pointsAmount, null, null);
+        }
+
+        public TransactionData(String playerReceived, String playerSend, int pointsAmount,
+                               UUID receiverUuid, UUID senderUuid) {
+            this(playerReceived, playerSend, pointsAmount, receiverUuid, senderUuid, System.currentTimeMillis());
+        }
+
+        public TransactionData(String playerReceived, String playerSend, int pointsAmount,
+                               UUID receiverUuid, UUID senderUuid, long createdAt) {
+            this.playerReceived = playerReceived;
+            this.playerSend = playerSend;
+            this.pointsAmount = pointsAmount;
+            this.receiverUuid = receiverUuid;
+            this.senderUuid = senderUuid;
+            this.createdAt = createdAt;
+        }
+    }
+
+    class PlayerSummary {
+        private final long transactionCount;
+        private final long totalReceived;
+        private final long totalSent;
+        // Epoch millis
+        private final long firstSeen;
+        private final long lastSeen;
+
+        public PlayerSummary(long transactionCount, long totalReceived, long totalSent,
+                             long firstSeen, long lastSeen) {
+            this.transactionCount = transactionCount;
+            this.totalReceived = totalReceived;
+            this.totalSent = totalSent;
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+        }
+
+        public long getTransactionCount() { return transactionCount; }
+        public long getTotalReceived() { return totalReceived; }
+        public long getTotalSent() { return totalSent; }
+        public long getFirstSeen() { return firstSeen; }
+        public long getLastSeen() { return lastSeen; }
+    }
+
+    class TransactionRecord {
+        // Negative for a daily total past the retention horizon
+        private final long id;
+        private final String playerReceived;
+        private final String playerSend;
+        private final long pointsAmount;
+        // Epoch millis; start of the day for a daily total
+        private final long createdAt;
+        private final long transactionCount;
+
+        public TransactionRecord(long id, String playerReceived, String playerSend, long pointsAmount, long createdAt) {
+            this(id, playerReceived, playerSend, pointsAmount, createdAt, 1);
+        }
+
+        public TransactionRecord(long id, String playerReceived, String playerSend, long pointsAmount, long createdAt,
+                                 long transactionCount) {
+            this.id = id;
+            this.playerReceived = playerReceived;
+            this.playerSend = playerSend;
+            this.pointsAmount = pointsAmount;
+            this.createdAt = createdAt;
+            this.transactionCount = transactionCount;
+        }
+
+        public long getId() { return id; }
+        public String getPlayerReceived() { return playerReceived; }
+        public String getPlayerSend() { return playerSend; }
+        public long getPointsAmount() { return pointsAmount; }
+        public long getCreatedAt() { return createdAt; }
+        public long getTransactionCount() { return transactionCount; }
+        public boolean isDailyTotal() { return id < 0; }
+    }
+}
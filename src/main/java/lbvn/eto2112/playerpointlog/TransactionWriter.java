@@ -0,0 +1,306 @@
+package lbvn.eto2112.playerpointlog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// The one thread that writes to the database. It drains the capture ring, turns the raw
+// events into transactions, journals them and group-commits everything that arrived since
+// its previous commit, so throughput follows burst size and commits never interleave.
+public class TransactionWriter implements Runnable {
+
+    // Journaled batches can be large without risking the audit trail on a crash
+    private static final int MAX_GROUP_SIZE = 20000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MIN_REPLAY_BACKOFF_MILLIS = 1000;
+    private static final long MAX_REPLAY_BACKOFF_MILLIS = 30000;
+    // Pause after a maintenance step throws, so a persistent failure does not spin
+    private static final long MAINTENANCE_BACKOFF_MILLIS = 30000;
+
+    private final EventRing ring;
+    private final PayCorrelator correlator;
+    private final TransactionJournal journal;
+    private final Supplier<TransactionStore> store;
+    private final Logger logger;
+    private final PipelineMetrics metrics;
+    // Told about every batch once it is committed, on this thread
+    private final Consumer<List<TransactionStore.TransactionData>> committed;
+    // Maintenance work that needs the write connection runs between commits
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final List<TransactionStore.TransactionData> batch = new ArrayList<>();
+    // Journal sequence of the last transaction in the batch, 0 if none was journaled
+    private long batchSequence;
+    // Set while the journal holds transactions whose commit failed; they go in before anything newer
+    private boolean replayPending;
+    private long nextReplayAt;
+    private long replayBackoff = MIN_REPLAY_BACKOFF_MILLIS;
+    private long nextMaintenanceAt;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    TransactionWriter(EventRing ring, PayCorrelator correlator, TransactionJournal journal,
+                      Supplier<TransactionStore> store, Logger logger, PipelineMetrics metrics,
+                      Consumer<List<TransactionStore.TransactionData>> committed) {
+        this.ring = ring;
+        this.correlator = correlator;
+        this.journal = journal;
+        this.store = store;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.committed = committed;
+        this.thread = new Thread(this, "PlayerPointLog-Writer");
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.NORM_PRIORITY - 1);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("Transaction writer is shut down"));
+            return future;
+        }
+
+        tasks.add(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        LockSupport.unpark(thread);
+        return future;
+    }
+
+    public int getQueueSize() {
+        return ring.size();
+    }
+
+    @Override
+    public void run() {
+        openJournal();
+
+        while (true) {
+            runTasks();
+
+            // Group commit: take everything that is already published, up to the cap
+            int drained = ring.drain(this::translate, MAX_GROUP_SIZE);
+            if (!batch.isEmpty()) {
+                commit();
+            }
+
+            if (replayPending && System.currentTimeMillis() >= nextReplayAt) {
+                replay();
+            }
+
+            if (drained == 0) {
+                if (!running) break;
+                correlator.expire(System.currentTimeMillis());
+                // Background migrations only get otherwise idle time
+                if (replayPending || !runMaintenanceStep()) {
+                    ring.awaitEvents(IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        // One last attempt; whatever still fails stays in the journal for the next start
+        if (replayPending) {
+            replay();
+        }
+        journal.close();
+
+        // Work submitted while shutting down still gets its answer
+        runTasks();
+    }
+
+    private void openJournal() {
+        long committed = store.get().getJournalSequence();
+        long highest = store.get().getHighestJournalSequence();
+        try {
+            journal.open(Math.max(committed, 0), Math.max(highest, committed));
+            replayPending = journal.hasUncommitted();
+        } catch (IOException e) {
+            logger.severe("Transaction journal unavailable, continuing without it: " + e.getMessage());
+        }
+    }
+
+    private void translate(EventRing.Slot event) {
+        try {
+            TransactionStore.TransactionData transaction = correlator.accept(event);
+            if (transaction != null) {
+                long sequence = journal.append(transaction);
+                if (sequence > 0) {
+                    batchSequence = sequence;
+                }
+                batch.add(transaction);
+            }
+        } catch (Exception e) {
+            logger.warning("Skipping malformed event: " + e.getMessage());
+        }
+    }
+
+    private void commit() {
+        try {
+            // Older journaled transactions are still waiting; this batch is replayed after them
+            if (replayPending && batchSequence > 0) return;
+
+            long started = System.nanoTime();
+            if (store.get().logTransactionsBatch(batch, batchSequence)) {
+                recordCommitted(batch, started);
+                if (batchSequence > 0) {
+                    journal.markCommitted(batchSequence);
+                }
+            } else if (batchSequence > 0) {
+                metrics.recordCommitFailure();
+                logger.warning("Commit failed, " + batch.size() + " transactions kept in the journal for retry.");
+                scheduleReplay();
+            } else {
+                metrics.recordCommitFailure();
+                metrics.recordDropped(batch.size());
+                logger.severe("Dropped a batch of " + batch.size() + " transactions after a failed commit.");
+            }
+        } catch (Exception e) {
+            metrics.recordCommitFailure();
+            logger.severe("Error processing transaction batch: " + e.getMessage());
+            if (batchSequence > 0) {
+                scheduleReplay();
+            } else {
+                metrics.recordDropped(batch.size());
+            }
+        } finally {
+            batch.clear();
+            batchSequence = 0;
+        }
+    }
+
+    // True while the store has more background work; errors pause it instead of ending the thread
+    private boolean runMaintenanceStep() {
+        long now = System.currentTimeMillis();
+        if (now < nextMaintenanceAt) return false;
+
+        try {
+            return store.get().runMaintenanceStep();
+        } catch (RuntimeException e) {
+            logger.severe("Error during background maintenance: " + e.getMessage());
+            nextMaintenanceAt = now + MAINTENANCE_BACKOFF_MILLIS;
+            return false;
+        }
+    }
+
+    // A store error is a failed replay like any other; the journal still holds everything
+    private void replay() {
+        try {
+            replayJournal();
+        } catch (RuntimeException e) {
+            metrics.recordCommitFailure();
+            logger.severe("Error replaying journaled transactions: " + e.getMessage());
+            scheduleReplay();
+        }
+    }
+
+    // Commits everything the journal holds beyond the database's committed sequence, oldest first
+    private void replayJournal() {
+        TransactionStore database = store.get();
+        long committed = database.getJournalSequence();
+        if (committed < 0) {
+            scheduleReplay();
+            return;
+        }
+        journal.markCommitted(committed);
+
+        long replayed = 0;
+        try {
+            List<TransactionJournal.Entry> entries;
+            while (!(entries = journal.read(committed, MAX_GROUP_SIZE)).isEmpty()) {
+                List<TransactionStore.TransactionData> transactions = new ArrayList<>(entries.size());
+                long[] sequences = new long[entries.size()];
+                for (int i = 0; i < entries.size(); i++) {
+                    transactions.add(entries.get(i).data);
+                    sequences[i] = entries.get(i).sequence;
+                }
+
+                long last = sequences[sequences.length - 1];
+                long started = System.nanoTime();
+                if (!database.replayTransactionsBatch(transactions, sequences)) {
+                    metrics.recordCommitFailure();
+                    scheduleReplay();
+                    return;
+                }
+                recordCommitted(transactions, started);
+                metrics.recordReplayed(transactions.size());
+                journal.markCommitted(last);
+                committed = last;
+                replayed += transactions.size();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to read transaction journal: " + e.getMessage());
+            scheduleReplay();
+            return;
+        }
+
+        replayPending = false;
+        replayBackoff = MIN_REPLAY_BACKOFF_MILLIS;
+        if (replayed > 0) {
+            logger.info("Replayed " + replayed + " journaled transactions.");
+        }
+    }
+
+    private void recordCommitted(List<TransactionStore.TransactionData> transactions, long startedNanos) {
+        metrics.recordCommit(transactions.size(), System.nanoTime() - startedNanos);
+        long committedAt = System.currentTimeMillis();
+        for (TransactionStore.TransactionData transaction : transactions) {
+            metrics.recordDurable(transaction.createdAt, committedAt);
+        }
+
+        // The batch is already in; a failing listener must not send it back to the journal
+        try {
+            committed.accept(transactions);
+        } catch (RuntimeException e) {
+            logger.warning("Error after committing a batch: " + e.getMessage());
+        }
+    }
+
+    private void scheduleReplay() {
+        replayPending = true;
+        nextReplayAt = System.currentTimeMillis() + replayBackoff;
+        replayBackoff = Math.min(replayBackoff * 2, MAX_REPLAY_BACKOFF_MILLIS);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.severe("Error running database task: " + e.getMessage());
+            }
+        }
+    }
+
+    // Stops accepting tasks, commits whatever is still queued and waits for the thread to finish
+    public void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            logger.warning("Transaction writer did not finish in time, " + getQueueSize() + " transactions left.");
+        }
+    }
+}
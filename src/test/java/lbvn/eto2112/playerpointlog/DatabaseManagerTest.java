@@ -0,0 +1,353 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.sequences;
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseManagerTest {
+
+    @TempDir
+    File folder;
+
+    private DatabaseManager database;
+
+    private DatabaseManager open() {
+        return open(false, false);
+    }
+
+    private DatabaseManager open(boolean monthlyPartitions, boolean participantLedger) {
+        database = new DatabaseManager(folder, Logger.getLogger("DatabaseManagerTest"), 0);
+        database.setMonthlyPartitions(monthlyPartitions);
+        database.setParticipantLedger(participantLedger);
+        assertTrue(database.initialize());
+        return database;
+    }
+
+    // Noon, server time, this many days back
+    private static long daysAgo(int days) {
+        return LocalDate.now().minusDays(days).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Three rows on one day past a 30 day horizon and one recent row, all from bob to alice
+    private void logHistory() {
+        long old = daysAgo(90);
+        assertTrue(database.logTransactionsBatch(List.of(
+                transaction("alice", "bob", 5, old),
+                transaction("alice", "bob", 6, old + 1),
+                transaction("alice", "bob", 7, old + 2),
+                transaction("alice", "bob", 10, daysAgo(0))), 1));
+    }
+
+    private void runMaintenance() {
+        for (int step = 0; database.runMaintenanceStep(); step++) {
+            assertTrue(step < 1000, "maintenance never went idle");
+        }
+    }
+
+    private List<String> lines(String player) {
+        List<String> lines = new ArrayList<>();
+        for (TransactionStore.TransactionRecord record : database.getPlayerTransactions(player, LookupFilter.NONE, null, 1, 10)) {
+            lines.add(record.getPlayerSend() + ">" + record.getPlayerReceived() + " " + record.getPointsAmount()
+                    + " x" + record.getTransactionCount());
+        }
+        return lines;
+    }
+
+    private static List<Long> totals(TransactionStore.PlayerSummary summary) {
+        return List.of(summary.getTransactionCount(), summary.getTotalReceived(), summary.getTotalSent());
+    }
+
+    @AfterEach
+    void close() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    // A replayed row captured before rows already committed moves first_seen back, like a rebuild would
+    @Test
+    void olderRowLowersFirstSeen() throws Exception {
+        open();
+        assertTrue(database.logTransactionsBatch(List.of(transaction("alice", "bob", 5, 2000)), 1));
+        assertTrue(database.logTransactionsBatch(List.of(transaction("alice", "bob", 7, 1000)), 2));
+
+        TransactionStore.PlayerSummary summary = database.getPlayerSummary("alice");
+        assertEquals(1000, summary.getFirstSeen());
+        assertEquals(2000, summary.getLastSeen());
+        assertEquals(2, summary.getTransactionCount());
+        assertEquals(12, summary.getTotalReceived());
+
+        database.rebuildPlayerSummary();
+        assertEquals(1000, database.getPlayerSummary("bob").getFirstSeen());
+        assertEquals(1000, database.getPlayerSummary("alice").getFirstSeen());
+    }
+
+    // A v3 file stores server-local ISO text; the v4 migration reads it as server time, both for the
+    // rows converted in the background and for the summary converted at startup
+    @Test
+    void legacyTextTimestampsBecomeEpochMillis() throws Exception {
+        String first = "2024-03-10T01:59:59.250";
+        String second = "2024-07-01T12:00:00";
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:sqlite:" + new File(folder, DatabaseManager.DATABASE_FILE).getAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE players (id INTEGER PRIMARY KEY, name_key TEXT NOT NULL UNIQUE, "
+                    + "display_name TEXT NOT NULL, uuid TEXT)");
+            statement.execute("CREATE TABLE point_transactions (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "receiver_id INTEGER NOT NULL, sender_id INTEGER NOT NULL, points_amount INTEGER NOT NULL, "
+                    + "timestamp TEXT NOT NULL)");
+            statement.execute("CREATE TABLE player_summary (player_id INTEGER PRIMARY KEY, "
+                    + "transaction_count INTEGER NOT NULL DEFAULT 0, total_received INTEGER NOT NULL DEFAULT 0, "
+                    + "total_sent INTEGER NOT NULL DEFAULT 0, first_seen TEXT, last_seen TEXT)");
+            statement.execute("INSERT INTO players (id, name_key, display_name) VALUES (1, 'alice', 'alice'), (2, 'bob', 'bob')");
+            statement.execute("INSERT INTO point_transactions (receiver_id, sender_id, points_amount, timestamp) VALUES "
+                    + "(1, 2, 5, '" + first + "'), (1, 2, 7, '" + second + "')");
+            statement.execute("INSERT INTO player_summary VALUES "
+                    + "(1, 2, 12, 0, '" + first + "', '" + second + "'), (2, 2, 0, 12, '" + first + "', '" + second + "')");
+            statement.execute("PRAGMA user_version = 3");
+        }
+        long firstMillis = LocalDateTime.parse(first).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long secondMillis = LocalDateTime.parse(second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        open();
+        // Lookups read the text column until the rows are converted
+        assertEquals(List.of(secondMillis, firstMillis), createdAt("alice"));
+        runMaintenance();
+        assertEquals(List.of(secondMillis, firstMillis), createdAt("alice"));
+        for (String player : List.of("alice", "bob")) {
+            TransactionStore.PlayerSummary summary = database.getPlayerSummary(player);
+            assertEquals(firstMillis, summary.getFirstSeen());
+            assertEquals(secondMillis, summary.getLastSeen());
+        }
+        database.close();
+
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:sqlite:" + new File(folder, DatabaseManager.DATABASE_FILE).getAbsolutePath())) {
+            SchemaMigrator migrator = new SchemaMigrator(connection, Logger.getLogger("DatabaseManagerTest"));
+            assertFalse(migrator.hasColumn("point_transactions", "timestamp"));
+            assertEquals(SchemaMigrator.SCHEMA_VERSION, migrator.getSchemaVersion());
+        }
+        open();
+        assertEquals(List.of(secondMillis, firstMillis), createdAt("alice"));
+    }
+
+    private List<Long> createdAt(String player) {
+        List<Long> times = new ArrayList<>();
+        for (TransactionStore.TransactionRecord record : database.getPlayerTransactions(player, LookupFilter.NONE, null, 1, 10)) {
+            times.add(record.getCreatedAt());
+        }
+        return times;
+    }
+
+    // Rows past the horizon become one daily total; totals stay what they were, ledger entries go with the rows
+    @Test
+    void retentionRollsOldRowsIntoDailyTotals() throws Exception {
+        open(false, true);
+        logHistory();
+        runMaintenance();
+        List<Long> before = totals(database.getPlayerSummary("alice"));
+
+        database.setRetentionDays(30);
+        runMaintenance();
+        assertTrue(database.hasDailyHistory());
+        assertEquals(List.of("bob>alice 10 x1", "bob>alice 18 x3"), lines("alice"));
+        assertEquals(List.of("bob>alice 10 x1", "bob>alice 18 x3"), lines("bob"));
+        assertEquals(before, totals(database.getPlayerSummary("alice")));
+
+        database.rebuildPlayerSummary();
+        assertEquals(before, totals(database.getPlayerSummary("alice")));
+        assertTrue(database.findTableScans().isEmpty());
+    }
+
+    // initialize can stop before the write connection exists; retention set up beforehand waits for it
+    @Test
+    void retentionWaitsForTheWriteConnection() throws Exception {
+        File shard = ShardedDatabaseManager.shardFolder(folder, 0);
+        assertTrue(shard.mkdirs());
+        assertTrue(new File(shard, DatabaseManager.DATABASE_FILE).createNewFile());
+
+        database = new DatabaseManager(folder, Logger.getLogger("DatabaseManagerTest"), 0);
+        database.setRetentionDays(1);
+        assertFalse(database.initialize());
+        assertFalse(database.runMaintenanceStep());
+        assertFalse(database.runMaintenanceStep());
+    }
+
+    // A partition wholly before the cutoff is rolled up and its file removed
+    @Test
+    void retentionRemovesEmptiedPartitions() throws Exception {
+        open(true, false);
+        logHistory();
+        assertEquals(2, database.describePartitions().size());
+        List<Long> before = totals(database.getPlayerSummary("alice"));
+
+        database.setRetentionDays(30);
+        runMaintenance();
+        assertEquals(1, database.describePartitions().size());
+        assertEquals(List.of("bob>alice 10 x1", "bob>alice 18 x3"), lines("alice"));
+        assertEquals(before, totals(database.getPlayerSummary("alice")));
+
+        database.rebuildPlayerSummary();
+        assertEquals(before, totals(database.getPlayerSummary("alice")));
+    }
+
+    // Archiving takes a month's rows out of lookups and totals, and survives a reopen
+    @Test
+    void archivedPartitionLeavesLookupsAndTotals() throws Exception {
+        open(true, false);
+        logHistory();
+        YearMonth old = YearMonth.from(LocalDate.now().minusDays(90));
+
+        File archived = database.archivePartition(old);
+        assertTrue(archived.isFile());
+        assertEquals(List.of("bob>alice 10 x1"), lines("alice"));
+        assertEquals(List.of(1L, 10L, 0L), totals(database.getPlayerSummary("alice")));
+
+        database.close();
+        open(true, false);
+        assertEquals(List.of("bob>alice 10 x1"), lines("alice"));
+        database.rebuildPlayerSummary();
+        assertEquals(List.of(1L, 10L, 0L), totals(database.getPlayerSummary("alice")));
+        assertFalse(database.describePartitions().isEmpty());
+    }
+
+    // A crash between the main file's commit and a partition's leaves the partition behind; replay
+    // resumes from it and refills only that file, without adding to the totals a second time
+    @Test
+    void partitionBehindMainIsReplayed() throws Exception {
+        open(true, false);
+        long old = daysAgo(90);
+        long recent = daysAgo(0);
+        List<TransactionStore.TransactionData> batch = List.of(
+                transaction("alice", "bob", 5, old),
+                transaction("alice", "bob", 10, recent));
+        assertTrue(database.logTransactionsBatch(batch, 2));
+        List<Long> before = totals(database.getPlayerSummary("alice"));
+        database.close();
+
+        YearMonth month = YearMonth.from(LocalDate.now().minusDays(90));
+        File partition = new File(new File(folder, "partitions"), month + ".db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + partition.getAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM point_transactions");
+            statement.executeUpdate("UPDATE partition_state SET committed_sequence = 0");
+        }
+
+        open(true, false);
+        assertEquals(0, database.getJournalSequence());
+        assertEquals(2, database.getHighestJournalSequence());
+        assertTrue(database.replayTransactionsBatch(batch, new long[]{1, 2}));
+        assertEquals(List.of("bob>alice 10 x1", "bob>alice 5 x1"), lines("alice"));
+        assertEquals(before, totals(database.getPlayerSummary("alice")));
+        assertEquals(2, database.getJournalSequence());
+
+        // Nothing is left to replay
+        assertTrue(database.replayTransactionsBatch(batch, new long[]{1, 2}));
+        assertEquals(List.of("bob>alice 10 x1", "bob>alice 5 x1"), lines("alice"));
+    }
+
+    // A batch over more months than can be attached commits them a group at a time. When a later group
+    // fails, replay skips the rows already in and adds every row to the totals once.
+    @Test
+    void batchSpanningMoreMonthsThanCanBeAttached() throws Exception {
+        open(true, false);
+        List<TransactionStore.TransactionData> batch = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int month = 0; month < 10; month++) {
+            long createdAt = YearMonth.now().minusMonths(month).atDay(15).atTime(12, 0)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            batch.add(transaction("alice", "bob", month + 1, createdAt));
+            expected.add("bob>alice " + (month + 1) + " x1");
+        }
+
+        // The current month goes in the last group; a directory in place of its file makes ATTACH fail
+        File blocked = new File(new File(folder, "partitions"), YearMonth.now() + ".db");
+        assertTrue(blocked.mkdirs());
+        assertFalse(database.logTransactionsBatch(batch, 10));
+        assertTrue(blocked.delete());
+        assertEquals(expected.subList(2, 10), lines("alice"));
+        assertEquals(0, database.getJournalSequence());
+
+        assertTrue(database.replayTransactionsBatch(batch, sequences(1, 10)));
+        assertEquals(expected, lines("alice"));
+        assertEquals(List.of(10L, 55L, 0L), totals(database.getPlayerSummary("alice")));
+        assertEquals(10, database.getJournalSequence());
+
+        database.rebuildPlayerSummary();
+        assertEquals(List.of(10L, 55L, 0L), totals(database.getPlayerSummary("alice")));
+    }
+
+    // Rows sharing a created_at across a chunk boundary are each exported once, oldest first for a
+    // player and in stored order for everyone
+    @Test
+    void exportContinuesAcrossEqualTimestamps() throws Exception {
+        open();
+        assertTrue(database.logTransactionsBatch(List.of(
+                transaction("alice", "bob", 1, 1000),
+                transaction("alice", "bob", 2, 2000),
+                transaction("bob", "alice", 3, 2000),
+                transaction("alice", "carol", 4, 2000),
+                transaction("carol", "bob", 5, 2000),
+                transaction("alice", "bob", 6, 3000)), 1));
+
+        // The first chunk of alice's rows ends partway through the rows at 2000
+        assertEquals(List.of("1", "2", "|", "3", "4", "|", "6", "|"), export("alice"));
+        assertEquals(List.of("1", "2", "|", "3", "4", "|", "5", "6", "|", "|"), export(null));
+    }
+
+    // Amounts in export order, with | where a chunk ended
+    private List<String> export(String player) throws Exception {
+        List<String> rows = new ArrayList<>();
+        long exported = database.exportTransactions(player, null, null, 2, new TransactionStore.ExportSink() {
+            @Override
+            public void write(TransactionStore.TransactionRecord record) {
+                rows.add(String.valueOf(record.getPointsAmount()));
+            }
+
+            @Override
+            public void endChunk() {
+                rows.add("|");
+            }
+        });
+        assertEquals(rows.stream().filter(row -> !row.equals("|")).count(), exported);
+        return rows;
+    }
+
+    // Turning the ledger on copies the existing rows in the background; lookups read the same lines
+    @Test
+    void ledgerBackfillServesTheSameLookups() throws Exception {
+        open();
+        logHistory();
+        assertTrue(database.logTransactionsBatch(List.of(transaction("bob", "bob", 3, daysAgo(1))), 2));
+        List<String> alice = lines("alice");
+        List<String> bob = lines("bob");
+        database.close();
+
+        open(false, true);
+        runMaintenance();
+        assertTrue(database.logTransactionsBatch(List.of(transaction("bob", "alice", 4, daysAgo(0) + 1)), 3));
+        alice.add(0, "alice>bob 4 x1");
+        bob.add(0, "alice>bob 4 x1");
+        assertEquals(alice, lines("alice"));
+        assertEquals(bob, lines("bob"));
+        assertTrue(database.findTableScans().isEmpty());
+    }
+}
@@ -0,0 +1,34 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExportFormatTest {
+
+    private static String line(ExportFormat format, String receiver, String sender) {
+        StringBuilder line = new StringBuilder();
+        format.appendLine(line, new TransactionStore.TransactionRecord(7, receiver, sender, -5, 0, 3), ZoneOffset.UTC);
+        return line.toString();
+    }
+
+    // Plain names go out bare; a comma, quote or line break gets the field quoted with quotes doubled
+    @Test
+    void csvQuotesFieldsThatNeedIt() {
+        assertEquals("7,0,1970-01-01T00:00:00Z,alice,bob,-5,3\n", line(ExportFormat.CSV, "alice", "bob"));
+        assertEquals("7,0,1970-01-01T00:00:00Z,\"a,b\",\"say \"\"hi\"\"\",-5,3\n",
+                line(ExportFormat.CSV, "a,b", "say \"hi\""));
+        assertEquals("7,0,1970-01-01T00:00:00Z,\"two\nlines\",\"cr\r\",-5,3\n",
+                line(ExportFormat.CSV, "two\nlines", "cr\r"));
+    }
+
+    // Quotes, backslashes and control characters are escaped, so every record stays on one line
+    @Test
+    void jsonEscapesStrings() {
+        assertEquals("{\"id\":7,\"created_at\":0,\"time\":\"1970-01-01T00:00:00Z\",\"receiver\":\"a\\\"b\","
+                        + "\"sender\":\"c\\\\d\\n\\t\\u0001\",\"amount\":-5,\"transaction_count\":3}\n",
+                line(ExportFormat.JSONL, "a\"b", "c\\d\n\t\u0001"));
+    }
+}
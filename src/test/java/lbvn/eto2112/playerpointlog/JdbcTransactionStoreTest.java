@@ -0,0 +1,203 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.sequences;
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The shared-database store against in-process H2 databases. H2's PostgreSQL mode has no
+// ON CONFLICT (column) or DO UPDATE, so the write path runs in MySQL mode only; both modes create the
+// schema and page, count and rebuild over the same rows
+class JdbcTransactionStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("JdbcTransactionStoreTest");
+
+    private JdbcTransactionStore store;
+    private String url;
+    private static int databases;
+
+    private JdbcTransactionStore open(JdbcTransactionStore.Dialect dialect) {
+        String mode = dialect.isPostgres() ? "PostgreSQL;DEFAULT_NULL_ORDERING=HIGH" : "MySQL";
+        url = "jdbc:h2:mem:ppl" + (++databases) + ";MODE=" + mode + ";DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        store = new JdbcTransactionStore(new JdbcTransactionStore.Settings(dialect, "", 0, "", "sa", "", 2,
+                "test", url), LOGGER);
+        assertTrue(store.initialize());
+        return store;
+    }
+
+    @AfterEach
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    // More rows than one multi-row INSERT takes; amount i + 1 at created_at 1000 + i
+    private static List<TransactionStore.TransactionData> history(int rows) {
+        List<TransactionStore.TransactionData> transactions = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String receiver = i % 3 == 0 ? "bob" : "alice";
+            String sender = i % 3 == 0 ? "alice" : "p" + (i % 50);
+            transactions.add(transaction(receiver, sender, i + 1, 1000 + i));
+        }
+        return transactions;
+    }
+
+    // Writes rows the way the store lays them out, without its dialect's upserts
+    private void seed(List<TransactionStore.TransactionData> transactions) throws SQLException {
+        List<String> players = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement player = connection.prepareStatement(
+                     "INSERT INTO ppl_players (id, name_key, display_name) VALUES (?, ?, ?)");
+             PreparedStatement row = connection.prepareStatement(
+                     "INSERT INTO ppl_transactions (receiver_id, sender_id, points_amount, created_at, server_name) VALUES (?, ?, ?, ?, 'test')")) {
+            for (TransactionStore.TransactionData transaction : transactions) {
+                for (String name : List.of(transaction.playerReceived, transaction.playerSend)) {
+                    if (!players.contains(name)) {
+                        players.add(name);
+                        player.setInt(1, players.size());
+                        player.setString(2, name);
+                        player.setString(3, name);
+                        player.executeUpdate();
+                    }
+                }
+                row.setInt(1, players.indexOf(transaction.playerReceived) + 1);
+                row.setInt(2, players.indexOf(transaction.playerSend) + 1);
+                row.setInt(3, transaction.pointsAmount);
+                row.setLong(4, transaction.createdAt);
+                row.executeUpdate();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = JdbcTransactionStore.Dialect.class, names = {"MYSQL"})
+    void appendsInChunksAndCounts(JdbcTransactionStore.Dialect dialect) {
+        open(dialect);
+        List<TransactionStore.TransactionData> transactions = history(1200);
+        assertTrue(store.logTransactionsBatch(transactions, 1200));
+
+        assertEquals(1200, store.getJournalSequence());
+        assertEquals(1200, store.countPlayerTransactions("Alice", LookupFilter.NONE));
+        assertEquals(400, store.countPlayerTransactions("bob", LookupFilter.NONE));
+        assertEquals(400, store.countPlayerTransactions("alice",
+                LookupFilter.parse(List.of("dir", "out"), System.currentTimeMillis())));
+        assertEquals(0, store.countPlayerTransactions("nobody", LookupFilter.NONE));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = JdbcTransactionStore.Dialect.class, names = {"MYSQL"})
+    void replaySkipsWhatIsAlreadyCommitted(JdbcTransactionStore.Dialect dialect) {
+        open(dialect);
+        List<TransactionStore.TransactionData> transactions = history(10);
+        assertTrue(store.logTransactionsBatch(transactions.subList(0, 6), 6));
+
+        // The journal replays 4..10 after a commit whose acknowledgement was lost
+        assertTrue(store.replayTransactionsBatch(transactions.subList(3, 10), sequences(4, 7)));
+        assertEquals(10, store.getJournalSequence());
+        assertEquals(10, store.countPlayerTransactions("alice", LookupFilter.NONE));
+
+        // And again, in full
+        assertTrue(store.replayTransactionsBatch(transactions, sequences(1, 10)));
+        assertEquals(10, store.countPlayerTransactions("alice", LookupFilter.NONE));
+        assertEquals(55, store.getPlayerSummary("alice").getTotalReceived() + store.getPlayerSummary("alice").getTotalSent());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = JdbcTransactionStore.Dialect.class, names = {"MYSQL", "POSTGRESQL"})
+    void pagesWithCursorsAndFilters(JdbcTransactionStore.Dialect dialect) throws SQLException {
+        open(dialect);
+        seed(history(300));
+
+        // Bob received every third row from alice, amounts 1, 4, 7, ... 298; keep 100 and above
+        LookupFilter filter = LookupFilter.parse(List.of("with", "alice", "min", "100"), System.currentTimeMillis());
+        long expected = store.countPlayerTransactions("bob", filter);
+        assertEquals(67, expected);
+
+        List<Long> amounts = new ArrayList<>();
+        List<TransactionStore.TransactionRecord> page = store.getPlayerTransactions("bob", filter, null, 1, 10);
+        List<TransactionStore.TransactionRecord> second = null;
+        while (!page.isEmpty()) {
+            if (second == null && !amounts.isEmpty()) second = page;
+            for (TransactionStore.TransactionRecord record : page) {
+                amounts.add(record.getPointsAmount());
+            }
+            TransactionStore.TransactionRecord last = page.get(page.size() - 1);
+            page = store.getPlayerTransactions("bob", filter, LookupCursor.olderThan(last.getCreatedAt(), last.getId()), 1, 10);
+        }
+
+        List<Long> newestFirst = new ArrayList<>();
+        for (long amount = 298; amount >= 100; amount -= 3) {
+            newestFirst.add(amount);
+        }
+        assertEquals(newestFirst, amounts);
+
+        // Back from the second page is the first page
+        TransactionStore.TransactionRecord first = second.get(0);
+        List<Long> previous = new ArrayList<>();
+        for (TransactionStore.TransactionRecord record : store.getPlayerTransactions("bob", filter,
+                LookupCursor.newerThan(first.getCreatedAt(), first.getId()), 1, 10)) {
+            previous.add(record.getPointsAmount());
+        }
+        assertEquals(newestFirst.subList(0, 10), previous);
+
+        // Page numbers without a cursor land on the same rows
+        assertEquals(second.get(0).getId(), store.getPlayerTransactions("bob", filter, null, 2, 10).get(0).getId());
+
+        // bob and alice, plus p0..p49 who sent to alice
+        assertEquals(52, store.rebuildPlayerSummary());
+        TransactionStore.PlayerSummary bob = store.getPlayerSummary("bob");
+        assertEquals(100, bob.getTransactionCount());
+        assertEquals(1000, bob.getFirstSeen());
+        assertEquals(1297, bob.getLastSeen());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = JdbcTransactionStore.Dialect.class, names = {"MYSQL"})
+    void summaryUpsertsMatchARebuild(JdbcTransactionStore.Dialect dialect) throws Exception {
+        open(dialect);
+        assertTrue(store.logTransactionsBatch(List.of(
+                transaction("alice", "bob", 10, 5000),
+                transaction("bob", "alice", 3, 6000)), 1));
+        // An older row arriving later still moves first_seen back
+        assertTrue(store.logTransactionsBatch(List.of(
+                transaction("alice", "carol", 7, 4000),
+                transaction("alice", "alice", 2, 7000)), 2));
+
+        TransactionStore.PlayerSummary alice = store.getPlayerSummary("alice");
+        assertEquals(4, alice.getTransactionCount());
+        assertEquals(19, alice.getTotalReceived());
+        assertEquals(5, alice.getTotalSent());
+        assertEquals(4000, alice.getFirstSeen());
+        assertEquals(7000, alice.getLastSeen());
+
+        List<long[]> upserted = new ArrayList<>();
+        for (String player : List.of("alice", "bob", "carol")) {
+            TransactionStore.PlayerSummary summary = store.getPlayerSummary(player);
+            upserted.add(new long[]{summary.getTransactionCount(), summary.getTotalReceived(), summary.getTotalSent(),
+                    summary.getFirstSeen(), summary.getLastSeen()});
+        }
+
+        assertEquals(3, store.rebuildPlayerSummary());
+        List<String> players = List.of("alice", "bob", "carol");
+        for (int i = 0; i < players.size(); i++) {
+            TransactionStore.PlayerSummary summary = store.getPlayerSummary(players.get(i));
+            assertEquals(List.of(summary.getTransactionCount(), summary.getTotalReceived(), summary.getTotalSent(),
+                    summary.getFirstSeen(), summary.getLastSeen()),
+                    List.of(upserted.get(i)[0], upserted.get(i)[1], upserted.get(i)[2], upserted.get(i)[3], upserted.get(i)[4]),
+                    players.get(i));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LookupFilterTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    // A page opened with "since 2h" hands its neighbours the window it was read with
+    @Test
+    void navigationPinsRelativeWindows() {
+        long now = 1_760_000_000_000L;
+        LookupFilter typed = LookupFilter.parse(List.of("since", "2h", "with", "Steve", "until", "1h"), now);
+        assertFalse(typed.isCacheable());
+
+        String arguments = typed.toArguments();
+        assertEquals("since " + (now - 2 * HOUR) + " with Steve until " + (now - HOUR), arguments);
+
+        // Clicked an hour later, the window has not moved
+        LookupFilter clicked = LookupFilter.parse(Arrays.asList(arguments.split(" ")), now + HOUR);
+        assertEquals(typed.getSince(), clicked.getSince());
+        assertEquals(typed.getUntil(), clicked.getUntil());
+        assertEquals(typed.cacheKey(), clicked.cacheKey());
+        assertTrue(clicked.isCacheable());
+        assertEquals(arguments, clicked.toArguments());
+        assertFalse(clicked.describe().contains(String.valueOf(now - HOUR)));
+    }
+
+    // Filters without a relative time go out as typed
+    @Test
+    void absoluteFiltersAreKeptAsTyped() {
+        LookupFilter filter = LookupFilter.parse(List.of("since", "2024-05-01", "dir", "in"), 0);
+        assertEquals("since 2024-05-01 dir in", filter.toArguments());
+        assertEquals("since 2024-05-01 dir in", filter.describe());
+    }
+}
@@ -0,0 +1,76 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LookupPrefetcherTest {
+
+    private static final String VIEWER = "viewer";
+    private static final String PLAYER = "steve";
+
+    private final LookupPrefetcher<String> prefetcher = new LookupPrefetcher<>();
+
+    @AfterEach
+    void shutdown() {
+        prefetcher.shutdown();
+    }
+
+    private static Map<String, Supplier<String>> pages() {
+        Map<String, Supplier<String>> loads = new LinkedHashMap<>();
+        loads.put("page 2", () -> "second");
+        loads.put("page 3", () -> "third");
+        return loads;
+    }
+
+    @Test
+    void clickTakesItsPageAndCancelsTheRest() {
+        prefetcher.speculate(VIEWER, PLAYER, pages());
+
+        CompletableFuture<String> page = prefetcher.take(VIEWER, "page 3");
+        assertNotNull(page);
+        assertEquals("third", page.join());
+        // The buffer went with the click
+        assertNull(prefetcher.take(VIEWER, "page 2"));
+    }
+
+    @Test
+    void commitDropsBufferedPagesOfItsPlayers() {
+        prefetcher.speculate(VIEWER, PLAYER, pages());
+        prefetcher.invalidate(Set.of(PLAYER));
+
+        assertNull(prefetcher.take(VIEWER, "page 2"));
+    }
+
+    // The commit lands after the speculation read its version but before its buffer is visible,
+    // so no buffer exists when the writer invalidates; the version alone has to catch it
+    @Test
+    void commitBeforeTheBufferIsPublishedDropsIt() {
+        CompletableFuture<Boolean> committed = new CompletableFuture<>();
+        Map<String, Supplier<String>> loads = new LinkedHashMap<>(pages()) {
+            @Override
+            public Set<Map.Entry<String, Supplier<String>>> entrySet() {
+                if (!committed.isDone()) {
+                    prefetcher.invalidate(Set.of(PLAYER));
+                    committed.complete(true);
+                }
+                return super.entrySet();
+            }
+        };
+
+        prefetcher.speculate(VIEWER, PLAYER, loads);
+
+        assertTrue(committed.join());
+        assertNull(prefetcher.take(VIEWER, "page 2"));
+    }
+}
@@ -0,0 +1,121 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Attribution of point changes to the /p pay commands before them. Events go through a real
+// ring, the way the writer hands them to the correlator.
+class PayCorrelatorTest {
+
+    private static final long START = 1_000_000L;
+
+    private final EventRing ring = new EventRing(256);
+    private final PayCorrelator correlator = new PayCorrelator(() -> true, PayCommandMatcher::defaults);
+
+    private final UUID target = UUID.randomUUID();
+
+    private List<TransactionStore.TransactionData> drain() {
+        List<TransactionStore.TransactionData> transactions = new ArrayList<>();
+        ring.drain(slot -> {
+            TransactionStore.TransactionData transaction = correlator.accept(slot);
+            if (transaction != null) transactions.add(transaction);
+        }, Integer.MAX_VALUE);
+        return transactions;
+    }
+
+    private void join(UUID playerId, String name, long at) {
+        ring.publishJoin(playerId, name, at);
+        assertEquals(List.of(), drain());
+    }
+
+    private void pay(String sender, String message, long at) {
+        ring.publishPayCommand(UUID.nameUUIDFromBytes(sender.getBytes()), sender, message, at);
+        assertEquals(List.of(), drain());
+    }
+
+    // Sender of the transaction the change produces
+    private String receive(UUID playerId, int amount, long at) {
+        ring.publishPointsChange(playerId, amount, at);
+        List<TransactionStore.TransactionData> transactions = drain();
+        assertEquals(1, transactions.size());
+        assertEquals(amount, transactions.get(0).pointsAmount);
+        return transactions.get(0).playerSend;
+    }
+
+    @Test
+    void concurrentPaysToOneTargetMatchByAmountOldestFirst() {
+        join(target, "Target", START);
+        pay("alice", "/p pay Target 10", START + 1);
+        pay("bob", "/p pay target 20", START + 2);
+        pay("carol", "/points pay TARGET 10", START + 3);
+        pay("dave", "/p pay target lots", START + 4);
+
+        assertEquals("bob", receive(target, 20, START + 10));
+        assertEquals("alice", receive(target, 10, START + 11));
+        assertEquals("carol", receive(target, 10, START + 12));
+        // No pay of 15: the one with an unreadable amount takes it
+        assertEquals("dave", receive(target, 15, START + 13));
+        assertEquals("console", receive(target, 10, START + 14));
+        assertEquals(0, correlator.pendingCount());
+    }
+
+    @Test
+    void expiredPaysAreSweptByTheWheel() {
+        join(target, "Target", START);
+        pay("alice", "/p pay target 10", START);
+        pay("bob", "/p pay target 10", START + 2500);
+        assertEquals(2, correlator.pendingCount());
+
+        // Alice's pay is past the window, Bob's is not
+        correlator.expire(START + 3200);
+        assertEquals(1, correlator.pendingCount());
+        assertEquals("bob", receive(target, 10, START + 3300));
+
+        pay("carol", "/p pay target 10", START + 4000);
+        correlator.expire(START + 7100);
+        assertEquals(0, correlator.pendingCount());
+        assertEquals("console", receive(target, 10, START + 7200));
+    }
+
+    @Test
+    void pendingPaysPerTargetAreBounded() {
+        join(target, "Target", START);
+        for (int i = 0; i < 40; i++) {
+            pay("sender" + i, "/p pay target 5", START + i);
+        }
+        assertEquals(32, correlator.pendingCount());
+
+        // The oldest eight were dropped; the rest match in order
+        for (int i = 8; i < 40; i++) {
+            assertEquals("sender" + i, receive(target, 5, START + 100 + i));
+        }
+        assertEquals("console", receive(target, 5, START + 200));
+    }
+
+    @Test
+    void targetWithoutAKnownUuidIsMatchedByName() {
+        // Ghost has not joined since startup when the pay is captured
+        pay("alice", "/p pay Ghost 7", START);
+        join(target, "ghost", START + 100);
+
+        assertEquals("alice", receive(target, 7, START + 200));
+        assertEquals(0, correlator.pendingCount());
+    }
+
+    @Test
+    void pointLossIsSentToConsole() {
+        join(target, "Target", START);
+        ring.publishPointsChange(target, -4, START + 1);
+        List<TransactionStore.TransactionData> transactions = drain();
+        assertEquals(1, transactions.size());
+        assertEquals("console", transactions.get(0).playerReceived);
+        assertEquals("Target", transactions.get(0).playerSend);
+        assertNull(transactions.get(0).receiverUuid);
+    }
+}
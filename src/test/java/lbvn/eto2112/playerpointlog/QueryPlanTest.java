@@ -0,0 +1,65 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// EXPLAIN QUERY PLAN regression checks: every lookup and export query must seek an index
+// on a freshly created database instead of scanning a table
+class QueryPlanTest {
+
+    @TempDir
+    File folder;
+
+    private DatabaseManager database;
+
+    private DatabaseManager open(boolean participantLedger) {
+        database = new DatabaseManager(folder, Logger.getLogger("QueryPlanTest"), 0);
+        database.setParticipantLedger(participantLedger);
+        assertTrue(database.initialize());
+        return database;
+    }
+
+    @AfterEach
+    void close() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void lookupsSeekIndexes() throws Exception {
+        assertEquals(List.of(), open(false).findTableScans());
+    }
+
+    @Test
+    void ledgerLookupsSeekIndexes() throws Exception {
+        assertEquals(List.of(), open(true).findTableScans());
+    }
+
+    // The check itself has to notice a missing index, or the tests above prove nothing
+    @Test
+    void droppedIndexIsReported() throws Exception {
+        open(false);
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:sqlite:" + new File(folder, DatabaseManager.DATABASE_FILE).getAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP INDEX idx_tx_receiver_time");
+        }
+
+        List<String> scans = database.findTableScans();
+        assertFalse(scans.isEmpty());
+        assertTrue(scans.get(0).contains("SCAN"), scans.get(0));
+    }
+}
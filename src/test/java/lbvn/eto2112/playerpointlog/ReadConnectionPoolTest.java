@@ -0,0 +1,49 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadConnectionPoolTest {
+
+    @TempDir
+    File folder;
+
+    private ReadConnectionPool pool;
+
+    @AfterEach
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    // Distinct query shapes past the cap close the least recently used statements
+    @Test
+    void statementCacheIsBounded() throws Exception {
+        pool = new ReadConnectionPool(new File(folder, "read.db").getAbsolutePath(), 1, Logger.getLogger("ReadConnectionPoolTest"));
+
+        try (ReadConnectionPool.Session session = pool.borrow()) {
+            PreparedStatement first = session.statement("SELECT 0");
+            PreparedStatement second = session.statement("SELECT 1");
+            for (int i = 2; i < ReadConnectionPool.MAX_CACHED_STATEMENTS + 10; i++) {
+                // Keeps the first statement recently used
+                assertSame(first, session.statement("SELECT 0"));
+                session.statement("SELECT " + i);
+            }
+
+            assertEquals(ReadConnectionPool.MAX_CACHED_STATEMENTS, session.cachedStatements());
+            assertFalse(first.isClosed());
+            assertTrue(second.isClosed());
+        }
+    }
+}
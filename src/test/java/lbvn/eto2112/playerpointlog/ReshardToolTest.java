@@ -0,0 +1,122 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Resharding from N to M files and back must keep every player's history and totals, with rows
+// between shards stored once per shard and exported once overall
+class ReshardToolTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ReshardToolTest");
+    private static final int PLAYERS = 12;
+    private static final int ROWS = 300;
+
+    @TempDir
+    File folder;
+
+    private static String player(int i) {
+        return "player" + i;
+    }
+
+    private static List<TransactionStore.TransactionData> history() {
+        List<TransactionStore.TransactionData> transactions = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            String receiver = player(i % PLAYERS);
+            String sender = player((i * 7 + 1) % PLAYERS);
+            if (receiver.equals(sender)) sender = "console";
+            transactions.add(transaction(receiver, sender, i + 1, 1_000_000L + i));
+        }
+        return transactions;
+    }
+
+    private ShardedDatabaseManager sharded(int shards) {
+        return new ShardedDatabaseManager(folder, LOGGER, shards, shardFolder -> new DatabaseManager(shardFolder, LOGGER, 0));
+    }
+
+    private static void reshard(File dataFolder, int shards) throws Exception {
+        ReshardTool.main(new String[]{dataFolder.getAbsolutePath(), Integer.toString(shards)});
+    }
+
+    private static void assertHistory(TransactionStore database, List<TransactionStore.TransactionData> transactions)
+            throws SQLException, IOException {
+        Map<String, long[]> expected = new HashMap<>();
+        for (TransactionStore.TransactionData data : transactions) {
+            long[] receiver = expected.computeIfAbsent(data.playerReceived, name -> new long[3]);
+            receiver[0]++;
+            receiver[1] += data.pointsAmount;
+            long[] sender = expected.computeIfAbsent(data.playerSend, name -> new long[3]);
+            sender[0]++;
+            sender[2] += data.pointsAmount;
+        }
+
+        for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+            String name = entry.getKey();
+            long[] totals = entry.getValue();
+            assertEquals(totals[0], database.countPlayerTransactions(name, LookupFilter.NONE), name);
+            TransactionStore.PlayerSummary summary = database.getPlayerSummary(name);
+            assertEquals(totals[0], summary.getTransactionCount(), name);
+            assertEquals(totals[1], summary.getTotalReceived(), name);
+            assertEquals(totals[2], summary.getTotalSent(), name);
+        }
+
+        long[] amounts = new long[1];
+        long lines = database.exportTransactions(null, null, null, 64, new TransactionStore.ExportSink() {
+            @Override
+            public void write(TransactionStore.TransactionRecord record) {
+                amounts[0] += record.getPointsAmount();
+            }
+
+            @Override
+            public void endChunk() {
+            }
+        });
+        assertEquals(transactions.size(), lines);
+        assertEquals((long) ROWS * (ROWS + 1) / 2, amounts[0]);
+    }
+
+    @Test
+    void reshardRoundTripKeepsEveryHistory() throws Exception {
+        List<TransactionStore.TransactionData> transactions = history();
+
+        ShardedDatabaseManager two = sharded(2);
+        assertTrue(two.initialize());
+        assertTrue(two.logTransactionsBatch(transactions, 7));
+        assertHistory(two, transactions);
+        two.close();
+
+        reshard(folder, 3);
+        assertEquals(3, ShardedDatabaseManager.existingShardCount(folder));
+        ShardedDatabaseManager three = sharded(3);
+        assertTrue(three.initialize());
+        try {
+            assertHistory(three, transactions);
+            assertEquals(7, three.getJournalSequence());
+        } finally {
+            three.close();
+        }
+
+        reshard(folder, 1);
+        assertEquals(0, ShardedDatabaseManager.existingShardCount(folder));
+        DatabaseManager single = new DatabaseManager(folder, LOGGER, 0);
+        assertTrue(single.initialize());
+        try {
+            assertHistory(single, transactions);
+            assertEquals(7, single.getJournalSequence());
+        } finally {
+            single.close();
+        }
+    }
+}
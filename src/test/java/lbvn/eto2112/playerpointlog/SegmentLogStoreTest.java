@@ -0,0 +1,186 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Recovery of the binary log store. A "crash" is a store that is never closed: its records are
+// in the page cache, and a second instance opens the same folder.
+class SegmentLogStoreTest {
+
+    private static final List<String> PLAYERS = List.of("carol", "dave", "console", "filler0", "filler1", "filler2");
+
+    @TempDir
+    File folder;
+
+    private SegmentLogStore store;
+    private long sequence;
+
+    private SegmentLogStore open() {
+        store = new SegmentLogStore(folder, Logger.getLogger("SegmentLogStoreTest"));
+        assertTrue(store.initialize());
+        return store;
+    }
+
+    @AfterEach
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private static List<Long> amounts(List<TransactionStore.TransactionRecord> records) {
+        List<Long> amounts = new ArrayList<>();
+        for (TransactionStore.TransactionRecord record : records) {
+            amounts.add(record.getPointsAmount());
+        }
+        return amounts;
+    }
+
+    private static void writeInt(File file, long offset, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(value);
+        }
+    }
+
+    // Amount i + 1 at created_at i, so the history reads back in a known order
+    private void append(SegmentLogStore target, String receiver, String sender, int from, int to) {
+        List<TransactionStore.TransactionData> batch = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            batch.add(transaction(receiver, sender, i + 1, i));
+        }
+        assertTrue(target.logTransactionsBatch(batch, ++sequence));
+    }
+
+    // Filler rows spread over a few players, in group commits of up to 20000
+    private void fill(SegmentLogStore target, int rows) {
+        List<TransactionStore.TransactionData> batch = new ArrayList<>(20000);
+        for (int i = 0; i < rows; i++) {
+            batch.add(transaction("filler" + (i % 3), "console", i % 100 + 1, i));
+            if (batch.size() == 20000 || i == rows - 1) {
+                assertTrue(target.logTransactionsBatch(batch, ++sequence));
+                batch.clear();
+            }
+        }
+    }
+
+    private static void assertSummariesMatchRebuild(SegmentLogStore target) {
+        List<TransactionStore.PlayerSummary> loaded = new ArrayList<>();
+        for (String player : PLAYERS) {
+            loaded.add(target.getPlayerSummary(player));
+        }
+
+        target.rebuildPlayerSummary();
+        for (int i = 0; i < PLAYERS.size(); i++) {
+            TransactionStore.PlayerSummary expected = target.getPlayerSummary(PLAYERS.get(i));
+            TransactionStore.PlayerSummary actual = loaded.get(i);
+            if (expected == null) {
+                assertNull(actual, PLAYERS.get(i));
+                continue;
+            }
+            assertNotNull(actual, PLAYERS.get(i));
+            assertEquals(expected.getTransactionCount(), actual.getTransactionCount(), PLAYERS.get(i));
+            assertEquals(expected.getTotalReceived(), actual.getTotalReceived(), PLAYERS.get(i));
+            assertEquals(expected.getTotalSent(), actual.getTotalSent(), PLAYERS.get(i));
+            assertEquals(expected.getFirstSeen(), actual.getFirstSeen(), PLAYERS.get(i));
+            assertEquals(expected.getLastSeen(), actual.getLastSeen(), PLAYERS.get(i));
+        }
+    }
+
+    @Test
+    void tornBatchIsDroppedWhole() throws IOException {
+        SegmentLogStore first = open();
+        append(first, "carol", "dave", 0, 3);
+        append(first, "carol", "dave", 3, 6);
+        assertEquals(2, first.getJournalSequence());
+
+        // The crash tore the last record of the second batch, so its end marker never made it
+        File records = new File(folder, SegmentLogStore.FOLDER + "/segment-000000.dat");
+        writeInt(records, 5L * LogSegment.RECORD_BYTES + 24, 99);
+
+        SegmentLogStore recovered = open();
+        assertEquals(1, recovered.getJournalSequence());
+        assertEquals(3, recovered.countPlayerTransactions("carol", LookupFilter.NONE));
+        assertEquals(List.of(3L, 2L, 1L), amounts(recovered.getPlayerTransactions("carol", LookupFilter.NONE, null, 1, 10)));
+        TransactionStore.PlayerSummary summary = recovered.getPlayerSummary("carol");
+        assertEquals(3, summary.getTransactionCount());
+        assertEquals(6, summary.getTotalReceived());
+        assertEquals(2, summary.getLastSeen());
+
+        // The journal replays the second batch once; nothing of the torn copy is left to join it
+        sequence = 1;
+        append(recovered, "carol", "dave", 3, 6);
+        assertEquals(List.of(6L, 5L, 4L, 3L, 2L, 1L),
+                amounts(recovered.getPlayerTransactions("carol", LookupFilter.NONE, null, 1, 10)));
+
+        SegmentLogStore reopened = open();
+        assertEquals(2, reopened.getJournalSequence());
+        assertEquals(List.of(6L, 5L, 4L, 3L, 2L, 1L),
+                amounts(reopened.getPlayerTransactions("carol", LookupFilter.NONE, null, 1, 10)));
+        assertSummariesMatchRebuild(reopened);
+    }
+
+    @Test
+    void rolledSegmentsRecoverSummariesAndPageAcrossTheBoundary() {
+        SegmentLogStore writer = open();
+        // Carol's first five lines end segment 0, the next five start segment 1
+        fill(writer, LogSegment.CAPACITY - 5);
+        append(writer, "carol", "dave", LogSegment.CAPACITY, LogSegment.CAPACITY + 5);
+        append(writer, "carol", "dave", LogSegment.CAPACITY + 5, LogSegment.CAPACITY + 10);
+        append(writer, "dave", "carol", LogSegment.CAPACITY + 10, LogSegment.CAPACITY + 11);
+        fill(writer, 1000);
+        assertTrue(LogSegment.isSealed(new File(folder, SegmentLogStore.FOLDER), 0));
+
+        // Crash: the checkpoint written at the roll covers segment 0, segment 1 is recounted
+        SegmentLogStore crashed = open();
+        assertEquals(sequence, crashed.getJournalSequence());
+        assertSummariesMatchRebuild(crashed);
+
+        // Clean close: the checkpoint leaves out the writable segment's rows, which are counted again on open
+        crashed.close();
+        SegmentLogStore reopened = open();
+        assertEquals(sequence, reopened.getJournalSequence());
+        assertSummariesMatchRebuild(reopened);
+
+        assertPagesAcrossTheBoundary(reopened);
+    }
+
+    private void assertPagesAcrossTheBoundary(SegmentLogStore target) {
+        long base = LogSegment.CAPACITY;
+        List<List<Long>> pages = new ArrayList<>();
+        List<TransactionStore.TransactionRecord> page = target.getPlayerTransactions("carol", LookupFilter.NONE, null, 1, 3);
+        List<TransactionStore.TransactionRecord> third = null;
+        while (!page.isEmpty()) {
+            pages.add(amounts(page));
+            if (pages.size() == 3) third = page;
+            TransactionStore.TransactionRecord last = page.get(page.size() - 1);
+            page = target.getPlayerTransactions("carol", LookupFilter.NONE,
+                    LookupCursor.olderThan(last.getCreatedAt(), last.getId()), 1, 3);
+        }
+        assertEquals(List.of(
+                List.of(base + 11, base + 10, base + 9),
+                List.of(base + 8, base + 7, base + 6),
+                List.of(base + 5, base + 4, base + 3),
+                List.of(base + 2, base + 1)), pages);
+
+        // Back from the page that starts in segment 0
+        TransactionStore.TransactionRecord newest = third.get(0);
+        assertEquals(List.of(base + 8, base + 7, base + 6), amounts(target.getPlayerTransactions("carol",
+                LookupFilter.NONE, LookupCursor.newerThan(newest.getCreatedAt(), newest.getId()), 1, 3)));
+        assertEquals(11, target.countPlayerTransactions("carol", LookupFilter.NONE));
+    }
+}
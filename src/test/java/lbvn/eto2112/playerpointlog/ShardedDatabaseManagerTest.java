@@ -0,0 +1,173 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.sequences;
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A shard that fails mid-commit must end up with its rows exactly once after replay, while the shards
+// that committed skip what they already hold
+class ShardedDatabaseManagerTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ShardedDatabaseManagerTest");
+    private static final int SHARDS = 2;
+
+    @TempDir
+    File folder;
+
+    private final FlakyShard[] shards = new FlakyShard[SHARDS];
+    private ShardedDatabaseManager database;
+    // Two players on each shard
+    private final List<List<String>> players = new ArrayList<>();
+
+    private ShardedDatabaseManager open() {
+        database = new ShardedDatabaseManager(folder, LOGGER, SHARDS, shardFolder -> {
+            int shard = Integer.parseInt(shardFolder.getName());
+            return shards[shard] = new FlakyShard(shardFolder);
+        });
+        assertTrue(database.initialize());
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            players.add(new ArrayList<>());
+        }
+        for (int i = 0; players.stream().anyMatch(names -> names.size() < 2); i++) {
+            String name = "player" + i;
+            List<String> names = players.get(ShardedDatabaseManager.shardOf(name, SHARDS));
+            if (names.size() < 2) names.add(name);
+        }
+        return database;
+    }
+
+    @AfterEach
+    void close() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private String player(int shard, int index) {
+        return players.get(shard).get(index);
+    }
+
+    // Same-shard and cross-shard rows; the amount identifies the row
+    private List<TransactionStore.TransactionData> batch(int firstAmount) {
+        return List.of(
+                transaction(player(0, 0), player(0, 1), firstAmount, firstAmount),
+                transaction(player(1, 0), player(0, 0), firstAmount + 1, firstAmount + 1),
+                transaction(player(1, 1), player(1, 0), firstAmount + 2, firstAmount + 2),
+                transaction(player(0, 1), player(1, 1), firstAmount + 3, firstAmount + 3));
+    }
+
+    private long rowsIn(int shard) throws SQLException {
+        File file = new File(ShardedDatabaseManager.shardFolder(folder, shard), DatabaseManager.DATABASE_FILE);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM point_transactions")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // Rows of the batches that name a player of the shard, each once
+    private long expectedRows(int shard, List<TransactionStore.TransactionData> transactions) {
+        long rows = 0;
+        for (TransactionStore.TransactionData data : transactions) {
+            if (ShardedDatabaseManager.shardOf(data.playerReceived, SHARDS) == shard
+                    || ShardedDatabaseManager.shardOf(data.playerSend, SHARDS) == shard) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    void failedShardGetsItsRowsOnReplayAndTheOthersSkipThem() throws SQLException {
+        open();
+        List<TransactionStore.TransactionData> all = new ArrayList<>();
+
+        // Entries 1..4 commit everywhere
+        List<TransactionStore.TransactionData> first = batch(100);
+        assertTrue(database.logTransactionsBatch(first, 4));
+        all.addAll(first);
+
+        // Entries 5..8: shard 1 fails, shard 0 keeps them
+        List<TransactionStore.TransactionData> second = batch(200);
+        shards[1].failures = 1;
+        assertFalse(database.logTransactionsBatch(second, 8));
+        all.addAll(second);
+        assertEquals(expectedRows(0, all), rowsIn(0));
+        assertEquals(expectedRows(1, first), rowsIn(1));
+
+        // Entries 9..12 wait in the journal behind the failed ones; the writer replays 5..12 together
+        List<TransactionStore.TransactionData> third = batch(300);
+        all.addAll(third);
+        assertEquals(4, database.getJournalSequence());
+
+        List<TransactionStore.TransactionData> replay = new ArrayList<>(second);
+        replay.addAll(third);
+        assertTrue(database.replayTransactionsBatch(replay, sequences(5, 8)));
+
+        assertEquals(expectedRows(0, all), rowsIn(0));
+        assertEquals(expectedRows(1, all), rowsIn(1));
+        assertEquals(12, database.getJournalSequence());
+
+        // A second replay of the same entries changes nothing
+        assertTrue(database.replayTransactionsBatch(replay, sequences(5, 8)));
+        assertEquals(expectedRows(0, all), rowsIn(0));
+        assertEquals(expectedRows(1, all), rowsIn(1));
+
+        // Each player's history and totals live in their own shard, complete
+        for (int shard = 0; shard < SHARDS; shard++) {
+            for (int index = 0; index < 2; index++) {
+                String name = player(shard, index);
+                long count = all.stream().filter(data -> data.playerReceived.equals(name) || data.playerSend.equals(name)).count();
+                assertEquals(count, database.countPlayerTransactions(name, LookupFilter.NONE), name);
+                assertEquals(count, database.getPlayerSummary(name).getTransactionCount(), name);
+            }
+        }
+    }
+
+    @Test
+    void unjournaledBatchRetriesTheFailedShard() throws SQLException {
+        open();
+        List<TransactionStore.TransactionData> transactions = batch(100);
+        shards[0].failures = 1;
+
+        assertTrue(database.logTransactionsBatch(transactions, 0));
+        assertEquals(expectedRows(0, transactions), rowsIn(0));
+        assertEquals(expectedRows(1, transactions), rowsIn(1));
+    }
+
+    // Fails its next commits while failures > 0, as a shard whose file is briefly unavailable would
+    private static final class FlakyShard extends DatabaseManager {
+        volatile int failures;
+
+        FlakyShard(File folder) {
+            super(folder, LOGGER, 0);
+        }
+
+        @Override
+        public boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+            if (failures > 0) {
+                failures--;
+                return false;
+            }
+            return super.logTransactionsBatch(transactions, journalSequence);
+        }
+    }
+}
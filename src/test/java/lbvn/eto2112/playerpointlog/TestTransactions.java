@@ -0,0 +1,22 @@
+package lbvn.eto2112.playerpointlog;
+
+// Captured transactions and journal sequences for the store and journal tests
+final class TestTransactions {
+
+    private TestTransactions() {
+    }
+
+    // No UUIDs; created_at is whatever the test needs to order or bucket the row
+    static TransactionStore.TransactionData transaction(String receiver, String sender, int amount, long createdAt) {
+        return new TransactionStore.TransactionData(receiver, sender, amount, null, null, createdAt);
+    }
+
+    // first, first + 1, ... for a batch of count transactions
+    static long[] sequences(long first, int count) {
+        long[] sequences = new long[count];
+        for (int i = 0; i < count; i++) {
+            sequences[i] = first + i;
+        }
+        return sequences;
+    }
+}
@@ -0,0 +1,181 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Crash and replay behaviour of the spill journal. A "crash" is a journal that is never closed:
+// its records are in the page cache, and a second instance opens the same directory.
+class TransactionJournalTest {
+
+    // Five records per segment with the names used below
+    private static final int SEGMENT_SIZE = 256;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 8;
+
+    @TempDir
+    File folder;
+
+    private TransactionJournal open(long committed, long highest) throws IOException {
+        TransactionJournal journal = new TransactionJournal(folder, Logger.getLogger("TransactionJournalTest"), SEGMENT_SIZE);
+        journal.open(committed, highest);
+        return journal;
+    }
+
+    // The amount doubles as an id, so replayed records can be matched to what was appended
+    private static void append(TransactionJournal journal, int from, int to) {
+        for (int amount = from; amount <= to; amount++) {
+            assertEquals(amount, journal.append(transaction("alice", "console", amount, 1000L + amount)));
+        }
+    }
+
+    private static List<Long> replay(TransactionJournal journal, long afterSequence) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        for (TransactionJournal.Entry entry : journal.read(afterSequence, Integer.MAX_VALUE)) {
+            assertEquals(entry.sequence, entry.data.pointsAmount);
+            assertEquals(1000L + entry.sequence, entry.data.createdAt);
+            sequences.add(entry.sequence);
+        }
+        return sequences;
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> sequences = new ArrayList<>();
+        for (long sequence = from; sequence <= to; sequence++) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    private File[] segments() {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith("segment-"));
+        assertNotNull(files);
+        return files;
+    }
+
+    private File onlySegment() {
+        File[] files = segments();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static int readInt(File file, long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            return raf.readInt();
+        }
+    }
+
+    private static void writeInt(File file, long offset, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(value);
+        }
+    }
+
+    @Test
+    void crashReplaysEverythingAfterTheCommittedSequence() throws IOException {
+        append(open(0, 0), 1, 4);
+
+        TransactionJournal reopened = open(2, 2);
+        assertTrue(reopened.hasUncommitted());
+        assertEquals(range(3, 4), replay(reopened, 2));
+        // New records continue after the replayed ones
+        append(reopened, 5, 5);
+        assertEquals(range(3, 5), replay(reopened, 2));
+    }
+
+    @Test
+    void tornRecordEndsTheSegment() throws IOException {
+        append(open(0, 0), 1, 4);
+
+        // Flip a payload byte of the fourth record so its checksum no longer matches
+        File segment = onlySegment();
+        int length = readInt(segment, HEADER_SIZE);
+        long fourth = HEADER_SIZE + 3L * (RECORD_OVERHEAD + length);
+        long payload = fourth + RECORD_OVERHEAD + 8;
+        writeInt(segment, payload, ~readInt(segment, payload));
+
+        TransactionJournal reopened = open(0, 0);
+        assertEquals(range(1, 3), replay(reopened, 0));
+        assertEquals(4, reopened.append(new TransactionStore.TransactionData("alice", "console", 4)));
+    }
+
+    @Test
+    void staleRecordsBehindARewindAreNotReplayed() throws IOException {
+        TransactionJournal journal = open(0, 0);
+        append(journal, 1, 5);
+        File segment = onlySegment();
+        int length = readInt(segment, HEADER_SIZE);
+
+        // Caught up: the active segment rewinds and 6 and 7 overwrite the slots of 1 and 2
+        journal.markCommitted(5);
+        append(journal, 6, 7);
+        assertEquals(range(6, 7), replay(journal, 5));
+
+        // A crash can leave the terminator behind 7 unwritten, exposing the intact stale record 3
+        long third = HEADER_SIZE + 2L * (RECORD_OVERHEAD + length);
+        assertEquals(0, readInt(segment, third));
+        writeInt(segment, third, length);
+
+        TransactionJournal reopened = open(5, 5);
+        assertTrue(reopened.hasUncommitted());
+        assertEquals(range(6, 7), replay(reopened, 5));
+        assertEquals(8, reopened.append(new TransactionStore.TransactionData("alice", "console", 8)));
+    }
+
+    @Test
+    void rolledSegmentsReplayInOrderAndAreDeletedOnceCommitted() throws IOException {
+        TransactionJournal journal = open(0, 0);
+        append(journal, 1, 12);
+        assertEquals(3, segments().length);
+        assertEquals(range(1, 12), replay(journal, 0));
+
+        journal.markCommitted(5);
+        assertEquals(2, segments().length);
+        assertEquals(range(6, 12), replay(journal, 5));
+
+        // Crash with 6..12 uncommitted; the reopened journal starts a fresh active segment
+        TransactionJournal reopened = open(7, 7);
+        assertEquals(3, segments().length);
+        assertEquals(range(8, 12), replay(reopened, 7));
+
+        reopened.markCommitted(12);
+        assertEquals(1, segments().length);
+        assertFalse(reopened.hasUncommitted());
+        assertEquals(List.of(), replay(reopened, 12));
+    }
+
+    @Test
+    void newRecordsAreNumberedAboveTheHighestStoredSequence() throws IOException {
+        append(open(0, 0), 1, 5);
+
+        // Another file of the store already holds sequences up to 10
+        TransactionJournal behind = open(2, 10);
+        assertEquals(range(3, 5), replay(behind, 2));
+        assertEquals(11, behind.append(new TransactionStore.TransactionData("alice", "console", 11)));
+    }
+
+    @Test
+    void fullyCommittedJournalHasNothingToReplay() throws IOException {
+        append(open(0, 0), 1, 5);
+
+        TransactionJournal caughtUp = open(5, 9);
+        assertFalse(caughtUp.hasUncommitted());
+        assertEquals(9, caughtUp.getCommittedSequence());
+        assertEquals(List.of(), replay(caughtUp, 0));
+        assertEquals(10, caughtUp.append(new TransactionStore.TransactionData("alice", "console", 10)));
+    }
+}
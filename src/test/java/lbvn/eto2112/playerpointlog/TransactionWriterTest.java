@@ -0,0 +1,278 @@
+package lbvn.eto2112.playerpointlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static lbvn.eto2112.playerpointlog.TestTransactions.transaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The writer's commit and replay paths against an in-memory store that can be told to fail.
+// Every point change carries its own amount, so the store's rows show exactly what was
+// committed, in which order and how often.
+class TransactionWriterTest {
+
+    private static final Logger LOGGER = Logger.getLogger("TransactionWriterTest");
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    @TempDir
+    File folder;
+
+    private final EventRing ring = new EventRing(64);
+    private final MemoryStore store = new MemoryStore();
+    private TransactionWriter writer;
+
+    private TransactionJournal journal() {
+        return new TransactionJournal(new File(folder, "journal"), LOGGER);
+    }
+
+    private void startWriter() {
+        writer = new TransactionWriter(ring, new PayCorrelator(() -> true, PayCommandMatcher::defaults), journal(),
+                () -> store, LOGGER, new PipelineMetrics(), batch -> { });
+        writer.start();
+    }
+
+    @AfterEach
+    void stopWriter() {
+        if (writer != null) {
+            writer.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private void publish(int amount) {
+        ring.publishPointsChange(PLAYER, amount, System.currentTimeMillis());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the writer");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void failedCommitIsReplayedBeforeNewerTransactions() throws InterruptedException {
+        store.failNextCommits(1);
+        startWriter();
+
+        publish(1);
+        await(() -> store.attempts() >= 1);
+        // Journaled while the replay is pending, so it waits behind 1 instead of committing alone
+        publish(2);
+        await(() -> store.journalSequence() == 2);
+        publish(3);
+        await(() -> store.journalSequence() == 3);
+
+        assertEquals(List.of(1, 2, 3), store.amounts());
+    }
+
+    @Test
+    void startupReplaysOnlyWhatTheStoreHasNotCommitted() throws IOException, InterruptedException {
+        // A previous run journaled five transactions and crashed after committing the first two
+        TransactionJournal crashed = journal();
+        crashed.open(0, 0);
+        for (int amount = 1; amount <= 5; amount++) {
+            crashed.append(transaction("alice", "console", amount, amount));
+        }
+        store.commitUpTo(2);
+
+        startWriter();
+        await(() -> store.journalSequence() == 5);
+        publish(6);
+        await(() -> store.journalSequence() == 6);
+        writer.shutdown(5, TimeUnit.SECONDS);
+        writer = null;
+
+        assertEquals(List.of(3, 4, 5, 6), store.amounts());
+
+        // Nothing is left for the next start
+        TransactionJournal next = journal();
+        next.open(store.journalSequence(), store.journalSequence());
+        assertFalse(next.hasUncommitted());
+    }
+
+    @Test
+    void replayAfterRepeatedFailuresCommitsEachTransactionOnce() throws InterruptedException {
+        store.failNextCommits(2);
+        startWriter();
+
+        publish(1);
+        publish(2);
+        await(() -> store.attempts() >= 1);
+        publish(3);
+        await(() -> store.journalSequence() == 3);
+
+        assertEquals(List.of(1, 2, 3), store.amounts());
+    }
+
+    @Test
+    void storeErrorsOutsideCommitsDoNotStopTheWriter() throws InterruptedException {
+        store.throwOnMaintenance(1);
+        store.throwOnReplays(1);
+        store.failNextCommits(1);
+        startWriter();
+        await(() -> store.maintenanceSteps() >= 1);
+
+        // The failed commit's replay throws once and is retried after its backoff
+        publish(1);
+        await(() -> store.journalSequence() == 1);
+        publish(2);
+        await(() -> store.journalSequence() == 2);
+
+        assertEquals(List.of(1, 2), store.amounts());
+    }
+
+    // Appends rows in memory and keeps the journal sequence with them, like a store's state table
+    private static final class MemoryStore implements TransactionStore {
+
+        private final List<Integer> amounts = new ArrayList<>();
+        private long journalSequence;
+        private int failures;
+        private int attempts;
+        private int maintenanceErrors;
+        private int maintenanceSteps;
+        private int replayErrors;
+
+        synchronized void failNextCommits(int count) {
+            failures = count;
+        }
+
+        // Thrown the way ShardedDatabaseManager reports a failed shard
+        synchronized void throwOnMaintenance(int count) {
+            maintenanceErrors = count;
+        }
+
+        synchronized void throwOnReplays(int count) {
+            replayErrors = count;
+        }
+
+        synchronized int maintenanceSteps() {
+            return maintenanceSteps;
+        }
+
+        synchronized void commitUpTo(long sequence) {
+            journalSequence = sequence;
+        }
+
+        synchronized int attempts() {
+            return attempts;
+        }
+
+        synchronized long journalSequence() {
+            return journalSequence;
+        }
+
+        synchronized List<Integer> amounts() {
+            return new ArrayList<>(amounts);
+        }
+
+        @Override
+        public boolean initialize() {
+            return true;
+        }
+
+        @Override
+        public synchronized boolean logTransactionsBatch(List<TransactionData> transactions, long journalSequence) {
+            attempts++;
+            if (failures > 0) {
+                failures--;
+                return false;
+            }
+            for (TransactionData transaction : transactions) {
+                amounts.add(transaction.pointsAmount);
+            }
+            if (journalSequence > 0) {
+                this.journalSequence = journalSequence;
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized boolean replayTransactionsBatch(List<TransactionData> transactions, long[] sequences) {
+            if (replayErrors > 0) {
+                replayErrors--;
+                throw new IllegalStateException("replay failed");
+            }
+            return logTransactionsBatch(transactions, sequences[sequences.length - 1]);
+        }
+
+        @Override
+        public synchronized long getJournalSequence() {
+            return journalSequence;
+        }
+
+        @Override
+        public List<TransactionRecord> getPlayerTransactions(String playerName, LookupFilter filter, LookupCursor cursor,
+                                                             int page, int itemsPerPage) {
+            return List.of();
+        }
+
+        @Override
+        public long countPlayerTransactions(String playerName, LookupFilter filter) {
+            return 0;
+        }
+
+        @Override
+        public PlayerSummary getPlayerSummary(String playerName) {
+            return null;
+        }
+
+        @Override
+        public boolean hasDailyHistory() {
+            return false;
+        }
+
+        @Override
+        public int rebuildPlayerSummary() {
+            return 0;
+        }
+
+        @Override
+        public synchronized boolean runMaintenanceStep() {
+            maintenanceSteps++;
+            if (maintenanceErrors > 0) {
+                maintenanceErrors--;
+                throw new CompletionException(new SQLException("shard unavailable"));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public LookupCache.Stats getLookupCacheStats() {
+            return new LookupCache.Stats(0, 0, 0, 0, 0);
+        }
+
+        @Override
+        public int getOpenReadConnections() {
+            return 0;
+        }
+
+        @Override
+        public long exportTransactions(String playerName, Long since, Long until, int chunkSize, ExportSink sink) {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}